@@ -25,13 +25,13 @@ public class HomeServerTestClient extends AbstractCommandLineClient {
 	protected void run() throws URISyntaxException {
 		HomeServerPublicApiClient publicClient = new HomeServerPublicApiClient(publicBaseUri, user, password);
 		ClientUtil.initSslContextFactory(publicClient.getClient());
-		publicClient.setLogLevel(verbose ? Level.INFO : Level.SEVERE);
+		publicClient.setLogLevel(verbose ? Level.FINE : Level.SEVERE);
 
 		HomeServerInternalApiClient internalClient = null;
 		if (useInternalClient) {
 			internalClient = new HomeServerInternalApiClient(user, password, publicClient);
 			// ClientUtil.initSslContextFactory(internalClient.getClient());
-			internalClient.setLogLevel(verbose ? Level.INFO : Level.SEVERE);
+			internalClient.setLogLevel(verbose ? Level.FINE : Level.SEVERE);
 		}
 
 		try {
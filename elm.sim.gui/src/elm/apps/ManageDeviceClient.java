@@ -88,13 +88,13 @@ public class ManageDeviceClient extends AbstractCommandLineClient {
 
 		publicClient = new HomeServerPublicApiClient(publicBaseUri, user, password);
 		ClientUtil.initSslContextFactory(publicClient.getClient());
-		publicClient.setLogLevel(verbose ? Level.INFO : Level.SEVERE);
+		publicClient.setLogLevel(verbose ? Level.FINE : Level.SEVERE);
 
 		internalClient = null;
 		if (useInternalClient) {
 			internalClient = new HomeServerInternalApiClient(user, password, publicClient);
 //			ClientUtil.initSslContextFactory(internalClient.getClient());
-			internalClient.setLogLevel(verbose ? Level.INFO : Level.SEVERE);
+			internalClient.setLogLevel(verbose ? Level.FINE : Level.SEVERE);
 		}
 
 		try {
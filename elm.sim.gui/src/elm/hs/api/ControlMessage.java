@@ -0,0 +1,83 @@
+package elm.hs.api;
+
+import java.util.List;
+
+/**
+ * A text frame of the control channel ({@link Service#CONTROL_PATH}) of the Sim Home Server: commands and user feedback sent to the server, and their
+ * acknowledgements. An acknowledgement carries the {@link #id} of the frame it acknowledges so that many frames can be in flight on the same channel.
+ */
+public class ControlMessage {
+
+	public enum Command {
+		/** Sets the scald-protection flag and the reference and scald-protection temperatures of {@link ControlMessage#device} to {@link ControlMessage#value}. */
+		SET_SCALD_PROTECTION,
+		/** Clears the scald-protection flag of {@link ControlMessage#device} and restores the reference temperature to {@link ControlMessage#value}, if any. */
+		CLEAR_SCALD_PROTECTION,
+		/** Sends {@link ControlMessage#feedback} to the UI of the respective devices. */
+		FEEDBACK,
+		/** The command has succeeded; {@link ControlMessage#value} holds the result, if any. */
+		ACK,
+		/** The command has failed; {@link ControlMessage#error} holds the reason. */
+		NACK
+	}
+
+	/** Assigned by the sender of a command, returned with its acknowledgement. */
+	public int id;
+
+	/** Cannot be {@code null}. */
+	public Command cmd;
+
+	/** Device id. */
+	public String device;
+
+	/** A temperature in 1/10°C, can be {@code null}. */
+	public Integer value;
+
+	public List<ElmUserFeedback> feedback;
+
+	public String error;
+
+	public ControlMessage() {
+		// for GSON
+	}
+
+	public ControlMessage(Command cmd, String deviceId, Integer value) {
+		assert cmd != null;
+		this.cmd = cmd;
+		this.device = deviceId;
+		this.value = value;
+	}
+
+	/**
+	 * @param command
+	 *            cannot be {@code null}
+	 * @param value
+	 *            the result of the command, can be {@code null}
+	 * @return the acknowledgement of {@code command}, never {@code null}
+	 */
+	public static ControlMessage ack(ControlMessage command, Integer value) {
+		final ControlMessage ack = new ControlMessage(Command.ACK, command.device, value);
+		ack.id = command.id;
+		return ack;
+	}
+
+	/**
+	 * @param command
+	 *            cannot be {@code null}
+	 * @param error
+	 *            cannot be {@code null}
+	 * @return the negative acknowledgement of {@code command}, never {@code null}
+	 */
+	public static ControlMessage nack(ControlMessage command, String error) {
+		assert error != null;
+		final ControlMessage nack = new ControlMessage(Command.NACK, command.device, null);
+		nack.id = command.id;
+		nack.error = error;
+		return nack;
+	}
+
+	@Override
+	public String toString() {
+		return "(" + id + ", " + cmd + ", " + device + ", " + value + (error == null ? "" : ", " + error) + ")";
+	}
+}
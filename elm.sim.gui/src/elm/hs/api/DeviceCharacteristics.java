@@ -42,17 +42,20 @@ public class DeviceCharacteristics {
 
 		final DeviceType type;
 		final int powerMaxWatt;
+		final int powerMinUsefulWatt;
 		final short powerMaxUnits;
 		final short temperatureOffUnits; // 1/10°C
 		final short temperatureMaxUnits; // 1/10°C
 
 		private DeviceModel(DeviceType type, int powerMaxWatt) {
-			this(type, powerMaxWatt, 180, 190, 600);
+			// by default, less than a quarter of the maximum power does not heat the water noticeably at a normal flow
+			this(type, powerMaxWatt, powerMaxWatt / 4, 180, 190, 600);
 		}
 
-		private DeviceModel(DeviceType type, int powerMaxWatt, int powerMaxUnits, int temperatureOff, int temperatureMax) {
+		private DeviceModel(DeviceType type, int powerMaxWatt, int powerMinUsefulWatt, int powerMaxUnits, int temperatureOff, int temperatureMax) {
 			this.type = type;
 			this.powerMaxWatt = powerMaxWatt;
+			this.powerMinUsefulWatt = powerMinUsefulWatt;
 			this.powerMaxUnits = (short) powerMaxUnits;
 			this.temperatureOffUnits = (short) temperatureOff;
 			this.temperatureMaxUnits = (short) temperatureMax;
@@ -66,6 +69,15 @@ public class DeviceCharacteristics {
 			return powerMaxWatt;
 		}
 
+		/**
+		 * The minimum power for the device to deliver useful warm water. Limiting the device to a lower power is pointless.
+		 * 
+		 * @return power in [W], {@code <= } {@link #getPowerMaxWatt()}
+		 */
+		public int getPowerMinUsefulWatt() {
+			return powerMinUsefulWatt;
+		}
+
 		public short getPowerMaxUnits() {
 			return powerMaxUnits;
 		}
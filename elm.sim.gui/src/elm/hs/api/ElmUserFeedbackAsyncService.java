@@ -0,0 +1,28 @@
+package elm.hs.api;
+
+import java.util.List;
+
+import elm.util.ClientException;
+import elm.util.ClientFuture;
+
+/**
+ * The non-blocking variant of {@link ElmUserFeedbackService}, see {@link HomeServerAsyncService}. The returned {@link ClientFuture}s fail with the
+ * {@link ClientException} the equivalent {@link ElmUserFeedbackService} method would have thrown.
+ */
+public interface ElmUserFeedbackAsyncService {
+
+	ClientFuture<Boolean> supportsUserFeedbackAsync();
+
+	/**
+	 * <em>Note: </em>This method must only be invoked when {@link #supportsUserFeedbackAsync()} completes with {@code true}.
+	 */
+	ClientFuture<HomeServerResponse> getFeedbackDevicesAsync();
+
+	/**
+	 * <em>Note: </em>This method must only be invoked when {@link #supportsUserFeedbackAsync()} completes with {@code true}.
+	 * 
+	 * @param feedback
+	 *            cannot be {@code null} or empty
+	 */
+	ClientFuture<Void> updateUserFeedbackAsync(List<ElmUserFeedback> feedback);
+}
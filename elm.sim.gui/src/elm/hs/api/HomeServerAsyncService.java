@@ -0,0 +1,50 @@
+package elm.hs.api;
+
+import java.util.List;
+
+import elm.util.ClientException;
+import elm.util.ClientFuture;
+
+/**
+ * The non-blocking variant of {@link HomeServerService}: every method sends its request(s) and returns immediately. The returned {@link ClientFuture}
+ * completes with the result of the equivalent {@link HomeServerService} method, or fails with the {@link ClientException} that method would have thrown.
+ */
+public interface HomeServerAsyncService {
+
+	ClientFuture<HomeServerResponse> getServerStatusAsync();
+
+	ClientFuture<Void> discoverDevicesAsync();
+
+	ClientFuture<HomeServerResponse> getRegisteredDevicesAsync();
+
+	ClientFuture<HomeServerResponse> getAllDevicesAsync();
+
+	ClientFuture<HomeServerResponse> getDeviceStatusAsync(String deviceID);
+
+	ClientFuture<HomeServerResponse> getDeviceStatusAsync(List<String> deviceIDs);
+
+	/**
+	 * Like {@link #getDeviceStatusAsync(String)}, but decodes the response into the reused objects of the given decoder.
+	 * 
+	 * @param decoder
+	 *            must not be used by any other request in flight, cannot be {@code null}
+	 */
+	ClientFuture<HomeServerResponse> getDeviceStatusAsync(String deviceID, HomeServerResponseDecoder decoder);
+
+	/**
+	 * Like {@link #getDeviceStatusAsync(List)}, but decodes the response into the reused objects of the given decoder if the server
+	 * {@link HomeServerService#supportsDeviceStatusBatch() supports} batch requests.
+	 * 
+	 * @param decoder
+	 *            must not be used by any other request in flight, cannot be {@code null}
+	 */
+	ClientFuture<HomeServerResponse> getDeviceStatusAsync(List<String> deviceIDs, HomeServerResponseDecoder decoder);
+
+	ClientFuture<Void> manageDeviceAsync(String deviceID);
+
+	ClientFuture<Void> unmanageDeviceAsync(String deviceID);
+
+	ClientFuture<Short> getReferenceTemperatureAsync(String deviceID);
+
+	ClientFuture<Void> setReferenceTemperatureAsync(String deviceID, int newTemp);
+}
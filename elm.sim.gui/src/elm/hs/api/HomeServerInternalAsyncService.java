@@ -0,0 +1,15 @@
+package elm.hs.api;
+
+import elm.util.ClientException;
+import elm.util.ClientFuture;
+
+/**
+ * The non-blocking variant of {@link HomeServerInternalService}, see {@link HomeServerAsyncService}. A multi-request command sends its requests one after
+ * the other without blocking a thread in between; the {@link ClientFuture} fails with the {@link ClientException} of the first failing request.
+ */
+public interface HomeServerInternalAsyncService {
+
+	ClientFuture<Short> setScaldProtectionTemperatureAsync(String deviceID, int newTemperatureUnits);
+
+	ClientFuture<Void> clearScaldProtectionAsync(String deviceID, Integer previousTemperatureUnits);
+}
@@ -0,0 +1,657 @@
+package elm.hs.api;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.FieldNamingStrategy;
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Decodes the {@link HomeServerResponse}s of a recurring poll, such as {@code GET /devices}, into objects that are <em>reused</em> from one poll to the
+ * next: the response, its device list, and one {@link Device} with an {@link Info} and a {@link Status} block per device ID. Once every device has been seen,
+ * decoding a response allocates no memory at all; only a device ID not seen before allocates its {@link Device} and ID {@link String}.
+ * <p>
+ * The decoder reads the UTF-8 bytes of the response directly. It decodes the numeric and boolean fields of the objects above and the device IDs; all other
+ * values, e.g. {@link HomeServerResponse#version}, {@link Info#url}, {@link Device#logs} or {@link HomeServerResponse#services}, are skipped and remain
+ * {@code null}. Use {@link HomeServerTypeAdapterFactory} to decode these.
+ * </p>
+ * <p>
+ * <em>Note: </em>The objects returned by {@link #decode(byte[])} are overwritten by the next invocation. This class is not thread-safe.
+ * </p>
+ */
+public class HomeServerResponseDecoder {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int MAX_DEPTH = 64;
+
+	/** The objects reused for a device. */
+	private static final class Entry {
+		final byte[] id;
+		final Device device = new Device();
+		final Info info = new Info();
+		final Status status = new Status();
+		/** The number of the last {@link HomeServerResponseDecoder#decode(byte[]) decoding} the device was part of. */
+		int decoding;
+
+		Entry(byte[] id, String idString) {
+			this.id = id;
+			device.id = idString;
+		}
+	}
+
+	private final byte[][] responseNames;
+	private final byte[][] deviceNames;
+	private final byte[][] infoNames;
+	private final byte[][] statusNames;
+
+	private final HomeServerResponse response = new HomeServerResponse();
+	private final List<Device> devices = new ArrayList<Device>();
+
+	/** Entries in the order of the last response. */
+	private final List<Entry> entries = new ArrayList<Entry>();
+	private int decodings;
+	private int claimedCount;
+
+	private byte[] buf;
+	private int pos;
+
+	public HomeServerResponseDecoder() {
+		this(new HomeServerFieldNamingStrategy());
+	}
+
+	/**
+	 * @param namingStrategy
+	 *            the strategy used to encode the responses, cannot be {@code null}
+	 */
+	public HomeServerResponseDecoder(FieldNamingStrategy namingStrategy) {
+		assert namingStrategy != null;
+		responseNames = names(namingStrategy, HomeServerResponse.class, "total", "cached", "success", "error", "time", "devices");
+		deviceNames = names(namingStrategy, Device.class, "id", "rssi", "lqi", "connected", "info", "status");
+		infoNames = names(namingStrategy, Info.class, "setpoint", "flags", "error", "access", "activity", "serverCh", "serverAddr");
+		statusNames = names(namingStrategy, Status.class, "setpoint", "tIn", "tOut", "tP1", "tP2", "tP3", "tP4", "flow", "power", "powerMax", "flags", "error");
+	}
+
+	private static byte[][] names(FieldNamingStrategy namingStrategy, Class<?> type, String... fieldNames) {
+		final byte[][] result = new byte[fieldNames.length][];
+		for (int i = 0; i < fieldNames.length; i++) {
+			try {
+				result[i] = namingStrategy.translateName(type.getField(fieldNames[i])).getBytes(UTF_8);
+			} catch (NoSuchFieldException e) {
+				throw new IllegalArgumentException(type.getName() + "." + fieldNames[i], e);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param content
+	 *            the UTF-8 encoded JSON of a {@link HomeServerResponse}, cannot be {@code null}
+	 * @return the decoded response, {@code null} if the content is the JSON {@code null}; valid until the next invocation
+	 * @throws JsonSyntaxException
+	 *             if the content is not a valid {@link HomeServerResponse}
+	 */
+	public HomeServerResponse decode(byte[] content) {
+		assert content != null;
+		buf = content;
+		pos = 0;
+		decodings++;
+		try {
+			if (skipNull()) {
+				return null;
+			}
+			readResponse();
+			if (peek() != -1) {
+				throw syntaxError("end of content expected");
+			}
+			return response;
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw syntaxError("unexpected end of content");
+		} finally {
+			buf = null;
+		}
+	}
+
+	private void readResponse() {
+		response.total = 0;
+		response.cached = false;
+		response.success = false;
+		response.error = 0;
+		response.time = 0;
+		response.devices = null;
+		expect('{');
+		if (!consume('}')) {
+			do {
+				final int index = readName(responseNames);
+				if (index < 0) {
+					skipValue(0);
+					continue;
+				} else if (skipNull()) {
+					continue; // keep the default
+				}
+				switch (index) {
+				case 0:
+					response.total = readInt();
+					break;
+				case 1:
+					response.cached = readBoolean();
+					break;
+				case 2:
+					response.success = readBoolean();
+					break;
+				case 3:
+					response.error = (short) readInt();
+					break;
+				case 4:
+					response.time = readInt();
+					break;
+				case 5:
+					readDevices();
+					break;
+				}
+			} while (consume(','));
+			expect('}');
+		}
+	}
+
+	private void readDevices() {
+		devices.clear();
+		claimedCount = 0;
+		response.devices = devices;
+		expect('[');
+		if (!consume(']')) {
+			do {
+				if (skipNull()) {
+					devices.add(null);
+				} else {
+					devices.add(readDevice());
+				}
+			} while (consume(','));
+			expect(']');
+		}
+		if (entries.size() > claimedCount) {
+			// forget the devices no longer reported:
+			for (int i = entries.size() - 1; i >= 0; i--) {
+				if (entries.get(i).decoding != decodings) {
+					entries.remove(i);
+				}
+			}
+		}
+	}
+
+	private Device readDevice() {
+		// the ID is not necessarily the first property => find the entry first, then decode the object from its start
+		final int start = pos;
+		final Entry entry = findEntry();
+		if (entry == null) {
+			pos = start;
+			return readDevice(new Device(), null, new Info(), new Status());
+		}
+		pos = start;
+		return readDevice(entry.device, entry.device.id, entry.info, entry.status);
+	}
+
+	/**
+	 * Finds or creates the entry of the device object at the current position.
+	 *
+	 * @return {@code null} if the device object has no ID or if its ID appeared before in this response
+	 */
+	private Entry findEntry() {
+		final int index = devices.size();
+		expect('{');
+		if (consume('}')) {
+			return null;
+		}
+		do {
+			final int name = readName(deviceNames);
+			if (name == 0 && peek() == '"') {
+				pos++;
+				final int idStart = pos;
+				skipString();
+				final int idEnd = pos - 1;
+				// devices are usually reported in the same order:
+				if (index < entries.size() && matches(entries.get(index).id, idStart, idEnd)) {
+					return claim(entries.get(index));
+				}
+				for (int i = 0; i < entries.size(); i++) {
+					if (matches(entries.get(i).id, idStart, idEnd)) {
+						final Entry entry = entries.get(i);
+						if (entry.decoding != decodings && index < entries.size()) {
+							// keep the entries in response order for the next decoding:
+							entries.remove(i);
+							entries.add(index, entry);
+						}
+						return claim(entry);
+					}
+				}
+				final byte[] id = new byte[idEnd - idStart];
+				System.arraycopy(buf, idStart, id, 0, id.length);
+				pos = idStart - 1;
+				final Entry entry = new Entry(id, readString());
+				entries.add(Math.min(index, entries.size()), entry);
+				return claim(entry);
+			}
+			skipValue(0);
+		} while (consume(','));
+		return null;
+	}
+
+	private Entry claim(Entry entry) {
+		if (entry.decoding == decodings) {
+			return null; // duplicate
+		}
+		entry.decoding = decodings;
+		claimedCount++;
+		return entry;
+	}
+
+	private boolean matches(byte[] id, int start, int end) {
+		if (id.length != end - start) {
+			return false;
+		}
+		for (int i = 0; i < id.length; i++) {
+			if (id[i] != buf[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param id
+	 *            the already decoded ID, {@code null} to decode it
+	 */
+	private Device readDevice(Device d, String id, Info info, Status status) {
+		d.id = id;
+		d.rssi = 0;
+		d.lqi = 0;
+		d.connected = false;
+		d.info = null;
+		d.status = null;
+		d.logs = null;
+		expect('{');
+		if (!consume('}')) {
+			do {
+				final int index = readName(deviceNames);
+				if (index < 0) {
+					skipValue(0);
+					continue;
+				} else if (skipNull()) {
+					continue; // keep the default
+				}
+				switch (index) {
+				case 0:
+					if (id == null) {
+						d.id = readString();
+					} else {
+						skipValue(0);
+						d.id = id;
+					}
+					break;
+				case 1:
+					d.rssi = (short) readInt();
+					break;
+				case 2:
+					d.lqi = (short) readInt();
+					break;
+				case 3:
+					d.connected = readBoolean();
+					break;
+				case 4:
+					d.info = readInfo(info);
+					break;
+				case 5:
+					d.status = readStatus(status);
+					break;
+				}
+			} while (consume(','));
+			expect('}');
+		}
+		return d;
+	}
+
+	private Info readInfo(Info i) {
+		i.setpoint = 0;
+		i.flags = 0;
+		i.error = 0;
+		i.access = 0;
+		i.activity = 0;
+		i.url = null;
+		i.serverCh = 0;
+		i.serverAddr = 0;
+		expect('{');
+		if (!consume('}')) {
+			do {
+				final int index = readName(infoNames);
+				if (index < 0) {
+					skipValue(0);
+					continue;
+				} else if (skipNull()) {
+					continue; // keep the default
+				}
+				final int value = readInt();
+				switch (index) {
+				case 0:
+					i.setpoint = (short) value;
+					break;
+				case 1:
+					i.flags = (short) value;
+					break;
+				case 2:
+					i.error = (short) value;
+					break;
+				case 3:
+					i.access = (short) value;
+					break;
+				case 4:
+					i.activity = value;
+					break;
+				case 5:
+					i.serverCh = (short) value;
+					break;
+				case 6:
+					i.serverAddr = (short) value;
+					break;
+				}
+			} while (consume(','));
+			expect('}');
+		}
+		return i;
+	}
+
+	private Status readStatus(Status s) {
+		s.setpoint = 0;
+		s.tIn = 0;
+		s.tOut = 0;
+		s.tP1 = 0;
+		s.tP2 = 0;
+		s.tP3 = 0;
+		s.tP4 = 0;
+		s.flow = 0;
+		s.power = 0;
+		s.powerMax = 0;
+		s.flags = 0;
+		s.error = 0;
+		expect('{');
+		if (!consume('}')) {
+			do {
+				final int index = readName(statusNames);
+				if (index < 0) {
+					skipValue(0);
+					continue;
+				} else if (skipNull()) {
+					continue; // keep the default
+				}
+				final short value = (short) readInt();
+				switch (index) {
+				case 0:
+					s.setpoint = value;
+					break;
+				case 1:
+					s.tIn = value;
+					break;
+				case 2:
+					s.tOut = value;
+					break;
+				case 3:
+					s.tP1 = value;
+					break;
+				case 4:
+					s.tP2 = value;
+					break;
+				case 5:
+					s.tP3 = value;
+					break;
+				case 6:
+					s.tP4 = value;
+					break;
+				case 7:
+					s.flow = value;
+					break;
+				case 8:
+					s.power = value;
+					break;
+				case 9:
+					s.powerMax = value;
+					break;
+				case 10:
+					s.flags = value;
+					break;
+				case 11:
+					s.error = value;
+					break;
+				}
+			} while (consume(','));
+			expect('}');
+		}
+		return s;
+	}
+
+	// ------ Tokens ------
+
+	/**
+	 * Reads a property name and the following colon.
+	 *
+	 * @return the index of the name in {@code names}, {@code -1} if the name is not one of them
+	 */
+	private int readName(byte[][] names) {
+		expect('"');
+		final int start = pos;
+		skipString();
+		final int end = pos - 1;
+		expect(':');
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].length == end - start) {
+				int j = 0;
+				while (j < names[i].length && names[i][j] == buf[start + j]) {
+					j++;
+				}
+				if (j == names[i].length) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the next non-whitespace character without consuming it, {@code -1} at the end of the content
+	 */
+	private int peek() {
+		while (pos < buf.length) {
+			final byte c = buf[pos];
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+				return c;
+			}
+			pos++;
+		}
+		return -1;
+	}
+
+	private boolean consume(char c) {
+		if (peek() == c) {
+			pos++;
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(char c) {
+		if (!consume(c)) {
+			throw syntaxError("'" + c + "' expected");
+		}
+	}
+
+	private boolean skipNull() {
+		if (peek() == 'n') {
+			expectLiteral("null");
+			return true;
+		}
+		return false;
+	}
+
+	private void expectLiteral(String literal) {
+		for (int i = 0; i < literal.length(); i++) {
+			if (buf[pos++] != literal.charAt(i)) {
+				throw syntaxError(literal + " expected");
+			}
+		}
+	}
+
+	private boolean readBoolean() {
+		if (peek() == 't') {
+			expectLiteral("true");
+			return true;
+		}
+		expectLiteral("false");
+		return false;
+	}
+
+	private int readInt() {
+		final boolean quoted = consume('"'); // like JsonReader.nextInt()
+		final boolean negative = peek() == '-';
+		if (negative) {
+			pos++;
+		}
+		final int start = pos;
+		long value = 0;
+		while (pos < buf.length && buf[pos] >= '0' && buf[pos] <= '9') {
+			value = value * 10 + buf[pos++] - '0';
+			if (value > Integer.MAX_VALUE + 1L) {
+				throw syntaxError("int expected");
+			}
+		}
+		if (pos == start || pos < buf.length && (buf[pos] == '.' || buf[pos] == 'e' || buf[pos] == 'E')) {
+			throw syntaxError("int expected");
+		}
+		if (quoted) {
+			expect('"');
+		}
+		value = negative ? -value : value;
+		if (value > Integer.MAX_VALUE) {
+			throw syntaxError("int expected");
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Skips a string whose opening quote has been consumed, including the closing quote.
+	 */
+	private void skipString() {
+		while (true) {
+			final byte c = buf[pos++];
+			if (c == '"') {
+				return;
+			} else if (c == '\\') {
+				pos++;
+			}
+		}
+	}
+
+	/**
+	 * Decodes a string value; allocates.
+	 */
+	private String readString() {
+		expect('"');
+		final int start = pos;
+		skipString();
+		final int end = pos - 1;
+		int i = start;
+		while (i < end && buf[i] != '\\') {
+			i++;
+		}
+		if (i == end) {
+			return new String(buf, start, end - start, UTF_8);
+		}
+		// escape sequences:
+		final String raw = new String(buf, start, end - start, UTF_8);
+		final StringBuilder b = new StringBuilder(raw.length());
+		for (int j = 0; j < raw.length(); j++) {
+			char c = raw.charAt(j);
+			if (c == '\\') {
+				c = raw.charAt(++j);
+				switch (c) {
+				case 'b':
+					c = '\b';
+					break;
+				case 'f':
+					c = '\f';
+					break;
+				case 'n':
+					c = '\n';
+					break;
+				case 'r':
+					c = '\r';
+					break;
+				case 't':
+					c = '\t';
+					break;
+				case 'u':
+					c = (char) Integer.parseInt(raw.substring(j + 1, j + 5), 16);
+					j += 4;
+					break;
+				default:
+					// '"', '\\', '/' stand for themselves
+				}
+			}
+			b.append(c);
+		}
+		return b.toString();
+	}
+
+	private void skipValue(int depth) {
+		if (depth > MAX_DEPTH) {
+			throw syntaxError("nesting too deep");
+		}
+		switch (peek()) {
+		case '"':
+			pos++;
+			skipString();
+			break;
+		case '{':
+			pos++;
+			if (!consume('}')) {
+				do {
+					expect('"');
+					skipString();
+					expect(':');
+					skipValue(depth + 1);
+				} while (consume(','));
+				expect('}');
+			}
+			break;
+		case '[':
+			pos++;
+			if (!consume(']')) {
+				do {
+					skipValue(depth + 1);
+				} while (consume(','));
+				expect(']');
+			}
+			break;
+		case 't':
+			expectLiteral("true");
+			break;
+		case 'f':
+			expectLiteral("false");
+			break;
+		case 'n':
+			expectLiteral("null");
+			break;
+		default:
+			final int start = pos;
+			while (pos < buf.length && (buf[pos] >= '0' && buf[pos] <= '9' || buf[pos] == '-' || buf[pos] == '+' || buf[pos] == '.' || buf[pos] == 'e'
+					|| buf[pos] == 'E')) {
+				pos++;
+			}
+			if (pos == start) {
+				throw syntaxError("value expected");
+			}
+		}
+	}
+
+	private JsonSyntaxException syntaxError(String message) {
+		return new JsonSyntaxException(message + " at offset " + pos);
+	}
+}
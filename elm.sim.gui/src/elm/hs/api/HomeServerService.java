@@ -1,6 +1,7 @@
 package elm.hs.api;
 
 import java.net.URI;
+import java.util.List;
 
 import elm.util.ClientException;
 
@@ -84,6 +85,28 @@ public interface HomeServerService {
 	 */
 	HomeServerResponse getDeviceStatus(String deviceID) throws ClientException;
 
+	/**
+	 * Queries the server whether it returns the {@link Status} information of several devices in a single request ({@link Service#STATUS_BATCH_PATH}). This
+	 * is a service of the Sim Home Server only.
+	 * 
+	 * @throws ClientException
+	 *             if the operation ended in a status {@code != 200} or if the execution threw an exception
+	 */
+	boolean supportsDeviceStatusBatch() throws ClientException;
+
+	/**
+	 * Gets the {@link Status} information for the given devices: in a single request if the server {@link #supportsDeviceStatusBatch() supports} it, else
+	 * by one request per device.
+	 * 
+	 * @param deviceIDs
+	 *            cannot be {@code null}
+	 * @return never {@code null}
+	 * @throws ClientException
+	 *             if the operation ended in a status {@code != 200} or if the execution threw an exception
+	 * @see #getDeviceStatus(String)
+	 */
+	HomeServerResponse getDeviceStatus(List<String> deviceIDs) throws ClientException;
+
 	/**
 	 * Configures a device as managed by this Home Server.
 	 * 
@@ -0,0 +1,332 @@
+package elm.hs.api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.FieldNamingStrategy;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Hand-written, reflection-free {@link TypeAdapter}s that read the objects on the polling path, {@link HomeServerResponse}, {@link Device}, {@link Info} and
+ * {@link Status}, straight from a {@link JsonReader}: no intermediate JSON tree is built, unknown properties are skipped without being materialized, and no
+ * object is created reflectively. The JSON property names are derived once from the field names by a {@link FieldNamingStrategy}, by default the
+ * {@link HomeServerFieldNamingStrategy}, so they match the reflective serialization.
+ * <p>
+ * Writing and the rarely received objects ({@link Service}, {@link Server}, {@link Response}, {@link Feedback}, {@link Log}) are left to Gson's reflective
+ * adapters.
+ * </p>
+ */
+public class HomeServerTypeAdapterFactory implements TypeAdapterFactory {
+
+	private final FieldNamingStrategy namingStrategy;
+
+	public HomeServerTypeAdapterFactory() {
+		this(new HomeServerFieldNamingStrategy());
+	}
+
+	/**
+	 * @param namingStrategy
+	 *            the strategy also set at the {@link com.google.gson.GsonBuilder}, cannot be {@code null}
+	 */
+	public HomeServerTypeAdapterFactory(FieldNamingStrategy namingStrategy) {
+		assert namingStrategy != null;
+		this.namingStrategy = namingStrategy;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+		final Class<? super T> rawType = type.getRawType();
+		if (rawType == HomeServerResponse.class) {
+			return (TypeAdapter<T>) new HomeServerResponseAdapter(gson);
+		} else if (rawType == Device.class) {
+			return (TypeAdapter<T>) new DeviceAdapter(gson);
+		} else if (rawType == Status.class) {
+			return (TypeAdapter<T>) new StatusAdapter(gson);
+		} else if (rawType == Info.class) {
+			return (TypeAdapter<T>) new InfoAdapter(gson);
+		}
+		return null;
+	}
+
+	/**
+	 * Reads a JSON object field by field; every known field is identified by its index in the list of field names passed to the constructor.
+	 */
+	private abstract class ObjectAdapter<T> extends TypeAdapter<T> {
+
+		private final TypeAdapter<T> writer;
+		private final Map<String, Integer> fieldIndexes = new HashMap<String, Integer>();
+
+		ObjectAdapter(Gson gson, Class<T> type, String... fieldNames) {
+			writer = gson.getDelegateAdapter(HomeServerTypeAdapterFactory.this, TypeToken.get(type));
+			for (int i = 0; i < fieldNames.length; i++) {
+				try {
+					fieldIndexes.put(namingStrategy.translateName(type.getField(fieldNames[i])), i);
+				} catch (NoSuchFieldException e) {
+					throw new IllegalArgumentException(type.getName() + "." + fieldNames[i], e);
+				}
+			}
+		}
+
+		@Override
+		public void write(JsonWriter out, T value) throws IOException {
+			writer.write(out, value);
+		}
+
+		@Override
+		public T read(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			final T result = newInstance();
+			in.beginObject();
+			while (in.hasNext()) {
+				final Integer index = fieldIndexes.get(in.nextName());
+				if (index == null || in.peek() == JsonToken.NULL) {
+					in.skipValue(); // keep the default
+				} else {
+					readField(in, result, index);
+				}
+			}
+			in.endObject();
+			return result;
+		}
+
+		abstract T newInstance();
+
+		/**
+		 * @param index
+		 *            of the field name passed to the constructor
+		 */
+		abstract void readField(JsonReader in, T object, int index) throws IOException;
+	}
+
+	private class HomeServerResponseAdapter extends ObjectAdapter<HomeServerResponse> {
+
+		private final TypeAdapter<Device> deviceAdapter;
+		private final TypeAdapter<List<Service>> servicesAdapter;
+		private final TypeAdapter<Server> serverAdapter;
+		private final TypeAdapter<Response> responseAdapter;
+		private final TypeAdapter<Feedback> feedbackAdapter;
+
+		HomeServerResponseAdapter(Gson gson) {
+			super(gson, HomeServerResponse.class, "version", "total", "cached", "success", "error", "time", "devices", "services", "server", "response",
+					"feeback");
+			deviceAdapter = gson.getAdapter(Device.class);
+			servicesAdapter = gson.getAdapter(new TypeToken<List<Service>>() {});
+			serverAdapter = gson.getAdapter(Server.class);
+			responseAdapter = gson.getAdapter(Response.class);
+			feedbackAdapter = gson.getAdapter(Feedback.class);
+		}
+
+		@Override
+		HomeServerResponse newInstance() {
+			return new HomeServerResponse();
+		}
+
+		@Override
+		void readField(JsonReader in, HomeServerResponse r, int index) throws IOException {
+			switch (index) {
+			case 0:
+				r.version = in.nextString();
+				break;
+			case 1:
+				r.total = in.nextInt();
+				break;
+			case 2:
+				r.cached = in.nextBoolean();
+				break;
+			case 3:
+				r.success = in.nextBoolean();
+				break;
+			case 4:
+				r.error = (short) in.nextInt();
+				break;
+			case 5:
+				r.time = in.nextInt();
+				break;
+			case 6:
+				r.devices = new ArrayList<Device>();
+				in.beginArray();
+				while (in.hasNext()) {
+					r.devices.add(deviceAdapter.read(in));
+				}
+				in.endArray();
+				break;
+			case 7:
+				r.services = servicesAdapter.read(in);
+				break;
+			case 8:
+				r.server = serverAdapter.read(in);
+				break;
+			case 9:
+				r.response = responseAdapter.read(in);
+				break;
+			case 10:
+				r.feeback = feedbackAdapter.read(in);
+				break;
+			default:
+				throw new AssertionError(index);
+			}
+		}
+	}
+
+	private class DeviceAdapter extends ObjectAdapter<Device> {
+
+		private final TypeAdapter<Info> infoAdapter;
+		private final TypeAdapter<Status> statusAdapter;
+		private final TypeAdapter<List<Log>> logsAdapter;
+
+		DeviceAdapter(Gson gson) {
+			super(gson, Device.class, "id", "rssi", "lqi", "connected", "info", "status", "logs");
+			infoAdapter = gson.getAdapter(Info.class);
+			statusAdapter = gson.getAdapter(Status.class);
+			logsAdapter = gson.getAdapter(new TypeToken<List<Log>>() {});
+		}
+
+		@Override
+		Device newInstance() {
+			return new Device();
+		}
+
+		@Override
+		void readField(JsonReader in, Device d, int index) throws IOException {
+			switch (index) {
+			case 0:
+				d.id = in.nextString();
+				break;
+			case 1:
+				d.rssi = (short) in.nextInt();
+				break;
+			case 2:
+				d.lqi = (short) in.nextInt();
+				break;
+			case 3:
+				d.connected = in.nextBoolean();
+				break;
+			case 4:
+				d.info = infoAdapter.read(in);
+				break;
+			case 5:
+				d.status = statusAdapter.read(in);
+				break;
+			case 6:
+				d.logs = logsAdapter.read(in);
+				break;
+			default:
+				throw new AssertionError(index);
+			}
+		}
+	}
+
+	private class StatusAdapter extends ObjectAdapter<Status> {
+
+		StatusAdapter(Gson gson) {
+			super(gson, Status.class, "setpoint", "tIn", "tOut", "tP1", "tP2", "tP3", "tP4", "flow", "power", "powerMax", "flags", "error");
+		}
+
+		@Override
+		Status newInstance() {
+			return new Status();
+		}
+
+		@Override
+		void readField(JsonReader in, Status s, int index) throws IOException {
+			final short value = (short) in.nextInt();
+			switch (index) {
+			case 0:
+				s.setpoint = value;
+				break;
+			case 1:
+				s.tIn = value;
+				break;
+			case 2:
+				s.tOut = value;
+				break;
+			case 3:
+				s.tP1 = value;
+				break;
+			case 4:
+				s.tP2 = value;
+				break;
+			case 5:
+				s.tP3 = value;
+				break;
+			case 6:
+				s.tP4 = value;
+				break;
+			case 7:
+				s.flow = value;
+				break;
+			case 8:
+				s.power = value;
+				break;
+			case 9:
+				s.powerMax = value;
+				break;
+			case 10:
+				s.flags = value;
+				break;
+			case 11:
+				s.error = value;
+				break;
+			default:
+				throw new AssertionError(index);
+			}
+		}
+	}
+
+	private class InfoAdapter extends ObjectAdapter<Info> {
+
+		InfoAdapter(Gson gson) {
+			super(gson, Info.class, "setpoint", "flags", "error", "access", "activity", "url", "serverCh", "serverAddr");
+		}
+
+		@Override
+		Info newInstance() {
+			return new Info();
+		}
+
+		@Override
+		void readField(JsonReader in, Info i, int index) throws IOException {
+			switch (index) {
+			case 0:
+				i.setpoint = (short) in.nextInt();
+				break;
+			case 1:
+				i.flags = (short) in.nextInt();
+				break;
+			case 2:
+				i.error = (short) in.nextInt();
+				break;
+			case 3:
+				i.access = (short) in.nextInt();
+				break;
+			case 4:
+				i.activity = in.nextInt();
+				break;
+			case 5:
+				i.url = in.nextString();
+				break;
+			case 6:
+				i.serverCh = (short) in.nextInt();
+				break;
+			case 7:
+				i.serverAddr = (short) in.nextInt();
+				break;
+			default:
+				throw new AssertionError(index);
+			}
+		}
+	}
+}
@@ -16,6 +16,20 @@ public class Service implements HomeServerObject {
 	
 	// Sim Home Server
 	public static final String ELM_FEEDBACK_PATH = "/devices/elm-feedback";
+	/** Followed by a comma-separated list of device IDs: returns the {@link Status} blocks of all those devices in a single response. */
+	public static final String STATUS_BATCH_PATH = "/devices/status?ids=";
+	/**
+	 * Followed by the maximum wait in milliseconds: waits until the response to {@link #DEVICES_PATH} differs from the one tagged by the {@code If-None-Match}
+	 * header, then returns {@code 204 No Content} with the new tag; returns {@code 304 Not Modified} if it has not changed in time.
+	 */
+	public static final String EVENTS_PATH = "/devices/events?timeout=";
+	/** A WebSocket carrying {@link ControlMessage}s: commands and user feedback in one frame each, acknowledged by a frame of the server. */
+	public static final String CONTROL_PATH = "/control";
+	/**
+	 * Followed by a device ID: a POST with a body of {@code data=<temperature>} sets the scald-protection flag, the setpoint and the scald-protection
+	 * temperature in one request; {@code data=0} clears the flag and restores the setpoint given by an optional {@code setpoint=<temperature>}.
+	 */
+	public static final String DEVICE_LIMIT_PATH = "/devices/limit/";
 	
 	
 	public String deviceList;
@@ -29,5 +43,9 @@ public class Service implements HomeServerObject {
 	
 	// Sim Home Server
 	public String elmFeedback;
+	public String deviceStatusBatch;
+	public String deviceEvents;
+	public String controlChannel;
+	public String deviceLimit;
 
 }
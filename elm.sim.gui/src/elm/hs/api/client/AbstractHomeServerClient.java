@@ -2,7 +2,12 @@ package elm.hs.api.client;
 
 import java.net.URI;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import elm.hs.api.HomeServerFieldNamingStrategy;
 import elm.hs.api.HomeServerService;
+import elm.hs.api.HomeServerTypeAdapterFactory;
 import elm.util.AbstractJSONClient;
 
 public abstract class AbstractHomeServerClient extends AbstractJSONClient {
@@ -12,6 +17,15 @@ public abstract class AbstractHomeServerClient extends AbstractJSONClient {
 	}
 
 	public AbstractHomeServerClient(URI baseUri, String user, String pass) {
-		super(baseUri, user, pass);
+		super(baseUri, user, pass, createGson());
+	}
+
+	/**
+	 * @return a new {@link Gson} that decodes the Home Server objects with the streaming {@link HomeServerTypeAdapterFactory} adapters, never {@code null}
+	 */
+	public static Gson createGson() {
+		final HomeServerFieldNamingStrategy namingStrategy = new HomeServerFieldNamingStrategy();
+		return new GsonBuilder().setFieldNamingStrategy(namingStrategy).registerTypeAdapterFactory(new HomeServerTypeAdapterFactory(namingStrategy))
+				.setPrettyPrinting().create();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,375 @@
+package elm.hs.api.client;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.util.B64Code;
+import org.eclipse.jetty.util.StringUtil;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WebSocketAdapter;
+import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+
+import elm.hs.api.ControlMessage;
+import elm.hs.api.ControlMessage.Command;
+import elm.hs.api.ElmUserFeedback;
+import elm.hs.api.HomeServerInternalAsyncService;
+import elm.hs.api.HomeServerInternalService;
+import elm.hs.api.Service;
+import elm.util.ClientCallback;
+import elm.util.ClientException;
+import elm.util.ClientFuture;
+import elm.util.SharedWebSocketClient;
+
+/**
+ * The client end of the control channel of a Sim Home Server, see {@link Service#CONTROL_PATH}: a WebSocket that stays open between commands. Every command
+ * and every user-feedback update is a single frame acknowledged by a single frame of the server, whereas the {@link HomeServerInternalApiClient} needs a
+ * sequence of up to four HTTP request exchanges per command. Many commands can be in flight on the channel at the same time.
+ * <p>
+ * The channel does not replace the HTTP clients: they send their commands via the channel while it is {@link #isConnected() connected} and fall back to HTTP
+ * otherwise, see {@link #isDeliveryFailure(ClientException)}.
+ * </p>
+ * <p>
+ * <em>Note: </em>This class is thread-safe.
+ * </p>
+ */
+public class HomeServerControlChannel implements HomeServerInternalService, HomeServerInternalAsyncService {
+
+	public static final long DEFAULT_ACK_TIMEOUT_MILLIS = 2_000;
+
+	/** One per connection, so that the events of a closed connection cannot be mistaken for those of the next one. */
+	private class Socket extends WebSocketAdapter {
+
+		@Override
+		public void onWebSocketConnect(Session session) {
+			super.onWebSocketConnect(session);
+			log.info(uri + ": control channel connected");
+		}
+
+		@Override
+		public void onWebSocketText(String message) {
+			received(message);
+		}
+
+		@Override
+		public void onWebSocketClose(int statusCode, String reason) {
+			super.onWebSocketClose(statusCode, reason);
+			closed(this, "Control channel closed: " + statusCode + (reason == null ? "" : " " + reason));
+		}
+
+		@Override
+		public void onWebSocketError(Throwable cause) {
+			log.log(Level.FINE, uri + ": control channel failed", cause);
+			closed(this, "Control channel failed: " + cause);
+		}
+	}
+
+	protected final Logger log = Logger.getLogger(getClass().getName());
+
+	private final URI uri;
+	private final String basicAuthentication;
+	private final Gson gson = new GsonBuilder().create();
+	private final SharedWebSocketClient sharedClient = SharedWebSocketClient.getInstance();
+	private final AtomicInteger lastId = new AtomicInteger();
+	/** The commands sent and not acknowledged yet, by {@link ControlMessage#id}. */
+	private final Map<Integer, ClientFuture<ControlMessage>> pending = new ConcurrentHashMap<Integer, ClientFuture<ControlMessage>>();
+	private volatile long ackTimeoutMillis = DEFAULT_ACK_TIMEOUT_MILLIS;
+
+	/** {@code null} unless started. */
+	private WebSocketClient client;
+	/** The current connection, {@code null} if none has been opened yet or the last one has closed. */
+	private Socket socket;
+	/** The opening of {@link #socket}. */
+	private Future<Session> connecting;
+
+	/**
+	 * @param baseUri
+	 *            the URI of the Home Server including an optional port argument, but without any resource path elements, cannot be {@code null}
+	 * @param user
+	 *            cannot be {@code null} or empty
+	 * @param pass
+	 *            cannot be {@code null} or empty
+	 */
+	public HomeServerControlChannel(URI baseUri, String user, String pass) {
+		assert baseUri != null;
+		assert user != null && !user.isEmpty();
+		assert pass != null && !pass.isEmpty();
+		this.uri = URI.create(("https".equals(baseUri.getScheme()) ? "wss" : "ws") + "://" + baseUri.getRawAuthority() + Service.CONTROL_PATH);
+		basicAuthentication = "Basic " + B64Code.encode(user + ":" + pass, StringUtil.__ISO_8859_1);
+	}
+
+	public URI getUri() {
+		return uri;
+	}
+
+	public long getAckTimeoutMillis() {
+		return ackTimeoutMillis;
+	}
+
+	/**
+	 * @param ackTimeoutMillis
+	 *            the time a command waits for its acknowledgement before it fails with a {@link ClientException} of type
+	 *            {@link ClientException.Error#NETWORK_TIMEOUT}, {@code > 0}
+	 */
+	public void setAckTimeoutMillis(long ackTimeoutMillis) {
+		assert ackTimeoutMillis > 0;
+		this.ackTimeoutMillis = ackTimeoutMillis;
+	}
+
+	public synchronized void start() throws Exception {
+		if (client == null) {
+			client = sharedClient.acquire();
+		}
+	}
+
+	public void stop() throws Exception {
+		final Socket s;
+		synchronized (this) {
+			if (client == null) {
+				return;
+			}
+			client = null;
+			s = socket;
+			socket = null;
+			connecting = null;
+		}
+		if (s != null && s.isConnected()) {
+			s.getSession().close();
+		}
+		failPending("Control channel stopped");
+		sharedClient.release();
+	}
+
+	/**
+	 * @return {@code true} if this channel has been started and not stopped yet
+	 */
+	public synchronized boolean isStarted() {
+		return client != null;
+	}
+
+	/**
+	 * Opens the channel unless it is connected or being opened already. This method does not wait for the connection.
+	 * <p>
+	 * <em>Note: </em>This method must be invoked after {@link #start()}.
+	 * </p>
+	 */
+	public synchronized void connect() {
+		assert client != null;
+		if (connecting != null && (!connecting.isDone() || socket.isConnected())) {
+			return;
+		}
+		final ClientUpgradeRequest request = new ClientUpgradeRequest();
+		request.setHeader(HttpHeader.AUTHORIZATION.asString(), basicAuthentication);
+		socket = new Socket();
+		try {
+			connecting = client.connect(socket, uri, request);
+		} catch (IOException e) {
+			log.log(Level.WARNING, uri + ": cannot open control channel", e);
+			socket = null;
+			connecting = null;
+		}
+	}
+
+	/**
+	 * @return {@code true} if commands can be sent
+	 */
+	public synchronized boolean isConnected() {
+		return socket != null && socket.isConnected();
+	}
+
+	/**
+	 * Whether a command has failed to reach the Home Server or the channel has closed before its acknowledgement, i.e. whether the command should be sent via
+	 * HTTP instead. All commands are idempotent, so it does not matter if it has actually been executed: a closed channel cannot deliver it later.
+	 * <p>
+	 * <em>Note: </em>A {@link ClientException.Error#NETWORK_TIMEOUT missing acknowledgement} is not a delivery failure: the command may still be executed
+	 * later, after a newer command for the same device sent via HTTP. The device update fails instead; a lost scald-protection limit is issued again once a
+	 * poll shows the device not honouring it.
+	 * </p>
+	 *
+	 * @param e
+	 *            an exception of this channel, cannot be {@code null}
+	 */
+	public static boolean isDeliveryFailure(ClientException e) {
+		return e.getError() == ClientException.Error.EXECUTION_ERROR;
+	}
+
+	/**
+	 * @param command
+	 *            its {@link ControlMessage#id} is assigned by this method, cannot be {@code null}
+	 * @return completes with the acknowledgement, or fails with a {@link ClientException} of type {@link ClientException.Error#APPLICATION_FAILURE_RESPONSE}
+	 *         if the command has been rejected, of type {@link ClientException.Error#NETWORK_TIMEOUT} if the acknowledgement has not arrived in time, or of
+	 *         type {@link ClientException.Error#EXECUTION_ERROR} if the channel is not connected or has closed before the acknowledgement; never {@code null}
+	 */
+	public ClientFuture<ControlMessage> send(ControlMessage command) {
+		assert command != null && command.cmd != null;
+		final WebSocketClient c;
+		final Socket s;
+		synchronized (this) {
+			c = client;
+			s = socket;
+		}
+		if (s == null || !s.isConnected()) {
+			return ClientFuture.failed(new ClientException(ClientException.Error.EXECUTION_ERROR, "Control channel not connected", null));
+		}
+		final int id = lastId.incrementAndGet();
+		command.id = id;
+		final ClientFuture<ControlMessage> result = new ClientFuture<ControlMessage>();
+		pending.put(id, result);
+		final Scheduler.Task timeout = c.getScheduler().schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (pending.remove(id) != null) {
+					result.fail(new ClientException(new TimeoutException("No acknowledgement within " + ackTimeoutMillis + " ms")));
+				}
+			}
+		}, ackTimeoutMillis, TimeUnit.MILLISECONDS);
+		result.addCallback(new ClientCallback<ControlMessage>() {
+			@Override
+			public void completed(ControlMessage ack) {
+				timeout.cancel();
+			}
+
+			@Override
+			public void failed(ClientException e) {
+				timeout.cancel();
+			}
+		});
+		try {
+			s.getRemote().sendStringByFuture(gson.toJson(command));
+		} catch (RuntimeException e) { // closed in the meantime
+			pending.remove(id);
+			result.fail(new ClientException(ClientException.Error.EXECUTION_ERROR, "Control channel closed", e));
+		}
+		return result;
+	}
+
+	private void received(String message) {
+		final ControlMessage ack;
+		try {
+			ack = gson.fromJson(message, ControlMessage.class);
+		} catch (JsonSyntaxException e) {
+			log.log(Level.SEVERE, uri + ": unexpected control message: \"" + message + "\"", e);
+			return;
+		}
+		final ClientFuture<ControlMessage> command = ack == null ? null : pending.remove(ack.id);
+		if (command == null) {
+			log.fine(uri + ": late or unknown acknowledgement " + ack);
+		} else if (ack.cmd == Command.ACK) {
+			command.complete(ack);
+		} else {
+			command.fail(new ClientException(ClientException.Error.APPLICATION_FAILURE_RESPONSE, "Device " + ack.device + ": " + ack.error, null));
+		}
+	}
+
+	private void closed(Socket s, String reason) {
+		synchronized (this) {
+			if (s != socket) {
+				return;
+			}
+			socket = null;
+			connecting = null;
+		}
+		log.info(uri + ": " + reason);
+		failPending(reason);
+	}
+
+	private void failPending(String reason) {
+		for (Integer id : pending.keySet()) {
+			final ClientFuture<ControlMessage> command = pending.remove(id);
+			if (command != null) {
+				command.fail(new ClientException(ClientException.Error.EXECUTION_ERROR, reason, null));
+			}
+		}
+	}
+
+	@Override
+	public Short setScaldProtectionTemperature(String deviceID, int newTemperatureUnits) throws ClientException {
+		return toScaldTemperature(send(newSetScaldProtection(deviceID, newTemperatureUnits)).getResult());
+	}
+
+	@Override
+	public void clearScaldProtection(String deviceID, Integer previousTemperatureUnits) throws ClientException {
+		send(newClearScaldProtection(deviceID, previousTemperatureUnits)).getResult();
+	}
+
+	/**
+	 * Sends device user feedback to the UI of the respective devices.
+	 *
+	 * @param feedback
+	 *            cannot be {@code null} or empty
+	 * @throws ClientException
+	 *             if the feedback has been rejected or not been acknowledged
+	 */
+	public void updateUserFeedback(List<ElmUserFeedback> feedback) throws ClientException {
+		send(newFeedback(feedback)).getResult();
+	}
+
+	// ------ Non-blocking variants ------
+
+	@Override
+	public ClientFuture<Short> setScaldProtectionTemperatureAsync(String deviceID, int newTemperatureUnits) {
+		return send(newSetScaldProtection(deviceID, newTemperatureUnits)).then(new ClientFuture.Continuation<ControlMessage, Short>() {
+			@Override
+			public ClientFuture<Short> apply(ControlMessage ack) throws ClientException {
+				return ClientFuture.completed(toScaldTemperature(ack));
+			}
+		});
+	}
+
+	@Override
+	public ClientFuture<Void> clearScaldProtectionAsync(String deviceID, Integer previousTemperatureUnits) {
+		return send(newClearScaldProtection(deviceID, previousTemperatureUnits)).ignoreResult();
+	}
+
+	public ClientFuture<Void> updateUserFeedbackAsync(List<ElmUserFeedback> feedback) {
+		return send(newFeedback(feedback)).ignoreResult();
+	}
+
+	private static ControlMessage newSetScaldProtection(String deviceID, int newTemperatureUnits) {
+		assert newTemperatureUnits >= 100;
+		assert deviceID != null && !deviceID.isEmpty();
+		return new ControlMessage(Command.SET_SCALD_PROTECTION, deviceID, newTemperatureUnits);
+	}
+
+	private static ControlMessage newClearScaldProtection(String deviceID, Integer previousTemperatureUnits) {
+		assert previousTemperatureUnits == null || previousTemperatureUnits >= 0;
+		assert deviceID != null && !deviceID.isEmpty();
+		return new ControlMessage(Command.CLEAR_SCALD_PROTECTION, deviceID, previousTemperatureUnits);
+	}
+
+	private static ControlMessage newFeedback(List<ElmUserFeedback> feedback) {
+		assert feedback != null && !feedback.isEmpty();
+		final ControlMessage message = new ControlMessage(Command.FEEDBACK, null, null);
+		message.feedback = feedback;
+		return message;
+	}
+
+	private short toScaldTemperature(ControlMessage ack) throws ClientException {
+		if (ack.value == null) {
+			log.severe("Setting scald temperature failed: no result returned");
+			throw new ClientException(ClientException.Error.APPLICATION_DATA_ERROR, "Device " + ack.device, null);
+		}
+		log.info("Device " + ack.device + ": Returned scald temperature = " + ack.value);
+		return ack.value.shortValue();
+	}
+
+	@Override
+	public String toString() {
+		return uri.toString();
+	}
+}
@@ -2,19 +2,25 @@ package elm.hs.api.client;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.logging.Level;
 
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.http.HttpStatus;
 
+import elm.hs.api.HomeServerInternalAsyncService;
 import elm.hs.api.HomeServerInternalService;
 import elm.hs.api.HomeServerResponse;
 import elm.hs.api.HomeServerService;
 import elm.util.ClientException;
+import elm.util.ClientFuture;
 
-public class HomeServerInternalApiClient extends AbstractHomeServerClient implements HomeServerInternalService {
+public class HomeServerInternalApiClient extends AbstractHomeServerClient implements HomeServerInternalService, HomeServerInternalAsyncService {
 
 	protected final HomeServerPublicApiClient publicClient;
 
+	/** Sends the blocking commands while connected, {@code null} if none. */
+	private volatile HomeServerControlChannel controlChannel;
+
 	public HomeServerInternalApiClient(String pass, HomeServerPublicApiClient publicClient) throws URISyntaxException {
 		this(HomeServerService.ADMIN_USER, pass, publicClient);
 	}
@@ -41,6 +47,19 @@ public class HomeServerInternalApiClient extends AbstractHomeServerClient implem
 		this.publicClient = publicClient;
 	}
 
+	public HomeServerControlChannel getControlChannel() {
+		return controlChannel;
+	}
+
+	/**
+	 * @param controlChannel
+	 *            sends the blocking commands in a single frame each while it is connected; the commands are sent via HTTP while it is not or if the frame
+	 *            does not get through, can be {@code null}
+	 */
+	public void setControlChannel(HomeServerControlChannel controlChannel) {
+		this.controlChannel = controlChannel;
+	}
+
 	/**
 	 * 
 	 * @param deviceID
@@ -55,6 +74,17 @@ public class HomeServerInternalApiClient extends AbstractHomeServerClient implem
 		assert newTemperatureUnits >= 100;
 		assert deviceID != null && !deviceID.isEmpty();
 
+		final HomeServerControlChannel channel = controlChannel;
+		if (channel != null && channel.isConnected()) {
+			try {
+				return channel.setScaldProtectionTemperature(deviceID, newTemperatureUnits);
+			} catch (ClientException e) {
+				checkDeliveryFailure(deviceID, e);
+			}
+		}
+		if (publicClient.supportsDeviceLimit()) { // a Sim Home Server: a single request
+			return publicClient.setDeviceLimit(deviceID, newTemperatureUnits);
+		}
 		// Remove reference-temperature protection flag => changeable (this enables multiple successive calls of this method):
 		doPost("/cmd/VF/" + deviceID, "data=0", new int[] { HttpStatus.OK_200, HomeServerPublicApiClient.ERROR_500_FIX});
 		// Set actual temperature:
@@ -63,8 +93,12 @@ public class HomeServerInternalApiClient extends AbstractHomeServerClient implem
 		doPost("/cmd/VF/" + deviceID, "data=1", new int[] { HttpStatus.OK_200, HomeServerPublicApiClient.ERROR_500_FIX});
 		// scald-protection temperature value is in FULL DEGREES Celsius!
 		ContentResponse response = doPost("/cmd/Vv/" + deviceID, "data=" + (newTemperatureUnits / 10), new int[] { HttpStatus.OK_200, HomeServerPublicApiClient.ERROR_500_FIX});
+		return toScaldTemperature(deviceID, response);
+	}
+
+	private short toScaldTemperature(String deviceID, ContentResponse response) throws ClientException {
 		if (response != null) {
-			final HomeServerResponse result = getGson().fromJson(response.getContentAsString(), HomeServerResponse.class);
+			final HomeServerResponse result = fromJson(response, HomeServerResponse.class);
 			if (result.response == null || result.response.data == null) {
 				log.severe("Setting scald temperature failed: no result returned");
 				throw new ClientException(ClientException.Error.APPLICATION_DATA_ERROR, "Device " + deviceID, null);
@@ -92,10 +126,143 @@ public class HomeServerInternalApiClient extends AbstractHomeServerClient implem
 		assert previousTemp == null || previousTemp >= 0;
 		assert deviceID != null && !deviceID.isEmpty();
 
+		final HomeServerControlChannel channel = controlChannel;
+		if (channel != null && channel.isConnected()) {
+			try {
+				channel.clearScaldProtection(deviceID, previousTemp);
+				return;
+			} catch (ClientException e) {
+				checkDeliveryFailure(deviceID, e);
+			}
+		}
+		if (publicClient.supportsDeviceLimit()) { // a Sim Home Server: a single request
+			publicClient.clearDeviceLimit(deviceID, previousTemp);
+			return;
+		}
 		// Remove reference-temperature protection flag => changeable:
 		doPost("/cmd/VF/" + deviceID, "data=0", new int[] { HttpStatus.OK_200, HomeServerPublicApiClient.ERROR_500_FIX });
 		if (previousTemp != null) {
 			publicClient.setReferenceTemperature(deviceID, previousTemp);
 		}
 	}
+
+	// ------ Non-blocking variants: the same request sequences ------
+
+	@Override
+	public ClientFuture<Short> setScaldProtectionTemperatureAsync(final String deviceID, final int newTemperatureUnits) {
+		assert newTemperatureUnits >= 100;
+		assert deviceID != null && !deviceID.isEmpty();
+
+		final HomeServerControlChannel channel = controlChannel;
+		if (channel != null && channel.isConnected()) {
+			return channel.setScaldProtectionTemperatureAsync(deviceID, newTemperatureUnits).otherwise(new ClientFuture.Continuation<ClientException, Short>() {
+				@Override
+				public ClientFuture<Short> apply(ClientException e) throws ClientException {
+					checkDeliveryFailure(deviceID, e);
+					return setScaldProtectionTemperatureViaHttpAsync(deviceID, newTemperatureUnits);
+				}
+			});
+		}
+		return setScaldProtectionTemperatureViaHttpAsync(deviceID, newTemperatureUnits);
+	}
+
+	private ClientFuture<Short> setScaldProtectionTemperatureViaHttpAsync(final String deviceID, final int newTemperatureUnits) {
+		return publicClient.supportsDeviceLimitAsync().then(new ClientFuture.Continuation<Boolean, Short>() {
+			@Override
+			public ClientFuture<Short> apply(Boolean limit) {
+				if (limit) { // a Sim Home Server: a single request
+					return publicClient.setDeviceLimitAsync(deviceID, newTemperatureUnits);
+				}
+				return setScaldProtectionTemperatureStepwiseAsync(deviceID, newTemperatureUnits);
+			}
+		});
+	}
+
+	private ClientFuture<Short> setScaldProtectionTemperatureStepwiseAsync(final String deviceID, final int newTemperatureUnits) {
+		// Remove reference-temperature protection flag => changeable (this enables multiple successive calls of this method):
+		return doPostAsync("/cmd/VF/" + deviceID, "data=0", new int[] { HttpStatus.OK_200, HomeServerPublicApiClient.ERROR_500_FIX }).then(
+				new ClientFuture.Continuation<ContentResponse, Void>() {
+					@Override
+					public ClientFuture<Void> apply(ContentResponse result) {
+						// Set actual temperature:
+						return publicClient.setReferenceTemperatureAsync(deviceID, newTemperatureUnits);
+					}
+				}).then(new ClientFuture.Continuation<Void, ContentResponse>() {
+			@Override
+			public ClientFuture<ContentResponse> apply(Void result) {
+				// Set reference-temperature protection flag => no longer user-changeable
+				return doPostAsync("/cmd/VF/" + deviceID, "data=1", new int[] { HttpStatus.OK_200, HomeServerPublicApiClient.ERROR_500_FIX });
+			}
+		}).then(new ClientFuture.Continuation<ContentResponse, ContentResponse>() {
+			@Override
+			public ClientFuture<ContentResponse> apply(ContentResponse result) {
+				// scald-protection temperature value is in FULL DEGREES Celsius!
+				return doPostAsync("/cmd/Vv/" + deviceID, "data=" + (newTemperatureUnits / 10), new int[] { HttpStatus.OK_200,
+						HomeServerPublicApiClient.ERROR_500_FIX });
+			}
+		}).then(new ClientFuture.Continuation<ContentResponse, Short>() {
+			@Override
+			public ClientFuture<Short> apply(ContentResponse response) throws ClientException {
+				return ClientFuture.completed(toScaldTemperature(deviceID, response));
+			}
+		});
+	}
+
+	@Override
+	public ClientFuture<Void> clearScaldProtectionAsync(final String deviceID, final Integer previousTemp) {
+		assert previousTemp == null || previousTemp >= 0;
+		assert deviceID != null && !deviceID.isEmpty();
+
+		final HomeServerControlChannel channel = controlChannel;
+		if (channel != null && channel.isConnected()) {
+			return channel.clearScaldProtectionAsync(deviceID, previousTemp).otherwise(new ClientFuture.Continuation<ClientException, Void>() {
+				@Override
+				public ClientFuture<Void> apply(ClientException e) throws ClientException {
+					checkDeliveryFailure(deviceID, e);
+					return clearScaldProtectionViaHttpAsync(deviceID, previousTemp);
+				}
+			});
+		}
+		return clearScaldProtectionViaHttpAsync(deviceID, previousTemp);
+	}
+
+	private ClientFuture<Void> clearScaldProtectionViaHttpAsync(final String deviceID, final Integer previousTemp) {
+		return publicClient.supportsDeviceLimitAsync().then(new ClientFuture.Continuation<Boolean, Void>() {
+			@Override
+			public ClientFuture<Void> apply(Boolean limit) {
+				if (limit) { // a Sim Home Server: a single request
+					return publicClient.clearDeviceLimitAsync(deviceID, previousTemp);
+				}
+				return clearScaldProtectionStepwiseAsync(deviceID, previousTemp);
+			}
+		});
+	}
+
+	private ClientFuture<Void> clearScaldProtectionStepwiseAsync(final String deviceID, final Integer previousTemp) {
+		// Remove reference-temperature protection flag => changeable:
+		final ClientFuture<ContentResponse> unprotected = doPostAsync("/cmd/VF/" + deviceID, "data=0", new int[] { HttpStatus.OK_200,
+				HomeServerPublicApiClient.ERROR_500_FIX });
+		if (previousTemp == null) {
+			return unprotected.ignoreResult();
+		}
+		return unprotected.then(new ClientFuture.Continuation<ContentResponse, Void>() {
+			@Override
+			public ClientFuture<Void> apply(ContentResponse result) {
+				return publicClient.setReferenceTemperatureAsync(deviceID, previousTemp);
+			}
+		});
+	}
+
+	/**
+	 * Lets a command failed on the {@link #getControlChannel() control channel} fall back to HTTP.
+	 * 
+	 * @throws ClientException
+	 *             {@code e} if the command should not be sent again via HTTP
+	 */
+	private void checkDeliveryFailure(String deviceID, ClientException e) throws ClientException {
+		if (!HomeServerControlChannel.isDeliveryFailure(e)) {
+			throw e;
+		}
+		log.log(Level.FINE, "Device " + deviceID + ": control channel failed, using HTTP", e);
+	}
 }
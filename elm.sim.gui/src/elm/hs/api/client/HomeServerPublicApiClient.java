@@ -2,27 +2,62 @@ package elm.hs.api.client;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpStatus;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
 
+import elm.hs.api.Device;
 import elm.hs.api.ElmUserFeedback;
+import elm.hs.api.ElmUserFeedbackAsyncService;
 import elm.hs.api.ElmUserFeedbackService;
+import elm.hs.api.HomeServerAsyncService;
 import elm.hs.api.HomeServerResponse;
+import elm.hs.api.HomeServerResponseDecoder;
 import elm.hs.api.HomeServerService;
 import elm.hs.api.Service;
+import elm.util.ClientCallback;
 import elm.util.ClientException;
+import elm.util.ClientFuture;
+import elm.util.ContentDecoder;
 
-public class HomeServerPublicApiClient extends AbstractHomeServerClient implements HomeServerService, ElmUserFeedbackService {
+public class HomeServerPublicApiClient extends AbstractHomeServerClient implements HomeServerService, ElmUserFeedbackService, HomeServerAsyncService,
+		ElmUserFeedbackAsyncService {
 
 	/** FIXME As of 2014-03-05 certain POST and PUT operations return an error 500 while still processing the request OK. */
 	public static final int ERROR_500_FIX = HttpStatus.INTERNAL_SERVER_ERROR_500;
 
 	private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
 
+	/** Whether the server offers {@link Service#STATUS_BATCH_PATH}; {@code null} until the first server status has been received. */
+	private volatile Boolean deviceStatusBatchSupported;
+
+	/** Whether the server offers {@link Service#EVENTS_PATH}; {@code null} until the first server status has been received. */
+	private volatile Boolean deviceEventsSupported;
+
+	/** The entity tag of the last {@code /devices} response, {@code null} if the server does not tag its responses. */
+	private volatile String devicesEntityTag;
+
+	/** The content of the last {@code /devices} response if it was tagged, else {@code null}. */
+	private byte[] devicesContent;
+
+	/** Whether the server offers {@link Service#CONTROL_PATH}; {@code null} until the first server status has been received. */
+	private volatile Boolean controlChannelSupported;
+
+	/** Whether the server offers {@link Service#DEVICE_LIMIT_PATH}; {@code null} until the first server status has been received. */
+	private volatile Boolean deviceLimitSupported;
+
+	/** Sends the user feedback while connected, {@code null} if none. */
+	private volatile HomeServerControlChannel controlChannel;
+
 	/**
 	 * Use the default server URI and administration user.
 	 * 
@@ -58,7 +93,31 @@ public class HomeServerPublicApiClient extends AbstractHomeServerClient implemen
 
 	@Override
 	public HomeServerResponse getServerStatus() throws ClientException {
-		return doGet("", HomeServerResponse.class);
+		final HomeServerResponse result = doGet("", HomeServerResponse.class);
+		recordServices(result);
+		return result;
+	}
+
+	/**
+	 * Remembers the optional services offered by the server, as they do not change while the server is running.
+	 */
+	private void recordServices(HomeServerResponse statusResponse) {
+		if (statusResponse != null && statusResponse.services != null) {
+			boolean batch = false;
+			boolean events = false;
+			boolean control = false;
+			boolean limit = false;
+			for (Service service : statusResponse.services) {
+				batch |= service.deviceStatusBatch != null;
+				events |= service.deviceEvents != null;
+				control |= service.controlChannel != null;
+				limit |= service.deviceLimit != null;
+			}
+			deviceStatusBatchSupported = batch;
+			deviceEventsSupported = events;
+			controlChannelSupported = control;
+			deviceLimitSupported = limit;
+		}
 	}
 
 	@Override
@@ -71,6 +130,131 @@ public class HomeServerPublicApiClient extends AbstractHomeServerClient implemen
 		return doGet("/devices", HomeServerResponse.class);
 	}
 	
+	/**
+	 * Returns all devices registered at this Home Server like {@link #getRegisteredDevices()}, but decodes the response into the reused objects of the given
+	 * decoder; polling this way allocates no response objects.
+	 * 
+	 * @param decoder
+	 *            cannot be {@code null}
+	 * @return never {@code null}, valid until the next use of the decoder
+	 * @throws ClientException
+	 *             if the operation ended in a status {@code != 200} or if the execution threw an exception
+	 */
+	public HomeServerResponse getRegisteredDevices(HomeServerResponseDecoder decoder) throws ClientException {
+		return getRegisteredDevices(decoder, false);
+	}
+
+	/**
+	 * Returns all devices registered at this Home Server like {@link #getRegisteredDevices(HomeServerResponseDecoder)}, but as a conditional request: if the
+	 * server has tagged its last response, it is asked to respond with {@code 304 Not Modified} and without content as long as the devices have not changed.
+	 * Servers that do not tag their responses, like a real Home Server, always respond with all devices.
+	 * 
+	 * @param decoder
+	 *            cannot be {@code null}
+	 * @param ifModified
+	 *            {@code true} to return {@code null} if the devices have not changed since the last invocation; {@code false} to return the devices in any
+	 *            case: unchanged devices are then decoded from the content of the last response again
+	 * @return {@code null} if {@code ifModified} and the devices have not changed, else the devices, valid until the next use of the decoder
+	 * @throws ClientException
+	 *             if the operation ended in a status other than {@code 200} or {@code 304} or if the execution threw an exception
+	 */
+	public synchronized HomeServerResponse getRegisteredDevices(final HomeServerResponseDecoder decoder, final boolean ifModified) throws ClientException {
+		assert decoder != null;
+		return doGet("/devices", new ContentDecoder<HomeServerResponse>() {
+			@Override
+			public HomeServerResponse decode(ContentResponse response) {
+				if (response.getStatus() == HttpStatus.NOT_MODIFIED_304) {
+					return ifModified ? null : decodeDevices(decoder, devicesContent);
+				}
+				final HomeServerResponse result = decodeDevices(decoder, response.getContent());
+				devicesEntityTag = response.getHeaders().get(HttpHeader.ETAG);
+				devicesContent = devicesEntityTag != null ? response.getContent() : null;
+				return result;
+			}
+		}, devicesEntityTag);
+	}
+
+	/**
+	 * Queries the server whether it offers a control channel ({@link Service#CONTROL_PATH}). This is a service of the Sim Home Server only.
+	 * 
+	 * @throws ClientException
+	 *             if the operation ended in a status {@code != 200} or if the execution threw an exception
+	 */
+	public boolean supportsControlChannel() throws ClientException {
+		if (controlChannelSupported == null) {
+			getServerStatus();
+		}
+		return Boolean.TRUE.equals(controlChannelSupported);
+	}
+
+	public HomeServerControlChannel getControlChannel() {
+		return controlChannel;
+	}
+
+	/**
+	 * @param controlChannel
+	 *            sends the {@link #updateUserFeedback(List) user feedback} in a single frame while it is connected; the feedback is sent via HTTP while it
+	 *            is not or if the frame does not get through, can be {@code null}
+	 */
+	public void setControlChannel(HomeServerControlChannel controlChannel) {
+		this.controlChannel = controlChannel;
+	}
+
+	/**
+	 * Queries the server whether it notifies of device changes ({@link Service#EVENTS_PATH}). This is a service of the Sim Home Server only.
+	 * 
+	 * @throws ClientException
+	 *             if the operation ended in a status {@code != 200} or if the execution threw an exception
+	 */
+	public boolean supportsDeviceEvents() throws ClientException {
+		if (deviceEventsSupported == null) {
+			getServerStatus();
+		}
+		return Boolean.TRUE.equals(deviceEventsSupported);
+	}
+
+	/**
+	 * Waits without blocking the caller until the devices differ from those of the last
+	 * {@link #getRegisteredDevices(HomeServerResponseDecoder, boolean)} response, see {@link Service#EVENTS_PATH}. The server must
+	 * {@link #supportsDeviceEvents() support} this.
+	 * 
+	 * @param timeoutMillis
+	 *            the maximum time the server holds the request, {@code > 0}
+	 * @return never {@code null}; the future completes with {@code true} if the devices have changed or if there is no last response, with {@code false} if
+	 *         they have not changed within the timeout
+	 */
+	public ClientFuture<Boolean> awaitDevicesChangeAsync(long timeoutMillis) {
+		assert timeoutMillis > 0;
+		final String entityTag = devicesEntityTag;
+		if (entityTag == null) {
+			return ClientFuture.completed(true);
+		}
+		return doGetAsync(Service.EVENTS_PATH + timeoutMillis, new ContentDecoder<Boolean>() {
+			@Override
+			public Boolean decode(ContentResponse response) {
+				return response.getStatus() != HttpStatus.NOT_MODIFIED_304;
+			}
+		}, entityTag, new int[] { HttpStatus.NO_CONTENT_204, HttpStatus.NOT_MODIFIED_304 });
+	}
+
+	private static ContentDecoder<HomeServerResponse> reusingDecoder(final HomeServerResponseDecoder decoder) {
+		assert decoder != null;
+		return new ContentDecoder<HomeServerResponse>() {
+			@Override
+			public HomeServerResponse decode(ContentResponse response) {
+				return decoder.decode(response.getContent());
+			}
+		};
+	}
+
+	private static HomeServerResponse decodeDevices(HomeServerResponseDecoder decoder, byte[] content) {
+		final HomeServerResponse result = decoder.decode(content);
+		if (result == null) {
+			throw new JsonSyntaxException("Response missing");
+		}
+		return result;
+	}
+
 	@Override
 	public HomeServerResponse getAllDevices() throws ClientException {
 		return doGet("/devices?showCache=true", HomeServerResponse.class);
@@ -82,6 +266,54 @@ public class HomeServerPublicApiClient extends AbstractHomeServerClient implemen
 		return doGet("/devices/status/" + deviceID, HomeServerResponse.class);
 	}
 
+	@Override
+	public boolean supportsDeviceStatusBatch() throws ClientException {
+		if (deviceStatusBatchSupported == null) {
+			getServerStatus();
+		}
+		return Boolean.TRUE.equals(deviceStatusBatchSupported);
+	}
+
+	@Override
+	public HomeServerResponse getDeviceStatus(List<String> deviceIDs) throws ClientException {
+		assert deviceIDs != null;
+		if (supportsDeviceStatusBatch()) {
+			return doGet(getDeviceStatusBatchPath(deviceIDs), HomeServerResponse.class);
+		}
+		// a CLAGE Home Server: one request per device
+		final HomeServerResponse result = createDeviceStatusResponse(deviceIDs.size());
+		for (String deviceID : deviceIDs) {
+			addDeviceStatus(result, getDeviceStatus(deviceID));
+		}
+		return result;
+	}
+
+	private static String getDeviceStatusBatchPath(List<String> deviceIDs) {
+		final StringBuilder b = new StringBuilder(Service.STATUS_BATCH_PATH);
+		for (int i = 0; i < deviceIDs.size(); i++) {
+			assert deviceIDs.get(i) != null && !deviceIDs.get(i).isEmpty();
+			if (i > 0) {
+				b.append(',');
+			}
+			b.append(deviceIDs.get(i));
+		}
+		return b.toString();
+	}
+
+	private static HomeServerResponse createDeviceStatusResponse(int size) {
+		final HomeServerResponse result = new HomeServerResponse();
+		result.success = true;
+		result.devices = new ArrayList<Device>(size);
+		return result;
+	}
+
+	private static void addDeviceStatus(HomeServerResponse result, HomeServerResponse deviceResponse) {
+		if (deviceResponse != null && deviceResponse.devices != null) {
+			result.devices.addAll(deviceResponse.devices);
+			result.total = result.devices.size();
+		}
+	}
+
 	@Override
 	public void manageDevice(String deviceID) throws ClientException {
 		assert deviceID != null && !deviceID.isEmpty();
@@ -111,9 +343,89 @@ public class HomeServerPublicApiClient extends AbstractHomeServerClient implemen
 
 	// ------ Services offered by Sim Home Servers ------
 
+	/**
+	 * Queries the server whether it sets and clears device limits in a single request ({@link Service#DEVICE_LIMIT_PATH}). This is a service of the Sim Home
+	 * Server only.
+	 * 
+	 * @throws ClientException
+	 *             if the operation ended in a status {@code != 200} or if the execution threw an exception
+	 */
+	public boolean supportsDeviceLimit() throws ClientException {
+		if (deviceLimitSupported == null) {
+			getServerStatus();
+		}
+		return Boolean.TRUE.equals(deviceLimitSupported);
+	}
+
+	/**
+	 * Sets the scald-protection flag, the reference temperature and the scald-protection temperature of a device in a single request, see
+	 * {@link Service#DEVICE_LIMIT_PATH}. The server must {@link #supportsDeviceLimit() support} this.
+	 * 
+	 * @param deviceID
+	 *            cannot be {@code null} or empty
+	 * @param newTemperatureUnits
+	 *            in 1/10°C, cannot be {@code < 100}
+	 * @return the confirmed scald temperature in 1/10°C
+	 * @throws ClientException
+	 *             if the operation ended in a status {@code != 200} or if the execution threw an exception
+	 */
+	public short setDeviceLimit(String deviceID, int newTemperatureUnits) throws ClientException {
+		assert newTemperatureUnits >= 100;
+		assert deviceID != null && !deviceID.isEmpty();
+		return toDeviceLimit(deviceID, doPost(Service.DEVICE_LIMIT_PATH + deviceID, "data=" + newTemperatureUnits, new int[] { HttpStatus.OK_200 }));
+	}
+
+	/**
+	 * Clears the scald-protection flag of a device and restores its reference temperature in a single request, see {@link Service#DEVICE_LIMIT_PATH}. The
+	 * server must {@link #supportsDeviceLimit() support} this.
+	 * 
+	 * @param deviceID
+	 *            cannot be {@code null} or empty
+	 * @param previousTemp
+	 *            in 1/10°C, cannot be {@code < 0}, but can be {@code null}
+	 * @throws ClientException
+	 *             if the operation ended in a status {@code != 200} or if the execution threw an exception
+	 */
+	public void clearDeviceLimit(String deviceID, Integer previousTemp) throws ClientException {
+		assert previousTemp == null || previousTemp >= 0;
+		assert deviceID != null && !deviceID.isEmpty();
+		toDeviceLimit(deviceID, doPost(Service.DEVICE_LIMIT_PATH + deviceID, getClearDeviceLimitContent(previousTemp), new int[] { HttpStatus.OK_200 }));
+	}
+
+	private static String getClearDeviceLimitContent(Integer previousTemp) {
+		return previousTemp == null ? "data=0" : "data=0&setpoint=" + previousTemp;
+	}
+
+	/**
+	 * @return the scald temperature in 1/10°C confirmed by the response to {@link Service#DEVICE_LIMIT_PATH}, {@code 0} if the limit has been cleared
+	 */
+	private short toDeviceLimit(String deviceID, ContentResponse response) throws ClientException {
+		if (response != null) {
+			final HomeServerResponse result = fromJson(response, HomeServerResponse.class);
+			if (result != null && result.response != null && result.response.data != null) {
+				final short value;
+				try {
+					value = Short.parseShort(result.response.data);
+				} catch (NumberFormatException e) {
+					throw new ClientException(ClientException.Error.APPLICATION_DATA_ERROR, "Device " + deviceID + ": invalid scald temperature "
+							+ result.response.data, e);
+				}
+				if (log.isLoggable(Level.INFO)) {
+					log.info("Device " + deviceID + ": Returned scald temperature = " + value);
+				}
+				return value;
+			}
+			log.severe("Setting device limit failed: no result returned");
+		}
+		throw new ClientException(ClientException.Error.APPLICATION_DATA_ERROR, "Device " + deviceID + ": no response", null);
+	}
+
 	@Override
 	public boolean supportsUserFeedback() throws ClientException {
-		HomeServerResponse statusResponse = getServerStatus();
+		return supportsUserFeedback(getServerStatus());
+	}
+
+	private static boolean supportsUserFeedback(HomeServerResponse statusResponse) {
 		for (Service service : statusResponse.services) {
 			if (service.elmFeedback != null) {
 				return true;
@@ -130,6 +442,232 @@ public class HomeServerPublicApiClient extends AbstractHomeServerClient implemen
 	@Override
 	public void updateUserFeedback(List<ElmUserFeedback> feedback) throws ClientException {
 		assert feedback != null;
+		final HomeServerControlChannel channel = controlChannel;
+		if (channel != null && channel.isConnected()) {
+			try {
+				channel.updateUserFeedback(feedback);
+				return;
+			} catch (ClientException e) {
+				if (!HomeServerControlChannel.isDeliveryFailure(e)) {
+					throw e;
+				}
+				log.log(Level.FINE, "Control channel failed, using HTTP", e);
+			}
+		}
 		doPost("/devices/feedback", gson.toJson(feedback, ElmUserFeedback.ELM_USER_FEEDBACK_LIST_TYPE), new int[] { HttpStatus.OK_200 });
 	}
+
+	// ------ Non-blocking variants ------
+
+	@Override
+	public ClientFuture<HomeServerResponse> getServerStatusAsync() {
+		final ClientFuture<HomeServerResponse> result = doGetAsync("", HomeServerResponse.class);
+		result.addCallback(new ClientCallback<HomeServerResponse>() {
+			@Override
+			public void completed(HomeServerResponse result) {
+				recordServices(result);
+			}
+
+			@Override
+			public void failed(ClientException e) {
+				// reported to the caller
+			}
+		});
+		return result;
+	}
+
+	@Override
+	public ClientFuture<Void> discoverDevicesAsync() {
+		return doPostAsync("/devices", "autoConnect=false", new int[] { HttpStatus.ACCEPTED_202 }).ignoreResult();
+	}
+
+	@Override
+	public ClientFuture<HomeServerResponse> getRegisteredDevicesAsync() {
+		return doGetAsync("/devices", HomeServerResponse.class);
+	}
+
+	@Override
+	public ClientFuture<HomeServerResponse> getAllDevicesAsync() {
+		return doGetAsync("/devices?showCache=true", HomeServerResponse.class);
+	}
+
+	@Override
+	public ClientFuture<HomeServerResponse> getDeviceStatusAsync(String deviceID) {
+		assert deviceID != null && !deviceID.isEmpty();
+		return doGetAsync("/devices/status/" + deviceID, HomeServerResponse.class);
+	}
+
+	@Override
+	public ClientFuture<HomeServerResponse> getDeviceStatusAsync(String deviceID, HomeServerResponseDecoder decoder) {
+		assert deviceID != null && !deviceID.isEmpty();
+		return doGetAsync("/devices/status/" + deviceID, reusingDecoder(decoder), null, new int[] { HttpStatus.OK_200 });
+	}
+
+	@Override
+	public ClientFuture<HomeServerResponse> getDeviceStatusAsync(final List<String> deviceIDs) {
+		return getDeviceStatusAsync(deviceIDs, null);
+	}
+
+	@Override
+	public ClientFuture<HomeServerResponse> getDeviceStatusAsync(final List<String> deviceIDs, final HomeServerResponseDecoder decoder) {
+		assert deviceIDs != null;
+		final Boolean batch = deviceStatusBatchSupported;
+		if (batch == null) {
+			return getServerStatusAsync().then(new ClientFuture.Continuation<HomeServerResponse, HomeServerResponse>() {
+				@Override
+				public ClientFuture<HomeServerResponse> apply(HomeServerResponse result) {
+					deviceStatusBatchSupported = Boolean.TRUE.equals(deviceStatusBatchSupported); // no services listed => not supported
+					return getDeviceStatusAsync(deviceIDs, decoder);
+				}
+			});
+		}
+		if (batch) {
+			if (decoder != null) {
+				return doGetAsync(getDeviceStatusBatchPath(deviceIDs), reusingDecoder(decoder), null, new int[] { HttpStatus.OK_200 });
+			}
+			return doGetAsync(getDeviceStatusBatchPath(deviceIDs), HomeServerResponse.class);
+		}
+		// a CLAGE Home Server: one request per device, all sent at once
+		final ClientFuture<HomeServerResponse> future = new ClientFuture<HomeServerResponse>();
+		final HomeServerResponse result = createDeviceStatusResponse(deviceIDs.size());
+		final AtomicInteger pending = new AtomicInteger(deviceIDs.size());
+		if (deviceIDs.isEmpty()) {
+			future.complete(result);
+		}
+		for (String deviceID : deviceIDs) {
+			getDeviceStatusAsync(deviceID).addCallback(new ClientCallback<HomeServerResponse>() {
+				@Override
+				public void completed(HomeServerResponse deviceResponse) {
+					synchronized (result) {
+						addDeviceStatus(result, deviceResponse);
+					}
+					if (pending.decrementAndGet() == 0) {
+						future.complete(result);
+					}
+				}
+
+				@Override
+				public void failed(ClientException e) {
+					future.fail(e);
+				}
+			});
+		}
+		return future;
+	}
+
+	@Override
+	public ClientFuture<Void> manageDeviceAsync(String deviceID) {
+		assert deviceID != null && !deviceID.isEmpty();
+		return doPutAsync("/devices/" + deviceID, "forcedConnect=true", new int[] { HttpStatus.OK_200 }).ignoreResult();
+	}
+
+	@Override
+	public ClientFuture<Void> unmanageDeviceAsync(String deviceID) {
+		assert deviceID != null && !deviceID.isEmpty();
+		return doDeleteAsync("/devices/" + deviceID, "", new int[] { HttpStatus.OK_200 }).ignoreResult();
+	}
+
+	@Override
+	public ClientFuture<Short> getReferenceTemperatureAsync(String deviceID) {
+		assert deviceID != null && !deviceID.isEmpty();
+		return doGetAsync("/devices/setpoint/" + deviceID, HomeServerResponse.class).then(new ClientFuture.Continuation<HomeServerResponse, Short>() {
+			@Override
+			public ClientFuture<Short> apply(HomeServerResponse result) {
+				return ClientFuture.completed(result.devices.get(0).status.setpoint);
+			}
+		});
+	}
+
+	@Override
+	public ClientFuture<Void> setReferenceTemperatureAsync(String deviceID, int newTemp) {
+		assert newTemp >= 0;
+		assert deviceID != null && !deviceID.isEmpty();
+		return doPostAsync("/devices/setpoint/" + deviceID, "data=" + newTemp, new int[] { HttpStatus.OK_200, ERROR_500_FIX }).ignoreResult();
+	}
+
+	/**
+	 * Non-blocking variant of {@link #supportsDeviceLimit()}; queries the server status only if it has not been received yet.
+	 */
+	public ClientFuture<Boolean> supportsDeviceLimitAsync() {
+		final Boolean limit = deviceLimitSupported;
+		if (limit != null) {
+			return ClientFuture.completed(limit);
+		}
+		return getServerStatusAsync().then(new ClientFuture.Continuation<HomeServerResponse, Boolean>() {
+			@Override
+			public ClientFuture<Boolean> apply(HomeServerResponse result) {
+				return ClientFuture.completed(Boolean.TRUE.equals(deviceLimitSupported)); // no services listed => not supported
+			}
+		});
+	}
+
+	/**
+	 * Non-blocking variant of {@link #setDeviceLimit(String, int)}.
+	 */
+	public ClientFuture<Short> setDeviceLimitAsync(final String deviceID, int newTemperatureUnits) {
+		assert newTemperatureUnits >= 100;
+		assert deviceID != null && !deviceID.isEmpty();
+		return doPostAsync(Service.DEVICE_LIMIT_PATH + deviceID, "data=" + newTemperatureUnits, new int[] { HttpStatus.OK_200 }).then(
+				new ClientFuture.Continuation<ContentResponse, Short>() {
+					@Override
+					public ClientFuture<Short> apply(ContentResponse response) throws ClientException {
+						return ClientFuture.completed(toDeviceLimit(deviceID, response));
+					}
+				});
+	}
+
+	/**
+	 * Non-blocking variant of {@link #clearDeviceLimit(String, Integer)}.
+	 */
+	public ClientFuture<Void> clearDeviceLimitAsync(final String deviceID, Integer previousTemp) {
+		assert previousTemp == null || previousTemp >= 0;
+		assert deviceID != null && !deviceID.isEmpty();
+		return doPostAsync(Service.DEVICE_LIMIT_PATH + deviceID, getClearDeviceLimitContent(previousTemp), new int[] { HttpStatus.OK_200 }).then(
+				new ClientFuture.Continuation<ContentResponse, Void>() {
+					@Override
+					public ClientFuture<Void> apply(ContentResponse response) throws ClientException {
+						toDeviceLimit(deviceID, response);
+						return ClientFuture.completed(null);
+					}
+				});
+	}
+
+	@Override
+	public ClientFuture<Boolean> supportsUserFeedbackAsync() {
+		return getServerStatusAsync().then(new ClientFuture.Continuation<HomeServerResponse, Boolean>() {
+			@Override
+			public ClientFuture<Boolean> apply(HomeServerResponse result) {
+				return ClientFuture.completed(supportsUserFeedback(result));
+			}
+		});
+	}
+
+	@Override
+	public ClientFuture<HomeServerResponse> getFeedbackDevicesAsync() {
+		return doGetAsync("/devices/feedback", HomeServerResponse.class);
+	}
+
+	@Override
+	public ClientFuture<Void> updateUserFeedbackAsync(final List<ElmUserFeedback> feedback) {
+		assert feedback != null;
+		final HomeServerControlChannel channel = controlChannel;
+		if (channel != null && channel.isConnected()) {
+			return channel.updateUserFeedbackAsync(feedback).otherwise(new ClientFuture.Continuation<ClientException, Void>() {
+				@Override
+				public ClientFuture<Void> apply(ClientException e) throws ClientException {
+					if (!HomeServerControlChannel.isDeliveryFailure(e)) {
+						throw e;
+					}
+					log.log(Level.FINE, "Control channel failed, using HTTP", e);
+					return updateUserFeedbackViaHttpAsync(feedback);
+				}
+			});
+		}
+		return updateUserFeedbackViaHttpAsync(feedback);
+	}
+
+	private ClientFuture<Void> updateUserFeedbackViaHttpAsync(List<ElmUserFeedback> feedback) {
+		return doPostAsync("/devices/feedback", gson.toJson(feedback, ElmUserFeedback.ELM_USER_FEEDBACK_LIST_TYPE), new int[] { HttpStatus.OK_200 })
+				.ignoreResult();
+	}
 }
@@ -10,8 +10,20 @@ import elm.sim.model.HotWaterTemperature;
 
 public class DeviceTapPointAdapter implements SimModelListener {
 
+	/** Notified after the adapter has changed the Info block of its device, i.e. the part of the device reported by {@code /devices}. */
+	public interface DeviceChangeListener {
+
+		/**
+		 * @param device
+		 *            never {@code null}
+		 */
+		void deviceChanged(Device device);
+	}
+
 	private final Device device;
 	private final TapPoint point;
+	private DeviceChangeListener changeListener;
+
 	public DeviceTapPointAdapter(TapPoint point, Device device) throws UnsupportedDeviceModelException {
 		assert point != null;
 		assert device != null;
@@ -30,6 +42,14 @@ public class DeviceTapPointAdapter implements SimModelListener {
 		return point;
 	}
 
+	/**
+	 * @param changeListener
+	 *            {@code null} to remove the listener
+	 */
+	public void setDeviceChangeListener(DeviceChangeListener changeListener) {
+		this.changeListener = changeListener;
+	}
+
 	@Override
 	public void modelChanged(SimModelEvent event) {
 		switch ((TapPoint.Attribute) event.getAttribute()) {
@@ -38,14 +58,22 @@ public class DeviceTapPointAdapter implements SimModelListener {
 		case INTAKE_WATER_TEMPERATURE:
 		case SCALD_PROTECTION_TEMPERATURE:
 			device.status.power = point.getPowerUnits();
-			device.setHeaterOn(point.getFlags() == 0);
+			final boolean heaterOn = point.getFlags() == 0;
+			final boolean heaterChanged = device._isHeaterOn() != heaterOn;
+			device.setHeaterOn(heaterOn);
 			device.status.flow = (short) (point.getActualFlow().getMillilitresPerMinute() / 100);
+			if (heaterChanged) {
+				fireDeviceChanged();
+			}
 			break;
 		case REFERENCE_TEMPERATURE:
 			short setpoint = ((HotWaterTemperature) event.getNewValue()).getUnits();
 			assert setpoint >= point.getDeviceModel().getTemperatureOff();
 			assert setpoint <= point.getDeviceModel().getTemperatureMax();
-			device.setSetpoint(setpoint);
+			if (device._getSetpoint() != setpoint) {
+				device.setSetpoint(setpoint);
+				fireDeviceChanged();
+			}
 			break;
 		default:
 			// ignore
@@ -53,6 +81,12 @@ public class DeviceTapPointAdapter implements SimModelListener {
 		}
 	}
 
+	private void fireDeviceChanged() {
+		if (changeListener != null) {
+			changeListener.deviceChanged(device);
+		}
+	}
+
 	public void updateTapPoint() {
 		point.setReferenceTemperature(HotWaterTemperature.fromInt(device.status.setpoint / 10));
 		point.setIntakeWaterTemperature(IntakeWaterTemperature.fromShort(device.status.tIn));
@@ -1,15 +1,24 @@
 package elm.hs.api.sim.server;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
 import javax.servlet.ServletException;
 import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
@@ -17,12 +26,21 @@ import org.eclipse.jetty.server.handler.DefaultHandler;
 import org.eclipse.jetty.server.handler.HandlerList;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.websocket.api.UpgradeRequest;
+import org.eclipse.jetty.websocket.api.UpgradeResponse;
+import org.eclipse.jetty.websocket.api.WebSocketAdapter;
+import org.eclipse.jetty.websocket.servlet.WebSocketCreator;
+import org.eclipse.jetty.websocket.servlet.WebSocketServlet;
+import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import elm.hs.api.ControlMessage;
 import elm.hs.api.ElmUserFeedback;
 import elm.hs.api.HomeServerResponse;
+import elm.hs.api.Service;
+import elm.hs.api.sim.server.SimHomeServerService.DevicesChangeListener;
 import elm.sim.model.TapPoint;
 
 /**
@@ -41,20 +59,123 @@ public class SimHomeServerServer {
 	@SuppressWarnings("serial")
 	class DevicesServlet extends AbstractHomeServerServlet {
 
+		/**
+		 * Supports conditional requests: the response carries the {@link SimHomeServerService#getDevicesChangeSequence() change sequence} as its entity tag,
+		 * a request with an {@code If-None-Match} header of the current entity tag yields {@code 304 Not Modified} without content.
+		 */
+		@Override
+		protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+			// the sequence is taken before the response is built: a change in between yields a newer content with an older tag, i.e. a full response next time
+			final String entityTag = toEntityTag(getDatabase().getDevicesChangeSequence());
+			response.setHeader(HttpHeader.ETAG.asString(), entityTag);
+			if (entityTag.equals(request.getHeader(HttpHeader.IF_NONE_MATCH.asString()))) {
+				response.setStatus(HttpStatus.NOT_MODIFIED_304);
+				return;
+			}
+			super.doGet(request, response);
+		}
+
 		@Override
 		protected HomeServerResponse getHomeServerResponse(HttpServletRequest request) {
 			return getDatabase().processDevicesQuery();
 		}
 	}
 
+	/**
+	 * Notifies clients of device changes by long polling: a request of {@code /devices/events?timeout=<ms>} with an {@code If-None-Match} header of the
+	 * entity tag of the last {@code /devices} response is held until the devices change or until the timeout has elapsed, see {@link Service#EVENTS_PATH}.
+	 */
+	@SuppressWarnings("serial")
+	class DeviceEventsServlet extends HttpServlet {
+
+		private static final long DEFAULT_TIMEOUT_MILLIS = 20_000;
+		/** Below the idle timeout of the clients. */
+		private static final long MAX_TIMEOUT_MILLIS = 50_000;
+
+		/** A held request: resumed on the first device change or on its timeout. */
+		class Subscription implements DevicesChangeListener, AsyncListener {
+			private final AsyncContext async;
+			private final AtomicBoolean resumed = new AtomicBoolean();
+
+			Subscription(AsyncContext async) {
+				this.async = async;
+			}
+
+			/** Dispatches the request to the servlet again, which then responds. */
+			void resume() {
+				if (resumed.compareAndSet(false, true)) {
+					getDatabase().removeDevicesChangeListener(this);
+					async.dispatch();
+				}
+			}
+
+			@Override
+			public void devicesChanged(long sequence) {
+				resume();
+			}
+
+			@Override
+			public void onTimeout(AsyncEvent event) throws IOException {
+				resume();
+			}
+
+			@Override
+			public void onComplete(AsyncEvent event) throws IOException {
+				getDatabase().removeDevicesChangeListener(this);
+			}
+
+			@Override
+			public void onError(AsyncEvent event) throws IOException {
+				getDatabase().removeDevicesChangeListener(this);
+			}
+
+			@Override
+			public void onStartAsync(AsyncEvent event) throws IOException {
+			}
+		}
+
+		@Override
+		protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+			final long timeoutMillis;
+			try {
+				final String timeout = request.getParameter("timeout");
+				timeoutMillis = timeout == null ? DEFAULT_TIMEOUT_MILLIS : Math.min(Long.parseLong(timeout), MAX_TIMEOUT_MILLIS);
+			} catch (NumberFormatException e) {
+				response.sendError(HttpStatus.BAD_REQUEST_400, "Illegal timeout");
+				return;
+			}
+			final long sequence = getDatabase().getDevicesChangeSequence();
+			final String entityTag = toEntityTag(sequence);
+			response.setHeader(HttpHeader.ETAG.asString(), entityTag);
+			if (!entityTag.equals(request.getHeader(HttpHeader.IF_NONE_MATCH.asString()))) {
+				response.setStatus(HttpStatus.NO_CONTENT_204); // changed
+			} else if (request.getDispatcherType() == DispatcherType.ASYNC || timeoutMillis <= 0) {
+				response.setStatus(HttpStatus.NOT_MODIFIED_304); // resumed by the timeout
+			} else {
+				final AsyncContext async = request.startAsync();
+				async.setTimeout(timeoutMillis);
+				final Subscription subscription = new Subscription(async);
+				async.addListener(subscription);
+				getDatabase().addDevicesChangeListener(subscription);
+				if (getDatabase().getDevicesChangeSequence() != sequence) { // changed before the listener was added
+					subscription.resume();
+				}
+			}
+		}
+	}
+
 	@SuppressWarnings("serial")
 	class DeviceStatusServlet extends AbstractHomeServerServlet {
 
 		/**
-		 * Parses a request of {@code /devices/status} or {@code /devices/status/<id>}.
+		 * Parses a request of {@code /devices/status?ids=<id>,<id>,...} or {@code /devices/status/<id>}.
 		 */
 		@Override
 		protected HomeServerResponse getHomeServerResponse(HttpServletRequest request) {
+			final String ids = request.getParameter("ids");
+			if (ids != null) {
+				return getDatabase().processDeviceStatusBatchQuery(ids.isEmpty() ? Collections.<String> emptyList() : Arrays.asList(ids.split(",")));
+			}
 			String uri = request.getRequestURI();
 			String[] segments = uri.split("/");
 			final String deviceID = segments[segments.length - 1];
@@ -129,6 +250,31 @@ public class SimHomeServerServer {
 		}
 	}
 
+	@SuppressWarnings("serial")
+	class DeviceLimitServlet extends AbstractHomeServerServlet {
+
+		/**
+		 * Parses a request of {@code /devices/limit/<id>} with a request content of {@code data=<iii>} (in 10ths of a degree, {@code 0} to clear the limit)
+		 * and an optional {@code setpoint=<iii>} to restore when clearing the limit.
+		 */
+		@Override
+		protected HomeServerResponse getHomeServerResponse(HttpServletRequest request) {
+			final String path = request.getPathInfo();
+			String id = path.startsWith("/") ? path.substring(1) : path;
+			try {
+				final short temperature = Short.parseShort(request.getParameter("data"));
+				if (temperature > 0) {
+					return getDatabase().processSetDeviceLimit(id, temperature);
+				}
+				final String setpoint = request.getParameter("setpoint");
+				return getDatabase().processClearDeviceLimit(id, setpoint == null ? null : Short.valueOf(setpoint));
+			} catch (NumberFormatException e) {
+				log.log(Level.SEVERE, "Device " + id + ": illegal device-limit request", e);
+			}
+			return null;
+		}
+	}
+
 	@SuppressWarnings("serial")
 	class DeviceFeedbackServlet extends AbstractHomeServerServlet {
 
@@ -179,6 +325,93 @@ public class SimHomeServerServer {
 		}
 	}
 
+	/**
+	 * Accepts the control channel of {@link Service#CONTROL_PATH}: every {@link ControlMessage} command is executed like the respective sequence of HTTP
+	 * requests and then acknowledged by a single frame.
+	 */
+	@SuppressWarnings("serial")
+	class ControlServlet extends WebSocketServlet {
+
+		/** The idle time after which the server closes a channel; the client opens it again when needed. */
+		private static final long IDLE_TIMEOUT_MILLIS = 300_000;
+
+		class ControlSocket extends WebSocketAdapter {
+
+			@Override
+			public void onWebSocketText(String message) {
+				ControlMessage command = null;
+				ControlMessage reply;
+				try {
+					command = gson.fromJson(message, ControlMessage.class);
+					reply = processCommand(command);
+				} catch (RuntimeException e) { // JsonSyntaxException, illegal values
+					log.log(Level.SEVERE, "Unexpected control message: \"" + message + "\"", e);
+					reply = ControlMessage.nack(command != null ? command : new ControlMessage(), "Illegal control message");
+				}
+				if (isConnected()) {
+					getRemote().sendStringByFuture(gson.toJson(reply));
+				}
+			}
+
+			@Override
+			public void onWebSocketError(Throwable cause) {
+				log.log(Level.FINE, "Control channel failed", cause);
+			}
+		}
+
+		private final Gson gson = new GsonBuilder().create();
+
+		@Override
+		public void configure(WebSocketServletFactory factory) {
+			factory.getPolicy().setIdleTimeout(IDLE_TIMEOUT_MILLIS);
+			factory.setCreator(new WebSocketCreator() {
+				@Override
+				public Object createWebSocket(UpgradeRequest request, UpgradeResponse response) {
+					return new ControlSocket();
+				}
+			});
+		}
+
+		/**
+		 * @param command
+		 *            cannot be {@code null}
+		 * @return the acknowledgement, never {@code null}
+		 */
+		ControlMessage processCommand(ControlMessage command) {
+			if (command.cmd == null) {
+				return ControlMessage.nack(command, "Command missing");
+			}
+			switch (command.cmd) {
+			case SET_SCALD_PROTECTION: {
+				if (command.device == null || command.value == null || command.value <= 0) {
+					return ControlMessage.nack(command, "Device and temperature expected");
+				}
+				final HomeServerResponse response = getDatabase().processSetDeviceLimit(command.device, command.value.shortValue());
+				if (response == null) {
+					return ControlMessage.nack(command, "Unknown device");
+				}
+				return ControlMessage.ack(command, Integer.valueOf(response.response.data));
+			}
+			case CLEAR_SCALD_PROTECTION:
+				if (command.device == null) {
+					return ControlMessage.nack(command, "Device expected");
+				}
+				if (getDatabase().processClearDeviceLimit(command.device, command.value == null ? null : command.value.shortValue()) == null) {
+					return ControlMessage.nack(command, "Unknown device");
+				}
+				return ControlMessage.ack(command, null);
+			case FEEDBACK:
+				if (command.feedback == null) {
+					return ControlMessage.nack(command, "List of ElmDeviceUserFeedback expected");
+				}
+				getDatabase().processUserFeedback(command.feedback);
+				return ControlMessage.ack(command, null);
+			default:
+				return ControlMessage.nack(command, "Unknown command " + command.cmd);
+			}
+		}
+	}
+
 	private final Server server;
 	private final SimHomeServerService database;
 	protected final Logger log = Logger.getLogger(getClass().getName());
@@ -194,11 +427,16 @@ public class SimHomeServerServer {
 		context.setContextPath("/");
 		context.addServlet(new ServletHolder(new StatusServlet()), "/");
 		context.addServlet(new ServletHolder(new DevicesServlet()), "/devices");
+		final ServletHolder eventsHolder = new ServletHolder(new DeviceEventsServlet());
+		eventsHolder.setAsyncSupported(true);
+		context.addServlet(eventsHolder, "/devices/events");
 		context.addServlet(new ServletHolder(new DeviceStatusServlet()), "/devices/status/*");
 		context.addServlet(new ServletHolder(new DeviceSetpointServlet()), "/devices/setpoint/*");
 		context.addServlet(new ServletHolder(new SetScaldProtectionServlet()), "/cmd/Vv/*");
 		context.addServlet(new ServletHolder(new ClearScaldProtectionServlet()), "/cmd/VF/*");
+		context.addServlet(new ServletHolder(new DeviceLimitServlet()), Service.DEVICE_LIMIT_PATH + "*");
 		context.addServlet(new ServletHolder(new DeviceFeedbackServlet()), "/devices/feedback");
+		context.addServlet(new ServletHolder(new ControlServlet()), Service.CONTROL_PATH);
 
 		HandlerList handlers = new HandlerList();
 		handlers.setHandlers(new Handler[] { /* resource_handler, */context, new DefaultHandler() });
@@ -210,11 +448,23 @@ public class SimHomeServerServer {
 		return database;
 	}
 
+	/**
+	 * @return the entity tag of the {@code /devices} response with the given {@link SimHomeServerService#getDevicesChangeSequence() change sequence}
+	 */
+	static String toEntityTag(long devicesChangeSequence) {
+		return "\"" + devicesChangeSequence + "\"";
+	}
+
 	public void start() throws Exception {
 		server.start();
 		log.log(Level.INFO, "HomeServer " + database.getServerId() + " started: " + server.getURI());
 	}
 
+	public void stop() throws Exception {
+		server.stop();
+		log.log(Level.INFO, "HomeServer " + database.getServerId() + " stopped");
+	}
+
 	public void processCalls() throws Exception {
 		server.join(); // blocking
 	}
@@ -20,6 +20,18 @@ import elm.sim.model.IntakeWaterTemperature;
  */
 public interface SimHomeServerService {
 
+	/** Notified whenever the {@link SimHomeServerService#getDevicesChangeSequence() change sequence} of the devices advances. */
+	public interface DevicesChangeListener {
+
+		/**
+		 * <em>Note: </em>This method is invoked from inside a {@code synchronized} section of the server; it must not block.
+		 * 
+		 * @param sequence
+		 *            the new change sequence
+		 */
+		void devicesChanged(long sequence);
+	}
+
 	/** A simple metamodel of the {@link SimHomeServerService}. */
 	public enum Attribute implements SimAttribute {
 		INTAKE_WATER_TEMPERATURE("Kaltwassertemperatur");
@@ -64,6 +76,26 @@ public interface SimHomeServerService {
 	 */
 	HomeServerResponse processDevicesQuery();
 
+	/**
+	 * Returns the change sequence of the response to a Http GET {@code /devices} request: it is advanced whenever that response changes, no matter whether the
+	 * devices have been changed by a request, by a {@link elm.sim.model.TapPoint} or directly. Used as the entity tag of that response.
+	 * 
+	 * @return monotonically increasing, also across server restarts
+	 */
+	long getDevicesChangeSequence();
+
+	/**
+	 * @param listener
+	 *            cannot be {@code null}
+	 */
+	void addDevicesChangeListener(DevicesChangeListener listener);
+
+	/**
+	 * @param listener
+	 *            cannot be {@code null}
+	 */
+	void removeDevicesChangeListener(DevicesChangeListener listener);
+
 	/**
 	 * Responds to a Http GET {@code /devices/status/<id>} request.
 	 * 
@@ -73,6 +105,15 @@ public interface SimHomeServerService {
 	 */
 	HomeServerResponse processDeviceStatusQuery(String id);
 
+	/**
+	 * Responds to a Http GET {@code /devices/status?ids=<id>,<id>,...} request. Unknown device IDs are skipped.
+	 * 
+	 * @param ids
+	 *            cannot be {@code null}
+	 * @return never {@code null}
+	 */
+	HomeServerResponse processDeviceStatusBatchQuery(List<String> ids);
+
 	/**
 	 * Responds to a Http POST {@code /devices/setpoint/<id>} with a body of {@code data=<temperature>} request. Changes the setpoint of the given device in the
 	 * database and returns the proper response.
@@ -105,6 +146,31 @@ public interface SimHomeServerService {
 	 */
 	HomeServerResponse processSetScaldProtectionTemperature(String id, short temperature);
 
+	/**
+	 * Responds to a Http POST {@code /devices/limit/<id>} with a body of {@code data=<temperature>} request. Sets the scald-protection flag, the setpoint and
+	 * the scald-protection temperature (in full degrees) of the given device as one command that does not interleave with other device-limit commands.
+	 * 
+	 * @param id
+	 *            cannot be {@code null} or empty
+	 * @param temperature
+	 *            [1/10°C] for scald protection, {@code > 0}
+	 * @return the {@link elm.hs.api.Status} block of the device with the confirmed scald-protection temperature [1/10°C] as {@link elm.hs.api.Response#data}; {@code null} if no
+	 *         device with the given id exists
+	 */
+	HomeServerResponse processSetDeviceLimit(String id, short temperature);
+
+	/**
+	 * Responds to a Http POST {@code /devices/limit/<id>} with a body of {@code data=0} and an optional {@code setpoint=<temperature>} request. Clears the
+	 * scald-protection flag of the given device and restores its setpoint, if given, as one command.
+	 * 
+	 * @param id
+	 *            cannot be {@code null} or empty
+	 * @param setpoint
+	 *            reference temperature in [1/10°C], can be {@code null}
+	 * @return the {@link elm.hs.api.Status} block of the device with {@code "0"} as {@link elm.hs.api.Response#data}; {@code null} if no device with the given id exists
+	 */
+	HomeServerResponse processClearDeviceLimit(String id, Short setpoint);
+
 	/**
 	 * Responds to a Http GET {@code /devices/feedback} without parameter or request body. This returns a list of device IDs whose feedback is handled by this
 	 * server.
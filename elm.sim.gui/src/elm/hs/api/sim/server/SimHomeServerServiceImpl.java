@@ -8,6 +8,8 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -42,7 +44,9 @@ public class SimHomeServerServiceImpl extends AbstractSimObject implements SimHo
 	/**
 	 * Services implemented by this server.
 	 * <p>
-	 * <em>Note: </em>In contrast with a regular CLAGE Home Server, this server also offers ELM device feedback processing ({@link Service#ELM_FEEDBACK_PATH}).
+	 * <em>Note: </em>In contrast with a regular CLAGE Home Server, this server also offers ELM device feedback processing ({@link Service#ELM_FEEDBACK_PATH}) and the
+	 * {@link Status} blocks of several devices in a single query ({@link Service#STATUS_BATCH_PATH}), the notification of device changes
+	 * ({@link Service#EVENTS_PATH}), and a control channel for commands and user feedback ({@link Service#CONTROL_PATH}).
 	 * </p>
 	 */
 	private final List<Service> services = new ArrayList<Service>();
@@ -63,6 +67,26 @@ public class SimHomeServerServiceImpl extends AbstractSimObject implements SimHo
 	
 	private final String serverId;
 
+	/** See {@link #getDevicesChangeSequence()}; starts at the current time so that a restarted server does not reuse an old value. */
+	private final AtomicLong devicesChangeSequence = new AtomicLong(System.currentTimeMillis());
+
+	/**
+	 * Serializes the device-limit commands with each other and with the single setpoint and scald-protection commands they consist of, so that no
+	 * {@code /cmd/VF} or {@code /cmd/Vv} request lands in the middle of a device-limit sequence. <em>Note: </em>This is deliberately not the monitor of this
+	 * object: tap points notify this service while holding their own lock.
+	 */
+	private final Object deviceLimitLock = new Object();
+
+	private final List<DevicesChangeListener> devicesChangeListeners = new CopyOnWriteArrayList<DevicesChangeListener>();
+
+	/** Advances the change sequence as soon as a {@link DeviceTapPointAdapter} has changed the Info block of its device. */
+	private final DeviceTapPointAdapter.DeviceChangeListener adapterListener = new DeviceTapPointAdapter.DeviceChangeListener() {
+		@Override
+		public void deviceChanged(Device device) {
+			devicesChanged();
+		}
+	};
+
 	public SimHomeServerServiceImpl(String uri) {
 		assert uri != null && !uri.isEmpty();
 		this.uri = URI.create(uri); // checks the syntax
@@ -98,6 +122,26 @@ public class SimHomeServerServiceImpl extends AbstractSimObject implements SimHo
 		s = new Service();
 		s.elmFeedback = Service.ELM_FEEDBACK_PATH;
 		services.add(s);
+
+		// ditto:
+		s = new Service();
+		s.deviceStatusBatch = Service.STATUS_BATCH_PATH;
+		services.add(s);
+
+		// ditto:
+		s = new Service();
+		s.deviceEvents = Service.EVENTS_PATH;
+		services.add(s);
+
+		// ditto:
+		s = new Service();
+		s.controlChannel = Service.CONTROL_PATH;
+		services.add(s);
+
+		// ditto:
+		s = new Service();
+		s.deviceLimit = Service.DEVICE_LIMIT_PATH;
+		services.add(s);
 	}
 
 	@Override
@@ -165,6 +209,9 @@ public class SimHomeServerServiceImpl extends AbstractSimObject implements SimHo
 		}
 		// these will not appear in the response to /device/status requests
 		feedbackDevices.put(id, device);
+		if (simDevice) {
+			devicesChanged();
+		}
 		return device;
 	}
 
@@ -184,6 +231,7 @@ public class SimHomeServerServiceImpl extends AbstractSimObject implements SimHo
 		assert point != null;
 		Device device = addDevice(id, setpoint, point.isSimDevice());
 		final DeviceTapPointAdapter adapter = new DeviceTapPointAdapter(point, device);
+		adapter.setDeviceChangeListener(adapterListener);
 		adapters.put(id, adapter);
 		return adapter;
 	}
@@ -215,6 +263,38 @@ public class SimHomeServerServiceImpl extends AbstractSimObject implements SimHo
 		return response;
 	}
 
+	/**
+	 * The sequence is advanced whenever a device is added, a request changes a setpoint, or a {@link DeviceTapPointAdapter} changes the Info block of its
+	 * device. <em>Note: </em>Changes made to a {@link Device} directly, bypassing this service and the adapters, are not detected.
+	 */
+	@Override
+	public long getDevicesChangeSequence() {
+		return devicesChangeSequence.get();
+	}
+
+	/**
+	 * Advances the {@link #getDevicesChangeSequence() change sequence} and notifies the listeners. <em>Note: </em>This does not take the monitor of this
+	 * object: tap points notify this service while holding their own lock.
+	 */
+	private void devicesChanged() {
+		final long sequence = devicesChangeSequence.incrementAndGet();
+		for (DevicesChangeListener listener : devicesChangeListeners) {
+			listener.devicesChanged(sequence);
+		}
+	}
+
+	@Override
+	public void addDevicesChangeListener(DevicesChangeListener listener) {
+		assert listener != null;
+		devicesChangeListeners.add(listener);
+	}
+
+	@Override
+	public void removeDevicesChangeListener(DevicesChangeListener listener) {
+		assert listener != null;
+		devicesChangeListeners.remove(listener);
+	}
+
 	@Override
 	public HomeServerResponse processDeviceStatusQuery(String id) {
 		final Device device = simDevices.get(id);
@@ -231,17 +311,41 @@ public class SimHomeServerServiceImpl extends AbstractSimObject implements SimHo
 		return null;
 	}
 
+	@Override
+	public HomeServerResponse processDeviceStatusBatchQuery(List<String> ids) {
+		assert ids != null;
+		HomeServerResponse response = createResponse(false, false);
+		response.cached = false;
+		response.devices = new ArrayList<Device>(ids.size());
+		for (String id : ids) {
+			final Device device = simDevices.get(id);
+			if (device != null) {
+				Device newDevice = createDevice(id);
+				newDevice.status = device.status; // attach only the Status block
+				response.devices.add(newDevice);
+			}
+		}
+		response.total = response.devices.size();
+		return response;
+	}
+
 	@Override
 	public HomeServerResponse processDeviceSetpoint(String id, short setpoint) {
 		final Device device = simDevices.get(id);
 		if (device != null) {
-			// change the "database":
-			device.setSetpoint(setpoint);
-			DeviceTapPointAdapter adapter = adapters.get(id);
-			if (adapter != null) {
-				adapter.updateTapPoint();
+			synchronized (deviceLimitLock) {
+				// change the "database":
+				final boolean changed = device._getSetpoint() != setpoint;
+				device.setSetpoint(setpoint);
+				DeviceTapPointAdapter adapter = adapters.get(id);
+				if (adapter != null) {
+					adapter.updateTapPoint(); // the device is already up to date => the adapter does not notify
+				}
+				if (changed) {
+					devicesChanged();
+				}
+				return processDeviceStatusQuery(id);
 			}
-			return processDeviceStatusQuery(id);
 		}
 		return null;
 	}
@@ -250,12 +354,14 @@ public class SimHomeServerServiceImpl extends AbstractSimObject implements SimHo
 	public HomeServerResponse processSetScaldProtectionTemperature(String id, short temperature) {
 		DeviceTapPointAdapter adapter = adapters.get(id);
 		if (adapter != null) {
-			adapter.getPoint().setScaldProtectionTemperature(HotWaterTemperature.fromInt(temperature / 10));
+			synchronized (deviceLimitLock) {
+				adapter.getPoint().setScaldProtectionTemperature(HotWaterTemperature.fromInt(temperature / 10));
+			}
 		}
 		if (simDevices.containsKey(id)) {
 			HomeServerResponse response = createResponse(false, false);
 			response.response = new Response();
-			response.response.data = "Vv" + Short.toString(temperature);
+			response.response.data = "Vv" + Integer.toString(temperature / 10); // in FULL DEGREES Celsius, like the request
 			return response;
 		}
 		return null;
@@ -265,7 +371,9 @@ public class SimHomeServerServiceImpl extends AbstractSimObject implements SimHo
 	public HomeServerResponse processSetScaldProtectionFlag(String id, boolean on) {
 		DeviceTapPointAdapter adapter = adapters.get(id);
 		if (adapter != null && !on) {
-			adapter.getPoint().setScaldProtectionTemperature(HotWaterTemperature.TEMP_MAX_60);
+			synchronized (deviceLimitLock) {
+				adapter.getPoint().setScaldProtectionTemperature(HotWaterTemperature.TEMP_MAX_60);
+			}
 		}
 		if (simDevices.containsKey(id)) {
 			return createResponse(false, false);
@@ -273,6 +381,44 @@ public class SimHomeServerServiceImpl extends AbstractSimObject implements SimHo
 		return null;
 	}
 
+	@Override
+	public HomeServerResponse processSetDeviceLimit(String id, short temperature) {
+		assert temperature > 0;
+		if (!simDevices.containsKey(id)) {
+			return null;
+		}
+		// the scald-protection temperature is set in FULL DEGREES Celcius:
+		final short scaldTemperature = (short) (temperature / 10 * 10);
+		synchronized (deviceLimitLock) {
+			processSetScaldProtectionFlag(id, false);
+			processDeviceSetpoint(id, temperature);
+			processSetScaldProtectionFlag(id, true);
+			processSetScaldProtectionTemperature(id, scaldTemperature);
+			return createDeviceLimitResponse(id, scaldTemperature);
+		}
+	}
+
+	@Override
+	public HomeServerResponse processClearDeviceLimit(String id, Short setpoint) {
+		if (!simDevices.containsKey(id)) {
+			return null;
+		}
+		synchronized (deviceLimitLock) {
+			processSetScaldProtectionFlag(id, false);
+			if (setpoint != null) {
+				processDeviceSetpoint(id, setpoint);
+			}
+			return createDeviceLimitResponse(id, (short) 0);
+		}
+	}
+
+	private HomeServerResponse createDeviceLimitResponse(String id, short scaldTemperature) {
+		final HomeServerResponse response = processDeviceStatusQuery(id);
+		response.response = new Response();
+		response.response.data = Short.toString(scaldTemperature);
+		return response;
+	}
+
 	@Override
 	public HomeServerResponse processDevicesFeedbackQuery() {
 		Feedback feedback = new Feedback();
@@ -2,6 +2,12 @@ package elm.scheduler;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -22,12 +28,35 @@ import elm.scheduler.model.HomeServerChangeListener;
  * The scheduler is a {@link HomeServerChangeListener listener} to critical changes of {@link HomeServer} {@link DeviceController} which trigger a new
  * scheduling cycle.
  * </p>
+ * <p>
+ * Change notifications are passed to the scheduler {@link Thread} via a non-blocking event queue: notifying {@link HomeServer}s never wait for a running
+ * scheduling cycle. Repeated notifications of the same {@link HomeServer} are coalesced into a single pending {@link ChangeEvent}.
+ * </p>
  */
 public abstract class AbstractElmScheduler implements HomeServerChangeListener {
 
 	/** Default scheduler cycle interval after which the scheduler checks for non-urgent device updates: {@value #SCHEDULING_INTERVAL_MILLIS_DEFAULT} */
 	public static final int SCHEDULING_INTERVAL_MILLIS_DEFAULT = 1_000;
 
+	/** A pending device-controller change of one {@link HomeServer}; its urgency may be raised until the event has been taken by the scheduler. */
+	protected static final class ChangeEvent {
+		private final HomeServer server;
+		private volatile boolean urgent;
+
+		ChangeEvent(HomeServer server, boolean urgent) {
+			this.server = server;
+			this.urgent = urgent;
+		}
+
+		public HomeServer getServer() {
+			return server;
+		}
+
+		public boolean isUrgent() {
+			return urgent;
+		}
+	}
+
 	private ElmStatus status = ElmStatus.OFF;
 	/** The Home Server servers (and their connected devices) managed by this scheduler. */
 
@@ -35,11 +64,21 @@ public abstract class AbstractElmScheduler implements HomeServerChangeListener {
 	protected List<ElmSchedulerChangeListener> listeners = new ArrayList<ElmSchedulerChangeListener>();
 
 	// Threading and thread communication:
-	private Thread eventProcessor;
-	private boolean shouldStop;
+	private volatile Thread eventProcessor;
+	private volatile boolean shouldStop;
+
+	/** The state of one or more {@link Device}s has changed; the queue contains at most one event per {@link HomeServer}. */
+	private final Queue<ChangeEvent> changeEvents = new ConcurrentLinkedQueue<ChangeEvent>();
+
+	/** The events of {@link #changeEvents} by {@link HomeServer}, for coalescing. */
+	private final ConcurrentMap<HomeServer, ChangeEvent> pendingChangeEvents = new ConcurrentHashMap<HomeServer, ChangeEvent>();
+
+	/** Used to move the events of {@link #changeEvents} out of the queue, owned by the {@link #eventProcessor}. */
+	private final List<ChangeEvent> takenChangeEvents = new ArrayList<ChangeEvent>();
+
+	/** A scheduling cycle has been {@link #requestSchedulingCycle() requested} independently of {@link HomeServer} changes. */
+	private volatile boolean cycleRequested;
 
-	/** The state of one or more {@link Device}s has changed. */
-	private boolean devicesUpdated;
 	private int schedulingRunCount;
 
 	private int schedulingIntervalMillis = SCHEDULING_INTERVAL_MILLIS_DEFAULT;
@@ -61,7 +100,7 @@ public abstract class AbstractElmScheduler implements HomeServerChangeListener {
 
 	public synchronized void stop() {
 		shouldStop = true;
-		this.notify(); // ends the "run()" loop
+		wakeUp(); // ends the "run()" loop
 	}
 
 	/**
@@ -139,29 +178,122 @@ public abstract class AbstractElmScheduler implements HomeServerChangeListener {
 	/**
 	 * This method is invoked by a dedicated event-processor {@link Thread}.
 	 */
-	protected synchronized void eventLoop() {
+	protected void eventLoop() {
 		try {
-			setStatus(ElmStatus.ON);
+			synchronized (this) {
+				setStatus(ElmStatus.ON);
+			}
+			long nextIntervalNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(schedulingIntervalMillis);
 			while (!shouldStop) {
-				try {
-					if (devicesUpdated) {
-						devicesUpdated = false;
+				// urgent device updates are processed immediately, non-urgent device updates after at most SCHEDULING_INTERVAL_MILLIS:
+				final boolean intervalElapsed = System.nanoTime() - nextIntervalNanos >= 0;
+				if (takeChangeEvents(intervalElapsed)) {
+					synchronized (this) {
+						if (shouldStop) {
+							break;
+						}
 						schedulingRunCount++;
 						processDevices();
 					}
-					// non-urgent device updates are processed after at most SCHEDULING_INTERVAL_MILLIS:
-					log.log(Level.FINE, "wait " + schedulingIntervalMillis + " ms");
-					wait(schedulingIntervalMillis);
-
-				} catch (InterruptedException e) {
+					takenChangeEvents.clear();
+				}
+				if (intervalElapsed) {
+					nextIntervalNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(schedulingIntervalMillis);
+				}
+				final long remainingNanos = nextIntervalNanos - System.nanoTime();
+				if (remainingNanos > 0 && !hasUrgentChangeEvent()) {
+					log.log(Level.FINE, "wait " + TimeUnit.NANOSECONDS.toMillis(remainingNanos) + " ms");
+					LockSupport.parkNanos(this, remainingNanos);
+				}
+				if (Thread.interrupted()) {
 					break; // => exit
 				}
 			}
 		} finally {
-			setStatus(ElmStatus.OFF);
+			synchronized (this) {
+				setStatus(ElmStatus.OFF);
+			}
 		}
 	}
 
+	/**
+	 * Moves the pending {@link ChangeEvent}s into {@link #takenChangeEvents} if at least one of them is urgent or if {@code all} is {@code true}.
+	 * 
+	 * @return {@code true} if at least one event has been taken
+	 */
+	private boolean takeChangeEvents(boolean all) {
+		if (!all && !hasUrgentChangeEvent()) {
+			return false;
+		}
+		final boolean requested = cycleRequested;
+		cycleRequested = false;
+		ChangeEvent event;
+		while ((event = changeEvents.poll()) != null) {
+			// further notifications of this server create a new event:
+			pendingChangeEvents.remove(event.server, event);
+			takenChangeEvents.add(event);
+		}
+		return requested || !takenChangeEvents.isEmpty();
+	}
+
+	private boolean hasUrgentChangeEvent() {
+		if (cycleRequested) {
+			return true;
+		}
+		for (ChangeEvent event : changeEvents) {
+			if (event.urgent) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the change events that triggered the current scheduling cycle.
+	 * <p>
+	 * <em>Note: </em>The result is only valid during {@link #processDevices()} when invoked by the event-processor {@link Thread}.
+	 * </p>
+	 * 
+	 * @return never {@code null}; at most one event per {@link HomeServer}
+	 */
+	protected List<ChangeEvent> getChangeEvents() {
+		return takenChangeEvents;
+	}
+
+	/**
+	 * Requests an immediate scheduling cycle, e.g. after a configuration change. Like {@link #devicesControllersUpdated(HomeServer, boolean)}, this method never
+	 * blocks.
+	 */
+	public void requestSchedulingCycle() {
+		cycleRequested = true;
+		wakeUp();
+	}
+
+	private void wakeUp() {
+		final Thread thread = eventProcessor;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Runs a single scheduling cycle on the caller's {@link Thread}, taking all pending {@link ChangeEvent}s. This allows the scheduler to be driven by an
+	 * external clock, e.g. by a discrete-event simulation, instead of its own event-processor {@link Thread}.
+	 * <p>
+	 * <em>Note: </em>The scheduler must not be {@link #start() started}.
+	 * </p>
+	 */
+	public synchronized void runSchedulingCycle() {
+		assert eventProcessor == null;
+		if (status == ElmStatus.OFF) {
+			setStatus(ElmStatus.ON);
+		}
+		takeChangeEvents(true);
+		schedulingRunCount++;
+		processDevices();
+		takenChangeEvents.clear();
+	}
+
 	/**
 	 * Used for testing.
 	 */
@@ -172,8 +304,10 @@ public abstract class AbstractElmScheduler implements HomeServerChangeListener {
 			setStatus(ElmStatus.OFF);
 			return;
 		}
+		takeChangeEvents(true);
 		schedulingRunCount++;
 		processDevices();
+		takenChangeEvents.clear();
 	}
 
 	/**
@@ -184,11 +318,25 @@ public abstract class AbstractElmScheduler implements HomeServerChangeListener {
 	 */
 	protected abstract void processDevices();
 
+	/**
+	 * <em>Note: </em>This method never blocks; it may be invoked concurrently by several {@link HomeServer}s.
+	 */
 	@Override
-	public synchronized void devicesControllersUpdated(HomeServer server, boolean urgent) {
-		devicesUpdated = true;
+	public void devicesControllersUpdated(HomeServer server, boolean urgent) {
+		ChangeEvent event = pendingChangeEvents.get(server);
+		if (event == null) {
+			event = new ChangeEvent(server, urgent);
+			final ChangeEvent pending = pendingChangeEvents.putIfAbsent(server, event);
+			if (pending == null) {
+				changeEvents.offer(event);
+			} else {
+				event = pending;
+			}
+		}
 		if (urgent) {
-			notify();
+			// coalesce: raise the urgency of the pending event
+			event.urgent = true;
+			wakeUp();
 		}
 	}
 
@@ -0,0 +1,212 @@
+package elm.scheduler;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+import elm.scheduler.model.DeviceController;
+
+/**
+ * Keeps the consuming devices ordered for admission while in {@link elm.hs.api.ElmStatus#OVERLOAD} mode and, in addition, ordered by their expected
+ * consumption end time. The orders are persistent across scheduler cycles: devices are only re-positioned when their ordering properties change, in
+ * {@code O(log n)}, so there is no need to sort all consuming devices on every cycle.
+ * <p>
+ * The admission order divides the devices into two groups:
+ * <ol>
+ * <li>devices that already have the power they need; these will always be granted their requested power again.</li>
+ * <li>devices that need power or need more power; these will be granted in ascending order (as long as power reserve lasts)</li>
+ * </ol>
+ * The devices in a group are then sorted among themselves:
+ * <ol>
+ * <li>by consumption start time, or if they are equal</li>
+ * <li>by requested power, or if they are equal</li>
+ * <li>by the order in which they were added to this queue.</li>
+ * </ol>
+ * </p>
+ * <p>
+ * <em>Note: </em>This class is not thread-safe; it is owned by the scheduler.
+ * </p>
+ */
+public class ConsumptionQueue {
+
+	/** Snapshot of the ordering properties of a device. The snapshot must not change while the entry is part of a sorted set. */
+	private static final class Entry {
+		final DeviceController device;
+		final long sequenceNumber;
+		boolean hasRequestedPower;
+		long consumptionStartTime;
+		int demandPowerWatt;
+		long expectedEndTime;
+		int generation;
+
+		Entry(DeviceController device, long sequenceNumber) {
+			this.device = device;
+			this.sequenceNumber = sequenceNumber;
+		}
+
+		void takeSnapshot() {
+			hasRequestedPower = device.getDemandPowerWatt() <= device.getApprovedPowerWatt();
+			consumptionStartTime = device.getConsumptionStartTime();
+			demandPowerWatt = device.getDemandPowerWatt();
+			expectedEndTime = consumptionStartTime + device.getMeanConsumptionMillis();
+		}
+
+		boolean isSnapshotValid() {
+			return hasRequestedPower == device.getDemandPowerWatt() <= device.getApprovedPowerWatt()
+					&& consumptionStartTime == device.getConsumptionStartTime() && demandPowerWatt == device.getDemandPowerWatt()
+					&& expectedEndTime == consumptionStartTime + device.getMeanConsumptionMillis();
+		}
+	}
+
+	private static final Comparator<Entry> ADMISSION_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			if (e1.consumptionStartTime != e2.consumptionStartTime) {
+				// favor the consumption that started earlier:
+				return e1.consumptionStartTime < e2.consumptionStartTime ? -1 : 1;
+			}
+			if (e1.demandPowerWatt != e2.demandPowerWatt) {
+				// if two consumptions started at the same time, then we favor the one with the lower power consumption:
+				return Integer.compare(e1.demandPowerWatt, e2.demandPowerWatt);
+			}
+			return Long.compare(e1.sequenceNumber, e2.sequenceNumber);
+		}
+	};
+
+	private static final Comparator<Entry> END_TIME_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry e1, Entry e2) {
+			if (e1.expectedEndTime != e2.expectedEndTime) {
+				return e1.expectedEndTime < e2.expectedEndTime ? -1 : 1;
+			}
+			return Long.compare(e1.sequenceNumber, e2.sequenceNumber);
+		}
+	};
+
+	private final Map<DeviceController, Entry> entries = new HashMap<DeviceController, Entry>();
+
+	/** Devices that already have the power they need, in admission order. */
+	private final TreeSet<Entry> satisfiedDevices = new TreeSet<Entry>(ADMISSION_ORDER);
+
+	/** Devices that need power or need more power, in admission order. */
+	private final TreeSet<Entry> unsatisfiedDevices = new TreeSet<Entry>(ADMISSION_ORDER);
+
+	/** All devices in ascending order of their expected consumption end time. */
+	private final TreeSet<Entry> endTimeOrder = new TreeSet<Entry>(END_TIME_ORDER);
+
+	private long nextSequenceNumber;
+	private int generation;
+
+	/**
+	 * Synchronizes the queue with the current consuming devices: new devices are added, devices whose ordering properties have changed are re-positioned and
+	 * devices that are no longer consuming are removed.
+	 *
+	 * @param consumingDevices
+	 *            cannot be {@code null}
+	 */
+	public void update(Collection<DeviceController> consumingDevices) {
+		assert consumingDevices != null;
+		generation++;
+		for (DeviceController device : consumingDevices) {
+			Entry entry = entries.get(device);
+			if (entry == null) {
+				entry = new Entry(device, nextSequenceNumber++);
+				entries.put(device, entry);
+				entry.takeSnapshot();
+				insert(entry);
+			} else if (!entry.isSnapshotValid()) {
+				remove(entry);
+				entry.takeSnapshot();
+				insert(entry);
+			}
+			entry.generation = generation;
+		}
+		if (entries.size() > consumingDevices.size()) {
+			for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+				final Entry entry = i.next();
+				if (entry.generation != generation) {
+					remove(entry);
+					i.remove();
+				}
+			}
+		}
+	}
+
+	public void clear() {
+		entries.clear();
+		satisfiedDevices.clear();
+		unsatisfiedDevices.clear();
+		endTimeOrder.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the devices in the order in which they are to be granted power. The order reflects the device properties as of the last
+	 * {@link #update(Collection)}.
+	 */
+	public Iterable<DeviceController> admissionOrder() {
+		return new Iterable<DeviceController>() {
+			@Override
+			public Iterator<DeviceController> iterator() {
+				return new DeviceIterator(satisfiedDevices.iterator(), unsatisfiedDevices.iterator());
+			}
+		};
+	}
+
+	/**
+	 * Returns the devices in ascending order of their expected consumption end time, i.e. the device that finishes first provides a slot for the next one to
+	 * start. The order reflects the device properties as of the last {@link #update(Collection)}.
+	 */
+	public Iterator<DeviceController> endTimeOrder() {
+		return new DeviceIterator(endTimeOrder.iterator(), null);
+	}
+
+	private void insert(Entry entry) {
+		(entry.hasRequestedPower ? satisfiedDevices : unsatisfiedDevices).add(entry);
+		endTimeOrder.add(entry);
+	}
+
+	private void remove(Entry entry) {
+		(entry.hasRequestedPower ? satisfiedDevices : unsatisfiedDevices).remove(entry);
+		endTimeOrder.remove(entry);
+	}
+
+	private static final class DeviceIterator implements Iterator<DeviceController> {
+		private Iterator<Entry> current;
+		private Iterator<Entry> next;
+
+		DeviceIterator(Iterator<Entry> first, Iterator<Entry> second) {
+			this.current = first;
+			this.next = second;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (!current.hasNext() && next != null) {
+				current = next;
+				next = null;
+			}
+			return current.hasNext();
+		}
+
+		@Override
+		public DeviceController next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return current.next().device;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
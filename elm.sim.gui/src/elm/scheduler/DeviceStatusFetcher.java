@@ -0,0 +1,272 @@
+package elm.scheduler;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import elm.hs.api.Device;
+import elm.hs.api.HomeServerAsyncService;
+import elm.hs.api.HomeServerResponse;
+import elm.hs.api.HomeServerResponseDecoder;
+import elm.hs.api.Status;
+import elm.util.ClientCallback;
+import elm.util.ClientException;
+import elm.util.ClientFuture;
+
+/**
+ * Fetches the {@link Status} blocks of several devices of a single Home Server concurrently, with a bounded number of requests in flight and a deadline
+ * for the whole fetch. The statuses received until the deadline are usable even if other requests have failed or are still pending.
+ * <p>
+ * The requests still pending at the deadline are not cancelled: they count against the bound of the following fetches until they complete, and their
+ * devices are not requested again before. Thus the Home Server never has more than the bound of status requests of this fetcher to answer.
+ * </p>
+ * <p>
+ * If the Home Server {@link elm.hs.api.HomeServerService#supportsDeviceStatusBatch() supports} it, all statuses are fetched in a single request instead,
+ * see {@link #setBatchRequests(boolean)}.
+ * </p>
+ * <p>
+ * <em>Note: </em>This class is thread-safe.
+ * </p>
+ */
+public class DeviceStatusFetcher {
+
+	/** The outcome of a single {@link DeviceStatusFetcher#fetch(List, long) fetch}. */
+	public static class Result {
+		private final Map<String, Status> statuses = new HashMap<String, Status>();
+		private ClientException exception;
+		private int missedCount;
+
+		/**
+		 * @return the statuses received in time by device ID, never {@code null}; the {@link Status} objects are reused by the next fetch
+		 */
+		public Map<String, Status> getStatuses() {
+			return Collections.unmodifiableMap(statuses);
+		}
+
+		/**
+		 * @return the first exception a request has failed with, {@code null} if none has failed
+		 */
+		public ClientException getException() {
+			return exception;
+		}
+
+		/**
+		 * @return the number of devices whose status was neither received nor failed before the deadline
+		 */
+		public int getMissedCount() {
+			return missedCount;
+		}
+	}
+
+	/** A fetch in progress: the state shared between the waiting caller and the request callbacks, guarded by the {@link DeviceStatusFetcher}. */
+	private static class Fetch {
+		final Result result = new Result();
+		final List<String> deviceIds;
+		final boolean[] sent;
+		int completedCount;
+		boolean closed;
+
+		Fetch(List<String> deviceIds) {
+			this.deviceIds = deviceIds;
+			sent = new boolean[deviceIds.size()];
+		}
+	}
+
+	private final HomeServerAsyncService client;
+	private final int maxParallelRequests;
+	private volatile boolean batchRequests;
+
+	/** The devices with a status request in flight, including the requests of past fetches that were still pending at their deadline. */
+	private final Set<String> pendingIds = new HashSet<String>();
+
+	/** The batch request still pending at the deadline of its fetch, {@code null} if none. */
+	private ClientFuture<HomeServerResponse> pendingBatch;
+
+	/**
+	 * Decode the responses into reused objects: a device has at most one request in flight, and its status is not read after the next fetch has started.
+	 */
+	private final Map<String, HomeServerResponseDecoder> decoders = new HashMap<String, HomeServerResponseDecoder>();
+	private final HomeServerResponseDecoder batchDecoder = new HomeServerResponseDecoder();
+
+	/**
+	 * @param client
+	 *            cannot be {@code null}
+	 * @param maxParallelRequests
+	 *            the maximum number of status requests in flight at any time, {@code > 0}
+	 */
+	public DeviceStatusFetcher(HomeServerAsyncService client, int maxParallelRequests) {
+		assert client != null;
+		assert maxParallelRequests > 0;
+		this.client = client;
+		this.maxParallelRequests = maxParallelRequests;
+	}
+
+	public boolean isBatchRequests() {
+		return batchRequests;
+	}
+
+	/**
+	 * @param batchRequests
+	 *            {@code true} to fetch the statuses of all devices in a single request, only if the Home Server supports it
+	 */
+	public void setBatchRequests(boolean batchRequests) {
+		this.batchRequests = batchRequests;
+	}
+
+	/**
+	 * Fetches the status of the given devices and blocks until all statuses have been received or until the timeout has elapsed.
+	 *
+	 * @param deviceIds
+	 *            cannot be {@code null}
+	 * @param timeoutMillis
+	 *            {@code > 0}
+	 * @return never {@code null}
+	 * @throws InterruptedException
+	 *             on thread interrupt
+	 */
+	public Result fetch(List<String> deviceIds, long timeoutMillis) throws InterruptedException {
+		assert deviceIds != null;
+		assert timeoutMillis > 0;
+		if (batchRequests && deviceIds.size() > 1) {
+			return fetchBatch(deviceIds, timeoutMillis);
+		}
+		final Fetch fetch = new Fetch(deviceIds);
+		final long deadline = System.currentTimeMillis() + timeoutMillis;
+		synchronized (this) {
+			if (decoders.size() > deviceIds.size() + pendingIds.size()) {
+				// forget the decoders of the devices no longer requested:
+				for (Iterator<String> i = decoders.keySet().iterator(); i.hasNext();) {
+					final String deviceID = i.next();
+					if (!deviceIds.contains(deviceID) && !pendingIds.contains(deviceID)) {
+						i.remove();
+					}
+				}
+			}
+			try {
+				long remainingMillis = timeoutMillis;
+				while (true) {
+					sendRequests(fetch);
+					if (fetch.completedCount == deviceIds.size() || remainingMillis <= 0) {
+						break;
+					}
+					wait(remainingMillis);
+					remainingMillis = deadline - System.currentTimeMillis();
+				}
+			} finally {
+				fetch.closed = true;
+				fetch.result.missedCount = deviceIds.size() - fetch.completedCount;
+			}
+			return fetch.result;
+		}
+	}
+
+	/**
+	 * Sends the requests not sent yet as long as the bound permits. The requests of past fetches still in flight count against the bound; a device whose
+	 * request is still in flight is not requested again until that request has completed.
+	 * <p>
+	 * <em>Note: </em>This method must be invoked from inside a {@code synchronized} section.
+	 * </p>
+	 */
+	private void sendRequests(Fetch fetch) {
+		for (int i = 0; i < fetch.sent.length && pendingIds.size() < maxParallelRequests; i++) {
+			final String deviceID = fetch.deviceIds.get(i);
+			if (!fetch.sent[i] && !pendingIds.contains(deviceID)) {
+				fetch.sent[i] = true;
+				send(fetch, deviceID);
+			}
+		}
+	}
+
+	private void send(final Fetch fetch, final String deviceID) {
+		pendingIds.add(deviceID);
+		HomeServerResponseDecoder decoder = decoders.get(deviceID);
+		if (decoder == null) {
+			decoder = new HomeServerResponseDecoder();
+			decoders.put(deviceID, decoder);
+		}
+		client.getDeviceStatusAsync(deviceID, decoder).addCallback(new ClientCallback<HomeServerResponse>() {
+			@Override
+			public void completed(HomeServerResponse response) {
+				final Status status = response == null || response.devices == null || response.devices.isEmpty() ? null : response.devices.get(0).status;
+				if (status == null) {
+					done(fetch, deviceID, null, new ClientException(ClientException.Error.APPLICATION_DATA_ERROR, "Status block missing", null));
+				} else {
+					done(fetch, deviceID, status, null);
+				}
+			}
+
+			@Override
+			public void failed(ClientException e) {
+				done(fetch, deviceID, null, e);
+			}
+		});
+	}
+
+	private synchronized void done(Fetch fetch, String deviceID, Status status, ClientException e) {
+		pendingIds.remove(deviceID);
+		if (!fetch.closed) {
+			if (status != null) {
+				fetch.result.statuses.put(deviceID, status);
+			} else if (fetch.result.exception == null) {
+				fetch.result.exception = e;
+			}
+			fetch.completedCount++;
+		} // else: too late, but the current fetch may now send another request
+		notifyAll();
+	}
+
+	private Result fetchBatch(List<String> deviceIds, long timeoutMillis) throws InterruptedException {
+		final Result result = new Result();
+		final long deadline = System.currentTimeMillis() + timeoutMillis;
+		try {
+			ClientFuture<HomeServerResponse> future;
+			synchronized (this) {
+				future = pendingBatch;
+			}
+			if (future != null) {
+				// a late batch counts against the bound like a late single-device request:
+				try {
+					future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+				} catch (ExecutionException e) {
+					// answered by now, the failure does not concern this fetch
+				}
+			}
+			future = client.getDeviceStatusAsync(deviceIds, batchDecoder);
+			synchronized (this) {
+				pendingBatch = future;
+			}
+			final HomeServerResponse response = future.get(Math.max(deadline - System.currentTimeMillis(), 1), TimeUnit.MILLISECONDS);
+			int deviceCount = 0;
+			if (response != null && response.devices != null) {
+				for (Device device : response.devices) {
+					deviceCount++;
+					if (device.status != null) {
+						result.statuses.put(device.id, device.status);
+					}
+				}
+			}
+			if (result.statuses.size() < deviceCount) {
+				result.exception = new ClientException(ClientException.Error.APPLICATION_DATA_ERROR, "Status block missing", null);
+			} else if (deviceCount < deviceIds.size()) {
+				// unknown devices are skipped by the server whereas a single-device request would fail:
+				result.exception = new ClientException(ClientException.Error.APPLICATION_FAILURE_RESPONSE, "Device missing", null);
+			}
+		} catch (ExecutionException e) {
+			result.exception = (ClientException) e.getCause();
+		} catch (TimeoutException e) {
+			result.missedCount = deviceIds.size();
+			return result; // the request is still pending
+		}
+		synchronized (this) {
+			pendingBatch = null;
+		}
+		return result;
+	}
+}
@@ -8,14 +8,18 @@ import static elm.hs.api.ElmStatus.SATURATION;
 import static elm.util.ElmLogFormatter.formatPower;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import elm.hs.api.ElmStatus;
+import elm.hs.api.DeviceCharacteristics.DeviceModel;
 import elm.scheduler.model.DeviceController;
 import elm.scheduler.model.DeviceController.DeviceStatus;
 import elm.scheduler.model.HomeServer;
@@ -23,9 +27,22 @@ import elm.scheduler.model.HomeServer;
 /**
  * This scheduler implementation is <em>stateless</em> in that, each time it runs, it performs a full analysis of all known {@link HomeServer}s and their
  * devices. It does thus not depend on a previous state from which it might never recover. </p>
+ * <p>
+ * In {@link #setIncrementalMode(boolean) incremental mode}, the scheduler instead keeps the total demand power and the sets of consuming and standby devices
+ * up to date from the device changes reported by each {@link HomeServer}, so that a cycle only touches the devices that have actually changed. An optional
+ * {@link #setConsistencyCheckEnabled(boolean) consistency check} compares this state against a full analysis after each cycle and recovers from deviations.
+ * </p>
+ * <p>
+ * If some but not all {@link HomeServer}s are not alive, the scheduler continues in a degraded mode: the maximum demand power observed of the failed servers
+ * is reserved out of the overload limit (decaying with the length of the outage), and the devices of the remaining servers are scheduled normally. Only when no
+ * server is alive, the scheduler enters {@link ElmStatus#ERROR}.
+ * </p>
  */
 public class ElmScheduler extends AbstractElmScheduler {
 
+	/** Default duration after which the power reserved for a {@link HomeServer} that is not alive is released: {@value #OUTAGE_RESERVATION_DECAY_MILLIS_DEFAULT} */
+	public static final long OUTAGE_RESERVATION_DECAY_MILLIS_DEFAULT = 120_000;
+
 	/** The maximum power of any individual device managed by this scheduler. */
 	private static final int MAX_DEVICE_POWER_WATT = 27_000;
 
@@ -33,6 +50,18 @@ public class ElmScheduler extends AbstractElmScheduler {
 	private static final double SATURATION_POWER_FACTOR = 0.9;
 
 	private static final long NOT_IN_OVERLOAD = 0L;
+	private static final long NO_PENDING_RELEASE = 0L;
+
+	/** How the power is allocated to consuming devices in {@link ElmStatus#OVERLOAD} mode. */
+	public enum PowerAllocationMode {
+		/** Devices are granted either their full demand power or no power at all, in the order they started their consumption. */
+		ALL_OR_NOTHING,
+		/**
+		 * Approved consumptions keep their full demand power. The remaining power is shared max-min fairly among the other consuming devices, each device
+		 * being granted at least the {@link DeviceModel#getPowerMinUsefulWatt() minimum useful power} of its model or no power at all.
+		 */
+		MAX_MIN_FAIR
+	}
 
 	/** Above this limit the scheduler is in {@link ElmStatus#SATURATION} mode. */
 	private final int saturationPowerLimitWatt;
@@ -41,10 +70,10 @@ public class ElmScheduler extends AbstractElmScheduler {
 	private final int overloadPowerLimitWatt;
 
 	/** The total amount of power being requested. */
-	private int totalDemandPowerWatt;
+	private volatile int totalDemandPowerWatt;
 
 	/** The total amount of power being granted. */
-	private int totalGrantedPowerWatt;
+	private volatile int totalGrantedPowerWatt;
 
 	/** Enable deterministic testing via a replacement of this time service. */
 	private ElmTimeService timeService = ElmTimeService.INSTANCE;
@@ -53,6 +82,94 @@ public class ElmScheduler extends AbstractElmScheduler {
 
 	private boolean isAliveCheckDisabled;
 
+	/** The root of the power-budget tree; its limits are the {@link #saturationPowerLimitWatt} and the {@link #overloadPowerLimitWatt}. */
+	private final PowerBudget powerBudget;
+	/** The {@link PowerBudget#getConfigurationVersion()} the demand power of the {@link #powerBudget} tree has been accounted for. */
+	private int powerBudgetVersion;
+
+	/** The begin of the outage and the reserved demand power of each {@link HomeServer} that is not alive. */
+	private final Map<HomeServer, Outage> outages = new HashMap<HomeServer, Outage>();
+
+	/**
+	 * The current and the maximum demand power observed of the devices of each {@link HomeServer} while alive. An idle server may fail just before its
+	 * devices start consuming, so its maximum rather than its current demand is reserved.
+	 */
+	private final Map<HomeServer, ServerDemand> serverDemands = new HashMap<HomeServer, ServerDemand>();
+	private long outageReservationDecayMillis = OUTAGE_RESERVATION_DECAY_MILLIS_DEFAULT;
+	/** Power [W] reserved out of {@link #overloadPowerLimitWatt} for the devices of {@link HomeServer}s that are not alive. */
+	private int reservedPowerWatt;
+
+	/** The limits shared with the other shards of a {@link ShardedElmScheduler}, {@code null} if this scheduler is not a shard. */
+	private SharedPowerLimits sharedPowerLimits;
+	private int shardIndex;
+
+	/** Admission order of the consuming devices while in overload mode. */
+	private final ConsumptionQueue consumptionQueue = new ConsumptionQueue();
+
+	private PowerAllocationMode powerAllocationMode = PowerAllocationMode.ALL_OR_NOTHING;
+
+	private long idleLimitReleaseDelayMillis;
+
+	/** The time at which the idle devices denied during the last overload are released, see {@link #setIdleLimitReleaseDelayMillis(long)}. */
+	private long idleLimitReleaseTime = NO_PENDING_RELEASE;
+
+	/** Overload mode: re-used buffers for the devices in admission order and the power granted to them. */
+	private final List<DeviceController> admittedDevicesBuffer = new ArrayList<DeviceController>();
+	private int[] grantedPowerBuffer = new int[0];
+
+	// Incremental mode:
+	private boolean incrementalMode;
+	private boolean consistencyCheckEnabled;
+	private int consistencyViolationCount;
+
+	/** Incremental mode: the demand power [W] of each device as accounted for in {@link #accountedTotalDemandPowerWatt}. */
+	private final Map<DeviceController, Integer> accountedDemandPowerWatt = new HashMap<DeviceController, Integer>();
+
+	/** Incremental mode: the sum of all {@link #accountedDemandPowerWatt} values. */
+	private int accountedTotalDemandPowerWatt;
+
+	/** Incremental mode: devices with a demand power {@code > 0}. */
+	private final Set<DeviceController> consumingDevices = new LinkedHashSet<DeviceController>();
+
+	/** Incremental mode: devices with a demand power {@code == 0}. */
+	private final Set<DeviceController> standbyDevices = new LinkedHashSet<DeviceController>();
+
+	/** Incremental mode: changed devices that may be {@link DeviceStatus#isTransitioning() transitioning} and still need to be confirmed. */
+	private final Set<DeviceController> transitioningCandidates = new LinkedHashSet<DeviceController>();
+
+	/** Incremental mode: Home Servers whose devices have not been accounted for yet. */
+	private final Set<HomeServer> unaccountedHomeServers = new HashSet<HomeServer>();
+
+	/** Re-used buffers for {@link HomeServer#fetchDeviceControllerChanges(Collection, Collection)}. */
+	private final List<DeviceController> updatedDevicesBuffer = new ArrayList<DeviceController>();
+	private final List<DeviceController> removedDevicesBuffer = new ArrayList<DeviceController>();
+
+	/** Demand power [W] of the devices of a {@link HomeServer}. */
+	private static final class ServerDemand {
+		int demandPowerWatt;
+		int maxDemandPowerWatt;
+
+		void add(int deltaWatt) {
+			demandPowerWatt += deltaWatt;
+			maxDemandPowerWatt = Math.max(maxDemandPowerWatt, demandPowerWatt);
+		}
+	}
+
+	/** Outage of a {@link HomeServer}: its devices can no longer be controlled but may still consume up to their maximum demand power. */
+	private static final class Outage {
+		final long beginTime;
+		final int demandPowerWatt;
+		/** The node of the {@link #powerBudget} tree the reservation applies to. */
+		PowerBudget budget;
+		int appliedReservationWatt;
+
+		Outage(long beginTime, int demandPowerWatt, PowerBudget budget) {
+			this.beginTime = beginTime;
+			this.demandPowerWatt = demandPowerWatt;
+			this.budget = budget;
+		}
+	}
+
 	/**
 	 * @param maxElectricalPowerWatt
 	 *            the maximum total electrical power in [Watt] that all the devices managed by this scheduler can use at any given time
@@ -74,6 +191,8 @@ public class ElmScheduler extends AbstractElmScheduler {
 		assert saturationPowerLimitWatt < maxElectricalPowerWatt;
 		overloadPowerLimitWatt = maxElectricalPowerWatt;
 		this.saturationPowerLimitWatt = saturationPowerLimitWatt;
+		powerBudget = new PowerBudget("site", maxElectricalPowerWatt, saturationPowerLimitWatt);
+		powerBudgetVersion = powerBudget.getConfigurationVersion();
 		log.info("saturation limit: " + formatPower(saturationPowerLimitWatt) + ", overload limit: " + formatPower(overloadPowerLimitWatt));
 	}
 
@@ -81,6 +200,10 @@ public class ElmScheduler extends AbstractElmScheduler {
 		return totalDemandPowerWatt;
 	}
 
+	public int getTotalGrantedPowerWatt() {
+		return totalGrantedPowerWatt;
+	}
+
 	public int getSaturationPowerLimitWatt() {
 		return saturationPowerLimitWatt;
 	}
@@ -89,6 +212,70 @@ public class ElmScheduler extends AbstractElmScheduler {
 		return overloadPowerLimitWatt;
 	}
 
+	/**
+	 * Makes this scheduler a shard of a {@link ShardedElmScheduler}: its status is derived from the demand of all shards, and in {@link ElmStatus#OVERLOAD}
+	 * mode it only grants the power not claimed by the other shards. To this end, the limits of the root of the {@link #getPowerBudget() power-budget tree}
+	 * are adjusted in every scheduling cycle.
+	 * 
+	 * @param sharedPowerLimits
+	 *            cannot be {@code null}; its limits must be those of this scheduler
+	 * @param shardIndex
+	 *            the index of this shard in the {@code sharedPowerLimits}
+	 */
+	void setSharedPowerLimits(SharedPowerLimits sharedPowerLimits, int shardIndex) {
+		assert sharedPowerLimits.getOverloadPowerLimitWatt() == overloadPowerLimitWatt
+				&& sharedPowerLimits.getSaturationPowerLimitWatt() == saturationPowerLimitWatt;
+		this.sharedPowerLimits = sharedPowerLimits;
+		this.shardIndex = shardIndex;
+	}
+
+	/**
+	 * Returns the root of the power-budget tree, which has the {@link #getSaturationPowerLimitWatt() saturation} and {@link #getOverloadPowerLimitWatt()
+	 * overload} limits of this scheduler. Sub-budgets, e.g. for feeders and phases, can be {@link PowerBudget#addChild(String, int, int) added} to it, and
+	 * {@link HomeServer}s or individual devices can be attached to any node. The scheduler enters {@link ElmStatus#SATURATION} or {@link ElmStatus#OVERLOAD}
+	 * status if any node exceeds the respective limit; in {@link ElmStatus#OVERLOAD} mode, devices are only granted power within the limits of all nodes on
+	 * their path to the root.
+	 * 
+	 * @return never {@code null}
+	 */
+	public PowerBudget getPowerBudget() {
+		return powerBudget;
+	}
+
+	/**
+	 * The power reserved out of the {@link #getOverloadPowerLimitWatt() overload limit} for the devices of {@link HomeServer}s that are not alive.
+	 * 
+	 * @return [W], {@code >= 0}
+	 */
+	public int getReservedPowerWatt() {
+		return reservedPowerWatt;
+	}
+
+	public long getOutageReservationDecayMillis() {
+		return outageReservationDecayMillis;
+	}
+
+	/**
+	 * When a {@link HomeServer} is no longer alive, the maximum demand power observed of its devices is reserved out of the {@link #getOverloadPowerLimitWatt()
+	 * overload limit}. The reservation decays linearly and is released completely after this duration.
+	 * 
+	 * @param outageReservationDecayMillis
+	 *            must be {@code > 0}, defaults to {@link #OUTAGE_RESERVATION_DECAY_MILLIS_DEFAULT}
+	 */
+	public void setOutageReservationDecayMillis(long outageReservationDecayMillis) {
+		assert outageReservationDecayMillis > 0;
+		this.outageReservationDecayMillis = outageReservationDecayMillis;
+	}
+
+	/**
+	 * @param server
+	 *            cannot be {@code null}
+	 * @return {@code false} if the {@link HomeServer} was found not to be alive in the last scheduling cycle
+	 */
+	public synchronized boolean isHomeServerAlive(HomeServer server) {
+		return !outages.containsKey(server);
+	}
+
 	@Override
 	protected void statusChanged(ElmStatus oldStatus, ElmStatus newStatus, String logMsg) {
 		super.statusChanged(oldStatus, newStatus, logMsg);
@@ -104,8 +291,8 @@ public class ElmScheduler extends AbstractElmScheduler {
 		}
 	}
 
-	/** Used for testing. */
-	void setTimeService(ElmTimeService timeService) {
+	/** Also used for testing. */
+	public void setTimeService(ElmTimeService timeService) {
 		assert timeService != null;
 		this.timeService = timeService;
 	}
@@ -114,33 +301,169 @@ public class ElmScheduler extends AbstractElmScheduler {
 		this.isAliveCheckDisabled = isAliveCheckDisabled;
 	}
 
+	public PowerAllocationMode getPowerAllocationMode() {
+		return powerAllocationMode;
+	}
+
+	/**
+	 * @param powerAllocationMode
+	 *            cannot be {@code null}, defaults to {@link PowerAllocationMode#ALL_OR_NOTHING}
+	 */
+	public void setPowerAllocationMode(PowerAllocationMode powerAllocationMode) {
+		assert powerAllocationMode != null;
+		this.powerAllocationMode = powerAllocationMode;
+	}
+
+	public long getIdleLimitReleaseDelayMillis() {
+		return idleLimitReleaseDelayMillis;
+	}
+
+	/**
+	 * When the scheduler leaves {@link ElmStatus#OVERLOAD}, the idle devices denied during the overload stay limited for the given delay unless they start
+	 * consuming meanwhile. Near the overload limit, the status may enter and leave {@link ElmStatus#OVERLOAD} every few cycles, and releasing and limiting
+	 * all idle devices on each change costs two remote updates per device.
+	 * <p>
+	 * <em>Note: </em>a consumption started on a limited device runs cold until the next scheduling cycle approves it.
+	 * </p>
+	 * 
+	 * @param idleLimitReleaseDelayMillis
+	 *            {@code >= 0}, {@code 0} by default
+	 */
+	public void setIdleLimitReleaseDelayMillis(long idleLimitReleaseDelayMillis) {
+		assert idleLimitReleaseDelayMillis >= 0;
+		this.idleLimitReleaseDelayMillis = idleLimitReleaseDelayMillis;
+	}
+
+	public boolean isIncrementalMode() {
+		return incrementalMode;
+	}
+
+	/**
+	 * In incremental mode, a scheduling cycle only processes the devices that have changed since the previous cycle instead of analyzing all devices of all
+	 * {@link HomeServer}s.
+	 * 
+	 * @param incrementalMode
+	 *            {@code false} by default
+	 */
+	public synchronized void setIncrementalMode(boolean incrementalMode) {
+		if (incrementalMode != this.incrementalMode) {
+			this.incrementalMode = incrementalMode;
+			resetDeviceAccounting();
+		}
+	}
+
+	public boolean isConsistencyCheckEnabled() {
+		return consistencyCheckEnabled;
+	}
+
+	/**
+	 * Verifies the incrementally maintained device information against a full analysis of all devices after each cycle. This is costly and intended for
+	 * verification only. Has no effect if not in {@link #setIncrementalMode(boolean) incremental mode}.
+	 * 
+	 * @param consistencyCheckEnabled
+	 *            {@code false} by default
+	 */
+	public void setConsistencyCheckEnabled(boolean consistencyCheckEnabled) {
+		this.consistencyCheckEnabled = consistencyCheckEnabled;
+	}
+
+	/**
+	 * Also used for testing.
+	 * 
+	 * @return the number of deviations detected by the {@link #setConsistencyCheckEnabled(boolean) consistency check}
+	 */
+	public int getConsistencyViolationCount() {
+		return consistencyViolationCount;
+	}
+
+	@Override
+	public synchronized void addHomeServer(HomeServer server) {
+		super.addHomeServer(server);
+		if (homeServers.contains(server)) {
+			unaccountedHomeServers.add(server);
+		}
+	}
+
+	@Override
+	public synchronized void removeHomeServer(HomeServer server) {
+		super.removeHomeServer(server);
+		if (endOutage(server)) {
+			fireHomeServerAliveChanged(server, true); // no longer failed
+		}
+		unaccountHomeServer(server);
+		unaccountedHomeServers.remove(server);
+		serverDemands.remove(server);
+	}
+
 	/**
 	 * <em>Note: </em>This method is invoked from inside a {@code synchronized} section. Do not invoke long-running or blocking operations.
 	 */
 	@Override
 	protected void processDevices() {
-		int totalDemandPowerWatt = 0;
-		List<DeviceController> consumingDevices = new ArrayList<DeviceController>();
-		List<DeviceController> standbyDevices = new ArrayList<DeviceController>();
-
-		// Prepare device information:
+		HomeServer deadServer = null;
 		for (HomeServer server : homeServers) {
 			if (server.isAlive() || isAliveCheckDisabled) {
+				if (endOutage(server)) {
+					log.info("HomeServer " + server.getName() + " is alive again");
+					fireHomeServerAliveChanged(server, true);
+				}
+			} else {
+				// HomeServer not updated
+				deadServer = server;
+				if (!outages.containsKey(server)) {
+					beginOutage(server);
+				}
+			}
+		}
+		if (deadServer != null && outages.size() == homeServers.size()) {
+			setStatus(ERROR, "HomeServer " + deadServer.getName() + " is not alive" + (outages.size() > 1 ? " (and no other HomeServer either)" : ""));
+			return;
+		}
+		if (!incrementalMode) {
+			resetPowerBudget();
+		} else if (powerBudget.getConfigurationVersion() != powerBudgetVersion) {
+			resetDeviceAccounting();
+		}
+
+		// Prepare device information:
+		final int totalDemandPowerWatt;
+		final Collection<DeviceController> consumingDevices;
+		final Collection<DeviceController> standbyDevices;
+		if (incrementalMode) {
+			updateDeviceAccounting();
+			if (consistencyCheckEnabled) {
+				checkDeviceAccounting();
+			}
+			totalDemandPowerWatt = accountedTotalDemandPowerWatt;
+			consumingDevices = this.consumingDevices;
+			standbyDevices = this.standbyDevices;
+		} else {
+			int demandPowerWatt = 0;
+			consumingDevices = new ArrayList<DeviceController>();
+			standbyDevices = new ArrayList<DeviceController>();
+			for (HomeServer server : homeServers) {
+				if (outages.containsKey(server)) {
+					continue;
+				}
+				discardDeviceControllerChanges(server);
+				int serverDemandPowerWatt = 0;
 				for (DeviceController device : server.getDeviceControllers()) {
 					if (device.getDemandPowerWatt() > 0) {
-						totalDemandPowerWatt += device.getDemandPowerWatt();
+						serverDemandPowerWatt += device.getDemandPowerWatt();
+						powerBudget.getBudget(device).addDemand(device.getDemandPowerWatt());
 						consumingDevices.add(device);
 					} else {
 						standbyDevices.add(device);
 					}
 				}
-			} else {
-				// HomeServer not updated
-				setStatus(ERROR, "HomeServer " + server.getName() + " is not alive");
-				// TODO handle partial failure here
-				return;
+				final ServerDemand serverDemand = getServerDemand(server);
+				serverDemand.add(serverDemandPowerWatt - serverDemand.demandPowerWatt);
+				demandPowerWatt += serverDemandPowerWatt;
 			}
+			totalDemandPowerWatt = demandPowerWatt;
 		}
+		updateOutageReservations();
+		reservedPowerWatt = powerBudget.getReservedPowerWatt();
 
 		if (totalDemandPowerWatt != this.totalDemandPowerWatt) {
 			log.info("Total requested power: " + formatPower(totalDemandPowerWatt));
@@ -151,11 +474,17 @@ public class ElmScheduler extends AbstractElmScheduler {
 			}
 		}
 
-		// Analyze:
+		if (sharedPowerLimits != null) {
+			// the status of a shard depends on the demand of all shards:
+			final int otherDemandPowerWatt = sharedPowerLimits.publishDemand(shardIndex, totalDemandPowerWatt + reservedPowerWatt);
+			powerBudget.setLimits(overloadPowerLimitWatt - otherDemandPowerWatt, saturationPowerLimitWatt - otherDemandPowerWatt);
+		}
+
+		// Analyze: the reserved power of HomeServers that are not alive counts as demand
 		ElmStatus nextStatus;
-		if (totalDemandPowerWatt <= saturationPowerLimitWatt) {
+		if (!powerBudget.isAnySaturated()) {
 			nextStatus = ON;
-		} else if (totalDemandPowerWatt <= overloadPowerLimitWatt) {
+		} else if (!powerBudget.isAnyOverloaded()) {
 			nextStatus = SATURATION;
 		} else {
 			nextStatus = OVERLOAD;
@@ -168,6 +497,222 @@ public class ElmScheduler extends AbstractElmScheduler {
 			fireGrantedPower(totalDemandPowerWatt);
 			normalMode(consumingDevices, standbyDevices, nextStatus);
 		}
+
+		if (incrementalMode) {
+			// confirmed devices are no longer transitioning:
+			for (Iterator<DeviceController> i = transitioningCandidates.iterator(); i.hasNext();) {
+				if (!i.next().getStatus().isTransitioning()) {
+					i.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Incremental mode: applies the device changes reported by the {@link HomeServer}s since the last cycle to the accounted device information. Only the
+	 * {@link HomeServer}s that have notified changes, see {@link #getChangeEvents()}, and those not accounted for yet are visited.
+	 */
+	private void updateDeviceAccounting() {
+		if (!unaccountedHomeServers.isEmpty()) {
+			for (Iterator<HomeServer> i = unaccountedHomeServers.iterator(); i.hasNext();) {
+				final HomeServer server = i.next();
+				if (outages.containsKey(server)) {
+					continue; // devices will be accounted for when the server is alive again
+				}
+				i.remove();
+				// account for all of its devices
+				discardDeviceControllerChanges(server);
+				for (DeviceController device : server.getDeviceControllers()) {
+					accountDevice(device);
+				}
+			}
+		}
+		for (ChangeEvent event : getChangeEvents()) {
+			final HomeServer server = event.getServer();
+			if (outages.containsKey(server) || !homeServers.contains(server)) {
+				continue; // the changes will be discarded when the server is accounted for again
+			}
+			updatedDevicesBuffer.clear();
+			removedDevicesBuffer.clear();
+			server.fetchDeviceControllerChanges(updatedDevicesBuffer, removedDevicesBuffer);
+			for (DeviceController device : removedDevicesBuffer) {
+				unaccountDevice(device);
+			}
+			for (DeviceController device : updatedDevicesBuffer) {
+				accountDevice(device);
+			}
+		}
+		updatedDevicesBuffer.clear();
+		removedDevicesBuffer.clear();
+	}
+
+	private void accountDevice(DeviceController device) {
+		final int demandPowerWatt = device.getDemandPowerWatt();
+		final Integer oldDemandPowerWatt = accountedDemandPowerWatt.put(device, demandPowerWatt);
+		final int deltaWatt = demandPowerWatt - (oldDemandPowerWatt == null ? 0 : oldDemandPowerWatt);
+		accountedTotalDemandPowerWatt += deltaWatt;
+		powerBudget.getBudget(device).addDemand(deltaWatt);
+		getServerDemand(device.getHomeServer()).add(deltaWatt);
+		if (demandPowerWatt > 0) {
+			standbyDevices.remove(device);
+			consumingDevices.add(device);
+		} else {
+			consumingDevices.remove(device);
+			standbyDevices.add(device);
+		}
+		transitioningCandidates.add(device);
+	}
+
+	private void unaccountDevice(DeviceController device) {
+		final Integer oldDemandPowerWatt = accountedDemandPowerWatt.remove(device);
+		if (oldDemandPowerWatt != null) {
+			accountedTotalDemandPowerWatt -= oldDemandPowerWatt;
+			powerBudget.getBudget(device).addDemand(-oldDemandPowerWatt);
+			getServerDemand(device.getHomeServer()).add(-oldDemandPowerWatt);
+		}
+		consumingDevices.remove(device);
+		standbyDevices.remove(device);
+		transitioningCandidates.remove(device);
+	}
+
+	private void unaccountHomeServer(HomeServer server) {
+		if (accountedDemandPowerWatt.isEmpty()) {
+			return;
+		}
+		for (DeviceController device : server.getDeviceControllers()) {
+			unaccountDevice(device);
+		}
+	}
+
+	/**
+	 * Incremental mode: clears the accounted device information; the devices of all {@link HomeServer}s will be accounted for again in the next cycle.
+	 */
+	private void resetDeviceAccounting() {
+		accountedDemandPowerWatt.clear();
+		accountedTotalDemandPowerWatt = 0;
+		for (ServerDemand serverDemand : serverDemands.values()) {
+			serverDemand.demandPowerWatt = 0; // keeps the maximum
+		}
+		consumingDevices.clear();
+		standbyDevices.clear();
+		transitioningCandidates.clear();
+		unaccountedHomeServers.clear();
+		unaccountedHomeServers.addAll(homeServers);
+		resetPowerBudget();
+	}
+
+	/**
+	 * Clears the demand and reserved power of the {@link #powerBudget} tree; they are accounted for again in the next cycle.
+	 */
+	private void resetPowerBudget() {
+		powerBudgetVersion = powerBudget.getConfigurationVersion();
+		powerBudget.reset();
+		for (Map.Entry<HomeServer, Outage> entry : outages.entrySet()) {
+			entry.getValue().budget = powerBudget.getBudget(entry.getKey());
+			entry.getValue().appliedReservationWatt = 0;
+		}
+	}
+
+	/**
+	 * Incremental mode: compares the accounted device information against a full analysis of all devices and recovers from deviations.
+	 */
+	private void checkDeviceAccounting() {
+		int totalDemandPowerWatt = 0;
+		final Set<DeviceController> consuming = new HashSet<DeviceController>();
+		final Set<DeviceController> standby = new HashSet<DeviceController>();
+		for (HomeServer server : homeServers) {
+			if (outages.containsKey(server)) {
+				continue;
+			}
+			for (DeviceController device : server.getDeviceControllers()) {
+				if (device.getDemandPowerWatt() > 0) {
+					totalDemandPowerWatt += device.getDemandPowerWatt();
+					consuming.add(device);
+				} else {
+					standby.add(device);
+				}
+			}
+		}
+		if (totalDemandPowerWatt != accountedTotalDemandPowerWatt || totalDemandPowerWatt != powerBudget.getDemandPowerWatt() || !consuming.equals(consumingDevices) || !standby.equals(standbyDevices)) {
+			consistencyViolationCount++;
+			log.severe("Inconsistent incremental device information: total demand " + formatPower(accountedTotalDemandPowerWatt) + " (" + consumingDevices.size()
+					+ " consuming) vs. full analysis " + formatPower(totalDemandPowerWatt) + " (" + consuming.size() + " consuming)");
+			resetDeviceAccounting();
+			updateDeviceAccounting();
+		}
+	}
+
+	private ServerDemand getServerDemand(HomeServer server) {
+		ServerDemand result = serverDemands.get(server);
+		if (result == null) {
+			result = new ServerDemand();
+			serverDemands.put(server, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Reserves the maximum demand power observed of the devices of a {@link HomeServer} that is no longer alive, at least their last-known demand power.
+	 * These devices cannot be controlled until the server is alive again; they are excluded from scheduling.
+	 */
+	private void beginOutage(HomeServer server) {
+		int demandPowerWatt = 0;
+		for (DeviceController device : server.getDeviceControllers()) {
+			demandPowerWatt += device.getDemandPowerWatt();
+		}
+		final ServerDemand serverDemand = serverDemands.get(server);
+		if (serverDemand != null) {
+			demandPowerWatt = Math.max(demandPowerWatt, serverDemand.maxDemandPowerWatt);
+		}
+		outages.put(server, new Outage(timeService.currentTimeMillis(), demandPowerWatt, powerBudget.getBudget(server)));
+		log.warning("HomeServer " + server.getName() + " is not alive, reserving " + formatPower(demandPowerWatt));
+		if (incrementalMode) {
+			unaccountHomeServer(server);
+			unaccountedHomeServers.add(server);
+		}
+		fireHomeServerAliveChanged(server, false);
+	}
+
+	/**
+	 * Releases the reservation of a {@link HomeServer} that is alive again or has been removed.
+	 * 
+	 * @return {@code false} if the server was not in an outage
+	 */
+	private boolean endOutage(HomeServer server) {
+		final Outage outage = outages.remove(server);
+		if (outage == null) {
+			return false;
+		}
+		outage.budget.addReservation(-outage.appliedReservationWatt);
+		return true;
+	}
+
+	/**
+	 * Updates the outage reservations in the {@link #powerBudget} tree, each decaying linearly over {@link #outageReservationDecayMillis}.
+	 * <p>
+	 * <em>Note: </em>The reservation of a {@link HomeServer} applies to the node its server is attached to, even if some of its devices are attached to other
+	 * nodes individually.
+	 * </p>
+	 */
+	private void updateOutageReservations() {
+		if (outages.isEmpty()) {
+			return;
+		}
+		final long time = timeService.currentTimeMillis();
+		for (Outage outage : outages.values()) {
+			final long remainingMillis = outageReservationDecayMillis - (time - outage.beginTime);
+			final int reservationWatt = remainingMillis > 0 ? (int) (outage.demandPowerWatt * remainingMillis / outageReservationDecayMillis) : 0;
+			outage.budget.addReservation(reservationWatt - outage.appliedReservationWatt);
+			outage.appliedReservationWatt = reservationWatt;
+		}
+	}
+
+	private void discardDeviceControllerChanges(HomeServer server) {
+		updatedDevicesBuffer.clear();
+		removedDevicesBuffer.clear();
+		server.fetchDeviceControllerChanges(updatedDevicesBuffer, removedDevicesBuffer);
+		updatedDevicesBuffer.clear();
+		removedDevicesBuffer.clear();
 	}
 
 	/**
@@ -183,46 +728,86 @@ public class ElmScheduler extends AbstractElmScheduler {
 	 * Also used for testing.
 	 * </p>
 	 */
-	void overloadMode(List<DeviceController> consumingDevices, List<DeviceController> standbyDevices) {
+	void overloadMode(Collection<DeviceController> consumingDevices, Collection<DeviceController> standbyDevices) {
 		setStatus(OVERLOAD);
 		if (!isInOverloadMode()) {
 			overloadModeBeginTime = timeService.currentTimeMillis();
+			idleLimitReleaseTime = NO_PENDING_RELEASE;
 			log.info("Beginning overload mode");
 		}
-		// Sort devices in ascending order of consumption start time. Later we grant power to consuming devices in the order they started their consumption.
+		// Order devices in ascending order of consumption start time. Later we grant power to consuming devices in the order they started their consumption.
 		// Devices with an approved consumption will not be preempted.
-		sortByConsumption(consumingDevices);
+		consumptionQueue.update(consumingDevices);
+
+		final int availablePowerWatt;
+		if (sharedPowerLimits != null) {
+			// a shard may grant the power not claimed by the other shards:
+			final int claimedPowerWatt = sharedPowerLimits.claimAvailablePower(shardIndex);
+			powerBudget.setLimits(claimedPowerWatt, Math.min(claimedPowerWatt, powerBudget.getSaturationPowerLimitWatt()));
+			availablePowerWatt = claimedPowerWatt - reservedPowerWatt;
+		} else {
+			availablePowerWatt = overloadPowerLimitWatt - reservedPowerWatt;
+		}
+		powerBudget.beginGrantCycle();
+		final List<DeviceController> devices = admittedDevicesBuffer;
+		for (DeviceController device : consumptionQueue.admissionOrder()) {
+			devices.add(device);
+		}
+		if (grantedPowerBuffer.length < devices.size()) {
+			grantedPowerBuffer = new int[devices.size()];
+		}
+		final int[] grantedPowerWatt = grantedPowerBuffer;
+		if (powerAllocationMode == PowerAllocationMode.MAX_MIN_FAIR) {
+			allocateMaxMinFair(devices, grantedPowerWatt);
+		} else {
+			allocateAllOrNothing(devices, grantedPowerWatt);
+		}
 
 		int totalGrantedPowerWatt = 0;
-		int[] expectedWaitingTimeMillis = new int[] { 0 }; // no waiting time
-		int waitingTimesIndex = 0;
-
-		for (DeviceController device : consumingDevices) {
-			if (device.getStatus() == DeviceStatus.CONSUMPTION_APPROVED || totalGrantedPowerWatt + device.getDemandPowerWatt() <= overloadPowerLimitWatt) {
+		int expectedWaitingTimeMillis = 0; // no waiting time
+		Iterator<DeviceController> endTimeOrder = null;
+		long time = 0;
+
+		for (int i = 0; i < devices.size(); i++) {
+			final DeviceController device = devices.get(i);
+			totalGrantedPowerWatt += grantedPowerWatt[i];
+			if (grantedPowerWatt[i] >= device.getDemandPowerWatt()) {
 				// consumption approved
-				totalGrantedPowerWatt += device.getDemandPowerWatt();
 				device.updateMaximumPowerConsumption(OVERLOAD, DeviceController.UNLIMITED_POWER);
 				device.updateUserFeedback(OVERLOAD, 0);
+			} else if (grantedPowerWatt[i] > 0) {
+				// consumption approved with reduced power
+				device.updateMaximumPowerConsumption(OVERLOAD, Math.min(grantedPowerWatt[i], device.getDeviceModel().getPowerMaxWatt()));
+				device.updateUserFeedback(OVERLOAD, 0);
 			} else {
-				// must wait for one or more devices to finish, depending on its position in the sorted list.
-				if (waitingTimesIndex == 0) {
-					expectedWaitingTimeMillis = getExpectedWaitingDelayMillis(consumingDevices);
+				// must wait for one or more devices to finish, depending on its position in the admission order.
+				if (endTimeOrder == null) {
+					endTimeOrder = consumptionQueue.endTimeOrder();
+					time = timeService.currentTimeMillis();
 				}
+				expectedWaitingTimeMillis = getExpectedWaitingDelayMillis(endTimeOrder, time, expectedWaitingTimeMillis);
 				device.updateMaximumPowerConsumption(OVERLOAD, DeviceController.NO_POWER);
-				device.updateUserFeedback(OVERLOAD, expectedWaitingTimeMillis[waitingTimesIndex]);
-				waitingTimesIndex++;
+				device.updateUserFeedback(OVERLOAD, expectedWaitingTimeMillis);
 			}
 		}
-		
+		devices.clear();
+		if (endTimeOrder != null) {
+			// same expected time for all standby devices
+			expectedWaitingTimeMillis = getExpectedWaitingDelayMillis(endTimeOrder, time, expectedWaitingTimeMillis);
+		}
+
+		if (sharedPowerLimits != null) {
+			// returns the unused power to the other shards:
+			sharedPowerLimits.setClaimedPower(shardIndex, totalGrantedPowerWatt + reservedPowerWatt);
+		}
 		fireGrantedPower(totalGrantedPowerWatt);
-		if (totalGrantedPowerWatt > overloadPowerLimitWatt) {
-			log.severe("Overload power limit (" + formatPower(overloadPowerLimitWatt) + ") overrun: " + formatPower(totalGrantedPowerWatt));
-			// TODO should reduce the water flow of all consuming devices
+		if (totalGrantedPowerWatt > availablePowerWatt) {
+			log.severe("Overload power limit (" + formatPower(availablePowerWatt) + ") overrun: " + formatPower(totalGrantedPowerWatt));
 		}
 
 		for (DeviceController device : standbyDevices) {
 			device.updateMaximumPowerConsumption(OVERLOAD, DeviceController.NO_POWER);
-			device.updateUserFeedback(OVERLOAD, expectedWaitingTimeMillis[waitingTimesIndex]); // same expected time for all standby devices
+			device.updateUserFeedback(OVERLOAD, expectedWaitingTimeMillis);
 		}
 
 		for (HomeServer server : homeServers) {
@@ -230,112 +815,194 @@ public class ElmScheduler extends AbstractElmScheduler {
 		}
 	}
 
+	/**
+	 * {@link PowerAllocationMode#ALL_OR_NOTHING}: grants devices their full demand power in admission order as long as it fits into their power budget.
+	 * Devices with an approved consumption will not be preempted, see {@link #grantApproved(DeviceController)}.
+	 * 
+	 * @param devices
+	 *            in admission order
+	 * @param grantedPowerWatt
+	 *            receives the power granted to each device
+	 */
+	private void allocateAllOrNothing(List<DeviceController> devices, int[] grantedPowerWatt) {
+		for (int i = 0; i < devices.size(); i++) {
+			final DeviceController device = devices.get(i);
+			if (device.getStatus() == DeviceStatus.CONSUMPTION_APPROVED) {
+				grantedPowerWatt[i] = grantApproved(device);
+			} else {
+				// the consumption must fit into the power budget of the device and of all its ancestors:
+				grantedPowerWatt[i] = powerBudget.getBudget(device).tryGrant(device.getDemandPowerWatt()) ? device.getDemandPowerWatt() : 0;
+			}
+		}
+	}
+
+	/**
+	 * Grants an approved consumption its full demand power unconditionally, even if its demand has grown since the approval: the devices not approved yet
+	 * absorb any shortfall.
+	 * 
+	 * @return the power [W] granted
+	 */
+	private int grantApproved(DeviceController device) {
+		powerBudget.getBudget(device).grant(device.getDemandPowerWatt());
+		return device.getDemandPowerWatt();
+	}
+
+	/**
+	 * {@link PowerAllocationMode#MAX_MIN_FAIR}: devices with an approved consumption keep their demand power. Then the other devices are admitted in
+	 * admission order with their minimum useful power as long as this fits into their power budget. Finally the remaining power is distributed among the
+	 * admitted devices by water-filling: in each round every device that is still short of its demand receives an equal share, capped by its demand and by its
+	 * power budget.
+	 * 
+	 * @param devices
+	 *            in admission order
+	 * @param grantedPowerWatt
+	 *            receives the power granted to each device
+	 */
+	private void allocateMaxMinFair(List<DeviceController> devices, int[] grantedPowerWatt) {
+		int unsatisfied = 0;
+		// approved consumptions are not preempted:
+		for (int i = 0; i < devices.size(); i++) {
+			final DeviceController device = devices.get(i);
+			grantedPowerWatt[i] = 0;
+			if (device.getStatus() == DeviceStatus.CONSUMPTION_APPROVED) {
+				grantedPowerWatt[i] = grantApproved(device);
+			}
+		}
+		// admit with minimum useful power:
+		for (int i = 0; i < devices.size(); i++) {
+			final DeviceController device = devices.get(i);
+			if (grantedPowerWatt[i] == 0) {
+				final int minPowerWatt = Math.min(device.getDeviceModel().getPowerMinUsefulWatt(), device.getDemandPowerWatt());
+				if (powerBudget.getBudget(device).tryGrant(minPowerWatt)) {
+					grantedPowerWatt[i] = minPowerWatt;
+					if (minPowerWatt < device.getDemandPowerWatt()) {
+						unsatisfied++;
+					}
+				} else {
+					grantedPowerWatt[i] = -1; // not admitted
+				}
+			}
+		}
+		// water-filling:
+		while (unsatisfied > 0) {
+			final int shareWatt = powerBudget.getAvailablePowerWatt() / unsatisfied;
+			if (shareWatt == 0) {
+				break;
+			}
+			for (int i = 0; i < devices.size(); i++) {
+				final DeviceController device = devices.get(i);
+				final int missingWatt = device.getDemandPowerWatt() - grantedPowerWatt[i];
+				if (grantedPowerWatt[i] > 0 && missingWatt > 0 && device.getStatus() != DeviceStatus.CONSUMPTION_APPROVED) {
+					final PowerBudget budget = powerBudget.getBudget(device);
+					final int incrementWatt = Math.min(Math.min(missingWatt, shareWatt), budget.getAvailablePowerWatt());
+					budget.grant(incrementWatt);
+					grantedPowerWatt[i] += incrementWatt;
+					if (incrementWatt == missingWatt || incrementWatt < shareWatt) {
+						// satisfied or capped by the power budget
+						unsatisfied--;
+						if (incrementWatt < missingWatt) {
+							grantedPowerWatt[i] = -grantedPowerWatt[i] - 1; // marks capped devices, see below
+						}
+					}
+				}
+			}
+		}
+		for (int i = 0; i < devices.size(); i++) {
+			if (grantedPowerWatt[i] < 0) {
+				grantedPowerWatt[i] = -grantedPowerWatt[i] - 1;
+			}
+		}
+	}
+
 	/**
 	 * Notifies all devices that {@link ElmStatus#OVERLOAD} status is over. Confirms started consumptions.
 	 * <p>
 	 * Also used for testing.
 	 * </p>
 	 */
-	void normalMode(List<DeviceController> consumingDevices, List<DeviceController> standbyDevices, ElmStatus newStatus) {
+	void normalMode(Collection<DeviceController> consumingDevices, Collection<DeviceController> standbyDevices, ElmStatus newStatus) {
 		ElmStatus oldStatus = getStatus();
 		setStatus(newStatus);
 		if (isInOverloadMode()) {
-			log.info("Ending overload mode after " + (timeService.currentTimeMillis() - overloadModeBeginTime) + " ms");
+			final long time = timeService.currentTimeMillis();
+			log.info("Ending overload mode after " + (time - overloadModeBeginTime) + " ms");
 			overloadModeBeginTime = NOT_IN_OVERLOAD;
+			consumptionQueue.clear();
 			// Notify consuming devices first as there may be some that had the Power level reduced earlier
-			updateDevices(newStatus, consumingDevices, standbyDevices, false);
+			if (idleLimitReleaseDelayMillis > 0) {
+				// the denied idle devices stay limited for now, see setIdleLimitReleaseDelayMillis()
+				idleLimitReleaseTime = time + idleLimitReleaseDelayMillis;
+				List<DeviceController> releasedDevices = new ArrayList<DeviceController>(standbyDevices.size());
+				for (DeviceController device : standbyDevices) {
+					if (device.getStatus() != DeviceStatus.DENIED) {
+						releasedDevices.add(device);
+					}
+				}
+				updateDevices(newStatus, consumingDevices, releasedDevices, false);
+			} else {
+				updateDevices(newStatus, consumingDevices, standbyDevices, false);
+			}
 
-		} else if (newStatus != oldStatus) {
+		} else if (newStatus != oldStatus || idleLimitReleaseTime != NO_PENDING_RELEASE && timeService.currentTimeMillis() >= idleLimitReleaseTime) {
+			idleLimitReleaseTime = NO_PENDING_RELEASE;
 			updateDevices(newStatus, consumingDevices, standbyDevices, false);
 
+		} else if (incrementalMode) {
+			// confirm only started or ended consumptions; only changed devices can be transitioning:
+			updateDevices(newStatus, transitioningCandidates, Collections.<DeviceController> emptyList(), true);
+
 		} else {
 			// confirm only started or ended consumptions:
 			updateDevices(newStatus, consumingDevices, standbyDevices, true);
 		}
 	}
 
-	private void updateDevices(ElmStatus newStatus, List<DeviceController> consumingDevices, List<DeviceController> standbyDevices,
+	private void updateDevices(ElmStatus newStatus, Collection<DeviceController> consumingDevices, Collection<DeviceController> standbyDevices,
 			boolean updateOnlyTransitioning) {
 		Set<HomeServer> affectedHomeServers = new HashSet<HomeServer>();
-		List<DeviceController> allDevices = new ArrayList<DeviceController>(consumingDevices);
-		allDevices.addAll(standbyDevices);
-		for (DeviceController device : allDevices) {
-			if (!updateOnlyTransitioning || device.getStatus().isTransitioning()) {
-				device.updateMaximumPowerConsumption(newStatus, DeviceController.UNLIMITED_POWER);
-				device.updateUserFeedback(newStatus, 0);
-				affectedHomeServers.add(device.getHomeServer());
-			}
-		}
+		updateDevices(newStatus, consumingDevices, updateOnlyTransitioning, affectedHomeServers);
+		updateDevices(newStatus, standbyDevices, updateOnlyTransitioning, affectedHomeServers);
 		for (HomeServer server : affectedHomeServers) {
 			server.fireDeviceUpdatesPending();
 		}
 	}
 
-	/**
-	 * Sort the consuming devices. First the algorithm devides the devices into two groups:
-	 * <ol>
-	 * <li>devices that already have the power they need; these will always be granted their requested power again.</li>
-	 * <li>devices that need power or need more power; these will be granted in ascending order (as long as power reserve lasts)</li>
-	 * </ol>
-	 * The devices in a group are then sorted among themselves:
-	 * <ol>
-	 * <li>by consumption start time, or if they are equal</li>
-	 * <li>by requested power.</li>
-	 * </ol>
-	 * 
-	 * @param consumingDevices
-	 */
-	private void sortByConsumption(List<DeviceController> consumingDevices) {
-		Collections.sort(consumingDevices, new Comparator<DeviceController>() {
-			@Override
-			public int compare(DeviceController d1, DeviceController d2) {
-				// sort those devices first that already have the power they need => will never interrupt these
-				boolean d1_hasRequestedPower = d1.getDemandPowerWatt() <= d1.getApprovedPowerWatt();
-				boolean d2_hasRequestedPower = d2.getDemandPowerWatt() <= d2.getApprovedPowerWatt();
-				if (d1_hasRequestedPower == d2_hasRequestedPower) {
-					// if two consumptions are both satisfied, then we favor the one that started earlier:
-					return compareStartTime(d1, d2);
-				} else if (d1_hasRequestedPower) {
-					return -1;
-				} else {
-					return 1;
-				}
-			}
-
-			private int compareStartTime(DeviceController d1, DeviceController d2) {
-				if (d1.getConsumptionStartTime() == d2.getConsumptionStartTime()) {
-					// if two consumptions started at the same time, then we favor the one with the lower power consumption:
-					return Integer.compare(d1.getDemandPowerWatt(), d2.getDemandPowerWatt());
-				} else if (d1.getConsumptionStartTime() < d2.getConsumptionStartTime()) {
-					return -1;
-				} else {
-					return 1;
-				}
+	private void updateDevices(ElmStatus newStatus, Collection<DeviceController> devices, boolean updateOnlyTransitioning, Set<HomeServer> affectedHomeServers) {
+		for (DeviceController device : devices) {
+			if (!updateOnlyTransitioning || device.getStatus().isTransitioning()) {
+				device.updateMaximumPowerConsumption(newStatus, DeviceController.UNLIMITED_POWER);
+				device.updateUserFeedback(newStatus, 0);
+				affectedHomeServers.add(device.getHomeServer());
 			}
-		});
+		}
 	}
 
 	/**
-	 * Returns a sorted list of expected waiting times in ascending order.
+	 * Returns the expected waiting time until the next device in the given end-time order finishes its consumption. Successive invocations thus yield the
+	 * expected waiting times in ascending order.
 	 * 
-	 * @param consumingDevices
-	 *            must contain at least one element
-	 * @return a list containing at least one element
+	 * @param endTimeOrder
+	 *            devices in ascending order of their expected consumption end time, cannot be {@code null}
+	 * @param time
+	 *            the reference time
+	 * @param lastWaitingTimeMillis
+	 *            the result of the previous invocation; returned if there are no more devices
 	 */
-	private int[] getExpectedWaitingDelayMillis(List<DeviceController> consumingDevices) {
-		assert consumingDevices != null && consumingDevices.size() > 0;
-		long time = timeService.currentTimeMillis();
-		int[] result = new int[consumingDevices.size()];
-		int i = 0;
-		for (DeviceController device : consumingDevices) {
-			final int rawMillis = (int) (device.getMeanConsumptionMillis() - (time - device.getConsumptionStartTime()));
-			result[i++] = rawMillis >= 0 ? rawMillis : 0;
-		}
-		// sort in ascending order: the device that finishes first provides a slot for the next one to start
-		Arrays.sort(result);
-		return result;
+	private int getExpectedWaitingDelayMillis(Iterator<DeviceController> endTimeOrder, long time, int lastWaitingTimeMillis) {
+		if (!endTimeOrder.hasNext()) {
+			return lastWaitingTimeMillis;
+		}
+		final DeviceController device = endTimeOrder.next();
+		final int rawMillis = (int) (device.getMeanConsumptionMillis() - (time - device.getConsumptionStartTime()));
+		return rawMillis >= 0 ? rawMillis : 0;
 	}
 	
+	private void fireHomeServerAliveChanged(HomeServer server, boolean alive) {
+		for (ElmSchedulerChangeListener listener : listeners) {
+			listener.homeServerAliveChanged(server, alive);
+		}
+	}
+
 	private void fireGrantedPower(int totalGrantedPowerWatt) {
 		if (totalGrantedPowerWatt != this.totalGrantedPowerWatt) {
 			log.info("Total granted power:   " + formatPower(totalGrantedPowerWatt));
@@ -1,6 +1,7 @@
 package elm.scheduler;
 
 import elm.hs.api.ElmStatus;
+import elm.scheduler.model.HomeServer;
 
 /**
  * <p>
@@ -45,4 +46,18 @@ public interface ElmSchedulerChangeListener {
 	 */
 	void totalGrantedPowerChanged(int oldPowerWatt, int newPowerWatt);
 
+	/**
+	 * A {@link HomeServer} has been found to be no longer alive, or to be alive again. While not alive, its devices are excluded from scheduling and their
+	 * last-known demand power is reserved.
+	 * <p>
+	 * <em>Note: </em>This method must not be long-running or blocking; this could delay the scheduler.
+	 * </p>
+	 * 
+	 * @param server
+	 *            never {@code null}
+	 * @param alive
+	 *            {@code false} if the outage has just begun
+	 */
+	void homeServerAliveChanged(HomeServer server, boolean alive);
+
 }
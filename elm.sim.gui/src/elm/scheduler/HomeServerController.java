@@ -2,20 +2,28 @@ package elm.scheduler;
 
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import elm.hs.api.Device;
 import elm.hs.api.HomeServerResponse;
+import elm.hs.api.HomeServerResponseDecoder;
 import elm.hs.api.HomeServerService;
 import elm.hs.api.Info;
 import elm.hs.api.Status;
+import elm.hs.api.client.HomeServerControlChannel;
 import elm.hs.api.client.HomeServerInternalApiClient;
 import elm.hs.api.client.HomeServerPublicApiClient;
 import elm.scheduler.model.HomeServer;
 import elm.scheduler.model.HomeServerChangeListener;
 import elm.scheduler.model.UnsupportedDeviceModelException;
+import elm.util.ClientCallback;
 import elm.util.ClientException;
+import elm.util.ClientFuture;
 import elm.util.ClientUtil;
 
 /**
@@ -25,10 +33,20 @@ import elm.util.ClientUtil;
  * At each poll of the Home Server server, this controller updates an 'alive' flag at its {@link HomeServer}. This enables a separate thread to monitor the
  * health of this controller.
  * </p>
+ * <p>
+ * The controller either runs on a {@link Thread} of its own or, if created with a shared {@link ScheduledExecutorService}, as a sequence of short tasks on
+ * that executor: instead of blocking its thread while waiting for the next poll, it then schedules its next step. This allows a small pool of threads to
+ * drive thousands of Home Servers. The event processing is the same in both modes.
+ * </p>
  */
 public class HomeServerController implements Runnable, HomeServerChangeListener {
 
 	private static final int DEFAULT_POLLING_INTERVAL_MILLIS = 1000;
+	private static final int DEFAULT_MAX_PARALLEL_STATUS_REQUESTS = 4;
+	private static final int DEFAULT_STATUS_TIMEOUT_MILLIS = 800;
+
+	/** {@link #processEvents()}: exit the event loop. */
+	private static final long STOP = -1;
 
 	public enum State {
 		NOT_CONNECTED, CONNECTING, CONNECTED, TIMEOUT, STOPPED, ERROR
@@ -45,6 +63,22 @@ public class HomeServerController implements Runnable, HomeServerChangeListener
 
 	private HomeServerPublicApiClient publicClient = null;
 	private HomeServerInternalApiClient internalClient = null;
+	private DeviceStatusFetcher statusFetcher = null;
+	/** Decodes every poll into the same device objects. */
+	private final HomeServerResponseDecoder devicesDecoder = new HomeServerResponseDecoder();
+	/**
+	 * {@code true} if the last poll has processed all devices without needing their Status blocks: the devices are then only fetched again if they have
+	 * changed.
+	 */
+	private boolean devicesProcessed;
+	/** Subscription mode: wait for device changes instead of polling while the devices are unchanged, if the Home Server supports it. */
+	private boolean deviceEventsEnabled = true;
+	private boolean deviceEventsSupported;
+	/** The pending wait for device changes, {@code null} if none. */
+	private ClientFuture<Boolean> deviceEvents;
+	/** Send the device updates and user feedback via a WebSocket instead of HTTP requests, if the Home Server supports it. */
+	private boolean controlChannelEnabled = true;
+	private HomeServerControlChannel controlChannel = null;
 
 	private boolean supportsElmUserFeedback;
 
@@ -52,8 +86,26 @@ public class HomeServerController implements Runnable, HomeServerChangeListener
 	private Event event = Event.POLL_HOME_SERVER;
 	private Thread runner;
 
+	/** The shared executor; {@code null} if this controller runs on a {@link Thread} of its own. */
+	private final ScheduledExecutorService executor;
+	/** Executor mode: the controller has been started and has not stopped yet. */
+	private boolean stepping;
+	/** Executor mode: the next step waiting for its time; {@code null} while a step is running. */
+	private ScheduledFuture<?> pendingStep;
+	private final Runnable step = new Runnable() {
+		@Override
+		public void run() {
+			step();
+		}
+	};
+
+	private long waitIntervalMillis;
+	private long pollingCycleStartTime;
+
 	private int pollingFailureCount = 0;
 	private int pollingIntervalMillis = DEFAULT_POLLING_INTERVAL_MILLIS;
+	private int maxParallelStatusRequests = DEFAULT_MAX_PARALLEL_STATUS_REQUESTS;
+	private int statusTimeoutMillis = DEFAULT_STATUS_TIMEOUT_MILLIS;
 	private final Logger log = Logger.getLogger(getClass().getName());
 
 	/**
@@ -65,12 +117,28 @@ public class HomeServerController implements Runnable, HomeServerChangeListener
 	 *            cannot be {@code null}
 	 */
 	public HomeServerController(AbstractElmScheduler scheduler, ElmUserFeedbackManager userFeedbackManager, HomeServer homeServer) {
+		this(scheduler, userFeedbackManager, homeServer, null);
+	}
+
+	/**
+	 * @param scheduler
+	 *            cannot be {@code null}
+	 * @param userFeedbackManager
+	 *            must be started, cannot be {@code null}
+	 * @param homeServer
+	 *            cannot be {@code null}
+	 * @param executor
+	 *            shared by many controllers, or {@code null} for a {@link Thread} of this controller's own
+	 */
+	public HomeServerController(AbstractElmScheduler scheduler, ElmUserFeedbackManager userFeedbackManager, HomeServer homeServer,
+			ScheduledExecutorService executor) {
 		assert scheduler != null;
 		assert userFeedbackManager != null;
 		assert homeServer != null;
 		this.scheduler = scheduler;
 		this.userFeedbackManager = userFeedbackManager;
 		this.homeServer = homeServer;
+		this.executor = executor;
 		this.homeServer.addChangeListener(this);
 	}
 
@@ -82,6 +150,58 @@ public class HomeServerController implements Runnable, HomeServerChangeListener
 		this.pollingIntervalMillis = pollingIntervalMillis;
 	}
 
+	public int getMaxParallelStatusRequests() {
+		return maxParallelStatusRequests;
+	}
+
+	/**
+	 * @param maxParallelStatusRequests
+	 *            the maximum number of device-status requests in flight per poll, {@code > 0}; takes effect on the next {@link #start()}
+	 */
+	public void setMaxParallelStatusRequests(int maxParallelStatusRequests) {
+		assert maxParallelStatusRequests > 0;
+		this.maxParallelStatusRequests = maxParallelStatusRequests;
+	}
+
+	public int getStatusTimeoutMillis() {
+		return statusTimeoutMillis;
+	}
+
+	/**
+	 * @param statusTimeoutMillis
+	 *            the time a poll waits for the device statuses; statuses not received by then are requested again on the next poll, {@code > 0}
+	 */
+	public void setStatusTimeoutMillis(int statusTimeoutMillis) {
+		assert statusTimeoutMillis > 0;
+		this.statusTimeoutMillis = statusTimeoutMillis;
+	}
+
+	public boolean isDeviceEventsEnabled() {
+		return deviceEventsEnabled;
+	}
+
+	/**
+	 * @param deviceEventsEnabled
+	 *            {@code true} to wait for device changes reported by the Home Server instead of polling while the devices are unchanged; the controller
+	 *            falls back to polling if the Home Server does not support this; takes effect on the next {@link #start()}
+	 */
+	public void setDeviceEventsEnabled(boolean deviceEventsEnabled) {
+		this.deviceEventsEnabled = deviceEventsEnabled;
+	}
+
+	public boolean isControlChannelEnabled() {
+		return controlChannelEnabled;
+	}
+
+	/**
+	 * @param controlChannelEnabled
+	 *            {@code true} to send device updates and user feedback via a WebSocket that stays open, a single frame per command; the controller falls
+	 *            back to HTTP requests while the channel is closed or if the Home Server does not support it; takes effect on the next {@link #start()}
+	 */
+	public void setControlChannelEnabled(boolean controlChannelEnabled) {
+		this.controlChannelEnabled = controlChannelEnabled;
+	}
+
 	public State getState() {
 		return state;
 	}
@@ -99,65 +219,135 @@ public class HomeServerController implements Runnable, HomeServerChangeListener
 		ClientUtil.initSslContextFactory(publicClient.getClient());
 
 		internalClient = new HomeServerInternalApiClient(HomeServerService.ADMIN_USER, homeServer.getPassword(), publicClient);
+		statusFetcher = new DeviceStatusFetcher(publicClient, maxParallelStatusRequests);
+		controlChannel = new HomeServerControlChannel(homeServer.getUri(), HomeServerService.ADMIN_USER, homeServer.getPassword());
 //		ClientUtil.initSslContextFactory(internalClient.getClient());
 		
 		setState(State.CONNECTING);
-		runner = new Thread(this, HomeServerController.class.getSimpleName() + " " + homeServer.getUri());
 		event = Event.POLL_HOME_SERVER;
-		runner.start();
+		waitIntervalMillis = pollingIntervalMillis;
+		pollingCycleStartTime = System.currentTimeMillis();
+		if (executor != null) {
+			stepping = true;
+			pendingStep = executor.schedule(new Runnable() {
+				@Override
+				public void run() {
+					if (startClients()) {
+						step();
+					} else {
+						cleanUp();
+					}
+				}
+			}, 0, TimeUnit.MILLISECONDS);
+		} else {
+			runner = new Thread(this, HomeServerController.class.getSimpleName() + " " + homeServer.getUri());
+			runner.start();
+		}
 	}
 
 	public synchronized void stop() {
-		if (runner != null) {
+		if (isRunning()) {
 			event = Event.STOP;
-			this.notify(); // ends the "run()" loop
+			wakeUp(); // ends the "run()" loop
 		}
 	}
 
+	private boolean isRunning() {
+		return runner != null || stepping;
+	}
+
+	/**
+	 * Ends the wait for the next poll.
+	 * <p>
+	 * <em>Note: </em>This method must be invoked from inside a {@code synchronized} section.
+	 * </p>
+	 */
+	private void wakeUp() {
+		if (executor == null) {
+			this.notify();
+		} else if (pendingStep != null && pendingStep.cancel(false)) {
+			// the step has not started yet => run it now
+			pendingStep = executor.schedule(step, 0, TimeUnit.MILLISECONDS);
+		}
+		// else: the running step will see the new event
+	}
+
 	@Override
 	public void run() {
 		try {
-			try {
-				publicClient.start();
-				log.info(publicClient.getBaseUri() + ": public client started");
-				internalClient.start();
-				log.info(internalClient.getBaseUri() + ": internal client started");
-				scheduler.addHomeServer(homeServer);
-
-				// Feedback management
-				if (publicClient.supportsUserFeedback()) {
-					HomeServerResponse feedbackDevicesResponse = publicClient.getFeedbackDevices();
-					userFeedbackManager.addFeedbackServer(publicClient, feedbackDevicesResponse.feeback.deviceIds);
-					supportsElmUserFeedback = true;
-					setState(State.CONNECTED);
-				}
-
-			} catch (Exception e) {
-				log(Level.SEVERE, "Cannot start HTTP client", e);
-				setState(State.ERROR);
+			if (!startClients()) {
 				return;
 			}
-
 			eventLoop(); // throws InterruptedException
 
 		} catch (InterruptedException e) {
 			// do nothing, we have already exited the event loop
 		} finally {
+			cleanUp();
+		}
+	}
+
+	/**
+	 * @return {@code false} if the clients could not be started
+	 */
+	private boolean startClients() {
+		try {
+			publicClient.start();
+			log.info(publicClient.getBaseUri() + ": public client started");
+			internalClient.start();
+			log.info(internalClient.getBaseUri() + ": internal client started");
+			scheduler.addHomeServer(homeServer);
+
+			// Feedback management
+			if (publicClient.supportsUserFeedback()) {
+				HomeServerResponse feedbackDevicesResponse = publicClient.getFeedbackDevices();
+				userFeedbackManager.addFeedbackServer(publicClient, feedbackDevicesResponse.feeback.deviceIds);
+				supportsElmUserFeedback = true;
+				setState(State.CONNECTED);
+			}
+			statusFetcher.setBatchRequests(publicClient.supportsDeviceStatusBatch());
+			deviceEventsSupported = deviceEventsEnabled && publicClient.supportsDeviceEvents();
+			if (controlChannelEnabled && publicClient.supportsControlChannel()) {
+				controlChannel.start();
+				controlChannel.connect(); // until connected, the HTTP clients send the commands themselves
+				publicClient.setControlChannel(controlChannel);
+				internalClient.setControlChannel(controlChannel);
+			}
+
+		} catch (Exception e) {
+			log(Level.SEVERE, "Cannot start HTTP client", e);
+			setState(State.ERROR);
+			return false;
+		}
+		return true;
+	}
+
+	private void cleanUp() {
+		synchronized (this) {
 			runner = null;
-			setState(State.STOPPED);
-			scheduler.removeHomeServer(homeServer);
-			userFeedbackManager.removeFeedbackServer(publicClient);
-			try {
-				if (publicClient != null && publicClient.getClient().isStarted()) {
-					publicClient.stop();
-				}
-				if (internalClient != null && internalClient.getClient().isStarted()) {
-					internalClient.stop();
-				}
-			} catch (Exception e) {
-				log(Level.SEVERE, "Cannot stop HTTP client", e);
+			stepping = false;
+			pendingStep = null;
+			if (deviceEvents != null) {
+				deviceEvents.cancel(false);
+				deviceEvents = null;
 			}
 		}
+		setState(State.STOPPED);
+		scheduler.removeHomeServer(homeServer);
+		userFeedbackManager.removeFeedbackServer(publicClient);
+		try {
+			if (publicClient != null && publicClient.isStarted()) {
+				publicClient.stop();
+			}
+			if (internalClient != null && internalClient.isStarted()) {
+				internalClient.stop();
+			}
+			if (controlChannel != null && controlChannel.isStarted()) {
+				controlChannel.stop();
+			}
+		} catch (Exception e) {
+			log(Level.SEVERE, "Cannot stop HTTP client", e);
+		}
 	}
 
 	/**
@@ -178,61 +368,103 @@ public class HomeServerController implements Runnable, HomeServerChangeListener
 	 *             on thread interrupt
 	 */
 	private void eventLoop() throws InterruptedException {
-		long waitIntervalMillis = pollingIntervalMillis;
-		long pollingCycleStartTime = System.currentTimeMillis();
-
-		loop: while (true) {
-
-			if (event == Event.POLL_HOME_SERVER) {
-				if (supportsElmUserFeedback) {
-					log(Level.FINE, "send user feedback", null);
-					sendElmUserFeedback();
-				}
-				log(Level.FINE, "poll devices", null);
-				pollHomeServer(); // this may take many milliseconds and 'event' could change in the meantime
-				pollingCycleStartTime = System.currentTimeMillis();
+		while (true) {
+			final long waitMillis = processEvents();
+			if (waitMillis == STOP) {
+				break;
+			}
+			if (waitMillis > 0) {
 				synchronized (this) {
-					if (event == Event.STOP) {
-						break loop;
+					if (event == Event.POLL_HOME_SERVER && !isDeviceEventsDone()) { // not changed since processEvents()
+						log(Level.FINE, "wait " + waitMillis + " ms", null);
+
+						wait(waitMillis); // "sleep"
 					}
-					if (event == Event.POLL_HOME_SERVER) {
-						event = Event.WAIT;
-						waitIntervalMillis = pollingIntervalMillis;
+					if (event == Event.STOP) {
+						break;
 					}
 				}
 			}
+		}
+	}
 
-			if (event == Event.PROCESS_DEVICE_UPDATES) {
-				log(Level.FINE, "process device updates", null);
-				homeServer.executeRemoteDeviceUpdates(internalClient, log); // this may take many milliseconds and 'event' could change in the meantime
-				synchronized (this) {
-					if (event == Event.STOP) {
-						break loop;
-					}
-					final long pollingCycleRemainingMillis = pollingIntervalMillis - (System.currentTimeMillis() - pollingCycleStartTime);
-					if (pollingCycleRemainingMillis > 0) {
-						event = Event.WAIT;
-						waitIntervalMillis = pollingCycleRemainingMillis;
-					} else {
-						// poll immediately:
-						event = Event.POLL_HOME_SERVER;
-					}
+	/**
+	 * Executor mode: processes the pending events like one pass of the {@link #eventLoop() event loop}, then schedules the next step instead of waiting.
+	 */
+	private void step() {
+		final long waitMillis = processEvents();
+		synchronized (this) {
+			if (waitMillis != STOP && event != Event.STOP) {
+				// the event may have changed since processEvents(): then do not wait
+				final long delayMillis = event == Event.POLL_HOME_SERVER && !isDeviceEventsDone() ? waitMillis : 0;
+				if (delayMillis > 0) {
+					log(Level.FINE, "wait " + delayMillis + " ms", null);
 				}
+				pendingStep = executor.schedule(step, delayMillis, TimeUnit.MILLISECONDS);
+				return;
 			}
+		}
+		cleanUp();
+	}
 
+	/**
+	 * Processes the current {@link Event} and those following immediately from it.
+	 * 
+	 * @return the time [ms] to wait for the next event, {@code 0} to continue immediately, or {@link #STOP} to exit the event loop
+	 */
+	private long processEvents() {
+		if (event == Event.POLL_HOME_SERVER) {
+			if (controlChannel.isStarted()) {
+				controlChannel.connect(); // reopens the channel if it has closed, without waiting for it
+			}
+			if (supportsElmUserFeedback) {
+				log(Level.FINE, "send user feedback", null);
+				sendElmUserFeedback();
+			}
+			log(Level.FINE, "poll devices", null);
+			pollHomeServer(); // this may take many milliseconds and 'event' could change in the meantime
+			pollingCycleStartTime = System.currentTimeMillis();
+			final boolean subscribed = subscribeToDeviceEvents();
 			synchronized (this) {
-				if (event == Event.WAIT) {
-					log(Level.FINE, "wait " + waitIntervalMillis + " ms", null);
-					event = Event.POLL_HOME_SERVER; // default action after wait (may be changed during wait period)
-
-					wait(waitIntervalMillis); // "sleep"
+				if (event == Event.STOP) {
+					return STOP;
+				}
+				if (event == Event.POLL_HOME_SERVER) {
+					event = Event.WAIT;
+					// subscribed: the Home Server ends the wait; waiting longer than its timeout is a fallback in case the response gets lost
+					waitIntervalMillis = subscribed ? pollingIntervalMillis + statusTimeoutMillis : pollingIntervalMillis;
+				}
+			}
+		}
 
-					if (event == Event.STOP) {
-						break loop;
-					}
+		if (event == Event.PROCESS_DEVICE_UPDATES) {
+			log(Level.FINE, "process device updates", null);
+			homeServer.executeRemoteDeviceUpdates(internalClient, log); // this may take many milliseconds and 'event' could change in the meantime
+			synchronized (this) {
+				if (event == Event.STOP) {
+					return STOP;
+				}
+				final long pollingCycleRemainingMillis = pollingIntervalMillis - (System.currentTimeMillis() - pollingCycleStartTime);
+				if (pollingCycleRemainingMillis > 0) {
+					event = Event.WAIT;
+					waitIntervalMillis = pollingCycleRemainingMillis;
+				} else {
+					// poll immediately:
+					event = Event.POLL_HOME_SERVER;
 				}
 			}
 		}
+
+		synchronized (this) {
+			if (event == Event.STOP) {
+				return STOP;
+			}
+			if (event == Event.WAIT) {
+				event = Event.POLL_HOME_SERVER; // default action after wait (may be changed during wait period)
+				return waitIntervalMillis;
+			}
+		}
+		return 0;
 	}
 
 	private void sendElmUserFeedback() {
@@ -245,6 +477,74 @@ public class HomeServerController implements Runnable, HomeServerChangeListener
 		}
 	}
 
+	/**
+	 * Subscription mode: instead of polling, waits for the Home Server to report device changes, as long as the last poll has processed all devices. The
+	 * Home Server holds the request for up to the polling interval so that the controller still contacts it as often as when polling.
+	 * 
+	 * @return {@code true} if subscribed: the wait for the next poll ends as soon as the Home Server responds
+	 */
+	private boolean subscribeToDeviceEvents() {
+		if (!deviceEventsSupported || !devicesProcessed) {
+			return false;
+		}
+		log(Level.FINE, "wait for device changes", null);
+		final ClientFuture<Boolean> events = publicClient.awaitDevicesChangeAsync(pollingIntervalMillis);
+		synchronized (this) {
+			deviceEvents = events;
+		}
+		events.addCallback(new ClientCallback<Boolean>() {
+			@Override
+			public void completed(Boolean changed) {
+				deviceEventsDone(events);
+			}
+
+			@Override
+			public void failed(ClientException e) {
+				deviceEventsDone(events); // => poll
+			}
+		});
+		return true;
+	}
+
+	private synchronized void deviceEventsDone(ClientFuture<Boolean> events) {
+		if (events == deviceEvents && isRunning() && event == Event.POLL_HOME_SERVER) {
+			wakeUp();
+		}
+	}
+
+	/**
+	 * <em>Note: </em>This method must be invoked from inside a {@code synchronized} section.
+	 */
+	private boolean isDeviceEventsDone() {
+		return deviceEvents != null && deviceEvents.isDone();
+	}
+
+	/**
+	 * Ends the subscription to device changes, if any.
+	 * 
+	 * @return {@code true} if the Home Server has reported the devices unchanged, i.e. there is nothing to poll
+	 */
+	private boolean endDeviceEvents() {
+		final ClientFuture<Boolean> events;
+		synchronized (this) {
+			events = deviceEvents;
+			deviceEvents = null;
+		}
+		if (events == null) {
+			return false;
+		}
+		if (events.isDone()) {
+			try {
+				return !events.getResult();
+			} catch (ClientException e) {
+				log(Level.FINE, "device events failed, polling", e);
+				return false;
+			}
+		}
+		events.cancel(false); // woken by something else => poll
+		return false;
+	}
+
 	/**
 	 * <em>Note: </em> this method is not executed within a {@code synchronized} block.
 	 */
@@ -252,6 +552,11 @@ public class HomeServerController implements Runnable, HomeServerChangeListener
 		boolean shouldStop = false;
 		try {
 			homeServer.updateLastHomeServerPollTime();
+			// a limit not honoured yet must be checked on every poll, even if the devices are unchanged:
+			final boolean scaldProtectionPending = homeServer.isScaldProtectionPending();
+			if (endDeviceEvents() && !scaldProtectionPending) {
+				return; // devices unchanged and processed
+			}
 
 			if (homeServer.getName() == null) {
 				final HomeServerResponse response = publicClient.getServerStatus();
@@ -262,9 +567,14 @@ public class HomeServerController implements Runnable, HomeServerChangeListener
 				homeServer.setName(response.server.id);
 			}
 			
-			final HomeServerResponse response = publicClient.getRegisteredDevices();
-			if (response == null) {
-				throw new ClientException(ClientException.Error.APPLICATION_DATA_ERROR);
+			final boolean ifModified = devicesProcessed && !scaldProtectionPending;
+			devicesProcessed = false;
+			final HomeServerResponse response = publicClient.getRegisteredDevices(devicesDecoder, ifModified);
+			if (response == null) { // not modified => processing the devices again would not change anything
+				setState(State.CONNECTED);
+				pollingFailureCount = 0;
+				devicesProcessed = true;
+				return;
 			}
 
 			if (response.success) {
@@ -272,33 +582,41 @@ public class HomeServerController implements Runnable, HomeServerChangeListener
 				pollingFailureCount = 0;
 
 				if (response.devices == null) { // is null if no devices are connected to HomeServer
+					devicesProcessed = true;
 					return;
 				}
 
 				try {
 					final List<Device> devices = response.devices;
 					final List<String> devicesNeedingStatus = homeServer.updateDeviceControllers(devices);
-					if (devicesNeedingStatus != null) { // some devices need the Status block for the device => poll again
-						for (String deviceID : devicesNeedingStatus) {
-
-							final HomeServerResponse deviceResponse = publicClient.getDeviceStatus(deviceID);
-
-							assert !deviceResponse.devices.isEmpty();
-							final Status status = deviceResponse.devices.get(0).status;
-							if (status == null) {
-								// this is not an assert statement because failure to check this condition (i.e. asserts not checked) would result in
-								// permanently missing information for a critical scheduler decision as the device update would re-request the Status block
-								throw new ClientException(ClientException.Error.APPLICATION_DATA_ERROR, "Status block missing", null);
-							}
-							updateDeviceEntry(devices, deviceID, status);
+					if (devicesNeedingStatus == null) {
+						devicesProcessed = true;
+					} else { // some devices need the Status block for the device => poll again, concurrently
+						final DeviceStatusFetcher.Result statuses = statusFetcher.fetch(devicesNeedingStatus, statusTimeoutMillis);
+						// use the statuses received even if others have failed or are late; the devices still lacking a Status block will request
+						// it again on the next poll:
+						for (Map.Entry<String, Status> entry : statuses.getStatuses().entrySet()) {
+							updateDeviceEntry(devices, entry.getKey(), entry.getValue());
+						}
+						if (!statuses.getStatuses().isEmpty()) {
+							@SuppressWarnings("unused")
+							final List<String> ignored = homeServer.updateDeviceControllers(devices);
+						}
+						if (statuses.getMissedCount() > 0) {
+							log(Level.WARNING, statuses.getMissedCount() + " device status(es) not received within " + statusTimeoutMillis + " ms", null);
+						}
+						if (statuses.getException() != null) {
+							// a missing Status block is an APPLICATION_DATA_ERROR rather than an assertion failure: unchecked asserts would result in
+							// permanently missing information for a critical scheduler decision as the device update would re-request the Status block
+							throw statuses.getException();
 						}
-						@SuppressWarnings("unused")
-						final List<String> ignored = homeServer.updateDeviceControllers(devices);
 					}
 					return;
 
 				} catch (UnsupportedDeviceModelException ume) {
 					throw new ClientException(ClientException.Error.APPLICATION_DATA_ERROR, null, ume);
+				} catch (InterruptedException ie) {
+					throw new ClientException(ie);
 				}
 			}
 			throw new ClientException(ClientException.Error.APPLICATION_FAILURE_RESPONSE);
@@ -373,9 +691,9 @@ public class HomeServerController implements Runnable, HomeServerChangeListener
 
 	@Override
 	public synchronized void deviceUpdatesPending(HomeServer server) {
-		if (runner != null && event != Event.STOP) {
+		if (isRunning() && event != Event.STOP) {
 			event = Event.PROCESS_DEVICE_UPDATES;
-			this.notify(); // ends the "run()" loop
+			wakeUp(); // ends the wait for the next poll
 		}
 	}
 
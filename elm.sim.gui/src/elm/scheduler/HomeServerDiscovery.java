@@ -3,6 +3,12 @@ package elm.scheduler;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,6 +23,10 @@ import elm.scheduler.model.impl.HomeServerImpl;
 /**
  * This class listens for DNS Service Discovery events for CLAGE Home Servers. Whenever a new Home Server instance is detected, a new
  * {@link HomeServerController} is started and the scheduler is notified.
+ * <p>
+ * By default, every controller runs on a {@link Thread} of its own. With a {@link #setControllerThreadCount(int) controller thread count}, all controllers
+ * share a small pool of threads instead, which scales to thousands of Home Servers.
+ * </p>
  */
 public class HomeServerDiscovery implements ServiceListener {
 
@@ -26,6 +36,10 @@ public class HomeServerDiscovery implements ServiceListener {
 	private final ElmUserFeedbackManager userFeedbackManager;
 	private final String homeServerPassword;
 
+	private int controllerThreadCount;
+	private ScheduledExecutorService controllerExecutor;
+	private final List<HomeServerController> controllers = new ArrayList<HomeServerController>();
+
 	private JmDNS jmDNS;
 
 	public HomeServerDiscovery(AbstractElmScheduler scheduler, String homeServerPassword) {
@@ -55,8 +69,11 @@ public class HomeServerDiscovery implements ServiceListener {
 						uri = new URI(url.toLowerCase().replace("https", "http"));
 					}
 					HomeServer homeServer = new HomeServerImpl(uri, homeServerPassword, userFeedbackManager);
-					HomeServerController controller = new HomeServerController(scheduler, userFeedbackManager, homeServer);
+					HomeServerController controller = new HomeServerController(scheduler, userFeedbackManager, homeServer, controllerExecutor);
 					LOG.info("Starting new " + controller.getClass().getSimpleName() + " for '" + e.getName() + "' at " + uri);
+					synchronized (controllers) {
+						controllers.add(controller);
+					}
 					controller.start();
 
 				} catch (URISyntaxException ex) {
@@ -79,9 +96,59 @@ public class HomeServerDiscovery implements ServiceListener {
 		LOG.info("Received discovery notification: Service " + action + ": " + e.getType() + ", " + e.getName() + " at " + url);
 	}
 
+	public int getControllerThreadCount() {
+		return controllerThreadCount;
+	}
+
+	/**
+	 * <em>Note: </em>This method must be invoked before {@link #start()}.
+	 * 
+	 * @param controllerThreadCount
+	 *            the number of threads shared by all {@link HomeServerController}s, or {@code 0} for a thread per controller
+	 */
+	public void setControllerThreadCount(int controllerThreadCount) {
+		assert controllerThreadCount >= 0;
+		assert jmDNS == null;
+		this.controllerThreadCount = controllerThreadCount;
+	}
+
 	public void start() throws IOException {
+		if (controllerThreadCount > 0) {
+			controllerExecutor = Executors.newScheduledThreadPool(controllerThreadCount, new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					return new Thread(r, HomeServerController.class.getSimpleName() + " " + count.incrementAndGet());
+				}
+			});
+		}
 		LOG.info("Starting service listener for service type '" + HomeServerService.DNS_SD_HS_SERVICE_TYPE + "'");
 		jmDNS = JmDNS.create();
 		jmDNS.addServiceListener(HomeServerService.DNS_SD_HS_SERVICE_TYPE, this);
 	}
+
+	/**
+	 * Stops listening for Home Servers and stops all {@link HomeServerController}s started so far. The shared controller threads, if any, terminate once the
+	 * controllers have cleaned up.
+	 */
+	public void stop() throws IOException {
+		if (jmDNS != null) {
+			LOG.info("Stopping service listener for service type '" + HomeServerService.DNS_SD_HS_SERVICE_TYPE + "'");
+			jmDNS.removeServiceListener(HomeServerService.DNS_SD_HS_SERVICE_TYPE, this);
+			jmDNS.close();
+			jmDNS = null;
+		}
+		synchronized (controllers) {
+			for (HomeServerController controller : controllers) {
+				controller.stop();
+			}
+			controllers.clear();
+		}
+		if (controllerExecutor != null) {
+			// the final steps of the stopped controllers have been scheduled already and still run:
+			controllerExecutor.shutdown();
+			controllerExecutor = null;
+		}
+	}
 }
@@ -0,0 +1,342 @@
+package elm.scheduler;
+
+import static elm.util.ElmLogFormatter.formatPower;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import elm.hs.api.ElmStatus;
+import elm.scheduler.model.DeviceController;
+import elm.scheduler.model.HomeServer;
+
+/**
+ * A node of the power-budget tree of an {@link ElmScheduler}, e.g. site &rarr; feeder &rarr; phase &rarr; Home Server. Each node has its own saturation and
+ * overload power limits; {@link HomeServer}s and individual devices are attached to a node, by default to the root. A device may only be granted power if
+ * the limits of its node and of all the node's ancestors are respected.
+ * <p>
+ * The demand power of each node is the sum over its subtree. It is maintained incrementally: a change of a device's demand power updates the nodes on the
+ * path to the root only. Likewise, the tree keeps count of the nodes above their limits so that the {@link ElmStatus} can be derived without visiting all
+ * nodes.
+ * </p>
+ * <p>
+ * <em>Note: </em>The demand, reservation and granted power values are maintained by the scheduler and only valid during and after a scheduling cycle.
+ * </p>
+ * <p>
+ * <em>Note: </em>The tree structure and the attachments may be changed while the scheduler runs; they are guarded by the monitor of the root.
+ * </p>
+ */
+public class PowerBudget {
+
+	private final String name;
+	private final PowerBudget parent;
+	private final PowerBudget root;
+	private final List<PowerBudget> children = new ArrayList<PowerBudget>();
+
+	/** Above this limit the node is in {@link ElmStatus#SATURATION} mode. */
+	private int saturationPowerLimitWatt;
+
+	/** Above this limit the node is in {@link ElmStatus#OVERLOAD} mode. */
+	private int overloadPowerLimitWatt;
+
+	/** Sum of the demand power of the devices in this subtree. */
+	private int demandPowerWatt;
+
+	/** Sum of the power reserved for unreachable devices in this subtree. */
+	private int reservedPowerWatt;
+
+	/** Sum of the power granted in the current grant cycle; only valid if {@link #grantCycle} is the root's {@link #currentGrantCycle}. */
+	private int grantedPowerWatt;
+	private int grantCycle;
+
+	private boolean saturated;
+	private boolean overloaded;
+
+	// Root only:
+	private final Map<HomeServer, PowerBudget> homeServerBudgets;
+	private final Map<String, PowerBudget> deviceBudgets;
+	private int saturatedNodeCount;
+	private int overloadedNodeCount;
+	private int currentGrantCycle;
+	private int configurationVersion;
+
+	/**
+	 * Creates the root of a power-budget tree.
+	 *
+	 * @param name
+	 *            cannot be {@code null}
+	 * @param overloadPowerLimitWatt
+	 *            the maximum total power [W] of all devices
+	 * @param saturationPowerLimitWatt
+	 *            must be {@code <= overloadPowerLimitWatt}
+	 */
+	public PowerBudget(String name, int overloadPowerLimitWatt, int saturationPowerLimitWatt) {
+		this(name, null, overloadPowerLimitWatt, saturationPowerLimitWatt);
+	}
+
+	private PowerBudget(String name, PowerBudget parent, int overloadPowerLimitWatt, int saturationPowerLimitWatt) {
+		assert name != null;
+		assert saturationPowerLimitWatt <= overloadPowerLimitWatt;
+		this.name = name;
+		this.parent = parent;
+		this.root = parent == null ? this : parent.root;
+		this.overloadPowerLimitWatt = overloadPowerLimitWatt;
+		this.saturationPowerLimitWatt = saturationPowerLimitWatt;
+		if (parent == null) {
+			homeServerBudgets = new HashMap<HomeServer, PowerBudget>();
+			deviceBudgets = new HashMap<String, PowerBudget>();
+		} else {
+			homeServerBudgets = null;
+			deviceBudgets = null;
+		}
+	}
+
+	/**
+	 * Adds a child node, e.g. a feeder or phase.
+	 *
+	 * @param name
+	 *            cannot be {@code null}
+	 * @param overloadPowerLimitWatt
+	 *            the maximum total power [W] of all devices of the child's subtree
+	 * @param saturationPowerLimitWatt
+	 *            must be {@code <= overloadPowerLimitWatt}
+	 * @return the new child, never {@code null}
+	 */
+	public PowerBudget addChild(String name, int overloadPowerLimitWatt, int saturationPowerLimitWatt) {
+		synchronized (root) {
+			final PowerBudget child = new PowerBudget(name, this, overloadPowerLimitWatt, saturationPowerLimitWatt);
+			children.add(child);
+			root.configurationVersion++;
+			return child;
+		}
+	}
+
+	/**
+	 * Attaches all devices of the given {@link HomeServer} to this node, unless a device is {@link #addDevice(String) attached} individually.
+	 *
+	 * @param server
+	 *            cannot be {@code null}
+	 */
+	public void addHomeServer(HomeServer server) {
+		assert server != null;
+		synchronized (root) {
+			root.homeServerBudgets.put(server, this);
+			root.configurationVersion++;
+		}
+	}
+
+	/**
+	 * Attaches an individual device to this node.
+	 *
+	 * @param deviceId
+	 *            cannot be {@code null}
+	 */
+	public void addDevice(String deviceId) {
+		assert deviceId != null;
+		synchronized (root) {
+			root.deviceBudgets.put(deviceId, this);
+			root.configurationVersion++;
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return {@code null} for the root
+	 */
+	public PowerBudget getParent() {
+		return parent;
+	}
+
+	/**
+	 * @return a snapshot, never {@code null}
+	 */
+	public List<PowerBudget> getChildren() {
+		synchronized (root) {
+			return Collections.unmodifiableList(new ArrayList<PowerBudget>(children));
+		}
+	}
+
+	public int getSaturationPowerLimitWatt() {
+		return saturationPowerLimitWatt;
+	}
+
+	public int getOverloadPowerLimitWatt() {
+		return overloadPowerLimitWatt;
+	}
+
+	public int getDemandPowerWatt() {
+		return demandPowerWatt;
+	}
+
+	public int getReservedPowerWatt() {
+		return reservedPowerWatt;
+	}
+
+	public int getGrantedPowerWatt() {
+		return grantCycle == root.currentGrantCycle ? grantedPowerWatt : 0;
+	}
+
+	/**
+	 * @return {@code true} if the demand and reserved power of this node or of any other node of the tree exceeds its saturation limit
+	 */
+	public boolean isAnySaturated() {
+		return root.saturatedNodeCount > 0;
+	}
+
+	/**
+	 * @return {@code true} if the demand and reserved power of this node or of any other node of the tree exceeds its overload limit
+	 */
+	public boolean isAnyOverloaded() {
+		return root.overloadedNodeCount > 0;
+	}
+
+	/**
+	 * Returns the node the given device is attached to.
+	 *
+	 * @param device
+	 *            cannot be {@code null}
+	 * @return never {@code null}; the root if the device is not attached to any other node
+	 */
+	PowerBudget getBudget(DeviceController device) {
+		PowerBudget result = null;
+		synchronized (root) {
+			if (!root.deviceBudgets.isEmpty()) {
+				result = root.deviceBudgets.get(device.getId());
+			}
+			if (result == null) {
+				result = root.homeServerBudgets.get(device.getHomeServer());
+			}
+		}
+		return result == null ? root : result;
+	}
+
+	/**
+	 * Returns the node the devices of the given server are attached to by default.
+	 *
+	 * @return never {@code null}
+	 */
+	PowerBudget getBudget(HomeServer server) {
+		final PowerBudget result;
+		synchronized (root) {
+			result = root.homeServerBudgets.get(server);
+		}
+		return result == null ? root : result;
+	}
+
+	/**
+	 * Incremented on every change of the tree structure or of the attachments.
+	 */
+	int getConfigurationVersion() {
+		synchronized (root) {
+			return root.configurationVersion;
+		}
+	}
+
+	/** Changes the limits of this node; used by the scheduler only. */
+	void setLimits(int overloadPowerLimitWatt, int saturationPowerLimitWatt) {
+		assert saturationPowerLimitWatt <= overloadPowerLimitWatt;
+		this.overloadPowerLimitWatt = overloadPowerLimitWatt;
+		this.saturationPowerLimitWatt = saturationPowerLimitWatt;
+		updateLimitFlags();
+	}
+
+	/** Adds the given (possibly negative) demand power to this node and all its ancestors. */
+	void addDemand(int deltaWatt) {
+		if (deltaWatt != 0) {
+			for (PowerBudget node = this; node != null; node = node.parent) {
+				node.demandPowerWatt += deltaWatt;
+				node.updateLimitFlags();
+			}
+		}
+	}
+
+	/** Adds the given (possibly negative) reserved power to this node and all its ancestors. */
+	void addReservation(int deltaWatt) {
+		if (deltaWatt != 0) {
+			for (PowerBudget node = this; node != null; node = node.parent) {
+				node.reservedPowerWatt += deltaWatt;
+				node.updateLimitFlags();
+			}
+		}
+	}
+
+	/** Resets the demand and reserved power of this subtree. */
+	void reset() {
+		synchronized (root) { // children may be added concurrently
+			demandPowerWatt = 0;
+			reservedPowerWatt = 0;
+			updateLimitFlags();
+			for (PowerBudget child : children) {
+				child.reset();
+			}
+		}
+	}
+
+	/** Resets the granted power of all nodes. */
+	void beginGrantCycle() {
+		root.currentGrantCycle++;
+	}
+
+	/**
+	 * @return the power [W] that can still be granted to a device of this node without exceeding the overload limit, less reserved power, of this node or of any
+	 *         of its ancestors; {@code >= 0}
+	 */
+	int getAvailablePowerWatt() {
+		int result = Integer.MAX_VALUE;
+		for (PowerBudget node = this; node != null; node = node.parent) {
+			result = Math.min(result, node.overloadPowerLimitWatt - node.reservedPowerWatt - node.getGrantedPowerWatt());
+		}
+		return Math.max(result, 0);
+	}
+
+	/**
+	 * Grants the given power if neither this node nor any of its ancestors exceed their overload limit, less reserved power, as a consequence.
+	 *
+	 * @return {@code true} if granted
+	 */
+	boolean tryGrant(int powerWatt) {
+		for (PowerBudget node = this; node != null; node = node.parent) {
+			if (node.getGrantedPowerWatt() + powerWatt > node.overloadPowerLimitWatt - node.reservedPowerWatt) {
+				return false;
+			}
+		}
+		grant(powerWatt);
+		return true;
+	}
+
+	/** Grants the given power to this node and all its ancestors unconditionally. */
+	void grant(int powerWatt) {
+		final int cycle = root.currentGrantCycle;
+		for (PowerBudget node = this; node != null; node = node.parent) {
+			if (node.grantCycle != cycle) {
+				node.grantCycle = cycle;
+				node.grantedPowerWatt = 0;
+			}
+			node.grantedPowerWatt += powerWatt;
+		}
+	}
+
+	private void updateLimitFlags() {
+		final int powerWatt = demandPowerWatt + reservedPowerWatt;
+		final boolean saturated = powerWatt > saturationPowerLimitWatt;
+		final boolean overloaded = powerWatt > overloadPowerLimitWatt;
+		if (saturated != this.saturated) {
+			this.saturated = saturated;
+			root.saturatedNodeCount += saturated ? 1 : -1;
+		}
+		if (overloaded != this.overloaded) {
+			this.overloaded = overloaded;
+			root.overloadedNodeCount += overloaded ? 1 : -1;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name + "[saturation: " + formatPower(saturationPowerLimitWatt) + ", overload: " + formatPower(overloadPowerLimitWatt) + "]";
+	}
+}
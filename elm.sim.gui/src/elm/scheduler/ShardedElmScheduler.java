@@ -0,0 +1,234 @@
+package elm.scheduler;
+
+import static elm.util.ElmLogFormatter.formatPower;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import elm.hs.api.ElmStatus;
+import elm.scheduler.model.HomeServer;
+
+/**
+ * Partitions the {@link HomeServer}s across a configurable number of {@link ElmScheduler} shards. Each shard runs the regular scheduling algorithm on its own
+ * partition and its own {@link Thread}, so that the shards schedule in parallel.
+ * <p>
+ * The shards share the global power limits, see {@link SharedPowerLimits}: the status of every shard is derived from the total demand of all shards, and in
+ * {@link ElmStatus#OVERLOAD} mode a shard grants power to its devices out of the power not claimed by the other shards. Hence a shard never limits its
+ * devices while the total demand is within the global limits, and the power granted by all shards never exceeds the overload limit.
+ * </p>
+ * <p>
+ * This scheduler's own {@link Thread} aggregates the status and the power of the shards. Since a shard only runs when its own devices change, this thread
+ * requests a scheduling cycle of all shards when the global status changes, and in {@link ElmStatus#OVERLOAD} mode when power has been released so that
+ * waiting devices of other shards can be admitted.
+ * </p>
+ * <p>
+ * <em>Note: </em>Across shards, power is admitted in the order the shards run rather than strictly in the order the consumptions started.
+ * </p>
+ * <p>
+ * <em>Note: </em>Every shard has its own {@link ElmScheduler#getPowerBudget() power-budget tree}; budgets spanning several shards are not supported.
+ * </p>
+ */
+public class ShardedElmScheduler extends AbstractElmScheduler {
+
+	/** Default number of shards: one per available processor. */
+	public static final int SHARD_COUNT_DEFAULT = Runtime.getRuntime().availableProcessors();
+
+	/** Above this limit the scheduler is in {@link ElmStatus#SATURATION} mode. */
+	private final int saturationPowerLimitWatt;
+
+	/** Above this limit the scheduler is in {@link ElmStatus#OVERLOAD} mode. */
+	private final int overloadPowerLimitWatt;
+
+	private final List<ElmScheduler> shards = new ArrayList<ElmScheduler>();
+	private final Map<HomeServer, ElmScheduler> shardsByHomeServer = new HashMap<HomeServer, ElmScheduler>();
+	private final int[] shardHomeServerCounts;
+	private final SharedPowerLimits sharedPowerLimits;
+
+	/** The status derived from the total demand of all shards as of the last cycle. */
+	private ElmStatus sharedStatus = ElmStatus.ON;
+
+	private int totalDemandPowerWatt;
+	private int totalGrantedPowerWatt;
+
+	/**
+	 * @param maxElectricalPowerWatt
+	 *            the maximum total electrical power in [Watt] that all the devices managed by this scheduler can use at any given time
+	 * @param saturationPowerLimitWatt
+	 *            the total electrical power threshold <em>before</em> the scheduler enters {@link ElmStatus#SATURATION} state.
+	 * @param shardCount
+	 *            the number of shards, must be {@code > 0}
+	 */
+	public ShardedElmScheduler(int maxElectricalPowerWatt, int saturationPowerLimitWatt, int shardCount) {
+		assert shardCount > 0;
+		overloadPowerLimitWatt = maxElectricalPowerWatt;
+		this.saturationPowerLimitWatt = saturationPowerLimitWatt;
+		shardHomeServerCounts = new int[shardCount];
+		sharedPowerLimits = new SharedPowerLimits(maxElectricalPowerWatt, saturationPowerLimitWatt, shardCount);
+
+		final ElmSchedulerChangeListener shardListener = createShardListener();
+		for (int i = 0; i < shardCount; i++) {
+			final ElmScheduler shard = new ElmScheduler(maxElectricalPowerWatt, saturationPowerLimitWatt);
+			shard.setSharedPowerLimits(sharedPowerLimits, i);
+			shard.addChangeListener(shardListener);
+			shards.add(shard);
+		}
+		log.info("saturation limit: " + formatPower(saturationPowerLimitWatt) + ", overload limit: " + formatPower(overloadPowerLimitWatt) + ", shards: "
+				+ shardCount);
+	}
+
+	public int getSaturationPowerLimitWatt() {
+		return saturationPowerLimitWatt;
+	}
+
+	public int getOverloadPowerLimitWatt() {
+		return overloadPowerLimitWatt;
+	}
+
+	public int getTotalDemandPowerWatt() {
+		return totalDemandPowerWatt;
+	}
+
+	public int getTotalGrantedPowerWatt() {
+		return totalGrantedPowerWatt;
+	}
+
+	/**
+	 * The shards can be configured individually, e.g. {@link ElmScheduler#setIncrementalMode(boolean) incremental mode}.
+	 *
+	 * @return never {@code null}
+	 */
+	public List<ElmScheduler> getShards() {
+		return Collections.unmodifiableList(shards);
+	}
+
+	/**
+	 * @return the shard the given {@link HomeServer} is assigned to, or {@code null} if it has not been added
+	 */
+	public synchronized ElmScheduler getShard(HomeServer server) {
+		return shardsByHomeServer.get(server);
+	}
+
+	@Override
+	public synchronized void start() {
+		for (ElmScheduler shard : shards) {
+			shard.start();
+		}
+		super.start();
+		requestSchedulingCycle();
+	}
+
+	@Override
+	public synchronized void stop() {
+		super.stop();
+		for (ElmScheduler shard : shards) {
+			shard.stop();
+		}
+	}
+
+	/**
+	 * Assigns the {@link HomeServer} to the shard with the fewest {@link HomeServer}s.
+	 */
+	@Override
+	public synchronized void addHomeServer(HomeServer server) {
+		if (shardsByHomeServer.containsKey(server)) {
+			return;
+		}
+		int index = 0;
+		for (int i = 1; i < shards.size(); i++) {
+			if (shardHomeServerCounts[i] < shardHomeServerCounts[index]) {
+				index = i;
+			}
+		}
+		final ElmScheduler shard = shards.get(index);
+		shard.addHomeServer(server);
+		shardsByHomeServer.put(server, shard);
+		shardHomeServerCounts[index]++;
+		homeServers.add(server); // the shard, not this scheduler, listens to the server
+	}
+
+	@Override
+	public synchronized void removeHomeServer(HomeServer server) {
+		final ElmScheduler shard = shardsByHomeServer.remove(server);
+		if (shard != null) {
+			shard.removeHomeServer(server);
+			shardHomeServerCounts[shards.indexOf(shard)]--;
+			homeServers.remove(server);
+		}
+	}
+
+	/**
+	 * Aggregates the status and the power of the shards, and requests scheduling cycles of the shards if necessary.
+	 * <p>
+	 * <em>Note: </em>This method is invoked from inside a {@code synchronized} section. Do not invoke long-running or blocking operations.
+	 * </p>
+	 */
+	@Override
+	protected void processDevices() {
+		int totalDemandPowerWatt = 0;
+		int totalGrantedPowerWatt = 0;
+		ElmStatus status = ElmStatus.ON;
+		for (int i = 0; i < shards.size(); i++) {
+			final ElmScheduler shard = shards.get(i);
+			totalDemandPowerWatt += shard.getTotalDemandPowerWatt();
+			totalGrantedPowerWatt += shard.getTotalGrantedPowerWatt();
+			if (shardHomeServerCounts[i] > 0 && shard.getStatus().compareTo(status) > 0) {
+				status = shard.getStatus();
+			}
+		}
+
+		final ElmStatus sharedStatus = sharedPowerLimits.getStatus();
+		if (sharedStatus != this.sharedStatus || sharedStatus == ElmStatus.OVERLOAD && totalGrantedPowerWatt < this.totalGrantedPowerWatt) {
+			this.sharedStatus = sharedStatus;
+			for (ElmScheduler shard : shards) {
+				shard.requestSchedulingCycle();
+			}
+		}
+
+		setStatus(status);
+		if (totalDemandPowerWatt != this.totalDemandPowerWatt) {
+			final int oldPowerWatt = this.totalDemandPowerWatt;
+			this.totalDemandPowerWatt = totalDemandPowerWatt;
+			for (ElmSchedulerChangeListener listener : listeners) {
+				listener.totalDemandPowerChanged(oldPowerWatt, totalDemandPowerWatt);
+			}
+		}
+		if (totalGrantedPowerWatt != this.totalGrantedPowerWatt) {
+			final int oldPowerWatt = this.totalGrantedPowerWatt;
+			this.totalGrantedPowerWatt = totalGrantedPowerWatt;
+			for (ElmSchedulerChangeListener listener : listeners) {
+				listener.totalGrantedPowerChanged(oldPowerWatt, totalGrantedPowerWatt);
+			}
+		}
+	}
+
+	private ElmSchedulerChangeListener createShardListener() {
+		// invoked on the shards' threads => must not block:
+		return new ElmSchedulerChangeListener() {
+
+			@Override
+			public void statusChanged(ElmStatus oldStatus, ElmStatus newStatus) {
+				requestSchedulingCycle();
+			}
+
+			@Override
+			public void totalDemandPowerChanged(int oldPowerWatt, int newPowerWatt) {
+				requestSchedulingCycle();
+			}
+
+			@Override
+			public void totalGrantedPowerChanged(int oldPowerWatt, int newPowerWatt) {
+				requestSchedulingCycle();
+			}
+
+			@Override
+			public void homeServerAliveChanged(HomeServer server, boolean alive) {
+				for (ElmSchedulerChangeListener listener : listeners) {
+					listener.homeServerAliveChanged(server, alive);
+				}
+			}
+		};
+	}
+}
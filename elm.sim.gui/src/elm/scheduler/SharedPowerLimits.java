@@ -0,0 +1,115 @@
+package elm.scheduler;
+
+import elm.hs.api.ElmStatus;
+
+/**
+ * The global power limits of a {@link ShardedElmScheduler}, shared by its {@link ElmScheduler} shards. In every scheduling cycle, a shard publishes its
+ * demand and the power it claims, i.e. the power it grants to its devices. The status of a shard is derived from the total demand of all shards; in
+ * {@link ElmStatus#OVERLOAD} mode, a shard may grant the power not claimed by the other shards. Since claims are made atomically, the power granted by all
+ * shards never exceeds the overload limit.
+ * <p>
+ * <em>Note: </em>The reserved power of a shard counts as both demand and claimed power.
+ * </p>
+ */
+class SharedPowerLimits {
+
+	/** Above this limit the shards are in {@link ElmStatus#SATURATION} mode. */
+	private final int saturationPowerLimitWatt;
+
+	/** Above this limit the shards are in {@link ElmStatus#OVERLOAD} mode. */
+	private final int overloadPowerLimitWatt;
+
+	private final int[] demandPowerWatt;
+	private final int[] claimedPowerWatt;
+
+	/**
+	 * @param overloadPowerLimitWatt
+	 *            the maximum total electrical power in [Watt] that the devices of all shards can use at any given time
+	 * @param saturationPowerLimitWatt
+	 *            must be {@code <= overloadPowerLimitWatt}
+	 * @param shardCount
+	 *            must be {@code > 0}
+	 */
+	SharedPowerLimits(int overloadPowerLimitWatt, int saturationPowerLimitWatt, int shardCount) {
+		assert saturationPowerLimitWatt <= overloadPowerLimitWatt;
+		assert shardCount > 0;
+		this.overloadPowerLimitWatt = overloadPowerLimitWatt;
+		this.saturationPowerLimitWatt = saturationPowerLimitWatt;
+		demandPowerWatt = new int[shardCount];
+		claimedPowerWatt = new int[shardCount];
+	}
+
+	int getSaturationPowerLimitWatt() {
+		return saturationPowerLimitWatt;
+	}
+
+	int getOverloadPowerLimitWatt() {
+		return overloadPowerLimitWatt;
+	}
+
+	/**
+	 * Publishes the demand of the given shard, which also claims it: outside {@link ElmStatus#OVERLOAD} mode every consumption is approved.
+	 *
+	 * @param shardIndex
+	 *            the index of the shard
+	 * @param powerWatt
+	 *            the demand and reserved power of the shard
+	 * @return the total demand power of all other shards
+	 */
+	synchronized int publishDemand(int shardIndex, int powerWatt) {
+		demandPowerWatt[shardIndex] = powerWatt;
+		claimedPowerWatt[shardIndex] = powerWatt;
+		int otherDemandPowerWatt = 0;
+		for (int i = 0; i < demandPowerWatt.length; i++) {
+			if (i != shardIndex) {
+				otherDemandPowerWatt += demandPowerWatt[i];
+			}
+		}
+		return otherDemandPowerWatt;
+	}
+
+	/**
+	 * Claims all power not claimed by the other shards for the given shard. Once the shard has granted power to its devices, it must
+	 * {@link #setClaimedPower(int, int) return} the unused power.
+	 *
+	 * @param shardIndex
+	 *            the index of the shard
+	 * @return the power claimed, including the reserved power of the shard; {@code >= 0}
+	 */
+	synchronized int claimAvailablePower(int shardIndex) {
+		long availablePowerWatt = overloadPowerLimitWatt;
+		for (int i = 0; i < claimedPowerWatt.length; i++) {
+			if (i != shardIndex) {
+				availablePowerWatt -= claimedPowerWatt[i];
+			}
+		}
+		claimedPowerWatt[shardIndex] = (int) Math.max(availablePowerWatt, 0);
+		return claimedPowerWatt[shardIndex];
+	}
+
+	/**
+	 * @param shardIndex
+	 *            the index of the shard
+	 * @param powerWatt
+	 *            the granted and reserved power of the shard
+	 */
+	synchronized void setClaimedPower(int shardIndex, int powerWatt) {
+		claimedPowerWatt[shardIndex] = powerWatt;
+	}
+
+	/**
+	 * @return {@link ElmStatus#ON}, {@link ElmStatus#SATURATION} or {@link ElmStatus#OVERLOAD}, depending on the total demand of all shards
+	 */
+	synchronized ElmStatus getStatus() {
+		long totalDemandPowerWatt = 0;
+		for (int powerWatt : demandPowerWatt) {
+			totalDemandPowerWatt += powerWatt;
+		}
+		if (totalDemandPowerWatt > overloadPowerLimitWatt) {
+			return ElmStatus.OVERLOAD;
+		} else if (totalDemandPowerWatt > saturationPowerLimitWatt) {
+			return ElmStatus.SATURATION;
+		}
+		return ElmStatus.ON;
+	}
+}
@@ -200,8 +200,43 @@ public interface DeviceController {
 	int getApprovedPowerWatt();
 
 	/**
-	 * The mean duration this device is being used.
+	 * The mean duration this device is being used, learned from its past consumptions that started at the same time of day as the current one.
 	 */
 	int getMeanConsumptionMillis();
 
+	/**
+	 * The duration that the given percentage of the consumptions of this device do not exceed, learned like {@link #getMeanConsumptionMillis()}.
+	 * 
+	 * @param percent
+	 *            {@code 0..100}
+	 */
+	int getConsumptionMillisPercentile(int percent);
+
+	/**
+	 * The number of times the polled device has stopped honouring a scald-protection limit it had honoured before, e.g. after a user override or a reboot.
+	 * Each drift has been corrected by issuing the limit again.
+	 */
+	int getDriftCount();
+
+	/**
+	 * Returns {@code true} if a scald-protection limit has been issued that no poll has shown the connected device honouring yet. The device must then be
+	 * polled even if the Home Server reports the devices unchanged, else a lost limit would go unnoticed.
+	 */
+	boolean isScaldProtectionPending();
+
+	/**
+	 * The {@link #getDriftCount() drifts} per hour since the device was first polled.
+	 */
+	double getDriftRatePerHour();
+
+	/**
+	 * The mean time [ms] from issuing a scald-protection limit until a poll has shown the device honouring it; {@code 0} if none has yet.
+	 */
+	long getMeanConvergenceMillis();
+
+	/**
+	 * The maximum time [ms] from issuing a scald-protection limit until a poll has shown the device honouring it, see {@link #getMeanConvergenceMillis()}.
+	 */
+	long getMaxConvergenceMillis();
+
 }
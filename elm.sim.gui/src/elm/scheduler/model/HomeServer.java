@@ -7,6 +7,7 @@ import java.util.logging.Logger;
 
 import elm.hs.api.Device;
 import elm.hs.api.ElmStatus;
+import elm.hs.api.HomeServerInternalAsyncService;
 import elm.hs.api.HomeServerInternalService;
 import elm.hs.api.Info;
 import elm.hs.api.Status;
@@ -18,6 +19,12 @@ public interface HomeServer {
 	/** {@link #isAlive()} will return {@code true} until this duration after the last {@link #updateLastHomeServerPollTime()} invocation. */
 	static final long POLL_TIME_TOLERANCE_MILLIS_DEFAULT = 2000;
 
+	/** The default of {@link #getMaxPendingUpdates()}: far more than the number of devices of a Home Server. */
+	static final int MAX_PENDING_UPDATES_DEFAULT = 256;
+
+	/** The default of {@link #getMaxParallelUpdates()}. */
+	static final int MAX_PARALLEL_UPDATES_DEFAULT = 4;
+
 	/**
 	 * Optional.
 	 * 
@@ -37,12 +44,13 @@ public interface HomeServer {
 	 * <p>
 	 * <em>Note: </em>Typically the {@code devices} passed to the method only contain an {@link Info} but <em>NOT</em> the {@link Status} block. However, the
 	 * {@link Status} block is required in some situations to make relevant decisions. The returned list of device IDs asks for more detailed device information
-	 * including the {@link Status} block.
+	 * including the {@link Status} block. The listeners are notified of the devices added, updated or removed in any case, i.e. also if some devices still
+	 * lack the {@link Status} block.
 	 * </p>
 	 * 
 	 * @param devices
 	 *            cannot be {@code null}
-	 * @return list of device IDs for which to pass more detailed information immediately; can be {@code null}
+	 * @return list of device IDs for which to pass more detailed information immediately, valid until the next invocation; can be {@code null}
 	 * @throws UnsupportedDeviceModelException
 	 *             if one of the devices does is not suitable for ELM
 	 */
@@ -52,6 +60,20 @@ public interface HomeServer {
 
 	DeviceController getDeviceController(String deviceId);
 
+	/**
+	 * Moves the {@link DeviceController}s that have been added or updated, and those that have been removed, since the last invocation of this method into the
+	 * given collections and clears the internal record. This enables the scheduler to process only those devices whose state has actually changed.
+	 * <p>
+	 * <em>Note: </em> This method should only be executed by the scheduler.
+	 * </p>
+	 *
+	 * @param updated
+	 *            receives the added or updated device controllers, cannot be {@code null}
+	 * @param removed
+	 *            receives the removed device controllers, cannot be {@code null}
+	 */
+	void fetchDeviceControllerChanges(Collection<DeviceController> updated, Collection<DeviceController> removed);
+
 	void setPollTimeToleranceMillis(long pollTimeToleranceMillis);
 
 	long getPollTimeToleranceMillis();
@@ -68,9 +90,20 @@ public interface HomeServer {
 	 */
 	boolean isAlive();
 
+	/**
+	 * Returns {@code true} if a device controller {@link DeviceController#isScaldProtectionPending() waits} for its device to honour a scald-protection limit;
+	 * the devices must then be polled and processed even if the Home Server reports them unchanged.
+	 */
+	boolean isScaldProtectionPending();
+
 	/**
 	 * Buffers a device update without executing them. This constitutes an asynchronous communication mechanism between the caller and a {@link HomeServer}.
 	 * <p>
+	 * Only the newest update of a device is buffered: it replaces an update of the same device that has not been executed yet, see
+	 * {@link #getMergedUpdateCount()}. An update of a device without a buffered update is dropped if {@link #getMaxPendingUpdates()} updates are buffered
+	 * already, see {@link #getDroppedUpdateCount()}. An update is never executed after a newer update of the same device.
+	 * </p>
+	 * <p>
 	 * <em>Note: </em> This method should only be executed by the scheduler.
 	 * </p>
 	 * 
@@ -79,6 +112,26 @@ public interface HomeServer {
 	 */
 	void putDeviceUpdate(RemoteDeviceUpdate update);
 
+	int getMaxPendingUpdates();
+
+	/**
+	 * @param maxPendingUpdates
+	 *            the maximum number of devices with a buffered update, {@code > 0}
+	 */
+	void setMaxPendingUpdates(int maxPendingUpdates);
+
+	/**
+	 * @return the number of updates {@link #putDeviceUpdate(RemoteDeviceUpdate) put} that have replaced an update of the same device before it was
+	 *         executed
+	 */
+	long getMergedUpdateCount();
+
+	/**
+	 * @return the number of updates {@link #putDeviceUpdate(RemoteDeviceUpdate) put} that have been dropped because {@link #getMaxPendingUpdates()} other
+	 *         devices had a buffered update
+	 */
+	long getDroppedUpdateCount();
+
 	/**
 	 * Device updates can be {@link #putDeviceUpdate(RemoteDeviceUpdate) put} one by one without the receiver even noticing. This method notifies all
 	 * {@link HomeServerChangeListener}s of these changes, notably the {@link HomeServerController}.
@@ -101,7 +154,12 @@ public interface HomeServer {
 	void dispatchElmUserFeedback(String deviceId, ElmStatus deviceStatus, int expectedWaitingTimeMillis);
 
 	/**
-	 * Executes pending updates.
+	 * Executes pending updates. The updates of different devices are executed concurrently, with up to {@link #getMaxParallelUpdates()} of them in flight, if
+	 * the client also implements {@link HomeServerInternalAsyncService}; else one after the other.
+	 * <p>
+	 * An update is not sent if the state of its device last confirmed by the server already equals the target state of the update, see
+	 * {@link #getSuppressedUpdateCount()}.
+	 * </p>
 	 * 
 	 * @param client
 	 *            cannot be {@code null}
@@ -110,6 +168,35 @@ public interface HomeServer {
 	 */
 	void executeRemoteDeviceUpdates(HomeServerInternalService client, Logger log);
 
+	int getMaxParallelUpdates();
+
+	/**
+	 * @param maxParallelUpdates
+	 *            the maximum number of device updates in flight at any time, {@code > 0}; {@code 1} executes them one after the other
+	 */
+	void setMaxParallelUpdates(int maxParallelUpdates);
+
+	/**
+	 * @return the number of device updates executed, whether successfully or not
+	 */
+	long getExecutedUpdateCount();
+
+	/**
+	 * @return the number of device updates not sent because the last confirmed state of their device already was their target state
+	 */
+	long getSuppressedUpdateCount();
+
+	/**
+	 * @return the mean latency of the {@link #getExecutedUpdateCount() executed} device updates: the time from the start of
+	 *         {@link #executeRemoteDeviceUpdates(HomeServerInternalService, Logger)} until an update has been executed, in [ms]
+	 */
+	long getMeanUpdateLatencyMillis();
+
+	/**
+	 * @return the maximum latency of the executed device updates, see {@link #getMeanUpdateLatencyMillis()}
+	 */
+	long getMaxUpdateLatencyMillis();
+
 	/**
 	 * Adds a listener.
 	 * <p>
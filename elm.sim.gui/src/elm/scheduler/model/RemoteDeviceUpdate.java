@@ -2,11 +2,14 @@ package elm.scheduler.model;
 
 import static elm.util.ElmLogFormatter.formatTemperature;
 
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import elm.hs.api.Device;
+import elm.hs.api.HomeServerInternalAsyncService;
 import elm.hs.api.HomeServerInternalService;
 import elm.util.ClientException;
+import elm.util.ClientFuture;
 
 public class RemoteDeviceUpdate {
 
@@ -34,6 +37,24 @@ public class RemoteDeviceUpdate {
 		return id;
 	}
 
+	/**
+	 * @return the new scald-protection temperature in [1/10°C], {@code null} if the update does not set it
+	 */
+	public Short getScaldProtectionTemperature() {
+		return scaldProtectionTemperatureUnits;
+	}
+
+	public boolean isClearScaldProtection() {
+		return clearScaldProtectionFlag;
+	}
+
+	/**
+	 * @return the reference temperature to restore when clearing the scald protection in [1/10°C], can be {@code null}
+	 */
+	public Short getPreviousDemandTemperature() {
+		return previousDemandTemperatureUnits;
+	}
+
 	/**
 	 * Sets the scald-protection temperature (i.e. a hard <em>upper</em> temperature limit) on the physical device.
 	 * 
@@ -69,20 +90,78 @@ public class RemoteDeviceUpdate {
 	 *            cannot be {@code null}
 	 * @param log
 	 *            cannot be {@code null}
+	 * @return the scald-protection temperature confirmed by the device in [1/10°C]; {@code 0} if it could not be set or if the update does not set it
 	 */
-	public void execute(HomeServerInternalService client, Logger log) throws ClientException {
+	public short execute(HomeServerInternalService client, Logger log) throws ClientException {
 		if (scaldProtectionTemperatureUnits != null) {
-			log.info("Device " + id + ": setting scald-protection temperature to " + formatTemperature(scaldProtectionTemperatureUnits));
+			logSettingScaldProtection(log);
 			short actualValueUnits = (short) client.setScaldProtectionTemperature(id, scaldProtectionTemperatureUnits);
 			if (actualValueUnits == 0) {
 				log.severe("Device " + id + ": scald-protection could not be set. Requested: " + formatTemperature(scaldProtectionTemperatureUnits));
 			}
+			return actualValueUnits;
+
+		} else if (clearScaldProtectionFlag) {
+			final Integer previousTemperatureUnits = clearingScaldProtection(log);
+			client.clearScaldProtection(id, previousTemperatureUnits);
+		}
+		return 0;
+	}
+
+	/**
+	 * Executes the updates without blocking the caller, see {@link #execute(HomeServerInternalService, Logger)}. The requests of the update are sent one
+	 * after the other.
+	 * 
+	 * @param client
+	 *            cannot be {@code null}
+	 * @param log
+	 *            cannot be {@code null}
+	 * @return completes with the confirmed scald-protection temperature when the updates have been executed, never {@code null}
+	 */
+	public ClientFuture<Short> executeAsync(HomeServerInternalAsyncService client, final Logger log) {
+		if (scaldProtectionTemperatureUnits != null) {
+			final short requestedValueUnits = scaldProtectionTemperatureUnits;
+			logSettingScaldProtection(log);
+			return client.setScaldProtectionTemperatureAsync(id, requestedValueUnits).then(new ClientFuture.Continuation<Short, Short>() {
+				@Override
+				public ClientFuture<Short> apply(Short actualValueUnits) {
+					if (actualValueUnits == null || actualValueUnits == 0) {
+						log.severe("Device " + id + ": scald-protection could not be set. Requested: " + formatTemperature(requestedValueUnits));
+						return ClientFuture.completed((short) 0);
+					}
+					return ClientFuture.completed(actualValueUnits);
+				}
+			});
 
 		} else if (clearScaldProtectionFlag) {
-			final Integer previousTemperatureUnits = previousDemandTemperatureUnits == null ? null : new Integer(previousDemandTemperatureUnits);
+			final Integer previousTemperatureUnits = clearingScaldProtection(log);
+			return client.clearScaldProtectionAsync(id, previousTemperatureUnits).then(new ClientFuture.Continuation<Void, Short>() {
+				@Override
+				public ClientFuture<Short> apply(Void result) {
+					return ClientFuture.completed((short) 0);
+				}
+			});
+		}
+		return ClientFuture.completed((short) 0);
+	}
+
+	private void logSettingScaldProtection(Logger log) {
+		if (log.isLoggable(Level.INFO)) {
+			log.info("Device " + id + ": setting scald-protection temperature to " + formatTemperature(scaldProtectionTemperatureUnits));
+		}
+	}
+
+	/**
+	 * Logs the clearing of the scald protection by {@link #execute(HomeServerInternalService, Logger)} and
+	 * {@link #executeAsync(HomeServerInternalAsyncService, Logger)}.
+	 * 
+	 * @return the reference temperature to restore in [1/10°C], {@code null} if unknown
+	 */
+	private Integer clearingScaldProtection(Logger log) {
+		if (log.isLoggable(Level.INFO)) {
 			final String previousTemperatureCelsius = previousDemandTemperatureUnits == null ? "unknown" : formatTemperature(previousDemandTemperatureUnits);
 			log.info("Device " + id + ": clearing scald protection, restoring previous temperature: " + previousTemperatureCelsius);
-			client.clearScaldProtection(id, previousTemperatureUnits);
 		}
+		return previousDemandTemperatureUnits == null ? null : Integer.valueOf(previousDemandTemperatureUnits);
 	}
 }
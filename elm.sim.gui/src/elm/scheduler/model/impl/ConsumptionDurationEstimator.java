@@ -0,0 +1,173 @@
+package elm.scheduler.model.impl;
+
+import java.util.TimeZone;
+
+import elm.scheduler.model.DeviceController;
+
+/**
+ * Learns the duration of the consumptions of a single device online and in constant memory, without storing the past consumptions.
+ * <p>
+ * The durations are kept in exponentially decayed histograms with logarithmically spaced buckets, one histogram per period of the day (night, morning, etc.)
+ * plus one for the whole day, so that recent consumptions weigh more than old ones. Estimates are taken from the histogram of the period the consumption
+ * started in; if that period has not seen enough consumptions yet, the whole-day histogram is used and, failing that, {@link #DEFAULT_DURATION_MILLIS}.
+ * </p>
+ * <p>
+ * <em>Note: </em>This class is thread-safe.
+ * </p>
+ */
+public class ConsumptionDurationEstimator {
+
+	/** The duration estimate before enough consumptions have been observed. */
+	public static final int DEFAULT_DURATION_MILLIS = 40_000;
+
+	/** Number of consumptions a histogram needs before it is used for estimates. */
+	public static final int MIN_OBSERVATIONS = 3;
+
+	/** The weight of every past consumption is multiplied by this factor on each new consumption in the same histogram. */
+	static final double DECAY = 0.9;
+
+	/** The number of periods a day is divided into. */
+	static final int PERIODS_PER_DAY = 6;
+
+	/** Lower bound of the first bucket; shorter consumptions are counted in the first bucket. */
+	static final int MIN_DURATION_MILLIS = 1_000;
+
+	/** Each bucket spans a factor of {@code 2^(1/BUCKETS_PER_DOUBLING)}. */
+	static final int BUCKETS_PER_DOUBLING = 4;
+
+	/** 1 s &hellip; 68 min; longer consumptions are counted in the last bucket. */
+	static final int BUCKET_COUNT = 12 * BUCKETS_PER_DOUBLING;
+
+	private static final long MILLIS_PER_DAY = 24 * 3600 * 1000L;
+
+	/** An exponentially decayed histogram of durations. */
+	private static final class Histogram {
+		final double[] weights = new double[BUCKET_COUNT];
+		double totalWeight;
+		double weightedDurationMillis;
+		int observations;
+
+		void add(int durationMillis) {
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				weights[i] *= DECAY;
+			}
+			weights[getBucket(durationMillis)] += 1.0;
+			totalWeight = totalWeight * DECAY + 1.0;
+			weightedDurationMillis = weightedDurationMillis * DECAY + durationMillis;
+			observations++;
+		}
+
+		int getMeanMillis() {
+			return (int) Math.round(weightedDurationMillis / totalWeight);
+		}
+
+		/** Interpolates logarithmically within the bucket holding the percentile. */
+		int getPercentileMillis(int percent) {
+			final double target = totalWeight * percent / 100.0;
+			double cumulated = 0;
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				if (weights[i] > 0 && cumulated + weights[i] >= target) {
+					final double fraction = (target - cumulated) / weights[i];
+					return (int) Math.round(getBucketLowerBoundMillis(i + fraction));
+				}
+				cumulated += weights[i];
+			}
+			return (int) Math.round(getBucketLowerBoundMillis(BUCKET_COUNT));
+		}
+	}
+
+	private final Histogram[] periods = new Histogram[PERIODS_PER_DAY];
+	private final Histogram day = new Histogram();
+	private final TimeZone timeZone;
+
+	public ConsumptionDurationEstimator() {
+		this(TimeZone.getDefault());
+	}
+
+	/**
+	 * @param timeZone
+	 *            defines the periods of the day, cannot be {@code null}
+	 */
+	public ConsumptionDurationEstimator(TimeZone timeZone) {
+		assert timeZone != null;
+		this.timeZone = timeZone;
+		for (int i = 0; i < PERIODS_PER_DAY; i++) {
+			periods[i] = new Histogram();
+		}
+	}
+
+	/**
+	 * Adds an observed consumption.
+	 *
+	 * @param startTime
+	 *            the time the consumption started
+	 * @param durationMillis
+	 *            {@code >= 0}
+	 */
+	public synchronized void addConsumption(long startTime, int durationMillis) {
+		assert durationMillis >= 0;
+		periods[getPeriod(startTime)].add(durationMillis);
+		day.add(durationMillis);
+	}
+
+	/**
+	 * @param startTime
+	 *            the time the consumption started, or {@link DeviceController#NO_CONSUMPTION} for an estimate independent of the time of day
+	 * @return the estimated mean duration [ms] of a consumption
+	 */
+	public synchronized int getMeanMillis(long startTime) {
+		final Histogram histogram = getHistogram(startTime);
+		return histogram == null ? DEFAULT_DURATION_MILLIS : histogram.getMeanMillis();
+	}
+
+	/**
+	 * @param startTime
+	 *            the time the consumption started, or {@link DeviceController#NO_CONSUMPTION} for an estimate independent of the time of day
+	 * @param percent
+	 *            {@code 0..100}
+	 * @return the estimated duration [ms] that the given percentage of the consumptions do not exceed
+	 */
+	public synchronized int getPercentileMillis(long startTime, int percent) {
+		assert percent >= 0 && percent <= 100;
+		final Histogram histogram = getHistogram(startTime);
+		return histogram == null ? DEFAULT_DURATION_MILLIS : histogram.getPercentileMillis(percent);
+	}
+
+	/**
+	 * @return the number of consumptions observed so far
+	 */
+	public synchronized int getObservations() {
+		return day.observations;
+	}
+
+	/**
+	 * @return {@code null} if not enough consumptions have been observed
+	 */
+	private Histogram getHistogram(long startTime) {
+		if (startTime != DeviceController.NO_CONSUMPTION) {
+			final Histogram period = periods[getPeriod(startTime)];
+			if (period.observations >= MIN_OBSERVATIONS) {
+				return period;
+			}
+		}
+		return day.observations >= MIN_OBSERVATIONS ? day : null;
+	}
+
+	private int getPeriod(long time) {
+		final long localTime = time + timeZone.getOffset(time);
+		final long timeOfDay = ((localTime % MILLIS_PER_DAY) + MILLIS_PER_DAY) % MILLIS_PER_DAY;
+		return (int) (timeOfDay * PERIODS_PER_DAY / MILLIS_PER_DAY);
+	}
+
+	static int getBucket(int durationMillis) {
+		if (durationMillis <= MIN_DURATION_MILLIS) {
+			return 0;
+		}
+		final int bucket = (int) (Math.log((double) durationMillis / MIN_DURATION_MILLIS) / Math.log(2) * BUCKETS_PER_DOUBLING);
+		return Math.min(bucket, BUCKET_COUNT - 1);
+	}
+
+	static double getBucketLowerBoundMillis(double bucket) {
+		return MIN_DURATION_MILLIS * Math.pow(2, bucket / BUCKETS_PER_DOUBLING);
+	}
+}
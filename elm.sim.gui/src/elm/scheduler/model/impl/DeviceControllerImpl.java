@@ -44,6 +44,15 @@ public class DeviceControllerImpl implements DeviceController {
 	/** Changes in flow (in 1/10 litre) below this threshold are ignored. */
 	private static final int FLOW_CHANGE_IGNORE_DELTA_UNITS = 5;
 
+	/**
+	 * The number of polls a device may take to honour a scald-protection limit once issued: the update is executed asynchronously. A limit not honoured by
+	 * then is issued again. The devices are polled while a limit is pending even if they are unchanged, see {@link #isScaldProtectionPending()}.
+	 */
+	static final int LIMIT_CONVERGENCE_POLLS = 10;
+
+	/** A time not set yet. */
+	private static final long UNDEFINED_TIME = -1;
+
 	/** Joule per gram and Kelvin. */
 	private static final double WATER_HEAT_CAPACITY = 4.192;
 
@@ -61,8 +70,16 @@ public class DeviceControllerImpl implements DeviceController {
 	/** Enable deterministic testing via a replacement of this time service. */
 	private ElmTimeService timeService = ElmTimeService.INSTANCE;
 
+	/**
+	 * The clock of the scald-protection metrics. This is not the {@link #timeService}: reading the latter would shift its deterministic time model.
+	 */
+	private ElmTimeService metricsTimeService = ElmTimeService.INSTANCE;
+
 	private long consumptionStartTime = NO_CONSUMPTION;
 
+	/** Learns the duration of the consumptions of this device. */
+	private final ConsumptionDurationEstimator consumptionDurations = new ConsumptionDurationEstimator();
+
 	/** The true flow at the physical device [1/10 litre]. */
 	private short deviceFlowUnits = 0;
 
@@ -87,12 +104,35 @@ public class DeviceControllerImpl implements DeviceController {
 	/** Temperature [1/10°C] set for scald protection. A value of {@value #UNDEFINED_TEMPERATURE} means scald protection is inactive. */
 	private short scaldProtectionTemperatureUnits = UNDEFINED_TEMPERATURE;
 
+	/** The {@link #metricsTimeService} time the current scald-protection limit has been issued. */
+	private long limitIssuedMillis;
+
+	/** The number of polls that have shown the device not honouring the current scald-protection limit since it has been issued. */
+	private int limitPendingPolls;
+
+	/** Whether a poll has shown the device honouring the current scald-protection limit. */
+	private boolean limitConverged;
+
+	private int driftCount;
+	private int convergenceCount;
+	private long convergenceMillisSum;
+	private long maxConvergenceMillis;
+
+	/** The {@link #metricsTimeService} time of the first {@link #update(Device)}, {@link #UNDEFINED_TIME} before. */
+	private long firstUpdateMillis = UNDEFINED_TIME;
+
 	/** The {@link ElmStatus} last communicated to the physical device. */
 	private ElmStatus lastDeviceStatus;
 
 	/** The waiting time last communicated to the physical device. */
 	private int lastWaitingTimeMillis;
 
+	/** The number of the last {@link HomeServerImpl#updateDeviceControllers(java.util.List) poll} that reported this device. */
+	int lastPoll;
+
+	/** The time of the last {@link HomeServer#updateLastHomeServerPollTime() Home Server poll}, {@code 0} if there was none. */
+	long lastPollTime;
+
 	public DeviceControllerImpl(HomeServer server, Device device) throws UnsupportedDeviceModelException {
 		this(server, device, null);
 	}
@@ -140,12 +180,23 @@ public class DeviceControllerImpl implements DeviceController {
 		this.timeService = timeService;
 	}
 
+	/**
+	 * @param metricsTimeService
+	 *            the clock of the {@link #getMeanConvergenceMillis() convergence} and {@link #getDriftRatePerHour() drift} metrics, cannot be {@code null}
+	 */
+	public void setMetricsTimeService(ElmTimeService metricsTimeService) {
+		assert metricsTimeService != null;
+		this.metricsTimeService = metricsTimeService;
+	}
+
 	/** Also used for testing. */
 	void setStatus(DeviceStatus newStatus) {
 		DeviceStatus oldStatus = status;
 		if (oldStatus != newStatus) {
 			status = newStatus;
-			info("new status: " + newStatus);
+			if (LOG.isLoggable(Level.INFO)) {
+				info("new status: " + newStatus);
+			}
 		}
 	}
 
@@ -185,13 +236,20 @@ public class DeviceControllerImpl implements DeviceController {
 			}
 		}
 
-		if (device.connected && status.in(INITIALIZING, NOT_CONNECTED)) {
+		if (device.connected && (status == INITIALIZING || status == NOT_CONNECTED)) { // not in(): varargs allocate on every poll
 			setStatus(READY);
 			homeServer.dispatchElmUserFeedback(id, ElmStatus.ON, 0);
 		} else if (!device.connected && status != ERROR) {
 			setStatus(NOT_CONNECTED);
 		}
 
+		if (firstUpdateMillis == UNDEFINED_TIME) {
+			firstUpdateMillis = metricsTimeService.currentTimeMillis();
+		}
+		if (status != NOT_CONNECTED && scaldProtectionTemperatureUnits != UNDEFINED_TEMPERATURE) {
+			reconcileScaldProtection(device._getSetpoint());
+		}
+
 		UpdateResult result = UpdateResult.NO_UPDATES;
 
 		if (device.status != null) {
@@ -288,6 +346,10 @@ public class DeviceControllerImpl implements DeviceController {
 	 */
 	void waterConsumptionEnded() {
 		info("consumption ended");
+		// the consumption ended by the poll that reported the end; reading the time service instead would shift its deterministic time model
+		if (consumptionStartTime != NO_CONSUMPTION && lastPollTime >= consumptionStartTime) {
+			consumptionDurations.addConsumption(consumptionStartTime, (int) Math.min(lastPollTime - consumptionStartTime, Integer.MAX_VALUE));
+		}
 		calculatedPowerWatt = 0;
 		consumptionStartTime = NO_CONSUMPTION;
 		setStatus(DeviceStatus.CONSUMPTION_ENDED); // requires approval by scheduler
@@ -317,7 +379,7 @@ public class DeviceControllerImpl implements DeviceController {
 				} else {
 					setStatus(CONSUMPTION_LIMITED);
 				}
-			} else if (status.in(READY, CONSUMPTION_ENDED) && newApprovedPowerWatt == NO_POWER) {
+			} else if ((status == READY || status == CONSUMPTION_ENDED) && newApprovedPowerWatt == NO_POWER) { // not in(): varargs allocate
 				setStatus(DENIED);
 				// use recorded reference temperature as reported by device
 				setUserDemandTemperatureUnits(deviceReferenceTemperatureUnits);
@@ -340,12 +402,61 @@ public class DeviceControllerImpl implements DeviceController {
 					scaldProtectionTemperatureUnits = toTemperatureLimitUnits(newApprovedPowerWatt);
 					assert scaldProtectionTemperatureUnits >= deviceModel.getTemperatureOff();
 					deviceUpdate.setScaldProtectionTemperature(scaldProtectionTemperatureUnits);
+					scaldProtectionIssued();
 				}
 				getHomeServer().putDeviceUpdate(deviceUpdate);
 			}
 		}
 	}
 
+	private void scaldProtectionIssued() {
+		limitIssuedMillis = metricsTimeService.currentTimeMillis();
+		limitPendingPolls = 0;
+		limitConverged = false;
+	}
+
+	/**
+	 * Closes the loop of the scald-protection limit: the device honours the limit if its polled setpoint does not exceed the limit. A device that has stopped
+	 * honouring the limit, e.g. after a reboot, has drifted; a device that has not started honouring it in time has lost the update. In both cases the limit
+	 * alone is issued again.
+	 * <p>
+	 * <em>Note: </em>The heater flag cannot tell whether the limit is honoured, see {@link #update(Device)}.
+	 * </p>
+	 * 
+	 * @param deviceSetpointUnits
+	 *            the setpoint reported by the device, in [1/10°C]
+	 */
+	private void reconcileScaldProtection(short deviceSetpointUnits) {
+		if (deviceSetpointUnits <= scaldProtectionTemperatureUnits) {
+			if (!limitConverged) {
+				limitConverged = true;
+				final long convergenceMillis = metricsTimeService.currentTimeMillis() - limitIssuedMillis;
+				convergenceCount++;
+				convergenceMillisSum += convergenceMillis;
+				maxConvergenceMillis = Math.max(maxConvergenceMillis, convergenceMillis);
+				if (LOG.isLoggable(Level.FINE)) {
+					log(Level.FINE, "scald protection " + formatTemperature(scaldProtectionTemperatureUnits) + " honoured after " + convergenceMillis + " ms", null);
+				}
+			}
+			return;
+		}
+		if (limitConverged) {
+			driftCount++;
+			log(Level.WARNING, "scald protection " + formatTemperature(scaldProtectionTemperatureUnits) + " no longer honoured, setpoint "
+					+ formatTemperature(deviceSetpointUnits) + "; issuing it again", null);
+		} else if (++limitPendingPolls >= LIMIT_CONVERGENCE_POLLS) {
+			log(Level.WARNING, "scald protection " + formatTemperature(scaldProtectionTemperatureUnits) + " not honoured after " + limitPendingPolls
+					+ " polls, setpoint " + formatTemperature(deviceSetpointUnits) + "; issuing it again", null);
+		} else {
+			return; // the update may not have been executed yet
+		}
+		final RemoteDeviceUpdate update = new RemoteDeviceUpdate(id);
+		update.setScaldProtectionTemperature(scaldProtectionTemperatureUnits);
+		scaldProtectionIssued();
+		homeServer.putDeviceUpdate(update);
+		homeServer.fireDeviceUpdatesPending();
+	}
+
 	@Override
 	public void updateUserFeedback(ElmStatus schedulerStatus, int expectedWaitingTimeMillis) {
 		assert schedulerStatus != null;
@@ -478,7 +589,9 @@ public class DeviceControllerImpl implements DeviceController {
 	}
 
 	private void log(Level level, String message, Throwable ex) {
-		LOG.log(level, "Device " + id + ": " + message, ex);
+		if (LOG.isLoggable(level)) {
+			LOG.log(level, "Device " + id + ": " + message, ex);
+		}
 	}
 
 	@Override
@@ -508,6 +621,42 @@ public class DeviceControllerImpl implements DeviceController {
 
 	@Override
 	public int getMeanConsumptionMillis() {
-		return 40_000; // TODO base on past consumptions
+		return consumptionDurations.getMeanMillis(consumptionStartTime);
+	}
+
+	@Override
+	public int getConsumptionMillisPercentile(int percent) {
+		return consumptionDurations.getPercentileMillis(consumptionStartTime, percent);
+	}
+
+	@Override
+	public synchronized int getDriftCount() {
+		return driftCount;
+	}
+
+	@Override
+	public boolean isScaldProtectionPending() {
+		return scaldProtectionTemperatureUnits != UNDEFINED_TEMPERATURE && !limitConverged && status != NOT_CONNECTED;
+	}
+
+	@Override
+	public synchronized double getDriftRatePerHour() {
+		final long observedMillis = firstUpdateMillis == UNDEFINED_TIME ? 0 : metricsTimeService.currentTimeMillis() - firstUpdateMillis;
+		return observedMillis <= 0 ? 0 : driftCount * 3_600_000.0 / observedMillis;
+	}
+
+	@Override
+	public synchronized long getMeanConvergenceMillis() {
+		return convergenceCount == 0 ? 0 : convergenceMillisSum / convergenceCount;
+	}
+
+	@Override
+	public synchronized long getMaxConvergenceMillis() {
+		return maxConvergenceMillis;
+	}
+
+	/** Used for testing. */
+	public ConsumptionDurationEstimator getConsumptionDurations() {
+		return consumptionDurations;
 	}
 }
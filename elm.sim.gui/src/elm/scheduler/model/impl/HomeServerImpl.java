@@ -10,15 +10,19 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import elm.hs.api.Device;
 import elm.hs.api.ElmStatus;
 import elm.hs.api.ElmUserFeedback;
+import elm.hs.api.HomeServerInternalAsyncService;
 import elm.hs.api.HomeServerInternalService;
 import elm.scheduler.ElmTimeService;
 import elm.scheduler.ElmUserFeedbackManager;
@@ -28,6 +32,9 @@ import elm.scheduler.model.DeviceController.UpdateResult;
 import elm.scheduler.model.HomeServer;
 import elm.scheduler.model.HomeServerChangeListener;
 import elm.scheduler.model.UnsupportedDeviceModelException;
+import elm.util.ClientCallback;
+import elm.util.ClientException;
+import elm.util.ClientFuture;
 
 public class HomeServerImpl implements HomeServer {
 
@@ -43,8 +50,39 @@ public class HomeServerImpl implements HomeServer {
 	private long isAliveCheckTime = timeService.currentTimeMillis();
 	private long pollTimeToleranceMillis = POLL_TIME_TOLERANCE_MILLIS_DEFAULT;
 
+	private final Logger log = Logger.getLogger(getClass().getName());
+
 	private final Map<String, DeviceController> deviceControllers = new HashMap<String, DeviceController>();
-	private List<RemoteDeviceUpdate> pendingUpdates;
+
+	/** The number of {@link #updateDeviceControllers(List)} invocations, identifies the devices absent from the last poll. */
+	private int pollCount;
+
+	/** Returned by {@link #updateDeviceControllers(List)}, reused. */
+	private final List<String> idsNeedingStatus = new ArrayList<String>();
+
+	/** Device controllers added or updated since the last {@link #fetchDeviceControllerChanges(Collection, Collection)}. */
+	private final Set<DeviceController> updatedDeviceControllers = new LinkedHashSet<DeviceController>();
+
+	/** Device controllers removed since the last {@link #fetchDeviceControllerChanges(Collection, Collection)}. */
+	private final Set<DeviceController> removedDeviceControllers = new LinkedHashSet<DeviceController>();
+
+	/**
+	 * The update of each device not executed yet, {@code null} if none. The updates are executed in the order of their devices' first pending update; a newer
+	 * update of a device replaces the pending one as only the newest target state matters.
+	 */
+	private Map<String, RemoteDeviceUpdate> pendingUpdates;
+	private int maxPendingUpdates = MAX_PENDING_UPDATES_DEFAULT;
+	private long mergedUpdateCount;
+	private long droppedUpdateCount;
+	private int maxParallelUpdates = MAX_PARALLEL_UPDATES_DEFAULT;
+	private long executedUpdateCount;
+	private long suppressedUpdateCount;
+	private long updateLatencyMillisSum;
+	private long maxUpdateLatencyMillis;
+
+	/** The last confirmed state of each device with an executed update. */
+	private final Map<String, DeviceShadow> deviceShadows = new HashMap<String, DeviceShadow>();
+
 	private List<HomeServerChangeListener> listeners = new ArrayList<HomeServerChangeListener>();
 
 	public HomeServerImpl(URI uri, String password, ElmUserFeedbackManager userFeedbackManager) {
@@ -84,38 +122,74 @@ public class HomeServerImpl implements HomeServer {
 	@Override
 	public synchronized List<String> updateDeviceControllers(List<Device> devices) throws UnsupportedDeviceModelException {
 		assert devices != null;
+		// invoked on every poll, mostly without changes => the steady state allocates nothing
 		UpdateResult updated = NO_UPDATES;
-		List<String> idsToRemove = new LinkedList<String>(deviceControllers.keySet());
-		List<String> idsNeedingStatus = new ArrayList<String>();
+		final int poll = ++pollCount;
+		int reportedCount = 0;
+		boolean added = false;
+		idsNeedingStatus.clear();
 
-		for (Device device : devices) {
+		for (int i = 0; i < devices.size(); i++) {
+			final Device device = devices.get(i);
 			final String id = device.id;
-			DeviceController deviceController = deviceControllers.get(id);
+			DeviceControllerImpl deviceController = (DeviceControllerImpl) deviceControllers.get(id);
 			// Add DeviceController for new device:
 			if (deviceController == null) {
 				deviceController = new DeviceControllerImpl(this, device);
-				((DeviceControllerImpl) deviceController).setTimeService(timeService);
+				deviceController.setTimeService(timeService);
 				deviceControllers.put(id, deviceController);
+				updatedDeviceControllers.add(deviceController);
+				added = true;
+			}
+			final DeviceShadow shadow = deviceShadows.get(id);
+			if (shadow != null) {
+				shadow.observe(device);
 			}
+			deviceController.lastPollTime = lastHomeServerPollTime;
 			final UpdateResult deviceControllerUpdate = deviceController.update(device);
 			if (deviceControllerUpdate == DEVICE_STATUS_REQUIRED) {
-				// need Status block for this device
+				// need Status block for this device; the device controller has not been updated
 				idsNeedingStatus.add(id);
+			} else if (deviceControllerUpdate != NO_UPDATES) {
+				updatedDeviceControllers.add(deviceController);
+				updated = updated.and(deviceControllerUpdate);
+			}
+			if (deviceController.lastPoll != poll) {
+				deviceController.lastPoll = poll;
+				reportedCount++;
 			}
-			updated = updated.and(deviceControllerUpdate);
-			idsToRemove.remove(id);
 		}
-		if (!idsNeedingStatus.isEmpty()) {
-			return idsNeedingStatus;
+		if (added) {
+			// the follow-up poll of an idle new device may not report any change => the scheduler must learn about the new device now
+			updated = updated.and(MINOR_UPDATES);
 		}
 
 		// Remove DeviceController for obsolete devices
-		for (String id : idsToRemove) {
-			deviceControllers.remove(id);
-			updated = updated.and(MINOR_UPDATES);
+		if (reportedCount < deviceControllers.size()) {
+			for (Iterator<DeviceController> i = deviceControllers.values().iterator(); i.hasNext();) {
+				final DeviceController deviceController = i.next();
+				if (((DeviceControllerImpl) deviceController).lastPoll != poll) {
+					i.remove();
+					deviceShadows.remove(deviceController.getId());
+					updatedDeviceControllers.remove(deviceController);
+					removedDeviceControllers.add(deviceController);
+					updated = updated.and(MINOR_UPDATES);
+				}
+			}
 		}
+		// the devices updated so far must reach the scheduler even if the Status block of others is never received:
 		fireDeviceControllersChanged(updated);
-		return null;
+		return idsNeedingStatus.isEmpty() ? null : idsNeedingStatus;
+	}
+
+	@Override
+	public synchronized boolean isScaldProtectionPending() {
+		for (DeviceController deviceController : deviceControllers.values()) {
+			if (deviceController.isScaldProtectionPending()) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	@Override
@@ -128,6 +202,21 @@ public class HomeServerImpl implements HomeServer {
 		return deviceControllers.get(id);
 	}
 
+	@Override
+	public synchronized void fetchDeviceControllerChanges(Collection<DeviceController> updated, Collection<DeviceController> removed) {
+		assert updated != null;
+		assert removed != null;
+		// invoked on every scheduling cycle, mostly without changes:
+		if (!updatedDeviceControllers.isEmpty()) {
+			updated.addAll(updatedDeviceControllers);
+			updatedDeviceControllers.clear();
+		}
+		if (!removedDeviceControllers.isEmpty()) {
+			removed.addAll(removedDeviceControllers);
+			removedDeviceControllers.clear();
+		}
+	}
+
 	/** Used for testing. */
 	public void setTimeService(ElmTimeService timeService) {
 		assert timeService != null;
@@ -162,36 +251,304 @@ public class HomeServerImpl implements HomeServer {
 	public synchronized void putDeviceUpdate(RemoteDeviceUpdate update) {
 		assert update != null;
 		if (pendingUpdates == null) {
-			pendingUpdates = new ArrayList<RemoteDeviceUpdate>();
+			pendingUpdates = new LinkedHashMap<String, RemoteDeviceUpdate>();
+		}
+		// a replaced update keeps its position:
+		if (pendingUpdates.put(update.getId(), update) != null) {
+			mergedUpdateCount++;
+		} else if (pendingUpdates.size() > maxPendingUpdates) {
+			pendingUpdates.remove(update.getId());
+			droppedUpdateCount++;
+			log.warning((getName() == null ? getUri() : getName()) + ": " + maxPendingUpdates + " device updates pending, dropped update of device "
+					+ update.getId());
 		}
-		pendingUpdates.add(update);
 	}
 
 	/**
 	 * Used for testing.
 	 */
 	public synchronized List<RemoteDeviceUpdate> getPendingUpdates() {
-		return pendingUpdates == null ? null : Collections.unmodifiableList(pendingUpdates);
+		return pendingUpdates == null ? null : Collections.unmodifiableList(new ArrayList<RemoteDeviceUpdate>(pendingUpdates.values()));
+	}
+
+	@Override
+	public synchronized int getMaxPendingUpdates() {
+		return maxPendingUpdates;
 	}
 
+	@Override
+	public synchronized void setMaxPendingUpdates(int maxPendingUpdates) {
+		assert maxPendingUpdates > 0;
+		this.maxPendingUpdates = maxPendingUpdates;
+	}
+
+	@Override
+	public synchronized long getMergedUpdateCount() {
+		return mergedUpdateCount;
+	}
+
+	@Override
+	public synchronized long getDroppedUpdateCount() {
+		return droppedUpdateCount;
+	}
+
+	@Override
+	public synchronized int getMaxParallelUpdates() {
+		return maxParallelUpdates;
+	}
+
+	@Override
+	public synchronized void setMaxParallelUpdates(int maxParallelUpdates) {
+		assert maxParallelUpdates > 0;
+		this.maxParallelUpdates = maxParallelUpdates;
+	}
+
+	@Override
+	public synchronized long getExecutedUpdateCount() {
+		return executedUpdateCount;
+	}
+
+	@Override
+	public synchronized long getSuppressedUpdateCount() {
+		return suppressedUpdateCount;
+	}
+
+	@Override
+	public synchronized long getMeanUpdateLatencyMillis() {
+		return executedUpdateCount == 0 ? 0 : updateLatencyMillisSum / executedUpdateCount;
+	}
+
+	@Override
+	public synchronized long getMaxUpdateLatencyMillis() {
+		return maxUpdateLatencyMillis;
+	}
+
+	/**
+	 * Executes the pending updates, those of different devices concurrently if the client supports {@link HomeServerInternalAsyncService non-blocking}
+	 * requests. This method returns when all updates have been executed so that the updates put in the meantime are executed after them.
+	 */
 	@Override
 	public void executeRemoteDeviceUpdates(HomeServerInternalService client, Logger log) {
 		assert client != null;
 		assert log != null;
-		List<RemoteDeviceUpdate> updates;
-		// we don't want to hold the lock during the update execution
+		final Map<String, RemoteDeviceUpdate> updates;
+		final int maxParallel;
+		// we don't want to hold the lock during the update execution; updates put in the meantime are executed next time, i.e. after these ones
 		synchronized (this) {
 			if (pendingUpdates == null) {
 				return;
 			}
 			updates = pendingUpdates;
 			pendingUpdates = null;
+			maxParallel = maxParallelUpdates;
+			// the previous updates have been executed => the shadows are up to date:
+			for (Iterator<RemoteDeviceUpdate> i = updates.values().iterator(); i.hasNext();) {
+				final RemoteDeviceUpdate update = i.next();
+				final DeviceShadow shadow = deviceShadows.get(update.getId());
+				if (shadow != null && shadow.isReached(update)) {
+					i.remove();
+					suppressedUpdateCount++;
+					log.fine("Device " + update.getId() + ": target state confirmed already, update suppressed");
+				}
+			}
+			if (updates.isEmpty()) {
+				return;
+			}
+		}
+		final long startNanos = System.nanoTime();
+		if (maxParallel > 1 && updates.size() > 1 && client instanceof HomeServerInternalAsyncService) {
+			final Execution execution = new Execution(updates.values(), (HomeServerInternalAsyncService) client, log, startNanos);
+			try {
+				execution.run(maxParallel);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt(); // the updates in flight complete anyway
+				return;
+			}
+		} else {
+			for (RemoteDeviceUpdate update : updates.values()) {
+				try {
+					updateConfirmed(update, update.execute(client, log));
+				} catch (Exception e) {
+					log.log(Level.SEVERE, "Remote device update failed: " + e.getMessage(), e);
+					updateFailed(update);
+				}
+				updateExecuted(update, startNanos, log);
+			}
+		}
+		if (log.isLoggable(Level.INFO)) {
+			log.info((getName() == null ? getUri() : getName()) + ": " + updates.size() + " device update(s) executed in "
+					+ (System.nanoTime() - startNanos) / 1_000_000 + " ms");
+		}
+	}
+
+	/**
+	 * Records the latency of an update: the time from the start of {@link #executeRemoteDeviceUpdates(HomeServerInternalService, Logger)} until the update
+	 * has been executed.
+	 */
+	private void updateExecuted(RemoteDeviceUpdate update, long startNanos, Logger log) {
+		final long latencyMillis = (System.nanoTime() - startNanos) / 1_000_000;
+		log.fine("Device " + update.getId() + ": update executed after " + latencyMillis + " ms");
+		synchronized (this) {
+			executedUpdateCount++;
+			updateLatencyMillisSum += latencyMillis;
+			maxUpdateLatencyMillis = Math.max(maxUpdateLatencyMillis, latencyMillis);
+		}
+	}
+
+	/**
+	 * Records the state of the device confirmed by the server.
+	 * 
+	 * @param confirmedScaldProtectionTemperatureUnits
+	 *            see {@link RemoteDeviceUpdate#execute(HomeServerInternalService, Logger)}
+	 */
+	private synchronized void updateConfirmed(RemoteDeviceUpdate update, short confirmedScaldProtectionTemperatureUnits) {
+		DeviceShadow shadow = deviceShadows.get(update.getId());
+		if (shadow == null) {
+			shadow = new DeviceShadow();
+			deviceShadows.put(update.getId(), shadow);
+		}
+		shadow.confirm(update, confirmedScaldProtectionTemperatureUnits);
+	}
+
+	/**
+	 * The update may have been executed partially => the state of the device is unknown.
+	 */
+	private synchronized void updateFailed(RemoteDeviceUpdate update) {
+		deviceShadows.remove(update.getId());
+	}
+
+	/**
+	 * The state of a physical device as last confirmed by the responses to its {@link RemoteDeviceUpdate}s. The polls report the setpoint only, the
+	 * scald-protection flag and temperature are known from the responses alone.
+	 */
+	private static class DeviceShadow {
+		/** {@code null} if unknown. */
+		Boolean scaldProtected;
+		/** The confirmed scald-protection temperature, in [1/10°C]; valid if {@link #scaldProtected}. */
+		short scaldProtectionTemperatureUnits;
+		/** In [1/10°C], {@link DeviceController#UNDEFINED_TEMPERATURE} if unknown. */
+		short setpointUnits = DeviceController.UNDEFINED_TEMPERATURE;
+
+		/**
+		 * @return {@code true} if the device is known to be in the target state of {@code update} already
+		 */
+		boolean isReached(RemoteDeviceUpdate update) {
+			final Short scaldProtectionTemperature = update.getScaldProtectionTemperature();
+			if (scaldProtectionTemperature != null) {
+				// the scald-protection temperature is confirmed in FULL DEGREES Celsius:
+				return Boolean.TRUE.equals(scaldProtected) && scaldProtectionTemperatureUnits == scaldProtectionTemperature / 10 * 10
+						&& setpointUnits == scaldProtectionTemperature;
+			} else if (update.isClearScaldProtection()) {
+				final Short previousDemandTemperature = update.getPreviousDemandTemperature();
+				return Boolean.FALSE.equals(scaldProtected) && (previousDemandTemperature == null || setpointUnits == previousDemandTemperature);
+			}
+			return false;
+		}
+
+		void confirm(RemoteDeviceUpdate update, short confirmedScaldProtectionTemperatureUnits) {
+			final Short scaldProtectionTemperature = update.getScaldProtectionTemperature();
+			if (scaldProtectionTemperature != null) {
+				if (confirmedScaldProtectionTemperatureUnits == 0) {
+					invalidate(); // could not be set
+				} else {
+					scaldProtected = Boolean.TRUE;
+					scaldProtectionTemperatureUnits = confirmedScaldProtectionTemperatureUnits;
+					setpointUnits = scaldProtectionTemperature;
+				}
+			} else if (update.isClearScaldProtection()) {
+				scaldProtected = Boolean.FALSE;
+				final Short previousDemandTemperature = update.getPreviousDemandTemperature();
+				if (previousDemandTemperature != null) {
+					setpointUnits = previousDemandTemperature;
+				}
+			}
 		}
-		for (RemoteDeviceUpdate update : updates) {
+
+		/**
+		 * Accounts for the changes not made by updates: the user may change the setpoint of a device that is not scald-protected, and a device may be reset
+		 * while disconnected or stop honouring its scald protection; the controller then issues the protection again, which must not be suppressed.
+		 */
+		void observe(Device device) {
+			if (!device.connected) {
+				invalidate();
+			} else if (Boolean.TRUE.equals(scaldProtected)) {
+				if (device._getSetpoint() > setpointUnits) {
+					invalidate();
+				}
+			} else if (setpointUnits != DeviceController.UNDEFINED_TEMPERATURE && device._getSetpoint() != setpointUnits) {
+				setpointUnits = DeviceController.UNDEFINED_TEMPERATURE;
+			}
+		}
+
+		void invalidate() {
+			scaldProtected = null;
+			setpointUnits = DeviceController.UNDEFINED_TEMPERATURE;
+		}
+	}
+
+	/** Updates executing concurrently: the shared state between the waiting caller and the update callbacks. */
+	private class Execution {
+		final Iterator<RemoteDeviceUpdate> updates;
+		final HomeServerInternalAsyncService client;
+		final Logger log;
+		final long startNanos;
+		int runningCount;
+
+		Execution(Collection<RemoteDeviceUpdate> updates, HomeServerInternalAsyncService client, Logger log, long startNanos) {
+			this.updates = updates.iterator();
+			this.client = client;
+			this.log = log;
+			this.startNanos = startNanos;
+		}
+
+		/**
+		 * Executes the updates with up to {@code maxParallel} of them in flight and blocks until all have been executed; each device has only one.
+		 */
+		synchronized void run(int maxParallel) throws InterruptedException {
+			while (runningCount < maxParallel && updates.hasNext()) {
+				executeNext();
+			}
+			while (runningCount > 0) {
+				wait();
+			}
+		}
+
+		/**
+		 * <em>Note: </em>This method must be invoked from inside a {@code synchronized} section.
+		 */
+		void executeNext() {
+			final RemoteDeviceUpdate update = updates.next();
+			runningCount++;
+			ClientFuture<Short> executed;
 			try {
-				update.execute(client, log);
-			} catch (Exception e) {
-				log.log(Level.SEVERE, "Remote device update failed: " + e.getMessage(), e);
+				executed = update.executeAsync(client, log);
+			} catch (RuntimeException e) {
+				executed = ClientFuture.failed(new ClientException(ClientException.Error.APPLICATION_DATA_ERROR, e.getMessage(), e));
+			}
+			executed.addCallback(new ClientCallback<Short>() {
+				@Override
+				public void completed(Short confirmedScaldProtectionTemperatureUnits) {
+					updateConfirmed(update, confirmedScaldProtectionTemperatureUnits);
+					done(update);
+				}
+
+				@Override
+				public void failed(ClientException e) {
+					log.log(Level.SEVERE, "Remote device update failed: " + e.getMessage(), e);
+					updateFailed(update);
+					done(update);
+				}
+			});
+		}
+
+		void done(RemoteDeviceUpdate update) {
+			updateExecuted(update, startNanos, log);
+			synchronized (this) {
+				runningCount--;
+				if (updates.hasNext()) {
+					executeNext();
+				}
+				notifyAll();
 			}
 		}
 	}
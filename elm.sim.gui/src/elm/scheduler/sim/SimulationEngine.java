@@ -0,0 +1,108 @@
+package elm.scheduler.sim;
+
+import java.util.PriorityQueue;
+
+/**
+ * A single-threaded discrete-event simulation engine. Events are {@link Runnable}s scheduled at a virtual time; the engine executes them in time order and
+ * advances the {@link VirtualTimeService} to the time of each event before executing it. Events scheduled for the same time are executed in the order they
+ * were scheduled.
+ * <p>
+ * <em>Note: </em>This class is not thread-safe; events must be scheduled from within other events or before {@link #run(long)}.
+ * </p>
+ */
+public class SimulationEngine {
+
+	private static final class ScheduledEvent implements Comparable<ScheduledEvent> {
+		final long time;
+		final long sequenceNumber;
+		final Runnable event;
+
+		ScheduledEvent(long time, long sequenceNumber, Runnable event) {
+			this.time = time;
+			this.sequenceNumber = sequenceNumber;
+			this.event = event;
+		}
+
+		@Override
+		public int compareTo(ScheduledEvent other) {
+			if (time != other.time) {
+				return time < other.time ? -1 : 1;
+			}
+			return Long.compare(sequenceNumber, other.sequenceNumber);
+		}
+	}
+
+	private final VirtualTimeService timeService;
+	private final PriorityQueue<ScheduledEvent> events = new PriorityQueue<ScheduledEvent>();
+	private long nextSequenceNumber;
+	private long executedEventCount;
+
+	/**
+	 * @param startTime
+	 *            the initial virtual time [ms since the epoch]
+	 */
+	public SimulationEngine(long startTime) {
+		timeService = new VirtualTimeService(startTime);
+	}
+
+	/**
+	 * @return the virtual clock, to be passed to the simulated components; never {@code null}
+	 */
+	public VirtualTimeService getTimeService() {
+		return timeService;
+	}
+
+	public long getTime() {
+		return timeService.currentTimeMillis();
+	}
+
+	/**
+	 * @param time
+	 *            the virtual time, cannot be earlier than the current time
+	 * @param event
+	 *            cannot be {@code null}
+	 */
+	public void schedule(long time, Runnable event) {
+		assert time >= getTime();
+		assert event != null;
+		events.add(new ScheduledEvent(time, nextSequenceNumber++, event));
+	}
+
+	/**
+	 * @param delayMillis
+	 *            {@code >= 0}
+	 * @param event
+	 *            cannot be {@code null}
+	 */
+	public void scheduleAfter(long delayMillis, Runnable event) {
+		assert delayMillis >= 0;
+		schedule(getTime() + delayMillis, event);
+	}
+
+	/**
+	 * Executes all events up to and including the given time, then advances the clock to that time.
+	 *
+	 * @param endTime
+	 *            the virtual time to run to
+	 */
+	public void run(long endTime) {
+		ScheduledEvent next;
+		while ((next = events.peek()) != null && next.time <= endTime) {
+			events.poll();
+			timeService.advanceTo(next.time);
+			next.event.run();
+			executedEventCount++;
+		}
+		if (endTime > getTime()) {
+			timeService.advanceTo(endTime);
+		}
+	}
+
+	public long getExecutedEventCount() {
+		return executedEventCount;
+	}
+
+	public int getPendingEventCount() {
+		return events.size();
+	}
+}
@@ -0,0 +1,549 @@
+package elm.scheduler.sim;
+
+import static elm.util.ElmLogFormatter.formatPower;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import elm.hs.api.Device;
+import elm.hs.api.ElmStatus;
+import elm.scheduler.ElmScheduler;
+import elm.scheduler.ElmSchedulerChangeListener;
+import elm.scheduler.ElmUserFeedbackManager;
+import elm.scheduler.model.HomeServer;
+import elm.scheduler.model.HomeServerChangeListener;
+import elm.scheduler.model.UnsupportedDeviceModelException;
+import elm.scheduler.model.impl.HomeServerImpl;
+import elm.util.ClientException;
+
+/**
+ * Runs the real {@link ElmScheduler}, {@link HomeServerImpl} and {@link elm.scheduler.model.impl.DeviceControllerImpl} against {@link SyntheticDevice}s on
+ * the virtual clock of a {@link SimulationEngine}, headless and single-threaded. The simulation replaces the wall-clock threads of the productive setup:
+ * <ul>
+ * <li>the Home Server polls of the {@code HomeServerController}, every {@link #getPollingIntervalMillis() polling interval}</li>
+ * <li>the scheduler's event loop: a scheduling cycle immediately after urgent device changes and after every {@link #getSchedulingIntervalMillis()
+ * scheduling interval}</li>
+ * <li>the execution of remote device updates, after an {@link #getActuationLatencyMillis() actuation latency}</li>
+ * </ul>
+ * The users open their taps at random following a daily profile with peaks in the morning and in the evening.
+ * <p>
+ * <em>Note: </em>A poll of a Home Server whose devices have not changed since its previous poll only updates the server's poll time; the device controllers
+ * would not have reported any updates anyway. This keeps the cost of a simulation proportional to the number of consumptions rather than to the number of
+ * polls.
+ * </p>
+ */
+public class SiteSimulation {
+
+	private static final long HOUR_MILLIS = 3600 * 1000L;
+
+	/** The Home Server polls are staggered across the polling interval in this many groups. */
+	private static final int POLL_GROUPS = 10;
+
+	/** Relative frequency of consumptions for every hour of the day. */
+	private static final double[] HOURLY_PROFILE = { 0.2, 0.1, 0.1, 0.1, 0.2, 0.8, 3.0, 3.5, 2.0, 1.0, 0.8, 1.0, 1.5, 1.0, 0.6, 0.6, 0.8, 1.2, 2.0, 2.5, 2.5,
+			1.8, 1.2, 0.5 };
+
+	private int homeServerCount = 250;
+	private int devicesPerHomeServer = 20;
+	private int overloadPowerLimitWatt = 3_000_000;
+	private int saturationPowerLimitWatt = 2_500_000;
+	private int consumptionsPerDeviceAndDay = 20;
+	private int pollingIntervalMillis = 1_000;
+	private int schedulingIntervalMillis = ElmScheduler.SCHEDULING_INTERVAL_MILLIS_DEFAULT;
+	private int actuationLatencyMillis = 100;
+	private boolean incrementalMode = true;
+	private long idleLimitReleaseDelayMillis = 10_000L;
+	private long seed = 1L;
+
+	private SimulationEngine engine;
+	private ElmScheduler scheduler;
+	private Random random;
+	private final List<SyntheticHomeServer> syntheticServers = new ArrayList<SyntheticHomeServer>();
+	private boolean schedulingCycleRequested;
+	private int schedulingCycleCount;
+
+	// Statistics:
+	private final Map<ElmStatus, Long> statusMillis = new EnumMap<ElmStatus, Long>(ElmStatus.class);
+	private long statusChangeTime;
+	private int peakDemandPowerWatt;
+	private int peakGrantedPowerWatt;
+	private long runMillis;
+
+	public int getHomeServerCount() {
+		return homeServerCount;
+	}
+
+	public void setHomeServerCount(int homeServerCount) {
+		assert homeServerCount > 0 && homeServerCount < 1000;
+		this.homeServerCount = homeServerCount;
+	}
+
+	public int getDevicesPerHomeServer() {
+		return devicesPerHomeServer;
+	}
+
+	public void setDevicesPerHomeServer(int devicesPerHomeServer) {
+		assert devicesPerHomeServer > 0 && devicesPerHomeServer < 1000;
+		this.devicesPerHomeServer = devicesPerHomeServer;
+	}
+
+	public int getOverloadPowerLimitWatt() {
+		return overloadPowerLimitWatt;
+	}
+
+	public int getSaturationPowerLimitWatt() {
+		return saturationPowerLimitWatt;
+	}
+
+	/**
+	 * @param overloadPowerLimitWatt
+	 *            the maximum total power of the site
+	 * @param saturationPowerLimitWatt
+	 *            must be {@code <= overloadPowerLimitWatt}
+	 */
+	public void setPowerLimits(int overloadPowerLimitWatt, int saturationPowerLimitWatt) {
+		assert saturationPowerLimitWatt <= overloadPowerLimitWatt;
+		this.overloadPowerLimitWatt = overloadPowerLimitWatt;
+		this.saturationPowerLimitWatt = saturationPowerLimitWatt;
+	}
+
+	public int getConsumptionsPerDeviceAndDay() {
+		return consumptionsPerDeviceAndDay;
+	}
+
+	public void setConsumptionsPerDeviceAndDay(int consumptionsPerDeviceAndDay) {
+		assert consumptionsPerDeviceAndDay > 0;
+		this.consumptionsPerDeviceAndDay = consumptionsPerDeviceAndDay;
+	}
+
+	public int getPollingIntervalMillis() {
+		return pollingIntervalMillis;
+	}
+
+	public void setPollingIntervalMillis(int pollingIntervalMillis) {
+		assert pollingIntervalMillis > 0;
+		this.pollingIntervalMillis = pollingIntervalMillis;
+	}
+
+	public int getSchedulingIntervalMillis() {
+		return schedulingIntervalMillis;
+	}
+
+	public void setSchedulingIntervalMillis(int schedulingIntervalMillis) {
+		assert schedulingIntervalMillis > 0;
+		this.schedulingIntervalMillis = schedulingIntervalMillis;
+	}
+
+	public int getActuationLatencyMillis() {
+		return actuationLatencyMillis;
+	}
+
+	public void setActuationLatencyMillis(int actuationLatencyMillis) {
+		assert actuationLatencyMillis >= 0;
+		this.actuationLatencyMillis = actuationLatencyMillis;
+	}
+
+	public boolean isIncrementalMode() {
+		return incrementalMode;
+	}
+
+	/**
+	 * @see ElmScheduler#setIncrementalMode(boolean)
+	 */
+	public void setIncrementalMode(boolean incrementalMode) {
+		this.incrementalMode = incrementalMode;
+	}
+
+	public long getIdleLimitReleaseDelayMillis() {
+		return idleLimitReleaseDelayMillis;
+	}
+
+	/**
+	 * @see ElmScheduler#setIdleLimitReleaseDelayMillis(long)
+	 */
+	public void setIdleLimitReleaseDelayMillis(long idleLimitReleaseDelayMillis) {
+		this.idleLimitReleaseDelayMillis = idleLimitReleaseDelayMillis;
+	}
+
+	/**
+	 * Runs with the same seed and configuration yield the same results.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets up the site and simulates the given period.
+	 *
+	 * @param durationMillis
+	 *            the virtual duration, {@code > 0}
+	 */
+	public void run(long durationMillis) throws UnsupportedDeviceModelException {
+		assert durationMillis > 0;
+		final long wallClockStartTime = System.currentTimeMillis();
+		engine = new SimulationEngine(0L);
+		random = new Random(seed);
+		scheduler = new ElmScheduler(overloadPowerLimitWatt, saturationPowerLimitWatt);
+		scheduler.setTimeService(engine.getTimeService());
+		scheduler.setIncrementalMode(incrementalMode);
+		scheduler.setIdleLimitReleaseDelayMillis(idleLimitReleaseDelayMillis);
+		scheduler.addChangeListener(createStatisticsListener());
+		final ElmUserFeedbackManager feedbackManager = new ElmUserFeedbackManager();
+		final Logger log = Logger.getLogger(getClass().getName());
+		final int pollGroupCount = Math.min(homeServerCount, POLL_GROUPS);
+		final List<List<HomeServer>> pollGroups = new ArrayList<List<HomeServer>>();
+		final List<List<SyntheticHomeServer>> syntheticPollGroups = new ArrayList<List<SyntheticHomeServer>>();
+		for (int i = 0; i < pollGroupCount; i++) {
+			pollGroups.add(new ArrayList<HomeServer>());
+			syntheticPollGroups.add(new ArrayList<SyntheticHomeServer>());
+		}
+
+		for (int i = 0; i < homeServerCount; i++) {
+			final SyntheticHomeServer syntheticServer = new SyntheticHomeServer(String.format("hs%03d", i), engine);
+			syntheticServers.add(syntheticServer);
+			final HomeServerImpl server = new HomeServerImpl(URI.create("http://" + syntheticServer.getName()), "pw", feedbackManager);
+			server.setName(syntheticServer.getName());
+			server.setTimeService(engine.getTimeService());
+			for (int j = 0; j < devicesPerHomeServer; j++) {
+				final SyntheticDevice device = syntheticServer.addDevice(String.format("D012%03d%03d", i, j));
+				scheduleNextConsumption(device);
+			}
+			try {
+				feedbackManager.addFeedbackServer(syntheticServer, syntheticServer.getFeedbackDevices().feeback.deviceIds);
+			} catch (ClientException e) {
+				throw new IllegalStateException(e); // not thrown by the synthetic server
+			}
+			server.addChangeListener(createHomeServerListener(syntheticServer, log));
+			scheduler.addHomeServer(server);
+			pollGroups.get(i % pollGroupCount).add(server);
+			syntheticPollGroups.get(i % pollGroupCount).add(syntheticServer);
+		}
+		for (int i = 0; i < pollGroupCount; i++) {
+			// stagger the polls across the polling interval:
+			engine.schedule((long) i * pollingIntervalMillis / pollGroupCount, createPoll(pollGroups.get(i), syntheticPollGroups.get(i), feedbackManager));
+		}
+		engine.schedule(schedulingIntervalMillis, new Runnable() {
+			@Override
+			public void run() {
+				runSchedulingCycle();
+				engine.scheduleAfter(schedulingIntervalMillis, this);
+			}
+		});
+
+		engine.run(durationMillis);
+		accountStatusTime(scheduler.getStatus());
+		for (SyntheticHomeServer server : syntheticServers) {
+			for (SyntheticDevice device : server.getDevices()) {
+				device.accountEnergy(engine.getTime());
+			}
+		}
+		runMillis = System.currentTimeMillis() - wallClockStartTime;
+	}
+
+	/**
+	 * Emulates the Home Server polls by the {@code HomeServerController}s of a group of servers.
+	 * 
+	 * @param servers
+	 *            the servers as seen by the scheduler
+	 * @param syntheticServers
+	 *            the respective simulated servers
+	 */
+	private Runnable createPoll(final List<HomeServer> servers, final List<SyntheticHomeServer> syntheticServers,
+			final ElmUserFeedbackManager feedbackManager) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < servers.size(); i++) {
+					poll(servers.get(i), syntheticServers.get(i), feedbackManager);
+				}
+				engine.scheduleAfter(pollingIntervalMillis, this);
+			}
+		};
+	}
+
+	/**
+	 * Emulates a single Home Server poll by the {@code HomeServerController}.
+	 */
+	private void poll(HomeServer server, SyntheticHomeServer syntheticServer, ElmUserFeedbackManager feedbackManager) {
+		try {
+			feedbackManager.sendFeedack(syntheticServer);
+		} catch (ClientException e) {
+			throw new IllegalStateException(e); // not thrown by the synthetic server
+		}
+		server.updateLastHomeServerPollTime();
+		if (syntheticServer.takeChanged()) {
+			try {
+				final List<Device> devices = syntheticServer.getRegisteredDevices();
+				final List<String> devicesNeedingStatus = server.updateDeviceControllers(devices);
+				if (devicesNeedingStatus != null) {
+					for (String id : devicesNeedingStatus) {
+						for (int i = 0; i < devices.size(); i++) {
+							if (devices.get(i).id.equals(id)) {
+								devices.set(i, syntheticServer.getDeviceStatus(id));
+							}
+						}
+					}
+					server.updateDeviceControllers(devices);
+				}
+			} catch (UnsupportedDeviceModelException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * Emulates the scheduler's event loop and the {@code HomeServerController}'s execution of remote device updates.
+	 */
+	private HomeServerChangeListener createHomeServerListener(final SyntheticHomeServer syntheticServer, final Logger log) {
+		return new HomeServerChangeListener() {
+			private boolean actuationPending;
+
+			@Override
+			public void devicesControllersUpdated(HomeServer server, boolean urgent) {
+				if (urgent && !schedulingCycleRequested) {
+					schedulingCycleRequested = true;
+					engine.scheduleAfter(0, new Runnable() {
+						@Override
+						public void run() {
+							runSchedulingCycle();
+						}
+					});
+				}
+			}
+
+			@Override
+			public void deviceUpdatesPending(final HomeServer server) {
+				if (!actuationPending) {
+					actuationPending = true;
+					engine.scheduleAfter(actuationLatencyMillis, new Runnable() {
+						@Override
+						public void run() {
+							actuationPending = false;
+							server.executeRemoteDeviceUpdates(syntheticServer, log);
+						}
+					});
+				}
+			}
+		};
+	}
+
+	private void runSchedulingCycle() {
+		schedulingCycleRequested = false;
+		schedulingCycleCount++;
+		scheduler.runSchedulingCycle();
+	}
+
+	/**
+	 * Schedules the next consumption of the device as a non-homogeneous Poisson process following {@link #HOURLY_PROFILE} (by thinning).
+	 */
+	private void scheduleNextConsumption(final SyntheticDevice device) {
+		double maxWeight = 0;
+		double totalWeight = 0;
+		for (double weight : HOURLY_PROFILE) {
+			maxWeight = Math.max(maxWeight, weight);
+			totalWeight += weight;
+		}
+		final double maxRatePerMilli = consumptionsPerDeviceAndDay * maxWeight / totalWeight / HOUR_MILLIS;
+		long time = engine.getTime();
+		do {
+			time += (long) (-Math.log(1.0 - random.nextDouble()) / maxRatePerMilli);
+		} while (random.nextDouble() * maxWeight > HOURLY_PROFILE[(int) (time / HOUR_MILLIS % 24)]);
+
+		engine.schedule(time, new Runnable() {
+			@Override
+			public void run() {
+				// showers, dish washing and hand washing:
+				final double kind = random.nextDouble();
+				final long durationMillis;
+				final short flowUnits;
+				final short setpointUnits;
+				if (kind < 0.15) {
+					durationMillis = 60_000 + (long) (-Math.log(1.0 - random.nextDouble()) * 300_000);
+					flowUnits = (short) (80 + random.nextInt(21));
+					setpointUnits = (short) (380 + random.nextInt(41));
+				} else if (kind < 0.4) {
+					durationMillis = 10_000 + (long) (-Math.log(1.0 - random.nextDouble()) * 50_000);
+					flowUnits = (short) (50 + random.nextInt(31));
+					setpointUnits = (short) (420 + random.nextInt(81));
+				} else {
+					durationMillis = 3_000 + (long) (-Math.log(1.0 - random.nextDouble()) * 17_000);
+					flowUnits = (short) (40 + random.nextInt(31));
+					setpointUnits = (short) (350 + random.nextInt(61));
+				}
+				device.startConsumption(engine.getTime(), flowUnits, setpointUnits);
+				engine.scheduleAfter(durationMillis, new Runnable() {
+					@Override
+					public void run() {
+						device.endConsumption(engine.getTime());
+						scheduleNextConsumption(device);
+					}
+				});
+			}
+		});
+	}
+
+	private ElmSchedulerChangeListener createStatisticsListener() {
+		return new ElmSchedulerChangeListener() {
+
+			@Override
+			public void statusChanged(ElmStatus oldStatus, ElmStatus newStatus) {
+				accountStatusTime(oldStatus);
+			}
+
+			@Override
+			public void totalDemandPowerChanged(int oldPowerWatt, int newPowerWatt) {
+				peakDemandPowerWatt = Math.max(peakDemandPowerWatt, newPowerWatt);
+			}
+
+			@Override
+			public void totalGrantedPowerChanged(int oldPowerWatt, int newPowerWatt) {
+				peakGrantedPowerWatt = Math.max(peakGrantedPowerWatt, newPowerWatt);
+			}
+
+			@Override
+			public void homeServerAliveChanged(HomeServer server, boolean alive) {
+				// not simulated
+			}
+		};
+	}
+
+	/** Adds the time since the last status change to the given status. */
+	private void accountStatusTime(ElmStatus status) {
+		final long time = engine.getTime();
+		final Long millis = statusMillis.get(status);
+		statusMillis.put(status, (millis == null ? 0L : millis) + time - statusChangeTime);
+		statusChangeTime = time;
+	}
+
+	public ElmScheduler getScheduler() {
+		return scheduler;
+	}
+
+	public List<SyntheticHomeServer> getSyntheticHomeServers() {
+		return syntheticServers;
+	}
+
+	public int getSchedulingCycleCount() {
+		return schedulingCycleCount;
+	}
+
+	/**
+	 * @return the virtual time [ms] the scheduler spent in the given status
+	 */
+	public long getStatusMillis(ElmStatus status) {
+		final Long millis = statusMillis.get(status);
+		return millis == null ? 0L : millis;
+	}
+
+	public int getPeakDemandPowerWatt() {
+		return peakDemandPowerWatt;
+	}
+
+	public int getPeakGrantedPowerWatt() {
+		return peakGrantedPowerWatt;
+	}
+
+	public int getConsumptionCount() {
+		int result = 0;
+		for (SyntheticHomeServer server : syntheticServers) {
+			for (SyntheticDevice device : server.getDevices()) {
+				result += device.getConsumptionCount();
+			}
+		}
+		return result;
+	}
+
+	public int getUserFeedbackCount() {
+		int result = 0;
+		for (SyntheticHomeServer server : syntheticServers) {
+			result += server.getUserFeedbackCount();
+		}
+		return result;
+	}
+
+	public int getRemoteUpdateCount() {
+		int result = 0;
+		for (SyntheticHomeServer server : syntheticServers) {
+			result += server.getRemoteUpdateCount();
+		}
+		return result;
+	}
+
+	/**
+	 * @return the share of the demanded energy that was actually supplied, {@code 0..1}
+	 */
+	public double getSuppliedEnergyRatio() {
+		double demand = 0;
+		double supplied = 0;
+		for (SyntheticHomeServer server : syntheticServers) {
+			for (SyntheticDevice device : server.getDevices()) {
+				demand += device.getDemandEnergyJoule();
+				supplied += device.getSuppliedEnergyJoule();
+			}
+		}
+		return demand == 0 ? 1.0 : supplied / demand;
+	}
+
+	/**
+	 * @return the total time [ms] devices were consuming with less power than demanded
+	 */
+	public long getCurtailedMillis() {
+		long result = 0;
+		for (SyntheticHomeServer server : syntheticServers) {
+			for (SyntheticDevice device : server.getDevices()) {
+				result += device.getCurtailedMillis();
+			}
+		}
+		return result;
+	}
+
+	public void printReport(PrintStream out) {
+		out.println("Home Servers: " + homeServerCount + ", devices: " + homeServerCount * devicesPerHomeServer + ", simulated: " + engine.getTime()
+				/ HOUR_MILLIS + " h in " + runMillis + " ms (" + engine.getExecutedEventCount() + " events)");
+		out.println("Limits: saturation " + formatPower(saturationPowerLimitWatt) + ", overload " + formatPower(overloadPowerLimitWatt));
+		out.println("Consumptions: " + getConsumptionCount() + ", scheduling cycles: " + schedulingCycleCount + ", remote device updates: "
+				+ getRemoteUpdateCount() + ", user feedback: " + getUserFeedbackCount());
+		out.println("Peak demand: " + formatPower(peakDemandPowerWatt) + ", peak granted: " + formatPower(peakGrantedPowerWatt));
+		for (ElmStatus status : ElmStatus.values()) {
+			if (getStatusMillis(status) > 0) {
+				out.println("Time in " + status + ": " + getStatusMillis(status) / 1000 + " s");
+			}
+		}
+		out.println(String.format("Supplied energy: %.2f %%, curtailed consumption time: %d s", getSuppliedEnergyRatio() * 100, getCurtailedMillis() / 1000));
+	}
+
+	/**
+	 * Simulates a full day of a site.
+	 *
+	 * @param args
+	 *            optional: {@code <home servers> <devices per home server> <hours> <overload limit [kW]>}
+	 */
+	public static void main(String[] args) throws Exception {
+		final Logger elmLogger = Logger.getLogger("elm");
+		elmLogger.setLevel(Level.WARNING);
+		final SiteSimulation simulation = new SiteSimulation();
+		int hours = 24;
+		if (args.length > 0) {
+			simulation.setHomeServerCount(Integer.parseInt(args[0]));
+		}
+		if (args.length > 1) {
+			simulation.setDevicesPerHomeServer(Integer.parseInt(args[1]));
+		}
+		if (args.length > 2) {
+			hours = Integer.parseInt(args[2]);
+		}
+		if (args.length > 3) {
+			final int overloadPowerLimitWatt = Integer.parseInt(args[3]) * 1000;
+			simulation.setPowerLimits(overloadPowerLimitWatt, overloadPowerLimitWatt * 5 / 6);
+		}
+		simulation.run(hours * HOUR_MILLIS);
+		simulation.printReport(System.out);
+	}
+}
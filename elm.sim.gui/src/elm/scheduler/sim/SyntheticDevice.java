@@ -0,0 +1,193 @@
+package elm.scheduler.sim;
+
+import elm.hs.api.Device;
+import elm.hs.api.DeviceCharacteristics.DeviceModel;
+import elm.hs.api.Error;
+import elm.hs.api.Info;
+import elm.hs.api.Status;
+import elm.scheduler.model.DeviceController;
+
+/**
+ * A simulated {@link DeviceModel#SIM} device as seen by a Home Server: the user opens and closes the tap, the scheduler sets and clears scald protection. The
+ * device keeps track of the energy demanded by the user and of the energy actually supplied.
+ */
+public class SyntheticDevice {
+
+	/** Joule per gram and Kelvin. */
+	private static final double WATER_HEAT_CAPACITY = 4.192;
+
+	/** Intake-water temperature [1/10°C]. */
+	private static final short INTAKE_WATER_TEMPERATURE_UNITS = 100;
+
+	private final String id;
+	private final DeviceModel model = DeviceModel.SIM;
+	private final SyntheticHomeServer server;
+
+	/** The reference temperature [1/10°C] set by the user. */
+	private short setpointUnits = 380;
+
+	/** [1/10 litre/min]. */
+	private short flowUnits;
+
+	/** {@link DeviceController#UNDEFINED_TEMPERATURE} if scald protection is inactive. */
+	private short scaldProtectionTemperatureUnits = DeviceController.UNDEFINED_TEMPERATURE;
+
+	private long lastChangeTime;
+	private double demandEnergyJoule;
+	private double suppliedEnergyJoule;
+	private long curtailedMillis;
+	private int consumptionCount;
+
+	/**
+	 * @param server
+	 *            cannot be {@code null}
+	 * @param id
+	 *            a {@link Device#id} of a {@link DeviceModel#SIM} device, cannot be {@code null}
+	 */
+	SyntheticDevice(SyntheticHomeServer server, String id) {
+		assert server != null;
+		assert id != null && DeviceModel.getModel(id) == DeviceModel.SIM;
+		this.server = server;
+		this.id = id;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public boolean isConsuming() {
+		return flowUnits > 0;
+	}
+
+	/**
+	 * The user opens the tap.
+	 */
+	void startConsumption(long time, short flowUnits, short setpointUnits) {
+		assert flowUnits > 0;
+		accountEnergy(time);
+		this.flowUnits = flowUnits;
+		this.setpointUnits = setpointUnits;
+		consumptionCount++;
+		server.deviceChanged();
+	}
+
+	/**
+	 * The user closes the tap.
+	 */
+	void endConsumption(long time) {
+		accountEnergy(time);
+		flowUnits = 0;
+		server.deviceChanged();
+	}
+
+	void setScaldProtectionTemperature(long time, short temperatureUnits) {
+		accountEnergy(time);
+		scaldProtectionTemperatureUnits = temperatureUnits;
+		server.deviceChanged();
+	}
+
+	void clearScaldProtection(long time, Integer previousTemperatureUnits) {
+		accountEnergy(time);
+		scaldProtectionTemperatureUnits = DeviceController.UNDEFINED_TEMPERATURE;
+		if (previousTemperatureUnits != null) {
+			setpointUnits = previousTemperatureUnits.shortValue();
+		}
+		server.deviceChanged();
+	}
+
+	/**
+	 * The power [W] needed for the user's choice of temperature and flow.
+	 */
+	public int getDemandPowerWatt() {
+		return calculatePowerWatt(setpointUnits);
+	}
+
+	/**
+	 * The power [W] actually consumed, possibly limited by scald protection.
+	 */
+	public int getActualPowerWatt() {
+		return calculatePowerWatt(getEffectiveTemperatureUnits());
+	}
+
+	/**
+	 * Accounts the energy demanded and supplied since the last change.
+	 */
+	void accountEnergy(long time) {
+		final long intervalMillis = time - lastChangeTime;
+		if (flowUnits > 0 && intervalMillis > 0) {
+			final int demandPowerWatt = getDemandPowerWatt();
+			final int actualPowerWatt = getActualPowerWatt();
+			demandEnergyJoule += demandPowerWatt * intervalMillis / 1000.0;
+			suppliedEnergyJoule += actualPowerWatt * intervalMillis / 1000.0;
+			if (actualPowerWatt < demandPowerWatt) {
+				curtailedMillis += intervalMillis;
+			}
+		}
+		lastChangeTime = time;
+	}
+
+	public double getDemandEnergyJoule() {
+		return demandEnergyJoule;
+	}
+
+	public double getSuppliedEnergyJoule() {
+		return suppliedEnergyJoule;
+	}
+
+	/**
+	 * @return the time [ms] the device was consuming with less power than demanded
+	 */
+	public long getCurtailedMillis() {
+		return curtailedMillis;
+	}
+
+	public int getConsumptionCount() {
+		return consumptionCount;
+	}
+
+	/**
+	 * @param withStatus
+	 *            {@code true} for a {@link Device} with a {@link Status} block, else with an {@link Info} block only
+	 * @return a new {@link Device} as returned by the Home Server API, never {@code null}
+	 */
+	Device toDevice(boolean withStatus) {
+		final Device device = new Device();
+		device.id = id;
+		device.connected = true;
+		// like a real device, the heater flag is on while the user demands hot water even if scald protection keeps the heater off:
+		final boolean heaterOn = getDemandPowerWatt() > 0;
+		if (withStatus) {
+			device.status = new Status();
+			// if the power is limited, the setpoint is NOT the user-defined setpoint:
+			device.status.setpoint = getEffectiveTemperatureUnits();
+			device.status.tIn = INTAKE_WATER_TEMPERATURE_UNITS;
+			device.status.tOut = device.status.setpoint;
+			device.status.flow = flowUnits;
+			device.status.powerMax = model.getPowerMaxUnits();
+			device.status.power = (short) (getActualPowerWatt() * model.getPowerMaxUnits() / model.getPowerMaxWatt());
+			device.status.error = Error.OK.getCode();
+		} else {
+			device.info = new Info();
+			// like a real device, the Info block reports the setpoint in effect, too:
+			device.info.setpoint = getEffectiveTemperatureUnits();
+			device.info.error = Error.OK.getCode();
+		}
+		device.setHeaterOn(heaterOn);
+		return device;
+	}
+
+	private short getEffectiveTemperatureUnits() {
+		if (scaldProtectionTemperatureUnits != DeviceController.UNDEFINED_TEMPERATURE && scaldProtectionTemperatureUnits < setpointUnits) {
+			return scaldProtectionTemperatureUnits;
+		}
+		return setpointUnits;
+	}
+
+	private int calculatePowerWatt(short temperatureUnits) {
+		if (flowUnits == 0 || temperatureUnits <= model.getTemperatureOff() || temperatureUnits <= INTAKE_WATER_TEMPERATURE_UNITS) {
+			return 0;
+		}
+		final int powerWatt = (int) (WATER_HEAT_CAPACITY * (temperatureUnits - INTAKE_WATER_TEMPERATURE_UNITS) / 10 * flowUnits * 100 / 60);
+		return Math.min(powerWatt, model.getPowerMaxWatt());
+	}
+}
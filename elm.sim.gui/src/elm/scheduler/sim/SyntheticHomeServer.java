@@ -0,0 +1,153 @@
+package elm.scheduler.sim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import elm.hs.api.Device;
+import elm.hs.api.ElmUserFeedback;
+import elm.hs.api.ElmUserFeedbackService;
+import elm.hs.api.Feedback;
+import elm.hs.api.HomeServerInternalService;
+import elm.hs.api.HomeServerResponse;
+import elm.util.ClientException;
+
+/**
+ * A simulated Home Server with its {@link SyntheticDevice}s. It serves the device polls of the simulation, executes the scheduler's remote device updates
+ * and receives the user feedback in-process, on the virtual clock.
+ */
+public class SyntheticHomeServer implements HomeServerInternalService, ElmUserFeedbackService {
+
+	private final String name;
+	private final SimulationEngine engine;
+	private final List<SyntheticDevice> devices = new ArrayList<SyntheticDevice>();
+	private final Map<String, SyntheticDevice> devicesById = new HashMap<String, SyntheticDevice>();
+
+	/** A device has changed since the last {@link #takeChanged()}. */
+	private boolean changed = true;
+
+	private int remoteUpdateCount;
+	private int userFeedbackCount;
+
+	/**
+	 * @param name
+	 *            cannot be {@code null}
+	 * @param engine
+	 *            cannot be {@code null}
+	 */
+	SyntheticHomeServer(String name, SimulationEngine engine) {
+		assert name != null;
+		assert engine != null;
+		this.name = name;
+		this.engine = engine;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	SyntheticDevice addDevice(String id) {
+		final SyntheticDevice device = new SyntheticDevice(this, id);
+		devices.add(device);
+		devicesById.put(id, device);
+		changed = true;
+		return device;
+	}
+
+	public List<SyntheticDevice> getDevices() {
+		return Collections.unmodifiableList(devices);
+	}
+
+	/**
+	 * @return the number of scald-protection commands executed
+	 */
+	public int getRemoteUpdateCount() {
+		return remoteUpdateCount;
+	}
+
+	/**
+	 * @return the number of user feedback items received
+	 */
+	public int getUserFeedbackCount() {
+		return userFeedbackCount;
+	}
+
+	void deviceChanged() {
+		changed = true;
+	}
+
+	/**
+	 * @return {@code true} if a device has changed since the last invocation
+	 */
+	boolean takeChanged() {
+		final boolean result = changed;
+		changed = false;
+		return result;
+	}
+
+	/**
+	 * Like the public Home Server API: the registered devices with their {@link elm.hs.api.Info} blocks.
+	 */
+	List<Device> getRegisteredDevices() {
+		final List<Device> result = new ArrayList<Device>(devices.size());
+		for (SyntheticDevice device : devices) {
+			result.add(device.toDevice(false));
+		}
+		return result;
+	}
+
+	/**
+	 * Like the public Home Server API: a single device with its {@link elm.hs.api.Status} block.
+	 *
+	 * @return {@code null} if there is no such device
+	 */
+	Device getDeviceStatus(String id) {
+		final SyntheticDevice device = devicesById.get(id);
+		return device == null ? null : device.toDevice(true);
+	}
+
+	@Override
+	public Short setScaldProtectionTemperature(String deviceID, int newTemperatureUnits) throws ClientException {
+		final SyntheticDevice device = getDevice(deviceID);
+		device.setScaldProtectionTemperature(engine.getTime(), (short) newTemperatureUnits);
+		remoteUpdateCount++;
+		return (short) newTemperatureUnits;
+	}
+
+	@Override
+	public void clearScaldProtection(String deviceID, Integer previousTemperatureUnits) throws ClientException {
+		final SyntheticDevice device = getDevice(deviceID);
+		device.clearScaldProtection(engine.getTime(), previousTemperatureUnits);
+		remoteUpdateCount++;
+	}
+
+	@Override
+	public boolean supportsUserFeedback() throws ClientException {
+		return true;
+	}
+
+	@Override
+	public HomeServerResponse getFeedbackDevices() throws ClientException {
+		final HomeServerResponse response = new HomeServerResponse();
+		response.success = true;
+		response.feeback = new Feedback();
+		response.feeback.deviceIds = new ArrayList<String>(devicesById.keySet());
+		response.total = devices.size();
+		return response;
+	}
+
+	@Override
+	public void updateUserFeedback(List<ElmUserFeedback> feedback) throws ClientException {
+		userFeedbackCount += feedback.size();
+	}
+
+	private SyntheticDevice getDevice(String deviceID) throws ClientException {
+		final SyntheticDevice device = devicesById.get(deviceID);
+		if (device == null) {
+			throw new ClientException(ClientException.Error.APPLICATION_DATA_ERROR, "Unknown device " + deviceID, null);
+		}
+		return device;
+	}
+}
@@ -0,0 +1,33 @@
+package elm.scheduler.sim;
+
+import elm.scheduler.ElmTimeService;
+
+/**
+ * A time service whose clock is advanced by a {@link SimulationEngine} only. Unlike the system clock, reading the time never advances it.
+ */
+public class VirtualTimeService extends ElmTimeService {
+
+	private long time;
+
+	/**
+	 * @param startTime
+	 *            the initial virtual time [ms since the epoch]
+	 */
+	public VirtualTimeService(long startTime) {
+		this.time = startTime;
+	}
+
+	@Override
+	public long currentTimeMillis() {
+		return time;
+	}
+
+	/**
+	 * @param newTime
+	 *            cannot be earlier than the current time
+	 */
+	void advanceTo(long newTime) {
+		assert newTime >= time;
+		time = newTime;
+	}
+}
@@ -18,6 +18,7 @@ import javax.swing.SwingUtilities;
 import elm.hs.api.ElmStatus;
 import elm.scheduler.ElmScheduler;
 import elm.scheduler.ElmSchedulerChangeListener;
+import elm.scheduler.model.HomeServer;
 
 @SuppressWarnings("serial")
 public class ElmSchedulerUI extends JFrame {
@@ -92,6 +93,7 @@ public class ElmSchedulerUI extends JFrame {
 			ElmStatus newStatus;
 			int newDemandPowerWatt;
 			int newGrantedPowerWatt;
+			int deadHomeServers;
 
 			@Override
 			public void statusChanged(ElmStatus oldStatus, ElmStatus newStatus) {
@@ -111,6 +113,19 @@ public class ElmSchedulerUI extends JFrame {
 				updateUI();
 			}
 
+			@Override
+			public void homeServerAliveChanged(HomeServer server, boolean alive) {
+				deadHomeServers += alive ? -1 : 1;
+				final int n = deadHomeServers;
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						// part of the overload limit is reserved for the devices of unreachable Home Servers
+						overloadLimit.setForeground(n > 0 ? Color.RED : Color.BLACK);
+					}
+				});
+			}
+
 			void updateUI() {
 				// Update widget's on Swing thread (invocation comes from scheduler on its own thread)
 				SwingUtilities.invokeLater(new Runnable() {
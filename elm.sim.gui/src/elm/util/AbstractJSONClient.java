@@ -1,68 +1,100 @@
 package elm.util;
 
 import java.net.URI;
+import java.nio.charset.Charset;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.jetty.client.HttpClient;
-import org.eclipse.jetty.client.api.AuthenticationStore;
+import org.eclipse.jetty.client.HttpContentResponse;
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
-import org.eclipse.jetty.client.util.BasicAuthentication;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
 import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
-import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.http.MimeTypes;
+import org.eclipse.jetty.util.B64Code;
+import org.eclipse.jetty.util.StringUtil;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 
+/**
+ * Base class of the JSON clients. All clients send their requests via the {@link SharedHttpClient}.
+ */
 public abstract class AbstractJSONClient {
 
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
 	protected final Logger log = Logger.getLogger(getClass().getName());
 
 	private final URI baseUri;
-	private final HttpClient client;
-	private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+	private final SharedHttpClient sharedClient = SharedHttpClient.getInstance();
+	/** {@code null} unless started. */
+	private HttpClient client;
+	private final String basicAuthentication;
+	private final Gson gson;
 
 
 	public AbstractJSONClient(URI baseUri, String user, String pass) {
+		this(baseUri, user, pass, new GsonBuilder().setPrettyPrinting().create());
+	}
+
+	/**
+	 * @param gson
+	 *            decodes the responses, cannot be {@code null}
+	 */
+	protected AbstractJSONClient(URI baseUri, String user, String pass, Gson gson) {
 		assert baseUri != null;
 		assert user != null && !user.isEmpty();
 		assert pass != null && !pass.isEmpty();
+		assert gson != null;
 
 		this.baseUri = baseUri;
-		boolean https = baseUri.getScheme().toLowerCase().startsWith("https");
-		SslContextFactory sslContextFactory = https ? new SslContextFactory() : null;
-		//
-		// BUG (jetty 9.0.6): the HttpClient simply FORGETS to put the authentication header into the request.
+		this.gson = gson;
 		//
-		// Replace AuthenticationHttpClient by HttpClient once the bug has been fixed and the header is correct
+		// BUG (jetty 9.0.6): the HttpClient simply FORGETS to put the authentication header into the request, and a shared client cannot hold the
+		// credentials of every Home Server anyway => every request gets its own header, see newRequest().
 		//
-		client = new AuthenticatingHttpClient(user, pass, sslContextFactory);
-
-		// The following lines are without effect due to the above-mentioned BUG:
-		String realm = "ELM-Realm";
-		AuthenticationStore authStore = client.getAuthenticationStore();
-		authStore.addAuthentication(new BasicAuthentication(baseUri, realm, user, pass));
+		// Code copied from BasicAuthentication
+		basicAuthentication = "Basic " + B64Code.encode(user + ":" + pass, StringUtil.__ISO_8859_1);
 	}
 
 	public URI getBaseUri() {
 		return baseUri;
 	}
 
-	public HttpClient getClient() {
-		return client;
+	/**
+	 * @return the {@link SharedHttpClient#getClient() shared client}, never {@code null}
+	 */
+	public synchronized HttpClient getClient() {
+		return client != null ? client : sharedClient.getClient();
 	}
 
-	public void start() throws Exception {
-		client.start();
+	public synchronized void start() throws Exception {
+		if (client == null) {
+			client = sharedClient.acquire();
+		}
 	}
 
-	public void stop() throws Exception {
-		client.stop();
+	public synchronized void stop() throws Exception {
+		if (client != null) {
+			client = null;
+			sharedClient.release();
+		}
+	}
+
+	/**
+	 * @return {@code true} if this client has been started and not stopped yet
+	 */
+	public synchronized boolean isStarted() {
+		return client != null;
 	}
 
 	public Gson getGson() {
@@ -97,36 +129,54 @@ public abstract class AbstractJSONClient {
 	 *            the list of HTTP statuses that are to be considered a success
 	 * @return {@code null} if not-OK return status or an exception
 	 */
-	protected synchronized <T> T doGet(String resourcePath, Class<T> resultClass, int[] httpSuccessStatuses) throws ClientException {
-		assert resourcePath != null;
+	protected <T> T doGet(String resourcePath, Class<T> resultClass, int[] httpSuccessStatuses) throws ClientException {
 		assert resultClass != null;
+		return doGet(resourcePath, gsonDecoder(resultClass), null, httpSuccessStatuses);
+	}
+
+	/**
+	 * Sends a GET request like {@link #doGet(String, Class)} but decodes the response content with the given decoder.
+	 * 
+	 * @param resourcePath
+	 *            cannot be {@code null} but can be empty
+	 * @param decoder
+	 *            cannot be {@code null}
+	 * @return the decoded content
+	 */
+	protected <T> T doGet(String resourcePath, ContentDecoder<T> decoder) throws ClientException {
+		return doGet(resourcePath, decoder, null, new int[] { HttpStatus.OK_200 });
+	}
+
+	/**
+	 * Sends a conditional GET request like {@link #doGet(String, ContentDecoder)}: if the entity tag of the resource still matches the given one, the server
+	 * responds with {@value HttpStatus#NOT_MODIFIED_304} and without content. The decoder is invoked for both statuses and reads the new entity tag from the
+	 * {@code ETag} header.
+	 * 
+	 * @param resourcePath
+	 *            cannot be {@code null} but can be empty
+	 * @param decoder
+	 *            cannot be {@code null}
+	 * @param entityTag
+	 *            the entity tag of the last response, {@code null} for an unconditional request
+	 * @return the decoded content
+	 */
+	protected <T> T doGet(String resourcePath, ContentDecoder<T> decoder, String entityTag) throws ClientException {
+		return doGet(resourcePath, decoder, entityTag, new int[] { HttpStatus.OK_200, HttpStatus.NOT_MODIFIED_304 });
+	}
+
+	private synchronized <T> T doGet(String resourcePath, ContentDecoder<T> decoder, String entityTag, int[] httpSuccessStatuses) throws ClientException {
+		assert resourcePath != null;
+		assert decoder != null;
 		ClientException exception;
 
 		final String uri = getBaseUri() + resourcePath;
 		try {
-			ContentResponse response = client.GET(uri);
-			final String responseAsString = response.getContentAsString();
-			int status = response.getStatus();
-			if (!isSuccess(httpSuccessStatuses, status)) {
-				log.log(Level.SEVERE, "Querying resource path failed: " + getBaseUri() + (resourcePath.isEmpty() ? "\"\"" : resourcePath) + ", Status: " + status);
-				if (log.isLoggable(Level.INFO)) {
-					final String desc = "GET " + resourcePath + " Response";
-					System.out.println(desc + " status    = " + status);
-					System.out.println(desc + " as String = " + responseAsString);
-				}
-				throw new ClientException(ClientException.Error.APPLICATION_FAILURE_RESPONSE);
+			final Request request = newRequest(uri);
+			if (entityTag != null) {
+				request.header(HttpHeader.IF_NONE_MATCH, entityTag);
 			}
-
-			final T result = getGson().fromJson(responseAsString, resultClass);
-
-			if (log.isLoggable(Level.INFO)) {
-				final String desc = "GET " + resourcePath;
-				System.out.println();
-				System.out.println(desc + " Response status    = " + response.getStatus());
-				System.out.println(desc + " Response as String = " + responseAsString);
-				System.out.println(desc + " Result             = " + result.getClass().getName() + ": " + getGson().toJson(result));
-			}
-			return result;
+			ContentResponse response = request.send();
+			return toResult(resourcePath, response, decoder, httpSuccessStatuses);
 
 		} catch (InterruptedException e) {
 			exception = new ClientException(e);
@@ -135,10 +185,132 @@ public abstract class AbstractJSONClient {
 		} catch (TimeoutException e) {
 			exception = new ClientException(e);
 		}
-		log.log(Level.WARNING, "GET request failed: " + uri + " (" + exception.getCause().getMessage() + ")");
+		logFailure("GET", uri, exception);
 		throw exception;
 	}
 
+	/**
+	 * Sends a GET request without blocking the caller; the {@link ClientFuture} completes or fails like {@link #doGet(String, Class, int[])} returns or throws.
+	 * Unlike the blocking variants, any number of asynchronous requests can be in flight at the same time.
+	 * 
+	 * @param resourcePath
+	 *            cannot be {@code null} but can be empty
+	 * @param resultClass
+	 *            cannot be {@code null}
+	 * @param httpSuccessStatuses
+	 *            the list of HTTP statuses that are to be considered a success
+	 * @return never {@code null}
+	 */
+	protected <T> ClientFuture<T> doGetAsync(String resourcePath, Class<T> resultClass, int[] httpSuccessStatuses) {
+		assert resultClass != null;
+		return doGetAsync(resourcePath, gsonDecoder(resultClass), null, httpSuccessStatuses);
+	}
+
+	/**
+	 * Sends a GET request without blocking the caller like {@link #doGetAsync(String, Class, int[])}, but decodes the response content with the given decoder
+	 * and optionally as a conditional request, see {@link #doGet(String, ContentDecoder, String)}.
+	 * 
+	 * @param resourcePath
+	 *            cannot be {@code null} but can be empty
+	 * @param decoder
+	 *            invoked on a thread of the {@link SharedHttpClient}, cannot be {@code null}
+	 * @param entityTag
+	 *            the entity tag of the last response, {@code null} for an unconditional request
+	 * @param httpSuccessStatuses
+	 *            the list of HTTP statuses that are to be considered a success
+	 * @return never {@code null}
+	 */
+	protected <T> ClientFuture<T> doGetAsync(final String resourcePath, final ContentDecoder<T> decoder, String entityTag, final int[] httpSuccessStatuses) {
+		assert resourcePath != null;
+		assert decoder != null;
+		final ClientFuture<T> future = new ClientFuture<T>();
+		final String uri = getBaseUri() + resourcePath;
+		final Request request = newRequest(uri);
+		if (entityTag != null) {
+			request.header(HttpHeader.IF_NONE_MATCH, entityTag);
+		}
+		request.send(new BufferingResponseListener() {
+			@Override
+			public void onComplete(Result result) {
+				if (result.isFailed()) {
+					fail(future, "GET", uri, result.getFailure());
+					return;
+				}
+				try {
+					future.complete(toResult(resourcePath, toContentResponse(result, this), decoder, httpSuccessStatuses));
+				} catch (ClientException e) {
+					future.fail(e);
+				} catch (RuntimeException e) { // the blocking variant throws it to the caller
+					future.fail(new ClientException(ClientException.Error.APPLICATION_DATA_ERROR, e.getMessage(), e));
+				}
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * @see #doGetAsync(String, Class, int[])
+	 */
+	protected <T> ClientFuture<T> doGetAsync(String resourcePath, Class<T> resultClass) {
+		return doGetAsync(resourcePath, resultClass, new int[] { HttpStatus.OK_200 });
+	}
+
+	private <T> ContentDecoder<T> gsonDecoder(final Class<T> resultClass) {
+		return new ContentDecoder<T>() {
+			@Override
+			public T decode(ContentResponse response) {
+				return fromJson(response, resultClass);
+			}
+		};
+	}
+
+	private <T> T toResult(String resourcePath, ContentResponse response, ContentDecoder<T> decoder, int[] httpSuccessStatuses) throws ClientException {
+		int status = response.getStatus();
+		if (!isSuccess(httpSuccessStatuses, status)) {
+			log.log(Level.SEVERE, "Querying resource path failed: " + getBaseUri() + (resourcePath.isEmpty() ? "\"\"" : resourcePath) + ", Status: " + status);
+			if (log.isLoggable(Level.INFO)) {
+				final String desc = "GET " + resourcePath + " Response";
+				System.out.println(desc + " status    = " + status);
+				System.out.println(desc + " as String = " + response.getContentAsString());
+			}
+			throw new ClientException(ClientException.Error.APPLICATION_FAILURE_RESPONSE);
+		}
+
+		final T result;
+		try {
+			result = decoder.decode(response);
+		} catch (JsonParseException e) {
+			throw new ClientException(ClientException.Error.APPLICATION_DATA_ERROR, e.getMessage(), e);
+		}
+
+		// the response is dumped at FINE only: the dump needs the content as a String and a re-serialized result on every poll
+		if (log.isLoggable(Level.FINE)) {
+			final String desc = "GET " + resourcePath;
+			System.out.println();
+			System.out.println(desc + " Response status    = " + response.getStatus());
+			System.out.println(desc + " Response as String = " + response.getContentAsString());
+			System.out.println(desc + " Result             = " + (result == null ? null : result.getClass().getName() + ": " + getGson().toJson(result)));
+		}
+		return result;
+	}
+
+	/**
+	 * Decodes the response content straight from its bytes with a {@link ContentReader}, without creating a {@link String} of the whole content first.
+	 * 
+	 * @param response
+	 *            cannot be {@code null}
+	 * @param resultClass
+	 *            cannot be {@code null}
+	 * @return {@code null} if the content is empty
+	 * @throws com.google.gson.JsonParseException
+	 *             if the content cannot be decoded
+	 */
+	protected <T> T fromJson(ContentResponse response, Class<T> resultClass) {
+		final String contentType = response.getHeaders().get(HttpHeader.CONTENT_TYPE);
+		final String charset = contentType != null ? MimeTypes.getCharsetFromContentType(contentType) : null;
+		return getGson().fromJson(new ContentReader(response.getContent(), charset != null ? Charset.forName(charset) : UTF_8), resultClass);
+	}
+
 	/**
 	 * Sends a POST request, processes the return status, handles exceptions.
 	 * 
@@ -186,39 +358,13 @@ public abstract class AbstractJSONClient {
 
 	private ContentResponse internalRequest(String resourcePath, String content, int[] httpSuccessStatuses, HttpMethod method) throws ClientException {
 		assert resourcePath != null && !resourcePath.isEmpty();
-		String methodStr = null;
-		if (method == HttpMethod.PUT) {
-			methodStr = "PUT";
-		} else if (method == HttpMethod.POST) {
-			methodStr = "POST";
-		} else if (method == HttpMethod.DELETE) {
-			methodStr = "DELETE";
-		} else {
-			throw new IllegalArgumentException("Illegeal method: " + method);
-		}
+		final String methodStr = getMethodString(method);
 		ClientException exception;
 
 		final String uri = getBaseUri() + resourcePath;
 		try {
-			Request request = client.newRequest(uri).method(method);
-			if (content != null) {
-				request.content(new StringContentProvider(content), "application/x-www-form-urlencoded");
-			}
-			ContentResponse response = request.send();
-			int status = response.getStatus();
-
-			final String desc = log.isLoggable(Level.INFO) ? methodStr + " " + resourcePath + " (" + content + ") Response" : null;
-			if (!isSuccess(httpSuccessStatuses, status)) {
-				log.log(Level.SEVERE, methodStr + ": resource path failed: "  + getBaseUri() + resourcePath + ", Status: " + status);
-				if (log.isLoggable(Level.INFO)) {
-					System.out.println(desc + " status    = " + status);
-				}
-				return null;
-			} else if (log.isLoggable(Level.INFO)) {
-				System.out.println();
-				System.out.println(desc + " status    = " + status);
-			}
-			return response;
+			ContentResponse response = newRequest(uri, content, method).send();
+			return checkResponse(methodStr, resourcePath, content, response, httpSuccessStatuses);
 
 		} catch (InterruptedException e) {
 			exception = new ClientException(e);
@@ -227,10 +373,126 @@ public abstract class AbstractJSONClient {
 		} catch (TimeoutException e) {
 			exception = new ClientException(e);
 		}
-		log.log(Level.WARNING, methodStr + " request failed: " + uri + " (" + exception.getCause().getMessage() + ")");
+		logFailure(methodStr, uri, exception);
 		throw exception;
 	}
 
+	/**
+	 * Sends a POST request without blocking the caller, see {@link #doPost(String, String, int[])} and {@link #doGetAsync(String, Class, int[])}.
+	 * 
+	 * @return never {@code null}; the future completes with {@code null} if the post ended in a non-success status
+	 */
+	protected ClientFuture<ContentResponse> doPostAsync(String resourcePath, String content, int[] httpSuccessStatuses) {
+		return internalRequestAsync(resourcePath, content, httpSuccessStatuses, HttpMethod.POST);
+	}
+
+	/**
+	 * Sends a PUT request without blocking the caller, see {@link #doPut(String, String, int[])} and {@link #doGetAsync(String, Class, int[])}.
+	 * 
+	 * @return never {@code null}; the future completes with {@code null} if the put ended in a non-success status
+	 */
+	protected ClientFuture<ContentResponse> doPutAsync(String resourcePath, String content, int[] httpSuccessStatuses) {
+		return internalRequestAsync(resourcePath, content, httpSuccessStatuses, HttpMethod.PUT);
+	}
+
+	/**
+	 * Sends a DELETE request without blocking the caller, see {@link #doDelete(String, String, int[])} and {@link #doGetAsync(String, Class, int[])}.
+	 * 
+	 * @return never {@code null}; the future completes with {@code null} if the delete ended in a non-success status
+	 */
+	protected ClientFuture<ContentResponse> doDeleteAsync(String resourcePath, String content, int[] httpSuccessStatuses) {
+		return internalRequestAsync(resourcePath, content, httpSuccessStatuses, HttpMethod.DELETE);
+	}
+
+	private ClientFuture<ContentResponse> internalRequestAsync(final String resourcePath, final String content, final int[] httpSuccessStatuses,
+			HttpMethod method) {
+		assert resourcePath != null && !resourcePath.isEmpty();
+		final String methodStr = getMethodString(method);
+		final ClientFuture<ContentResponse> future = new ClientFuture<ContentResponse>();
+		final String uri = getBaseUri() + resourcePath;
+		newRequest(uri, content, method).send(new BufferingResponseListener() {
+			@Override
+			public void onComplete(Result result) {
+				if (result.isFailed()) {
+					fail(future, methodStr, uri, result.getFailure());
+				} else {
+					future.complete(checkResponse(methodStr, resourcePath, content, toContentResponse(result, this), httpSuccessStatuses));
+				}
+			}
+		});
+		return future;
+	}
+
+	private Request newRequest(String uri, String content, HttpMethod method) {
+		Request request = newRequest(uri).method(method);
+		if (content != null) {
+			request.content(new StringContentProvider(content), "application/x-www-form-urlencoded");
+		}
+		return request;
+	}
+
+	/**
+	 * @return {@code null} if the request ended in a non-success status, else the response
+	 */
+	private ContentResponse checkResponse(String methodStr, String resourcePath, String content, ContentResponse response, int[] httpSuccessStatuses) {
+		int status = response.getStatus();
+
+		final String desc = log.isLoggable(Level.INFO) ? methodStr + " " + resourcePath + " (" + content + ") Response" : null;
+		if (!isSuccess(httpSuccessStatuses, status)) {
+			log.log(Level.SEVERE, methodStr + ": resource path failed: "  + getBaseUri() + resourcePath + ", Status: " + status);
+			if (log.isLoggable(Level.INFO)) {
+				System.out.println(desc + " status    = " + status);
+			}
+			return null;
+		} else if (log.isLoggable(Level.INFO)) {
+			System.out.println();
+			System.out.println(desc + " status    = " + status);
+		}
+		return response;
+	}
+
+	private static String getMethodString(HttpMethod method) {
+		if (method == HttpMethod.PUT) {
+			return "PUT";
+		} else if (method == HttpMethod.POST) {
+			return "POST";
+		} else if (method == HttpMethod.DELETE) {
+			return "DELETE";
+		}
+		throw new IllegalArgumentException("Illegeal method: " + method);
+	}
+
+	private static ContentResponse toContentResponse(Result result, BufferingResponseListener listener) {
+		return new HttpContentResponse(result.getResponse(), listener.getContent(), listener.getEncoding());
+	}
+
+	/**
+	 * Fails the future with the exception the blocking request would have thrown for the same failure.
+	 */
+	private void fail(ClientFuture<?> future, String methodStr, String uri, Throwable failure) {
+		final ClientException exception;
+		if (failure instanceof TimeoutException) {
+			exception = new ClientException((TimeoutException) failure);
+		} else {
+			exception = new ClientException(new ExecutionException(failure));
+		}
+		logFailure(methodStr, uri, exception);
+		future.fail(exception);
+	}
+
+	private void logFailure(String methodStr, String uri, ClientException exception) {
+		log.log(Level.WARNING, methodStr + " request failed: " + uri + " (" + exception.getCause().getMessage() + ")");
+	}
+
+	/**
+	 * @param uri
+	 *            cannot be {@code null}
+	 * @return a new GET request with the authentication header of this client
+	 */
+	protected Request newRequest(String uri) {
+		return getClient().newRequest(uri).header(HttpHeader.AUTHORIZATION, basicAuthentication);
+	}
+
 	/**
 	 * @param httpSuccessStatuses
 	 *            cannot be {@code null}
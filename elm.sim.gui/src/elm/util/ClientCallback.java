@@ -0,0 +1,25 @@
+package elm.util;
+
+/**
+ * Receives the outcome of an asynchronous client operation, see {@link ClientFuture#addCallback(ClientCallback)}.
+ * <p>
+ * <em>Note: </em>The methods are invoked on a thread of the {@link SharedHttpClient}; they must not block.
+ * </p>
+ *
+ * @param <T>
+ *            the result type
+ */
+public interface ClientCallback<T> {
+
+	/**
+	 * @param result
+	 *            can be {@code null}
+	 */
+	void completed(T result);
+
+	/**
+	 * @param e
+	 *            classified like the exception of the equivalent blocking operation, cannot be {@code null}
+	 */
+	void failed(ClientException e);
+}
@@ -0,0 +1,308 @@
+package elm.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending result of an asynchronous client operation. It completes either with a result or with a {@link ClientException} that is classified exactly
+ * like the exception of the equivalent blocking operation.
+ * <p>
+ * <em>Note: </em>This class is thread-safe.
+ * </p>
+ *
+ * @param <T>
+ *            the result type
+ */
+public class ClientFuture<T> implements Future<T> {
+
+	/**
+	 * The next step of an operation, started with the result of the previous step, see {@link ClientFuture#then(Continuation)}.
+	 */
+	public interface Continuation<S, T> {
+
+		/**
+		 * @param result
+		 *            of the previous step, can be {@code null}
+		 * @return the future of the next step, cannot be {@code null}
+		 * @throws ClientException
+		 *             to fail the operation
+		 */
+		ClientFuture<T> apply(S result) throws ClientException;
+	}
+
+	private T result;
+	private ClientException exception;
+	private boolean done;
+	private boolean cancelled;
+	private List<ClientCallback<? super T>> callbacks;
+
+	/**
+	 * @param result
+	 *            can be {@code null}
+	 * @return a new future that has already completed with the given result, never {@code null}
+	 */
+	public static <T> ClientFuture<T> completed(T result) {
+		final ClientFuture<T> future = new ClientFuture<T>();
+		future.complete(result);
+		return future;
+	}
+
+	/**
+	 * @param e
+	 *            cannot be {@code null}
+	 * @return a new future that has already failed with the given exception, never {@code null}
+	 */
+	public static <T> ClientFuture<T> failed(ClientException e) {
+		final ClientFuture<T> future = new ClientFuture<T>();
+		future.fail(e);
+		return future;
+	}
+
+	/**
+	 * @param result
+	 *            can be {@code null}
+	 * @return {@code false} if this future has already completed
+	 */
+	public boolean complete(T result) {
+		final List<ClientCallback<? super T>> toNotify;
+		synchronized (this) {
+			if (done) {
+				return false;
+			}
+			this.result = result;
+			done = true;
+			toNotify = takeCallbacks();
+		}
+		if (toNotify != null) {
+			for (ClientCallback<? super T> callback : toNotify) {
+				callback.completed(result);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param e
+	 *            cannot be {@code null}
+	 * @return {@code false} if this future has already completed
+	 */
+	public boolean fail(ClientException e) {
+		assert e != null;
+		final List<ClientCallback<? super T>> toNotify;
+		synchronized (this) {
+			if (done) {
+				return false;
+			}
+			exception = e;
+			done = true;
+			toNotify = takeCallbacks();
+		}
+		if (toNotify != null) {
+			for (ClientCallback<? super T> callback : toNotify) {
+				callback.failed(e);
+			}
+		}
+		return true;
+	}
+
+	private List<ClientCallback<? super T>> takeCallbacks() {
+		final List<ClientCallback<? super T>> result = callbacks;
+		callbacks = null;
+		notifyAll();
+		return result;
+	}
+
+	/**
+	 * Registers a callback to be notified of the outcome. If this future has already completed, the callback is notified immediately on the caller's thread.
+	 *
+	 * @param callback
+	 *            cannot be {@code null}
+	 */
+	public void addCallback(ClientCallback<? super T> callback) {
+		assert callback != null;
+		synchronized (this) {
+			if (!done) {
+				if (callbacks == null) {
+					callbacks = new ArrayList<ClientCallback<? super T>>(2);
+				}
+				callbacks.add(callback);
+				return;
+			}
+		}
+		if (exception != null) {
+			callback.failed(exception);
+		} else {
+			callback.completed(result);
+		}
+	}
+
+	/**
+	 * Chains the next step of an operation: when this future completes, the continuation is applied to the result.
+	 *
+	 * @param continuation
+	 *            cannot be {@code null}
+	 * @return a new future completing with the outcome of the next step, or with the failure of this step, never {@code null}
+	 */
+	public <U> ClientFuture<U> then(final Continuation<? super T, U> continuation) {
+		assert continuation != null;
+		final ClientFuture<U> next = new ClientFuture<U>();
+		addCallback(new ClientCallback<T>() {
+			@Override
+			public void completed(T result) {
+				try {
+					continuation.apply(result).forwardTo(next);
+				} catch (ClientException e) {
+					next.fail(e);
+				} catch (RuntimeException e) {
+					next.fail(new ClientException(ClientException.Error.APPLICATION_DATA_ERROR, e.getMessage(), e));
+				}
+			}
+
+			@Override
+			public void failed(ClientException e) {
+				next.fail(e);
+			}
+		});
+		return next;
+	}
+
+	/**
+	 * Chains an alternative to an operation: when this future fails, the fallback is applied to the exception; it can either start another operation with
+	 * the same result type or rethrow the exception.
+	 *
+	 * @param fallback
+	 *            cannot be {@code null}
+	 * @return a new future completing with the result of this step, or with the outcome of the fallback, never {@code null}
+	 */
+	public ClientFuture<T> otherwise(final Continuation<ClientException, T> fallback) {
+		assert fallback != null;
+		final ClientFuture<T> next = new ClientFuture<T>();
+		addCallback(new ClientCallback<T>() {
+			@Override
+			public void completed(T result) {
+				next.complete(result);
+			}
+
+			@Override
+			public void failed(ClientException e) {
+				try {
+					fallback.apply(e).forwardTo(next);
+				} catch (ClientException e2) {
+					next.fail(e2);
+				} catch (RuntimeException e2) {
+					next.fail(new ClientException(ClientException.Error.APPLICATION_DATA_ERROR, e2.getMessage(), e2));
+				}
+			}
+		});
+		return next;
+	}
+
+	/**
+	 * @return a new future completing with {@code null} when this future completes, or failing with the same exception, never {@code null}
+	 */
+	public ClientFuture<Void> ignoreResult() {
+		return then(new Continuation<T, Void>() {
+			@Override
+			public ClientFuture<Void> apply(T result) {
+				return completed(null);
+			}
+		});
+	}
+
+	private void forwardTo(final ClientFuture<T> target) {
+		addCallback(new ClientCallback<T>() {
+			@Override
+			public void completed(T result) {
+				target.complete(result);
+			}
+
+			@Override
+			public void failed(ClientException e) {
+				target.fail(e);
+			}
+		});
+	}
+
+	/**
+	 * Blocks until the operation has completed.
+	 *
+	 * @return the result, can be {@code null}
+	 * @throws ClientException
+	 *             the exception the operation failed with, or of type {@link ClientException.Error#INTERRUPTED} if the waiting thread was interrupted
+	 */
+	public T getResult() throws ClientException {
+		synchronized (this) {
+			try {
+				while (!done) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				throw new ClientException(e);
+			}
+			if (exception != null) {
+				throw exception;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Fails the operation with an exception of type {@link ClientException.Error#INTERRUPTED}; the request itself is not aborted.
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		synchronized (this) {
+			if (done) {
+				return false;
+			}
+			cancelled = true;
+		}
+		return fail(new ClientException(ClientException.Error.INTERRUPTED, "Cancelled", null));
+	}
+
+	@Override
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		return done;
+	}
+
+	/**
+	 * @throws ExecutionException
+	 *             with the {@link ClientException} as its cause
+	 */
+	@Override
+	public synchronized T get() throws InterruptedException, ExecutionException {
+		while (!done) {
+			wait();
+		}
+		return getNow();
+	}
+
+	@Override
+	public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		final long end = System.nanoTime() + unit.toNanos(timeout);
+		while (!done) {
+			final long remainingNanos = end - System.nanoTime();
+			if (remainingNanos <= 0) {
+				throw new TimeoutException();
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+		}
+		return getNow();
+	}
+
+	private T getNow() throws ExecutionException {
+		if (exception != null) {
+			throw new ExecutionException(exception);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,21 @@
+package elm.util;
+
+import org.eclipse.jetty.client.api.ContentResponse;
+
+/**
+ * Decodes the content of a successful response, see {@link AbstractJSONClient#doGet(String, ContentDecoder)}.
+ *
+ * @param <T>
+ *            the result type
+ */
+public interface ContentDecoder<T> {
+
+	/**
+	 * @param response
+	 *            cannot be {@code null}
+	 * @return the decoded content, can be {@code null}
+	 * @throws com.google.gson.JsonParseException
+	 *             if the content cannot be decoded
+	 */
+	T decode(ContentResponse response);
+}
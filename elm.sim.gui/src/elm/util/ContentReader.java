@@ -0,0 +1,54 @@
+package elm.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reads the characters of a response content on demand, decoding its bytes straight into the buffer of the reader, typically a
+ * {@link com.google.gson.stream.JsonReader}. In contrast with {@link String#String(byte[], Charset)} it does not copy the whole content, and in contrast
+ * with an {@link java.io.InputStreamReader} it has no buffers of its own.
+ */
+public final class ContentReader extends Reader {
+
+	private final ByteBuffer bytes;
+	private final CharsetDecoder decoder;
+	private boolean flushed;
+
+	/**
+	 * @param content
+	 *            cannot be {@code null}
+	 * @param charset
+	 *            cannot be {@code null}
+	 */
+	public ContentReader(byte[] content, Charset charset) {
+		assert content != null;
+		assert charset != null;
+		bytes = ByteBuffer.wrap(content);
+		decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	@Override
+	public int read(char[] buf, int off, int len) throws IOException {
+		if (flushed) {
+			return -1;
+		} else if (len == 0) {
+			return 0;
+		}
+		final CharBuffer chars = CharBuffer.wrap(buf, off, len);
+		if (decoder.decode(bytes, chars, true).isUnderflow()) { // all bytes decoded
+			flushed = decoder.flush(chars).isUnderflow();
+		}
+		final int count = chars.position() - off;
+		return count == 0 && flushed ? -1 : count;
+	}
+
+	@Override
+	public void close() {
+		// nothing to release
+	}
+}
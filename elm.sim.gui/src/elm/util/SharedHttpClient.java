@@ -0,0 +1,187 @@
+package elm.util;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * The HTTP client runtime shared by all {@link AbstractJSONClient}s: a single Jetty {@link HttpClient} with one selector, one bounded thread pool, a limited
+ * number of kept-alive connections per destination (host and port), and one SSL context whose TLS sessions are cached and reused across the https Home
+ * Servers. The thread and socket counts thus do not grow with the number of clients.
+ * <p>
+ * The runtime is started by the first client {@link #acquire() acquiring} it and stopped when the last client {@link #release() releases} it. The
+ * configuration must be set before the runtime is started.
+ * </p>
+ * <p>
+ * <em>Note: </em>This class is thread-safe.
+ * </p>
+ */
+public final class SharedHttpClient {
+
+	public static final int DEFAULT_MAX_THREADS = 16;
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_DESTINATION = 4;
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60_000;
+	public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 5_000;
+	public static final int DEFAULT_SSL_SESSION_CACHE_SIZE = 1_000;
+
+	private static final SharedHttpClient INSTANCE = new SharedHttpClient();
+
+	private int maxThreads = DEFAULT_MAX_THREADS;
+	private int maxConnectionsPerDestination = DEFAULT_MAX_CONNECTIONS_PER_DESTINATION;
+	private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+	private long connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+	private int sslSessionCacheSize = DEFAULT_SSL_SESSION_CACHE_SIZE;
+
+	private HttpClient client;
+	private int userCount;
+
+	/**
+	 * @return the runtime shared by all {@link AbstractJSONClient}s, never {@code null}
+	 */
+	public static SharedHttpClient getInstance() {
+		return INSTANCE;
+	}
+
+	private SharedHttpClient() {
+		client = createClient();
+	}
+
+	/**
+	 * Returns the {@link HttpClient}, whether started or not. Configure its {@link HttpClient#getSslContextFactory() SslContextFactory} before it is started.
+	 *
+	 * @return never {@code null}
+	 */
+	public synchronized HttpClient getClient() {
+		return client;
+	}
+
+	/**
+	 * Registers a user of the runtime and starts the {@link HttpClient} if this is the first user.
+	 *
+	 * @return the started client, never {@code null}
+	 * @throws Exception
+	 *             if the client cannot be started
+	 */
+	public synchronized HttpClient acquire() throws Exception {
+		if (userCount == 0) {
+			configure(client);
+			client.start();
+		}
+		userCount++;
+		return client;
+	}
+
+	/**
+	 * Unregisters a user of the runtime and stops the {@link HttpClient} if this was the last user.
+	 *
+	 * @throws Exception
+	 *             if the client cannot be stopped
+	 */
+	public synchronized void release() throws Exception {
+		assert userCount > 0;
+		userCount--;
+		if (userCount == 0) {
+			// a fresh client for the next start, with the SSL configuration of the stopped one:
+			final HttpClient stopped = client;
+			client = createClient();
+			client.getSslContextFactory().setTrustAll(stopped.getSslContextFactory().isTrustAll());
+			stopped.stop();
+		}
+	}
+
+	/**
+	 * @return the number of clients that have {@link #acquire() acquired} the runtime and not released it
+	 */
+	public synchronized int getUserCount() {
+		return userCount;
+	}
+
+	public synchronized int getMaxThreads() {
+		return maxThreads;
+	}
+
+	/**
+	 * @param maxThreads
+	 *            the maximum size of the thread pool shared by all connections, {@code > 1}
+	 */
+	public synchronized void setMaxThreads(int maxThreads) {
+		assert maxThreads > 1;
+		checkNotStarted();
+		this.maxThreads = maxThreads;
+	}
+
+	public synchronized int getMaxConnectionsPerDestination() {
+		return maxConnectionsPerDestination;
+	}
+
+	/**
+	 * @param maxConnectionsPerDestination
+	 *            the maximum number of connections to a single host and port; further requests are queued, {@code > 0}
+	 */
+	public synchronized void setMaxConnectionsPerDestination(int maxConnectionsPerDestination) {
+		assert maxConnectionsPerDestination > 0;
+		checkNotStarted();
+		this.maxConnectionsPerDestination = maxConnectionsPerDestination;
+	}
+
+	public synchronized long getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+
+	/**
+	 * @param idleTimeoutMillis
+	 *            the time an idle connection is kept alive for the next request, {@code > 0}
+	 */
+	public synchronized void setIdleTimeoutMillis(long idleTimeoutMillis) {
+		assert idleTimeoutMillis > 0;
+		checkNotStarted();
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	public synchronized long getConnectTimeoutMillis() {
+		return connectTimeoutMillis;
+	}
+
+	public synchronized void setConnectTimeoutMillis(long connectTimeoutMillis) {
+		assert connectTimeoutMillis > 0;
+		checkNotStarted();
+		this.connectTimeoutMillis = connectTimeoutMillis;
+	}
+
+	public synchronized int getSslSessionCacheSize() {
+		return sslSessionCacheSize;
+	}
+
+	/**
+	 * @param sslSessionCacheSize
+	 *            the number of TLS sessions kept for resumption, at least the number of https Home Servers
+	 */
+	public synchronized void setSslSessionCacheSize(int sslSessionCacheSize) {
+		assert sslSessionCacheSize > 0;
+		checkNotStarted();
+		this.sslSessionCacheSize = sslSessionCacheSize;
+	}
+
+	private void checkNotStarted() {
+		if (userCount > 0) {
+			throw new IllegalStateException("Shared HTTP client already started");
+		}
+	}
+
+	private void configure(HttpClient client) {
+		final QueuedThreadPool threadPool = new QueuedThreadPool(maxThreads, Math.min(2, maxThreads));
+		threadPool.setName(SharedHttpClient.class.getSimpleName());
+		threadPool.setDaemon(true);
+		client.setExecutor(threadPool);
+		client.setMaxConnectionsPerDestination(maxConnectionsPerDestination);
+		client.setIdleTimeout(idleTimeoutMillis);
+		client.setConnectTimeout(connectTimeoutMillis);
+		final SslContextFactory sslContextFactory = client.getSslContextFactory();
+		sslContextFactory.setSessionCachingEnabled(true);
+		sslContextFactory.setSslSessionCacheSize(sslSessionCacheSize);
+	}
+
+	private static HttpClient createClient() {
+		return new HttpClient(new SslContextFactory());
+	}
+}
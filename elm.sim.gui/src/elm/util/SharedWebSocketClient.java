@@ -0,0 +1,104 @@
+package elm.util;
+
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+
+/**
+ * The WebSocket client runtime shared by all control channels, the counterpart of the {@link SharedHttpClient}: a single Jetty {@link WebSocketClient} with
+ * one bounded thread pool, so that the thread count does not grow with the number of channels.
+ * <p>
+ * The runtime is started by the first channel {@link #acquire() acquiring} it and stopped when the last channel {@link #release() releases} it.
+ * </p>
+ * <p>
+ * <em>Note: </em>This class is thread-safe.
+ * </p>
+ */
+public final class SharedWebSocketClient {
+
+	public static final int DEFAULT_MAX_THREADS = 8;
+	public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = SharedHttpClient.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+
+	private static final SharedWebSocketClient INSTANCE = new SharedWebSocketClient();
+
+	private int maxThreads = DEFAULT_MAX_THREADS;
+
+	private WebSocketClient client;
+	private int userCount;
+
+	/**
+	 * @return the runtime shared by all control channels, never {@code null}
+	 */
+	public static SharedWebSocketClient getInstance() {
+		return INSTANCE;
+	}
+
+	private SharedWebSocketClient() {
+		client = createClient();
+	}
+
+	/**
+	 * Registers a user of the runtime and starts the {@link WebSocketClient} if this is the first user. The SSL configuration is taken from the
+	 * {@link SharedHttpClient}.
+	 *
+	 * @return the started client, never {@code null}
+	 * @throws Exception
+	 *             if the client cannot be started
+	 */
+	public synchronized WebSocketClient acquire() throws Exception {
+		if (userCount == 0) {
+			final QueuedThreadPool threadPool = new QueuedThreadPool(maxThreads, Math.min(2, maxThreads));
+			threadPool.setName(SharedWebSocketClient.class.getSimpleName());
+			threadPool.setDaemon(true);
+			client.setExecutor(threadPool);
+			client.setConnectTimeout(DEFAULT_CONNECT_TIMEOUT_MILLIS);
+			client.getSslContextFactory().setTrustAll(SharedHttpClient.getInstance().getClient().getSslContextFactory().isTrustAll());
+			client.start();
+		}
+		userCount++;
+		return client;
+	}
+
+	/**
+	 * Unregisters a user of the runtime and stops the {@link WebSocketClient} if this was the last user.
+	 *
+	 * @throws Exception
+	 *             if the client cannot be stopped
+	 */
+	public synchronized void release() throws Exception {
+		assert userCount > 0;
+		userCount--;
+		if (userCount == 0) {
+			final WebSocketClient stopped = client;
+			client = createClient(); // a fresh client for the next start
+			stopped.stop();
+		}
+	}
+
+	/**
+	 * @return the number of channels that have {@link #acquire() acquired} the runtime and not released it
+	 */
+	public synchronized int getUserCount() {
+		return userCount;
+	}
+
+	public synchronized int getMaxThreads() {
+		return maxThreads;
+	}
+
+	/**
+	 * @param maxThreads
+	 *            the maximum size of the thread pool shared by all channels, {@code > 1}
+	 */
+	public synchronized void setMaxThreads(int maxThreads) {
+		assert maxThreads > 1;
+		if (userCount > 0) {
+			throw new IllegalStateException("Shared WebSocket client already started");
+		}
+		this.maxThreads = maxThreads;
+	}
+
+	private static WebSocketClient createClient() {
+		return new WebSocketClient(new SslContextFactory());
+	}
+}
@@ -4,15 +4,29 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import elm.hs.api.HomeServerResponseDecoderTest;
+import elm.hs.api.HomeServerTypeAdapterFactoryTest;
+import elm.hs.api.client.HomeServerControlChannelTest;
+import elm.hs.api.client.HomeServerInternalApiClientTest;
 import elm.hs.api.sim.server.DeviceTapPointAdapterTest;
+import elm.hs.api.sim.server.SimHomeServerServiceTest;
 import elm.scheduler.AbstractSchedulerTest;
+import elm.scheduler.ConsumptionQueueTest;
+import elm.scheduler.DeviceStatusFetcherTest;
+import elm.scheduler.HomeServerControllerTest;
+import elm.scheduler.IncrementalSchedulerIntegrationTest;
+import elm.scheduler.PollAllocationTest;
 import elm.scheduler.SchedulerIntegrationTest;
+import elm.scheduler.ShardedSchedulerTest;
+import elm.scheduler.model.impl.ConsumptionDurationEstimatorTest;
 import elm.scheduler.model.impl.DeviceControllerTest;
 import elm.scheduler.model.impl.HomeServerTest;
+import elm.scheduler.sim.SiteSimulationTest;
 import elm.sim.model.TapPointTest;
+import elm.util.ClientFutureTest;
 
 @RunWith(Suite.class)
-@SuiteClasses({DeviceControllerTest.class, HomeServerTest.class, AbstractSchedulerTest.class, SchedulerIntegrationTest.class, TapPointTest.class, DeviceTapPointAdapterTest.class})
+@SuiteClasses({DeviceControllerTest.class, ConsumptionDurationEstimatorTest.class, HomeServerTest.class, AbstractSchedulerTest.class, ConsumptionQueueTest.class, SchedulerIntegrationTest.class, IncrementalSchedulerIntegrationTest.class, ShardedSchedulerTest.class, DeviceStatusFetcherTest.class, HomeServerControllerTest.class, PollAllocationTest.class, SiteSimulationTest.class, TapPointTest.class, DeviceTapPointAdapterTest.class, SimHomeServerServiceTest.class, HomeServerTypeAdapterFactoryTest.class, HomeServerResponseDecoderTest.class, HomeServerInternalApiClientTest.class, HomeServerControlChannelTest.class, ClientFutureTest.class})
 public class AllTests {
 
 }
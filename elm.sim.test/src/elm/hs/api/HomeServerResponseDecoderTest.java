@@ -0,0 +1,112 @@
+package elm.hs.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+
+import elm.hs.api.sim.server.SimHomeServerService;
+import elm.hs.api.sim.server.SimHomeServerServiceImpl;
+
+public class HomeServerResponseDecoderTest {
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	final Gson gson = new GsonBuilder().create();
+	SimHomeServerService db;
+	HomeServerResponseDecoder decoder;
+
+	@Before
+	public void setup() {
+		db = SimHomeServerServiceImpl.createDemoDB("http://localhost:9090");
+		decoder = new HomeServerResponseDecoder();
+	}
+
+	@Test
+	public void devices() {
+		assertSameDecoding(db.processDevicesQuery());
+	}
+
+	@Test
+	public void statuses() {
+		assertSameDecoding(db.processDeviceStatusBatchQuery(Arrays.asList("2016FFFF55", "A001FFFF33", "6003FFFF1A")));
+	}
+
+	@Test
+	public void reuse() {
+		final HomeServerResponse first = decoder.decode(toJson(db.processDevicesQuery()));
+		final Device device0 = first.devices.get(0);
+		final Info info0 = device0.info;
+		assertEquals(3, first.devices.size());
+
+		final HomeServerResponse second = decoder.decode(toJson(db.processDeviceStatusBatchQuery(Arrays.asList("6003FFFF1A", "2016FFFF55"))));
+		assertSame(first, second);
+		assertEquals(2, second.devices.size());
+		assertSame(device0, second.devices.get(1)); // reordered
+		assertNull(device0.info);
+		assertTrue(device0.status != null);
+
+		// the dropped device gets a new Device:
+		final HomeServerResponse third = decoder.decode(toJson(db.processDevicesQuery()));
+		assertSame(device0, third.devices.get(0));
+		assertSame(info0, device0.info);
+		assertNull(device0.status);
+		assertEquals("A001FFFF33", third.devices.get(1).id);
+	}
+
+	@Test
+	public void duplicatesAndUnknownProperties() {
+		final String json = "{\"future\":[{\"x\":\"\\\"}\"}],\"success\":true,\"devices\":[{\"rssi\":-7,\"id\":\"A\",\"status\":{\"tIn\":100,\"new\":1.5e3},\"info\":null},"
+				+ "{\"id\":\"A\",\"connected\":true}]}";
+		final HomeServerResponse response = decoder.decode(json.getBytes(UTF_8));
+		assertTrue(response.success);
+		assertEquals(2, response.devices.size());
+		assertEquals(-7, response.devices.get(0).rssi);
+		assertEquals(100, response.devices.get(0).status.tIn);
+		assertNull(response.devices.get(0).info);
+		assertNotSame(response.devices.get(0), response.devices.get(1));
+		assertEquals("A", response.devices.get(1).id);
+		assertTrue(response.devices.get(1).connected);
+	}
+
+	@Test
+	public void syntaxErrors() {
+		for (String json : new String[] { "", "{", "{\"total\":1", "{\"total\":1.5}", "{\"total\":true}", "{\"devices\":[{\"id\":\"A\"}", "{} x" }) {
+			try {
+				decoder.decode(json.getBytes(UTF_8));
+				fail(json);
+			} catch (JsonSyntaxException e) {
+				// expected
+			}
+		}
+	}
+
+	private void assertSameDecoding(HomeServerResponse original) {
+		final HomeServerResponse expected = gson.fromJson(gson.toJson(original), HomeServerResponse.class);
+		// the decoder skips these values:
+		expected.version = null;
+		for (Device device : expected.devices) {
+			if (device.info != null) {
+				device.info.url = null;
+			}
+		}
+		final HomeServerResponse actual = decoder.decode(toJson(original));
+		assertEquals(gson.toJson(expected), gson.toJson(actual));
+	}
+
+	private byte[] toJson(HomeServerResponse response) {
+		return gson.toJson(response).getBytes(UTF_8);
+	}
+}
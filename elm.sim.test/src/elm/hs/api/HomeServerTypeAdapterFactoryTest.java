@@ -0,0 +1,64 @@
+package elm.hs.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import elm.hs.api.client.AbstractHomeServerClient;
+import elm.hs.api.sim.server.SimHomeServerService;
+import elm.hs.api.sim.server.SimHomeServerServiceImpl;
+
+public class HomeServerTypeAdapterFactoryTest {
+
+	/** Encodes like the Sim Home Server and decodes like the clients did before. */
+	final Gson reflective = new GsonBuilder().create();
+	final Gson streaming = AbstractHomeServerClient.createGson();
+	SimHomeServerService db;
+
+	@Before
+	public void setup() {
+		db = SimHomeServerServiceImpl.createDemoDB("http://localhost:9090");
+	}
+
+	@Test
+	public void serverStatus() {
+		assertSameDecoding(reflective.toJson(db.processStatusQuery()));
+	}
+
+	@Test
+	public void devices() {
+		assertSameDecoding(reflective.toJson(db.processDevicesQuery()));
+	}
+
+	@Test
+	public void deviceStatus() {
+		final String id = db.getDevices().iterator().next().id;
+		final String json = reflective.toJson(db.processDeviceStatusQuery(id));
+		assertSameDecoding(json);
+		final HomeServerResponse response = streaming.fromJson(json, HomeServerResponse.class);
+		assertEquals(id, response.devices.get(0).id);
+		assertEquals(db.getDevices().iterator().next().status.setpoint, response.devices.get(0).status.setpoint);
+	}
+
+	@Test
+	public void unknownAndNullProperties() {
+		final String json = "{\"success\":true,\"future\":{\"a\":[1,2]},\"version\":null,\"devices\":[{\"id\":\"A\",\"status\":{\"tIn\":100,\"new\":1},\"info\":null}]}";
+		final HomeServerResponse response = streaming.fromJson(json, HomeServerResponse.class);
+		assertTrue(response.success);
+		assertNull(response.version);
+		assertEquals(100, response.devices.get(0).status.tIn);
+		assertNull(response.devices.get(0).info);
+	}
+
+	private void assertSameDecoding(String json) {
+		final HomeServerResponse expected = reflective.fromJson(json, HomeServerResponse.class);
+		final HomeServerResponse actual = streaming.fromJson(json, HomeServerResponse.class);
+		assertEquals(reflective.toJson(expected), reflective.toJson(actual));
+	}
+}
@@ -0,0 +1,191 @@
+package elm.hs.api.client;
+
+import static elm.hs.api.client.HomeServerInternalApiClientTest.ID;
+import static elm.hs.api.client.HomeServerInternalApiClientTest.TIMEOUT_MILLIS;
+import static elm.hs.api.client.HomeServerInternalApiClientTest.getFreePort;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import elm.hs.api.ControlMessage;
+import elm.hs.api.ElmStatus;
+import elm.hs.api.ElmUserFeedback;
+import elm.hs.api.HomeServerService;
+import elm.hs.api.client.HomeServerInternalApiClientTest.CountingServiceImpl;
+import elm.hs.api.sim.server.SimHomeServerServer;
+import elm.util.ClientException;
+import elm.util.ClientFuture;
+
+/**
+ * Runs the {@link HomeServerControlChannel} against a Sim Home Server, alone and as the channel of a {@link HomeServerInternalApiClient}.
+ */
+public class HomeServerControlChannelTest {
+
+	CountingServiceImpl db;
+	SimHomeServerServer simServer;
+	FailingControlChannel channel;
+	HomeServerPublicApiClient publicClient;
+	HomeServerInternalApiClient internalClient;
+
+	/** Fails the commands with the given error, if any, instead of sending them. */
+	static class FailingControlChannel extends HomeServerControlChannel {
+
+		volatile ClientException.Error error;
+		volatile int sentCount;
+
+		FailingControlChannel(URI baseUri) {
+			super(baseUri, HomeServerService.ADMIN_USER, HomeServerService.DEFAULT_PASSWORD);
+		}
+
+		@Override
+		public ClientFuture<ControlMessage> send(ControlMessage command) {
+			if (error != null) {
+				return ClientFuture.failed(new ClientException(error, "test", null));
+			}
+			sentCount++;
+			return super.send(command);
+		}
+	}
+
+	@Before
+	public void setup() throws Exception {
+		final URI uri = URI.create("http://localhost:" + getFreePort());
+		db = new CountingServiceImpl(uri.toString(), true);
+		simServer = new SimHomeServerServer(db);
+		simServer.start();
+		channel = new FailingControlChannel(uri);
+		channel.start();
+		channel.connect();
+		final long endTime = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (!channel.isConnected() && System.currentTimeMillis() < endTime) {
+			Thread.sleep(10);
+		}
+		assertTrue(channel.isConnected());
+		publicClient = new HomeServerPublicApiClient(uri, HomeServerService.ADMIN_USER, HomeServerService.DEFAULT_PASSWORD);
+		internalClient = new HomeServerInternalApiClient(uri, HomeServerService.ADMIN_USER, HomeServerService.DEFAULT_PASSWORD, publicClient);
+		internalClient.setControlChannel(channel);
+		publicClient.start();
+		internalClient.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		internalClient.stop();
+		publicClient.stop();
+		channel.stop();
+		simServer.stop();
+	}
+
+	@Test
+	public void roundTrip() throws Exception {
+		assertEquals(420, channel.setScaldProtectionTemperature(ID, 420).shortValue());
+		assertEquals(420, db.getDevice(ID)._getSetpoint());
+		channel.clearScaldProtection(ID, 200);
+		assertEquals(200, db.getDevice(ID)._getSetpoint());
+
+		assertEquals(380, channel.setScaldProtectionTemperatureAsync(ID, 380).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).shortValue());
+		assertEquals(380, db.getDevice(ID)._getSetpoint());
+		channel.clearScaldProtectionAsync(ID, 200).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		assertEquals(200, db.getDevice(ID)._getSetpoint());
+		assertEquals(4, db.deviceLimitCommands.get());
+
+		// rejected => not a delivery failure:
+		try {
+			channel.setScaldProtectionTemperature("FFFFFFFFFF", 420);
+			fail("rejected command");
+		} catch (ClientException e) {
+			assertEquals(ClientException.Error.APPLICATION_FAILURE_RESPONSE, e.getError());
+			assertFalse(HomeServerControlChannel.isDeliveryFailure(e));
+		}
+	}
+
+	@Test
+	public void viaInternalClient() throws Exception {
+		assertEquals(420, internalClient.setScaldProtectionTemperature(ID, 420).shortValue());
+		internalClient.clearScaldProtectionAsync(ID, 200).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		assertEquals(200, db.getDevice(ID)._getSetpoint());
+		assertEquals(2, channel.sentCount);
+		assertEquals(2, db.deviceLimitCommands.get());
+
+		// not connected => via HTTP:
+		channel.stop();
+		assertFalse(channel.isConnected());
+		assertEquals(380, internalClient.setScaldProtectionTemperature(ID, 380).shortValue());
+		assertEquals(380, db.getDevice(ID)._getSetpoint());
+		assertEquals(2, channel.sentCount);
+		assertEquals(3, db.deviceLimitCommands.get());
+	}
+
+	@Test
+	public void fallbackAfterDeliveryFailure() throws Exception {
+		channel.error = ClientException.Error.EXECUTION_ERROR;
+		assertTrue(channel.isConnected());
+
+		// sent via HTTP instead:
+		assertEquals(420, internalClient.setScaldProtectionTemperature(ID, 420).shortValue());
+		assertEquals(420, db.getDevice(ID)._getSetpoint());
+		assertEquals(380, internalClient.setScaldProtectionTemperatureAsync(ID, 380).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).shortValue());
+		internalClient.clearScaldProtection(ID, 200);
+		internalClient.clearScaldProtectionAsync(ID, 300).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		assertEquals(300, db.getDevice(ID)._getSetpoint());
+		assertEquals(0, channel.sentCount);
+		assertEquals(4, db.deviceLimitCommands.get());
+	}
+
+	@Test
+	public void noFallbackAfterTimeout() throws Exception {
+		channel.error = ClientException.Error.NETWORK_TIMEOUT;
+
+		// the command may still arrive via the channel => sending it via HTTP could reorder it:
+		try {
+			internalClient.setScaldProtectionTemperature(ID, 420);
+			fail("no acknowledgement");
+		} catch (ClientException e) {
+			assertEquals(ClientException.Error.NETWORK_TIMEOUT, e.getError());
+		}
+		try {
+			internalClient.clearScaldProtectionAsync(ID, 300).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			fail("no acknowledgement");
+		} catch (ExecutionException e) {
+			assertEquals(ClientException.Error.NETWORK_TIMEOUT, ((ClientException) e.getCause()).getError());
+		}
+		assertEquals(200, db.getDevice(ID)._getSetpoint());
+		assertEquals(0, db.deviceLimitCommands.get());
+	}
+
+	@Test
+	public void userFeedbackViaPublicClient() throws Exception {
+		publicClient.setControlChannel(channel);
+		final List<ElmUserFeedback> feedback = Collections.singletonList(new ElmUserFeedback(ID, ElmStatus.SATURATION, 0));
+		publicClient.updateUserFeedbackAsync(feedback).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		assertEquals(1, channel.sentCount);
+		assertEquals(1, db.userFeedbackCommands.get());
+
+		// sent via HTTP instead:
+		channel.error = ClientException.Error.EXECUTION_ERROR;
+		publicClient.updateUserFeedbackAsync(feedback).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		assertEquals(1, channel.sentCount);
+		assertEquals(2, db.userFeedbackCommands.get());
+
+		// the feedback may still arrive via the channel:
+		channel.error = ClientException.Error.NETWORK_TIMEOUT;
+		try {
+			publicClient.updateUserFeedbackAsync(feedback).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			fail("no acknowledgement");
+		} catch (ExecutionException e) {
+			assertEquals(ClientException.Error.NETWORK_TIMEOUT, ((ClientException) e.getCause()).getError());
+		}
+		assertEquals(2, db.userFeedbackCommands.get());
+	}
+}
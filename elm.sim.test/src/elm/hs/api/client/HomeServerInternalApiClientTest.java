@@ -0,0 +1,209 @@
+package elm.hs.api.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import elm.hs.api.ElmUserFeedback;
+import elm.hs.api.HomeServerResponse;
+import elm.hs.api.HomeServerService;
+import elm.hs.api.Service;
+import elm.hs.api.sim.server.SimHomeServerServer;
+import elm.hs.api.sim.server.SimHomeServerServiceImpl;
+import elm.util.ClientException;
+
+/**
+ * Runs the {@link HomeServerInternalApiClient} against a Sim Home Server via HTTP, with and without the {@link Service#DEVICE_LIMIT_PATH device-limit}
+ * service.
+ */
+public class HomeServerInternalApiClientTest {
+
+	static final String ID = "2016FFFF55";
+
+	static final long TIMEOUT_MILLIS = 5_000;
+
+	CountingServiceImpl db;
+	SimHomeServerServer simServer;
+	HomeServerPublicApiClient publicClient;
+	HomeServerInternalApiClient internalClient;
+
+	/** Counts the commands and optionally hides the device-limit service, as a regular CLAGE Home Server does not offer it. */
+	static class CountingServiceImpl extends SimHomeServerServiceImpl {
+
+		final boolean deviceLimit;
+		final AtomicInteger deviceLimitCommands = new AtomicInteger();
+		final AtomicInteger scaldProtectionFlagCommands = new AtomicInteger();
+		final AtomicInteger userFeedbackCommands = new AtomicInteger();
+		/** Replaces the scald temperature returned by the device-limit commands, if not {@code null}. */
+		volatile String deviceLimitData;
+
+		CountingServiceImpl(String uri, boolean deviceLimit) {
+			super(uri);
+			this.deviceLimit = deviceLimit;
+			addDevice(ID, (short) 200, true);
+		}
+
+		@Override
+		public HomeServerResponse processStatusQuery() {
+			final HomeServerResponse response = super.processStatusQuery();
+			if (!deviceLimit) {
+				response.services = new ArrayList<Service>(response.services);
+				for (int i = response.services.size() - 1; i >= 0; i--) {
+					if (response.services.get(i).deviceLimit != null) {
+						response.services.remove(i);
+					}
+				}
+				response.total = response.services.size();
+			}
+			return response;
+		}
+
+		@Override
+		public HomeServerResponse processSetDeviceLimit(String id, short temperature) {
+			deviceLimitCommands.incrementAndGet();
+			final HomeServerResponse response = super.processSetDeviceLimit(id, temperature);
+			if (response != null && deviceLimitData != null) {
+				response.response.data = deviceLimitData;
+			}
+			return response;
+		}
+
+		@Override
+		public HomeServerResponse processClearDeviceLimit(String id, Short setpoint) {
+			deviceLimitCommands.incrementAndGet();
+			return super.processClearDeviceLimit(id, setpoint);
+		}
+
+		@Override
+		public HomeServerResponse processSetScaldProtectionFlag(String id, boolean on) {
+			scaldProtectionFlagCommands.incrementAndGet();
+			return super.processSetScaldProtectionFlag(id, on);
+		}
+
+		@Override
+		public void processUserFeedback(List<ElmUserFeedback> feedback) {
+			userFeedbackCommands.incrementAndGet();
+			super.processUserFeedback(feedback);
+		}
+	}
+
+	void start(boolean deviceLimit) throws Exception {
+		final URI uri = URI.create("http://localhost:" + getFreePort());
+		db = new CountingServiceImpl(uri.toString(), deviceLimit);
+		simServer = new SimHomeServerServer(db);
+		simServer.start();
+		publicClient = new HomeServerPublicApiClient(uri, HomeServerService.ADMIN_USER, HomeServerService.DEFAULT_PASSWORD);
+		internalClient = new HomeServerInternalApiClient(uri, HomeServerService.ADMIN_USER, HomeServerService.DEFAULT_PASSWORD, publicClient);
+		publicClient.start();
+		internalClient.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (internalClient != null) {
+			internalClient.stop();
+			publicClient.stop();
+		}
+		if (simServer != null) {
+			simServer.stop();
+		}
+	}
+
+	@Test
+	public void deviceLimit() throws Exception {
+		start(true);
+		assertTrue(publicClient.supportsDeviceLimit());
+
+		assertEquals(420, internalClient.setScaldProtectionTemperature(ID, 420).shortValue());
+		assertEquals(420, db.getDevice(ID)._getSetpoint());
+		internalClient.clearScaldProtection(ID, 200);
+		assertEquals(200, db.getDevice(ID)._getSetpoint());
+
+		// a single request per command:
+		assertEquals(2, db.deviceLimitCommands.get());
+		assertEquals(3, db.scaldProtectionFlagCommands.get()); // within the device-limit commands
+	}
+
+	@Test
+	public void deviceLimitAsync() throws Exception {
+		start(true);
+		assertTrue(publicClient.supportsDeviceLimitAsync().get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+		assertEquals(420, internalClient.setScaldProtectionTemperatureAsync(ID, 420).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).shortValue());
+		assertEquals(420, db.getDevice(ID)._getSetpoint());
+		internalClient.clearScaldProtectionAsync(ID, 200).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		assertEquals(200, db.getDevice(ID)._getSetpoint());
+
+		assertEquals(2, db.deviceLimitCommands.get());
+	}
+
+	@Test
+	public void deviceLimitInvalidResponse() throws Exception {
+		start(true);
+		db.deviceLimitData = "42.0";
+
+		try {
+			publicClient.setDeviceLimit(ID, 420);
+			fail("invalid scald temperature");
+		} catch (ClientException e) {
+			assertEquals(ClientException.Error.APPLICATION_DATA_ERROR, e.getError());
+		}
+		try {
+			publicClient.setDeviceLimitAsync(ID, 420).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			fail("invalid scald temperature");
+		} catch (ExecutionException e) {
+			assertEquals(ClientException.Error.APPLICATION_DATA_ERROR, ((ClientException) e.getCause()).getError());
+		}
+	}
+
+	@Test
+	public void stepwise() throws Exception {
+		start(false);
+		assertFalse(publicClient.supportsDeviceLimit());
+
+		assertEquals(420, internalClient.setScaldProtectionTemperature(ID, 420).shortValue());
+		assertEquals(420, db.getDevice(ID)._getSetpoint());
+		internalClient.clearScaldProtection(ID, 200);
+		assertEquals(200, db.getDevice(ID)._getSetpoint());
+
+		// falls back to the /cmd/VF, setpoint, /cmd/VF, /cmd/Vv sequence:
+		assertEquals(0, db.deviceLimitCommands.get());
+		assertEquals(3, db.scaldProtectionFlagCommands.get());
+	}
+
+	@Test
+	public void stepwiseAsync() throws Exception {
+		start(false);
+		assertFalse(publicClient.supportsDeviceLimitAsync().get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+		assertEquals(420, internalClient.setScaldProtectionTemperatureAsync(ID, 420).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).shortValue());
+		assertEquals(420, db.getDevice(ID)._getSetpoint());
+		internalClient.clearScaldProtectionAsync(ID, 200).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		assertEquals(200, db.getDevice(ID)._getSetpoint());
+
+		assertEquals(0, db.deviceLimitCommands.get());
+		assertEquals(3, db.scaldProtectionFlagCommands.get());
+	}
+
+	static int getFreePort() throws IOException {
+		final ServerSocket socket = new ServerSocket(0);
+		try {
+			return socket.getLocalPort();
+		} finally {
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package elm.hs.api.sim.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import elm.hs.api.ControlMessage;
+import elm.hs.api.ControlMessage.Command;
+import elm.hs.api.Device;
+import elm.hs.api.ElmStatus;
+import elm.hs.api.HomeServerResponse;
+import elm.hs.api.sim.server.SimHomeServerService.DevicesChangeListener;
+import elm.scheduler.model.UnsupportedDeviceModelException;
+import elm.sim.model.Flow;
+import elm.sim.model.HotWaterTemperature;
+import elm.sim.model.TapPoint;
+import elm.sim.model.impl.TapPointImpl;
+
+public class SimHomeServerServiceTest {
+
+	SimHomeServerServiceImpl db;
+
+	@Before
+	public void setup() {
+		db = (SimHomeServerServiceImpl) SimHomeServerServiceImpl.createDemoDB("http://localhost:9090");
+	}
+
+	@Test
+	public void devicesChangeSequence() throws UnsupportedDeviceModelException {
+		final long seq0 = db.getDevicesChangeSequence();
+		assertEquals(seq0, db.getDevicesChangeSequence());
+
+		// the Status block is not part of the /devices response:
+		final Device device = db.getDevice("2016FFFF55");
+		device.status.flow = 50;
+		device.status.power = 100;
+		assertEquals(seq0, db.getDevicesChangeSequence());
+
+		// change by a request:
+		db.processDeviceSetpoint(device.id, (short) 300);
+		final long seq1 = db.getDevicesChangeSequence();
+		assertTrue(seq1 > seq0);
+		assertEquals(seq1, db.getDevicesChangeSequence());
+
+		// same setpoint again:
+		db.processDeviceSetpoint(device.id, (short) 300);
+		final long seq2 = db.getDevicesChangeSequence();
+		assertEquals(seq1, seq2);
+
+		// new device and change by its tap point:
+		final TapPoint point = new TapPointImpl("Dusche", "A001FFFF34", true, HotWaterTemperature.TEMP_38);
+		db.addDevice(point.getId(), (short) 380, point);
+		final long seq3 = db.getDevicesChangeSequence();
+		assertTrue(seq3 > seq2);
+		point.setReferenceTemperature(HotWaterTemperature.TEMP_42);
+		assertTrue(db.getDevicesChangeSequence() > seq3);
+	}
+
+	@Test
+	public void devicesChangeListener() throws UnsupportedDeviceModelException {
+		final TapPoint point = new TapPointImpl("Dusche", "A001FFFF34", true, HotWaterTemperature.TEMP_38);
+		point.setStatus(ElmStatus.ON);
+		db.addDevice(point.getId(), (short) 380, point);
+		final long seq0 = db.getDevicesChangeSequence();
+		final List<Long> sequences = new ArrayList<Long>();
+		final DevicesChangeListener listener = new DevicesChangeListener() {
+			@Override
+			public void devicesChanged(long sequence) {
+				sequences.add(sequence);
+			}
+		};
+		db.addDevicesChangeListener(listener);
+
+		// notified by the tap point, without a query:
+		point.setReferenceTemperature(HotWaterTemperature.TEMP_42);
+		assertEquals(Arrays.asList(seq0 + 1), sequences);
+		// the heater turns on:
+		point.setReferenceFlow(Flow.MEDIUM);
+		assertEquals(Arrays.asList(seq0 + 1, seq0 + 2), sequences);
+
+		db.removeDevicesChangeListener(listener);
+		db.processDeviceSetpoint(point.getId(), (short) 300);
+		assertEquals(2, sequences.size());
+	}
+
+	@Test
+	public void controlCommands() throws UnsupportedDeviceModelException {
+		final TapPoint point = new TapPointImpl("Dusche", "A001FFFF34", true, HotWaterTemperature.TEMP_38);
+		db.addDevice(point.getId(), (short) 380, point);
+		final SimHomeServerServer.ControlServlet control = new SimHomeServerServer(db).new ControlServlet();
+
+		ControlMessage command = new ControlMessage(Command.SET_SCALD_PROTECTION, point.getId(), 425);
+		command.id = 7;
+		ControlMessage ack = control.processCommand(command);
+		assertEquals(7, ack.id);
+		assertEquals(Command.ACK, ack.cmd);
+		assertEquals(Integer.valueOf(420), ack.value); // full degrees
+		assertEquals(HotWaterTemperature.TEMP_42, point.getScaldProtectionTemperature());
+		assertEquals(420, db.getDevice(point.getId()).status.setpoint); // limited by the scald protection
+
+		command = new ControlMessage(Command.CLEAR_SCALD_PROTECTION, point.getId(), 380);
+		assertEquals(Command.ACK, control.processCommand(command).cmd);
+		assertEquals(HotWaterTemperature.TEMP_MAX_60, point.getScaldProtectionTemperature());
+		assertEquals(380, db.getDevice(point.getId()).status.setpoint);
+
+		command = new ControlMessage(Command.SET_SCALD_PROTECTION, "nope", 420);
+		ack = control.processCommand(command);
+		assertEquals(Command.NACK, ack.cmd);
+		assertNotNull(ack.error);
+	}
+
+	@Test
+	public void deviceLimit() throws UnsupportedDeviceModelException {
+		final TapPoint point = new TapPointImpl("Dusche", "A001FFFF34", true, HotWaterTemperature.TEMP_38);
+		db.addDevice(point.getId(), (short) 380, point);
+
+		HomeServerResponse response = db.processSetDeviceLimit(point.getId(), (short) 425);
+		assertEquals("420", response.response.data); // full degrees
+		assertEquals(1, response.devices.size());
+		assertEquals(420, response.devices.get(0).status.setpoint); // the confirmed status, limited by the scald protection
+		assertEquals(HotWaterTemperature.TEMP_42, point.getScaldProtectionTemperature());
+
+		response = db.processClearDeviceLimit(point.getId(), (short) 380);
+		assertEquals("0", response.response.data);
+		assertEquals(380, response.devices.get(0).status.setpoint);
+		assertEquals(HotWaterTemperature.TEMP_MAX_60, point.getScaldProtectionTemperature());
+
+		assertNull(db.processSetDeviceLimit("nope", (short) 420));
+		assertNull(db.processClearDeviceLimit("nope", null));
+	}
+}
@@ -11,6 +11,9 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -134,5 +137,33 @@ public class AbstractSchedulerTest {
 		sleep(2); // scheduler forced to process devices now
 		assertEquals(runCount+1, scheduler.getSchdedulingRunCount());
 	}
-	
+
+	@Test
+	public void eventProcessorCoalescesChangeEvents() {
+		final List<AbstractElmScheduler.ChangeEvent> events = new ArrayList<AbstractElmScheduler.ChangeEvent>();
+		scheduler = new AbstractElmScheduler() {
+			@Override
+			protected void processDevices() {
+				events.addAll(getChangeEvents());
+			}
+		};
+		scheduler.setSchedulingIntervalMillis(1000);
+		scheduler.start();
+		sleep(10);
+		scheduler.devicesControllersUpdated(hs1, false);
+		scheduler.devicesControllersUpdated(hs2, false);
+		scheduler.devicesControllersUpdated(hs1, false);
+		scheduler.devicesControllersUpdated(hs2, false);
+		assertEquals(0, scheduler.getSchdedulingRunCount());
+
+		scheduler.devicesControllersUpdated(hs1, true); // raises the urgency of the pending hs1 event => WAKE UP the scheduler
+		sleep(10);
+		assertEquals(1, scheduler.getSchdedulingRunCount());
+		assertEquals(2, events.size());
+		assertEquals(hs1, events.get(0).getServer());
+		assertTrue(events.get(0).isUrgent());
+		assertEquals(hs2, events.get(1).getServer());
+		assertFalse(events.get(1).isUrgent());
+		scheduler.stop();
+	}
 }
@@ -0,0 +1,81 @@
+package elm.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import elm.scheduler.model.DeviceController;
+
+public class ConsumptionQueueTest {
+
+	ConsumptionQueue queue;
+	DeviceController d1;
+	DeviceController d2;
+	DeviceController d3;
+	DeviceController d4;
+
+	@Before
+	public void setup() {
+		queue = new ConsumptionQueue();
+		d1 = createDevice(1000, 20_000, 0, 40_000);
+		d2 = createDevice(2000, 10_000, 0, 40_000);
+		d3 = createDevice(1500, 10_000, 10_000, 40_000); // already has the power it needs
+		d4 = createDevice(3000, 5_000, 0, 10_000);
+	}
+
+	@Test
+	public void admissionOrder() {
+		queue.update(Arrays.asList(d1, d2, d3, d4));
+		assertEquals(Arrays.asList(d3, d1, d2, d4), toList(queue.admissionOrder().iterator()));
+		assertEquals(Arrays.asList(d4, d1, d3, d2), toList(queue.endTimeOrder()));
+
+		// d2 is granted its power => moves to the group of satisfied devices
+		when(d2.getApprovedPowerWatt()).thenReturn(DeviceController.UNLIMITED_POWER);
+		queue.update(Arrays.asList(d1, d2, d3, d4));
+		assertEquals(Arrays.asList(d3, d2, d1, d4), toList(queue.admissionOrder().iterator()));
+
+		// d3 and d4 ended their consumption
+		queue.update(Arrays.asList(d1, d2));
+		assertEquals(2, queue.size());
+		assertEquals(Arrays.asList(d2, d1), toList(queue.admissionOrder().iterator()));
+		assertEquals(Arrays.asList(d1, d2), toList(queue.endTimeOrder()));
+
+		queue.clear();
+		assertFalse(queue.admissionOrder().iterator().hasNext());
+	}
+
+	@Test
+	public void sameStartTime() {
+		DeviceController d5 = createDevice(1000, 10_000, 0, 40_000);
+		DeviceController d6 = createDevice(1000, 10_000, 0, 40_000);
+		queue.update(Arrays.asList(d1, d5, d6));
+		// lower power first, then in order of addition
+		assertEquals(Arrays.asList(d5, d6, d1), toList(queue.admissionOrder().iterator()));
+	}
+
+	private static DeviceController createDevice(long consumptionStartTime, int demandPowerWatt, int approvedPowerWatt, int meanConsumptionMillis) {
+		DeviceController device = mock(DeviceController.class);
+		when(device.getConsumptionStartTime()).thenReturn(consumptionStartTime);
+		when(device.getDemandPowerWatt()).thenReturn(demandPowerWatt);
+		when(device.getApprovedPowerWatt()).thenReturn(approvedPowerWatt);
+		when(device.getMeanConsumptionMillis()).thenReturn(meanConsumptionMillis);
+		return device;
+	}
+
+	private static List<DeviceController> toList(Iterator<DeviceController> iterator) {
+		List<DeviceController> result = new ArrayList<DeviceController>();
+		while (iterator.hasNext()) {
+			result.add(iterator.next());
+		}
+		return result;
+	}
+}
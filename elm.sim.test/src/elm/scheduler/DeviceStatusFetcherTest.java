@@ -0,0 +1,202 @@
+package elm.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import elm.hs.api.Device;
+import elm.hs.api.HomeServerAsyncService;
+import elm.hs.api.HomeServerResponse;
+import elm.hs.api.HomeServerResponseDecoder;
+import elm.hs.api.Status;
+import elm.util.ClientException;
+import elm.util.ClientFuture;
+
+public class DeviceStatusFetcherTest {
+
+	static final List<String> IDS = Arrays.asList("D012001001", "D012001002", "D012001003", "D012001004", "D012001005", "D012001006");
+
+	/** The requests sent but not answered yet. */
+	BlockingQueue<Request> requests;
+	int inFlight;
+	int maxInFlight;
+	HomeServerAsyncService client;
+
+	class Request {
+		final String deviceID;
+		final ClientFuture<HomeServerResponse> future = new ClientFuture<HomeServerResponse>();
+
+		Request(String deviceID) {
+			this.deviceID = deviceID;
+		}
+
+		void complete() {
+			synchronized (DeviceStatusFetcherTest.this) {
+				inFlight--;
+			}
+			final HomeServerResponse response = new HomeServerResponse();
+			final Device device = new Device();
+			device.id = deviceID;
+			device.status = new Status();
+			response.devices = Collections.singletonList(device);
+			future.complete(response);
+		}
+	}
+
+	@Before
+	public void setup() {
+		requests = new LinkedBlockingQueue<Request>();
+		client = mock(HomeServerAsyncService.class);
+		when(client.getDeviceStatusAsync(anyString(), any(HomeServerResponseDecoder.class))).thenAnswer(new Answer<ClientFuture<HomeServerResponse>>() {
+			@Override
+			public ClientFuture<HomeServerResponse> answer(InvocationOnMock invocation) {
+				final Request request = new Request((String) invocation.getArguments()[0]);
+				synchronized (DeviceStatusFetcherTest.this) {
+					inFlight++;
+					maxInFlight = Math.max(maxInFlight, inFlight);
+				}
+				requests.add(request);
+				return request.future;
+			}
+		});
+	}
+
+	/** Answers the requests on a separate thread, like the HTTP client does. */
+	Thread startServer(final int answers) {
+		final Thread server = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < answers; i++) {
+						requests.take().complete();
+					}
+				} catch (InterruptedException e) {
+					// stop
+				}
+			}
+		};
+		server.start();
+		return server;
+	}
+
+	@Test
+	public void boundedParallelism() throws Exception {
+		final Thread server = startServer(IDS.size());
+		final DeviceStatusFetcher.Result result = new DeviceStatusFetcher(client, 2).fetch(IDS, 5_000);
+		server.join();
+		assertEquals(IDS.size(), result.getStatuses().size());
+		assertEquals(0, result.getMissedCount());
+		assertNull(result.getException());
+		assertTrue(maxInFlight <= 2);
+	}
+
+	@Test
+	public void partialResultsOnTimeout() throws Exception {
+		final Thread server = startServer(4); // the last two requests are never answered
+		final DeviceStatusFetcher.Result result = new DeviceStatusFetcher(client, 3).fetch(IDS, 200);
+		server.interrupt();
+		assertEquals(4, result.getStatuses().size());
+		assertEquals(2, result.getMissedCount());
+		assertNull(result.getException());
+		assertTrue(maxInFlight <= 3);
+	}
+
+	@Test
+	public void lateRequestsCountAgainstBound() throws Exception {
+		final DeviceStatusFetcher fetcher = new DeviceStatusFetcher(client, 2);
+		DeviceStatusFetcher.Result result = fetcher.fetch(IDS.subList(0, 3), 100); // none answered
+		assertEquals(0, result.getStatuses().size());
+		assertEquals(3, result.getMissedCount());
+		assertEquals(2, requests.size());
+
+		// the late requests are still in flight => no further request
+		result = fetcher.fetch(IDS.subList(0, 3), 100);
+		assertEquals(3, result.getMissedCount());
+		assertEquals(2, requests.size());
+
+		// the late requests complete => the devices are requested again, one at a time as the bound permits
+		final Thread server = startServer(4);
+		result = fetcher.fetch(IDS.subList(1, 3), 5_000);
+		server.join();
+		assertEquals(2, result.getStatuses().size());
+		assertEquals(0, result.getMissedCount());
+		assertTrue(maxInFlight <= 2);
+	}
+
+	@Test
+	public void decodersReused() throws Exception {
+		final DeviceStatusFetcher fetcher = new DeviceStatusFetcher(client, 2);
+		final Map<String, HomeServerResponseDecoder> decoders = new HashMap<String, HomeServerResponseDecoder>();
+		for (int i = 0; i < 2; i++) {
+			final Thread server = startServer(2);
+			assertEquals(2, fetcher.fetch(IDS.subList(0, 2), 5_000).getStatuses().size());
+			server.join();
+		}
+		// one decoder per device, reused by the next fetch:
+		final ArgumentCaptor<String> ids = ArgumentCaptor.forClass(String.class);
+		final ArgumentCaptor<HomeServerResponseDecoder> usedDecoders = ArgumentCaptor.forClass(HomeServerResponseDecoder.class);
+		verify(client, times(4)).getDeviceStatusAsync(ids.capture(), usedDecoders.capture());
+		for (int i = 0; i < 4; i++) {
+			final HomeServerResponseDecoder decoder = decoders.put(ids.getAllValues().get(i), usedDecoders.getAllValues().get(i));
+			assertTrue(decoder == null || decoder == usedDecoders.getAllValues().get(i));
+		}
+		assertEquals(2, decoders.size());
+		assertTrue(decoders.get(IDS.get(0)) != decoders.get(IDS.get(1)));
+	}
+
+	@Test
+	public void partialResultsOnFailure() throws Exception {
+		doReturn(ClientFuture.failed(new ClientException(ClientException.Error.APPLICATION_FAILURE_RESPONSE))).when(client).getDeviceStatusAsync(
+				eq(IDS.get(1)), any(HomeServerResponseDecoder.class));
+		// no Status block:
+		doReturn(ClientFuture.completed(new HomeServerResponse())).when(client).getDeviceStatusAsync(eq(IDS.get(2)), any(HomeServerResponseDecoder.class));
+		final Thread server = startServer(IDS.size() - 2);
+		final DeviceStatusFetcher.Result result = new DeviceStatusFetcher(client, 2).fetch(IDS, 5_000);
+		server.join();
+		assertEquals(IDS.size() - 2, result.getStatuses().size());
+		assertEquals(0, result.getMissedCount());
+		assertEquals(ClientException.Error.APPLICATION_FAILURE_RESPONSE, result.getException().getError());
+	}
+
+	@Test
+	public void batchRequest() throws Exception {
+		final HomeServerResponse response = new HomeServerResponse();
+		response.devices = new ArrayList<Device>();
+		for (String id : IDS.subList(0, 3)) {
+			final Device device = new Device();
+			device.id = id;
+			device.status = new Status();
+			response.devices.add(device);
+		}
+		doReturn(ClientFuture.completed(response)).when(client).getDeviceStatusAsync(eq(IDS.subList(0, 3)), any(HomeServerResponseDecoder.class));
+		final DeviceStatusFetcher fetcher = new DeviceStatusFetcher(client, 2);
+		fetcher.setBatchRequests(true);
+		final DeviceStatusFetcher.Result result = fetcher.fetch(IDS.subList(0, 3), 5_000);
+		assertEquals(3, result.getStatuses().size());
+		assertNull(result.getException());
+		assertEquals(0, maxInFlight); // no single-device requests
+	}
+}
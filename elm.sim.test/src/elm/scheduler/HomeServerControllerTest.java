@@ -0,0 +1,207 @@
+package elm.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import elm.hs.api.HomeServerResponse;
+import elm.hs.api.HomeServerService;
+import elm.hs.api.Service;
+import elm.hs.api.sim.server.SimHomeServerServer;
+import elm.hs.api.sim.server.SimHomeServerService;
+import elm.hs.api.sim.server.SimHomeServerServiceImpl;
+import elm.scheduler.model.DeviceController;
+import elm.scheduler.model.DeviceController.DeviceStatus;
+import elm.scheduler.model.HomeServerChangeListener;
+import elm.scheduler.model.impl.HomeServerImpl;
+
+/**
+ * Runs {@link HomeServerController}s against a Sim Home Server via HTTP.
+ */
+public class HomeServerControllerTest {
+
+	static final long TIMEOUT_MILLIS = 5_000;
+
+	SimHomeServerService db;
+	SimHomeServerServer simServer;
+	URI uri;
+	ElmScheduler scheduler;
+
+	@Before
+	public void setup() throws Exception {
+		uri = URI.create("http://localhost:" + getFreePort());
+		db = SimHomeServerServiceImpl.createDemoDB(uri.toString());
+		simServer = new SimHomeServerServer(db);
+		simServer.start();
+		scheduler = new ElmScheduler(40_000, 30_000);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		simServer.stop();
+	}
+
+	/**
+	 * Executor mode: several controllers share a single thread; none of them runs on a thread of its own.
+	 */
+	@Test
+	public void sharedExecutor() throws Exception {
+		final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				return new Thread(r, "shared controller thread");
+			}
+		});
+		final HomeServerImpl[] servers = new HomeServerImpl[3];
+		final HomeServerController[] controllers = new HomeServerController[servers.length];
+		try {
+			for (int i = 0; i < servers.length; i++) {
+				final ElmUserFeedbackManager feedbackManager = new ElmUserFeedbackManager();
+				servers[i] = new HomeServerImpl(uri, HomeServerService.DEFAULT_PASSWORD, feedbackManager);
+				controllers[i] = new HomeServerController(scheduler, feedbackManager, servers[i], executor);
+				controllers[i].setPollingIntervalMillis(100);
+				controllers[i].start();
+			}
+			for (int i = 0; i < servers.length; i++) {
+				waitFor(servers[i], db.getDevices().size());
+				assertEquals(HomeServerController.State.CONNECTED, controllers[i].getState());
+				assertTrue(servers[i].isAlive());
+			}
+			assertEquals(servers.length, scheduler.getHomeServers().size());
+			for (Thread thread : Thread.getAllStackTraces().keySet()) {
+				assertFalse(thread.getName(), thread.getName().startsWith(HomeServerController.class.getSimpleName()));
+			}
+
+			for (HomeServerController controller : controllers) {
+				controller.stop();
+			}
+			for (HomeServerController controller : controllers) {
+				waitFor(controller, HomeServerController.State.STOPPED);
+			}
+			// the server is removed from the scheduler right after the state change:
+			final long endTime = System.currentTimeMillis() + TIMEOUT_MILLIS;
+			while (!scheduler.getHomeServers().isEmpty() && System.currentTimeMillis() < endTime) {
+				Thread.sleep(10);
+			}
+			assertTrue(scheduler.getHomeServers().isEmpty());
+		} finally {
+			executor.shutdown();
+		}
+		assertTrue(executor.awaitTermination(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * The status request of one device times out on every poll: the changes of the other devices must reach the scheduler nonetheless.
+	 */
+	@Test
+	public void lateDeviceStatus() throws Exception {
+		final String id = "2016FFFF55";
+		final String lateId = "A001FFFF33";
+		simServer.stop();
+		final SimHomeServerServiceImpl lateDB = new SimHomeServerServiceImpl(uri.toString()) {
+			@Override
+			public HomeServerResponse processStatusQuery() {
+				// no batch requests => one status request per device
+				final HomeServerResponse response = super.processStatusQuery();
+				response.services = new ArrayList<Service>(response.services);
+				for (int i = response.services.size() - 1; i >= 0; i--) {
+					if (response.services.get(i).deviceStatusBatch != null) {
+						response.services.remove(i);
+					}
+				}
+				response.total = response.services.size();
+				return response;
+			}
+
+			@Override
+			public HomeServerResponse processDeviceStatusQuery(String deviceID) {
+				if (lateId.equals(deviceID)) {
+					try {
+						Thread.sleep(500);
+					} catch (InterruptedException e) {
+						// answer now
+					}
+				}
+				return super.processDeviceStatusQuery(deviceID);
+			}
+		};
+		lateDB.addDevice(id, (short) 380, true);
+		lateDB.addDevice(lateId, (short) 380, true);
+		db = lateDB;
+		simServer = new SimHomeServerServer(db);
+		simServer.start();
+
+		final ElmUserFeedbackManager feedbackManager = new ElmUserFeedbackManager();
+		final HomeServerImpl server = new HomeServerImpl(uri, HomeServerService.DEFAULT_PASSWORD, feedbackManager);
+		final HomeServerController controller = new HomeServerController(scheduler, feedbackManager, server);
+		controller.setPollingIntervalMillis(50);
+		controller.setStatusTimeoutMillis(100);
+		controller.start();
+		try {
+			waitFor(server, 2);
+			waitFor(server.getDeviceController(id), DeviceStatus.CONSUMPTION_STARTED);
+			assertEquals(DeviceStatus.INITIALIZING, server.getDeviceController(lateId).getStatus());
+
+			final HomeServerChangeListener listener = mock(HomeServerChangeListener.class);
+			server.addChangeListener(listener);
+			lateDB.getDevice(id).status.flow = 0; // the consumption ends
+			verify(listener, timeout((int) TIMEOUT_MILLIS)).devicesControllersUpdated(same(server), anyBoolean());
+			assertFalse(server.getDeviceController(id).getStatus().isConsuming());
+			assertEquals(DeviceStatus.INITIALIZING, server.getDeviceController(lateId).getStatus());
+		} finally {
+			controller.stop();
+		}
+		waitFor(controller, HomeServerController.State.STOPPED);
+	}
+
+	static void waitFor(DeviceController deviceController, DeviceStatus status) throws InterruptedException {
+		final long endTime = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (deviceController.getStatus() != status && System.currentTimeMillis() < endTime) {
+			Thread.sleep(10);
+		}
+		assertEquals(status, deviceController.getStatus());
+	}
+
+	static void waitFor(HomeServerImpl server, int deviceCount) throws InterruptedException {
+		final long endTime = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (server.getDeviceControllers().size() != deviceCount && System.currentTimeMillis() < endTime) {
+			Thread.sleep(10);
+		}
+		assertEquals(deviceCount, server.getDeviceControllers().size());
+	}
+
+	static void waitFor(HomeServerController controller, HomeServerController.State state) throws InterruptedException {
+		final long endTime = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while (controller.getState() != state && System.currentTimeMillis() < endTime) {
+			Thread.sleep(10);
+		}
+		assertEquals(state, controller.getState());
+	}
+
+	static int getFreePort() throws IOException {
+		final ServerSocket socket = new ServerSocket(0);
+		try {
+			return socket.getLocalPort();
+		} finally {
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package elm.scheduler;
+
+import static elm.hs.api.ElmStatus.ON;
+import static elm.scheduler.model.DeviceController.DeviceStatus.READY;
+import static elm.scheduler.model.impl.ModelTestUtil.FLOW_OFF;
+import static elm.scheduler.model.impl.ModelTestUtil.createDeviceWithInfo;
+import static elm.scheduler.model.impl.ModelTestUtil.createDeviceWithStatus;
+import static elm.scheduler.model.impl.ModelTestUtil.createDevicesWithStatus;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import elm.hs.api.Device;
+import elm.scheduler.model.DeviceController;
+import elm.scheduler.model.UnsupportedDeviceModelException;
+
+/**
+ * Runs the {@link SchedulerIntegrationTest} scenarios with the {@link ElmScheduler} in incremental mode and verifies the incrementally maintained device
+ * information against a full analysis after each cycle.
+ */
+public class IncrementalSchedulerIntegrationTest extends SchedulerIntegrationTest {
+
+	@Before
+	@Override
+	public void setup() {
+		super.setup();
+		scheduler.setIncrementalMode(true);
+		scheduler.setConsistencyCheckEnabled(true);
+	}
+
+	/**
+	 * An idle device added to a Home Server whose devices have been accounted for already: its Status block does not report any change, the device must be
+	 * accounted for nevertheless.
+	 */
+	@Test
+	public void scheduling_IdleDeviceAdded() {
+		try {
+			scheduler.setIsAliveCheckDisabled(true);
+			scheduler.addHomeServer(hs1);
+			scheduler.runOnce();
+			assertEquals(ON, scheduler.getStatus());
+
+			// new device: Info block first, then Status block
+			List<Device> hs1_Devices = createDevicesWithStatus(1, NUM_DEVICES, 0, FLOW_OFF);
+			hs1_Devices.add(createDeviceWithInfo(1, NUM_DEVICES + 1));
+			feedbackManager.addFeedbackServer(feedbackClient, Collections.singletonList(hs1_Devices.get(NUM_DEVICES).id));
+			assertNotNull(hs1.updateDeviceControllers(hs1_Devices));
+			hs1_Devices.set(NUM_DEVICES, createDeviceWithStatus(1, NUM_DEVICES + 1, 0, FLOW_OFF));
+			hs1.updateDeviceControllers(hs1_Devices);
+			final DeviceController d1_3 = hs1.getDeviceController(hs1_Devices.get(NUM_DEVICES).id);
+
+			scheduler.runOnce();
+			assertEquals(0, scheduler.getConsistencyViolationCount());
+			assertEquals(READY, d1_3.getStatus());
+
+		} catch (UnsupportedDeviceModelException e) {
+			fail(e.toString());
+			e.printStackTrace();
+		}
+	}
+
+	@After
+	public void checkConsistency() {
+		assertEquals(0, scheduler.getConsistencyViolationCount());
+	}
+}
@@ -0,0 +1,141 @@
+package elm.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.GsonBuilder;
+
+import elm.hs.api.Device;
+import elm.hs.api.ElmUserFeedbackService;
+import elm.hs.api.HomeServerResponse;
+import elm.hs.api.HomeServerResponseDecoder;
+import elm.hs.api.sim.server.SimHomeServerService;
+import elm.hs.api.sim.server.SimHomeServerServiceImpl;
+import elm.scheduler.model.DeviceController;
+import elm.scheduler.model.UnsupportedDeviceModelException;
+import elm.scheduler.model.impl.HomeServerImpl;
+
+/**
+ * Profiles the allocations of the poll path of the {@link HomeServerController}: decoding the device list and, where needed, the device statuses like the
+ * {@link DeviceStatusFetcher}, either in a batch or one device at a time, and updating the {@link DeviceController}s. In steady state, this path must not
+ * allocate. The HTTP requests themselves are not part of the profile.
+ */
+public class PollAllocationTest {
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+	static final int POLLS = 10_000;
+
+	com.sun.management.ThreadMXBean threadBean;
+	HomeServerImpl server;
+	byte[] devicesContent;
+	byte[] batchStatusContent;
+	byte[][] statusContents;
+	final HomeServerResponseDecoder devicesDecoder = new HomeServerResponseDecoder();
+	final HomeServerResponseDecoder batchDecoder = new HomeServerResponseDecoder();
+	HomeServerResponseDecoder[] statusDecoders;
+
+	@Before
+	public void setup() {
+		final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		threadBean = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+		final SimHomeServerService db = SimHomeServerServiceImpl.createDemoDB("http://localhost:9090");
+		final List<String> ids = new ArrayList<String>();
+		for (Device device : db.getDevices()) {
+			ids.add(device.id);
+		}
+		devicesContent = new GsonBuilder().create().toJson(db.processDevicesQuery()).getBytes(UTF_8);
+		batchStatusContent = new GsonBuilder().create().toJson(db.processDeviceStatusBatchQuery(ids)).getBytes(UTF_8);
+		statusContents = new byte[ids.size()][];
+		statusDecoders = new HomeServerResponseDecoder[ids.size()];
+		for (int i = 0; i < ids.size(); i++) {
+			statusContents[i] = new GsonBuilder().create().toJson(db.processDeviceStatusQuery(ids.get(i))).getBytes(UTF_8);
+			statusDecoders[i] = new HomeServerResponseDecoder();
+		}
+		final ElmUserFeedbackManager feedbackManager = new ElmUserFeedbackManager();
+		feedbackManager.addFeedbackServer(mock(ElmUserFeedbackService.class), ids);
+		server = new HomeServerImpl(URI.create("http://localhost:9090"), "pw", feedbackManager);
+	}
+
+	@Test
+	public void steadyStateAllocatesNothing_BatchStatus() throws UnsupportedDeviceModelException {
+		steadyStateAllocatesNothing(true);
+	}
+
+	@Test
+	public void steadyStateAllocatesNothing_SingleStatus() throws UnsupportedDeviceModelException {
+		steadyStateAllocatesNothing(false);
+	}
+
+	private void steadyStateAllocatesNothing(boolean batch) throws UnsupportedDeviceModelException {
+		// the demo devices show a flow => they need a Status block on every poll
+		assertEquals(3, poll(batch));
+		for (int i = 0; i < POLLS; i++) { // warm up
+			poll(batch);
+		}
+		final long before = getAllocatedBytes();
+		long statusCount = 0;
+		for (int i = 0; i < POLLS; i++) {
+			statusCount += poll(batch);
+		}
+		final long allocatedBytes = getAllocatedBytes() - before;
+		assertEquals(3 * POLLS, statusCount);
+		// the probe itself may allocate a few bytes:
+		assertTrue(allocatedBytes + " bytes allocated by " + POLLS + " polls", allocatedBytes < 1_000);
+	}
+
+	/**
+	 * Emulates {@code HomeServerController.pollHomeServer()}.
+	 *
+	 * @param batch
+	 *            {@code true} to decode the statuses from a single batch response, {@code false} to decode them from one response per device
+	 * @return the number of devices that needed a Status block
+	 */
+	private int poll(boolean batch) throws UnsupportedDeviceModelException {
+		final List<Device> devices = devicesDecoder.decode(devicesContent).devices;
+		final List<String> idsNeedingStatus = server.updateDeviceControllers(devices);
+		if (idsNeedingStatus == null) {
+			return 0;
+		}
+		final int result = idsNeedingStatus.size();
+		if (batch) {
+			updateStatuses(devices, batchDecoder.decode(batchStatusContent));
+		} else {
+			for (int i = 0; i < statusContents.length; i++) {
+				updateStatuses(devices, statusDecoders[i].decode(statusContents[i]));
+			}
+		}
+		assertNull(server.updateDeviceControllers(devices));
+		return result;
+	}
+
+	private static void updateStatuses(List<Device> devices, HomeServerResponse statuses) {
+		for (int i = 0; i < devices.size(); i++) {
+			final Device device = devices.get(i);
+			for (int j = 0; j < statuses.devices.size(); j++) {
+				if (device.id.equals(statuses.devices.get(j).id)) {
+					device.status = statuses.devices.get(j).status;
+					device.info = null;
+				}
+			}
+		}
+	}
+
+	private long getAllocatedBytes() {
+		return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -1,11 +1,13 @@
 package elm.scheduler;
 
+import static elm.hs.api.ElmStatus.ERROR;
 import static elm.hs.api.ElmStatus.OFF;
 import static elm.hs.api.ElmStatus.ON;
 import static elm.hs.api.ElmStatus.OVERLOAD;
 import static elm.hs.api.ElmStatus.SATURATION;
 import static elm.scheduler.model.DeviceController.DeviceStatus.CONSUMPTION_APPROVED;
 import static elm.scheduler.model.DeviceController.DeviceStatus.CONSUMPTION_DENIED;
+import static elm.scheduler.model.DeviceController.DeviceStatus.CONSUMPTION_LIMITED;
 import static elm.scheduler.model.DeviceController.DeviceStatus.CONSUMPTION_STARTED;
 import static elm.scheduler.model.DeviceController.DeviceStatus.DENIED;
 import static elm.scheduler.model.DeviceController.DeviceStatus.READY;
@@ -25,7 +27,9 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -685,4 +689,377 @@ public class SchedulerIntegrationTest {
 			e.printStackTrace();
 		}
 	}
+
+	/**
+	 * One Home Server fails: its last-known demand is reserved, the other servers continue to be scheduled.
+	 */
+	@Test
+	public void scheduling_PartialFailure() {
+		try {
+			scheduler.addHomeServer(hs1);
+			scheduler.addHomeServer(hs2);
+			scheduler.addHomeServer(hs3);
+			scheduler.setOutageReservationDecayMillis(100_000);
+
+			List<Device> hs1_Devices = createDevicesWithStatus(1, NUM_DEVICES, 0, FLOW_OFF);
+			hs1_Devices.set(1, createDeviceWithStatus(1, 2, 20_000, FLOW_ON)); // Turn tap 1-2 ON
+			Device d1_1 = hs1_Devices.get(0);
+			Device d1_2 = hs1_Devices.get(1);
+			hs1.updateDeviceControllers(hs1_Devices);
+			List<Device> hs2_Devices = createDevicesWithStatus(2, NUM_DEVICES, 0, FLOW_OFF);
+			hs2_Devices.set(1, createDeviceWithStatus(2, 2, 20_000, FLOW_ON)); // Turn tap 2-2 ON
+			hs2.updateDeviceControllers(hs2_Devices);
+
+			pollHomeServers(hs1, hs2, hs3);
+			scheduler.runOnce();
+			assertEquals(SATURATION, scheduler.getStatus());
+			assertEquals(0, scheduler.getReservedPowerWatt());
+
+			// hs2 is no longer polled => not alive
+			timeService.advanceTime(2 * HomeServer.POLL_TIME_TOLERANCE_MILLIS_DEFAULT);
+			pollHomeServers(hs1, hs3);
+			scheduler.runOnce();
+			assertEquals(SATURATION, scheduler.getStatus()); // not ERROR
+			assertFalse(scheduler.isHomeServerAlive(hs2));
+			assertTrue(scheduler.isHomeServerAlive(hs1));
+			verify(statusL).homeServerAliveChanged(hs2, false);
+			assertTrue(scheduler.getReservedPowerWatt() > 19_000 && scheduler.getReservedPowerWatt() <= 20_000);
+			final int demandPowerWatt = hs1.getDeviceController(d1_2.id).getDemandPowerWatt();
+			assertEquals(demandPowerWatt, scheduler.getTotalDemandPowerWatt()); // without hs2
+
+			// tap 1-1 ON => would fit the overload limit, but not with the reservation for hs2
+			hs1_Devices.set(0, createDeviceWithStatus(1, 1, 20_000, FLOW_ON));
+			hs1.updateDeviceControllers(hs1_Devices);
+			pollHomeServers(hs1, hs3);
+			scheduler.runOnce();
+			assertEquals(OVERLOAD, scheduler.getStatus());
+			assertEquals(CONSUMPTION_DENIED, hs1.getDeviceController(d1_1.id).getStatus());
+			assertEquals(CONSUMPTION_APPROVED, hs1.getDeviceController(d1_2.id).getStatus());
+
+			// the reservation decays
+			timeService.advanceTime(100_000);
+			pollHomeServers(hs1, hs3);
+			scheduler.runOnce();
+			assertEquals(0, scheduler.getReservedPowerWatt());
+			assertEquals(SATURATION, scheduler.getStatus());
+			assertEquals(CONSUMPTION_APPROVED, hs1.getDeviceController(d1_1.id).getStatus());
+
+			// hs2 is alive again
+			pollHomeServers(hs1, hs2, hs3);
+			scheduler.runOnce();
+			assertTrue(scheduler.isHomeServerAlive(hs2));
+			verify(statusL).homeServerAliveChanged(hs2, true);
+			assertEquals(OVERLOAD, scheduler.getStatus());
+			assertEquals(3 * demandPowerWatt, scheduler.getTotalDemandPowerWatt());
+
+			// all Home Servers fail
+			timeService.advanceTime(2 * HomeServer.POLL_TIME_TOLERANCE_MILLIS_DEFAULT);
+			scheduler.runOnce();
+			scheduler.runOnce();
+			assertEquals(ERROR, scheduler.getStatus());
+
+		} catch (UnsupportedDeviceModelException e) {
+			fail(e.toString());
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * A Home Server fails while its devices are idle: its maximum demand observed is reserved, as they may start consuming at any time.
+	 */
+	@Test
+	public void scheduling_IdleServerFails() {
+		try {
+			scheduler.addHomeServer(hs1);
+			scheduler.addHomeServer(hs2);
+			scheduler.setOutageReservationDecayMillis(100_000);
+
+			hs1.updateDeviceControllers(createDevicesWithStatus(1, NUM_DEVICES, 0, FLOW_OFF));
+			final List<Device> hs2_Devices = createDevicesWithStatus(2, NUM_DEVICES, 0, FLOW_OFF);
+			hs2_Devices.set(1, createDeviceWithStatus(2, 2, 20_000, FLOW_ON)); // Turn tap 2-2 ON
+			hs2.updateDeviceControllers(hs2_Devices);
+			pollHomeServers(hs1, hs2);
+			scheduler.runOnce();
+			final int demandPowerWatt = scheduler.getTotalDemandPowerWatt();
+			assertTrue(demandPowerWatt > 0);
+
+			// tap 2-2 OFF => hs2 is idle
+			hs2.updateDeviceControllers(createDevicesWithStatus(2, NUM_DEVICES, 0, FLOW_OFF));
+			pollHomeServers(hs1, hs2);
+			scheduler.runOnce();
+			assertEquals(0, scheduler.getTotalDemandPowerWatt());
+
+			// hs2 is no longer polled => its maximum demand is reserved:
+			timeService.advanceTime(2 * HomeServer.POLL_TIME_TOLERANCE_MILLIS_DEFAULT);
+			pollHomeServers(hs1);
+			scheduler.runOnce();
+			assertFalse(scheduler.isHomeServerAlive(hs2));
+			assertTrue(scheduler.getReservedPowerWatt() > demandPowerWatt * 95 / 100 && scheduler.getReservedPowerWatt() <= demandPowerWatt);
+
+			// removing the failed server ends its outage:
+			scheduler.removeHomeServer(hs2);
+			verify(statusL).homeServerAliveChanged(hs2, true);
+			pollHomeServers(hs1);
+			scheduler.runOnce();
+			assertEquals(0, scheduler.getReservedPowerWatt());
+
+		} catch (UnsupportedDeviceModelException e) {
+			fail(e.toString());
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * The devices of hs1 exceed the limit of their feeder although the site limit would allow for them.
+	 */
+	@Test
+	public void scheduling_PowerBudgetTree() {
+		try {
+			scheduler.setIsAliveCheckDisabled(true);
+			scheduler.addHomeServer(hs1);
+			scheduler.addHomeServer(hs2);
+			scheduler.addHomeServer(hs3);
+			PowerBudget feederA = scheduler.getPowerBudget().addChild("feeder A", 25_000, 20_000);
+			PowerBudget feederB = scheduler.getPowerBudget().addChild("feeder B", 50_000, 40_000);
+			feederA.addHomeServer(hs1);
+			feederB.addHomeServer(hs2);
+			feederB.addHomeServer(hs3);
+
+			List<Device> hs1_Devices = createDevicesWithStatus(1, NUM_DEVICES, 0, FLOW_OFF);
+			hs1_Devices.set(1, createDeviceWithStatus(1, 2, 15_000, FLOW_ON)); // Turn tap 1-2 ON
+			Device d1_1 = hs1_Devices.get(0);
+			Device d1_2 = hs1_Devices.get(1);
+			hs1.updateDeviceControllers(hs1_Devices);
+			List<Device> hs2_Devices = createDevicesWithStatus(2, NUM_DEVICES, 0, FLOW_OFF);
+			hs2_Devices.set(1, createDeviceWithStatus(2, 2, 15_000, FLOW_ON)); // Turn tap 2-2 ON
+			Device d2_2 = hs2_Devices.get(1);
+			hs2.updateDeviceControllers(hs2_Devices);
+			scheduler.runOnce();
+			assertEquals(ON, scheduler.getStatus());
+			assertEquals(CONSUMPTION_APPROVED, hs1.getDeviceController(d1_2.id).getStatus());
+			assertEquals(CONSUMPTION_APPROVED, hs2.getDeviceController(d2_2.id).getStatus());
+			assertEquals(hs2.getDeviceController(d2_2.id).getDemandPowerWatt(), feederB.getDemandPowerWatt());
+
+			// feeder A overloaded, site not overloaded
+			hs1_Devices.set(0, createDeviceWithStatus(1, 1, 15_000, FLOW_ON)); // Turn tap 1-1 ON
+			hs1.updateDeviceControllers(hs1_Devices);
+			scheduler.runOnce();
+			assertEquals(OVERLOAD, scheduler.getStatus());
+			assertTrue(feederA.getDemandPowerWatt() > feederA.getOverloadPowerLimitWatt());
+			assertTrue(scheduler.getTotalDemandPowerWatt() <= scheduler.getOverloadPowerLimitWatt());
+			assertEquals(CONSUMPTION_DENIED, hs1.getDeviceController(d1_1.id).getStatus());
+			assertEquals(CONSUMPTION_APPROVED, hs1.getDeviceController(d1_2.id).getStatus());
+			assertEquals(CONSUMPTION_APPROVED, hs2.getDeviceController(d2_2.id).getStatus());
+
+			// tap 1-2 OFF => tap 1-1 fits into feeder A
+			hs1_Devices.set(1, createDeviceWithStatus(1, 2, 0, FLOW_OFF));
+			hs1.updateDeviceControllers(hs1_Devices);
+			scheduler.runOnce();
+			assertEquals(ON, scheduler.getStatus());
+			assertEquals(CONSUMPTION_APPROVED, hs1.getDeviceController(d1_1.id).getStatus());
+			assertEquals(CONSUMPTION_APPROVED, hs2.getDeviceController(d2_2.id).getStatus());
+
+		} catch (UnsupportedDeviceModelException e) {
+			fail(e.toString());
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * In {@link ElmScheduler.PowerAllocationMode#MAX_MIN_FAIR} mode, two taps turned on during overload share the remaining power instead of one of them
+	 * being denied.
+	 */
+	@Test
+	public void scheduling_MaxMinFairLimiting() {
+		try {
+			scheduler.setIsAliveCheckDisabled(true);
+			scheduler.setPowerAllocationMode(ElmScheduler.PowerAllocationMode.MAX_MIN_FAIR);
+			scheduler.addHomeServer(hs1);
+			scheduler.addHomeServer(hs2);
+			scheduler.addHomeServer(hs3);
+
+			List<Device> hs1_Devices = createDevicesWithStatus(1, NUM_DEVICES, 0, FLOW_OFF);
+			hs1_Devices.set(1, createDeviceWithStatus(1, 2, 20_000, FLOW_ON)); // Turn tap 1-2 ON
+			Device d1_1 = hs1_Devices.get(0);
+			Device d1_2 = hs1_Devices.get(1);
+			hs1.updateDeviceControllers(hs1_Devices);
+			List<Device> hs2_Devices = createDevicesWithStatus(2, NUM_DEVICES, 0, FLOW_OFF);
+			hs2_Devices.set(1, createDeviceWithStatus(2, 2, 15_000, FLOW_ON)); // Turn tap 2-2 ON
+			Device d2_2 = hs2_Devices.get(1);
+			hs2.updateDeviceControllers(hs2_Devices);
+			scheduler.runOnce();
+			assertEquals(SATURATION, scheduler.getStatus());
+			final DeviceController dc1_2 = hs1.getDeviceController(d1_2.id);
+			final DeviceController dc2_2 = hs2.getDeviceController(d2_2.id);
+			assertEquals(CONSUMPTION_APPROVED, dc1_2.getStatus());
+			assertEquals(CONSUMPTION_APPROVED, dc2_2.getStatus());
+
+			// taps 1-1 and 3-1 ON => overload; the approved consumptions are not preempted, the rest is shared equally
+			hs1_Devices.set(0, createDeviceWithStatus(1, 1, 20_000, FLOW_ON));
+			hs1.updateDeviceControllers(hs1_Devices);
+			List<Device> hs3_Devices = createDevicesWithStatus(3, NUM_DEVICES, 0, FLOW_OFF);
+			hs3_Devices.set(0, createDeviceWithStatus(3, 1, 20_000, FLOW_ON));
+			Device d3_1 = hs3_Devices.get(0);
+			hs3.updateDeviceControllers(hs3_Devices);
+			scheduler.runOnce();
+			assertEquals(OVERLOAD, scheduler.getStatus());
+			assertEquals(CONSUMPTION_APPROVED, dc1_2.getStatus());
+			assertEquals(CONSUMPTION_APPROVED, dc2_2.getStatus());
+			final DeviceController dc1_1 = hs1.getDeviceController(d1_1.id);
+			final DeviceController dc3_1 = hs3.getDeviceController(d3_1.id);
+			assertEquals(CONSUMPTION_LIMITED, dc1_1.getStatus());
+			assertEquals(CONSUMPTION_LIMITED, dc3_1.getStatus());
+			final int remainingPowerWatt = scheduler.getOverloadPowerLimitWatt() - dc1_2.getDemandPowerWatt() - dc2_2.getDemandPowerWatt();
+			assertTrue(Math.abs(dc1_1.getApprovedPowerWatt() - dc3_1.getApprovedPowerWatt()) <= 1);
+			assertTrue(dc1_1.getApprovedPowerWatt() >= dc1_1.getDeviceModel().getPowerMinUsefulWatt());
+			assertTrue(dc1_1.getApprovedPowerWatt() + dc3_1.getApprovedPowerWatt() <= remainingPowerWatt);
+			assertTrue(dc1_1.getApprovedPowerWatt() + dc3_1.getApprovedPowerWatt() > remainingPowerWatt - 2);
+			assertTrue(scheduler.getTotalGrantedPowerWatt() <= scheduler.getOverloadPowerLimitWatt());
+
+			// taps 1-2 and 2-2 OFF => both limited taps get their full demand
+			hs1_Devices.set(1, createDeviceWithStatus(1, 2, 0, FLOW_OFF));
+			hs1.updateDeviceControllers(hs1_Devices);
+			hs2_Devices.set(1, createDeviceWithStatus(2, 2, 0, FLOW_OFF));
+			hs2.updateDeviceControllers(hs2_Devices);
+			scheduler.runOnce();
+			assertEquals(SATURATION, scheduler.getStatus());
+			assertEquals(CONSUMPTION_APPROVED, dc1_1.getStatus());
+			assertEquals(CONSUMPTION_APPROVED, dc3_1.getStatus());
+
+		} catch (UnsupportedDeviceModelException e) {
+			fail(e.toString());
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * The demand of approved consumptions grows beyond the overload limit: the approved consumptions are not preempted, a consumption starting later absorbs
+	 * the shortfall.
+	 */
+	@Test
+	public void scheduling_ApprovedDemandGrows() {
+		try {
+			scheduler.setIsAliveCheckDisabled(true);
+			scheduler.addHomeServer(hs1);
+			scheduler.addHomeServer(hs2);
+			scheduler.addHomeServer(hs3);
+
+			List<Device> hs1_Devices = createDevicesWithStatus(1, NUM_DEVICES, 0, FLOW_OFF);
+			hs1_Devices.set(1, createDeviceWithStatus(1, 2, 15_000, FLOW_ON)); // Turn tap 1-2 ON
+			Device d1_2 = hs1_Devices.get(1);
+			hs1.updateDeviceControllers(hs1_Devices);
+			List<Device> hs2_Devices = createDevicesWithStatus(2, NUM_DEVICES, 0, FLOW_OFF);
+			hs2_Devices.set(1, createDeviceWithStatus(2, 2, 15_000, FLOW_ON)); // Turn tap 2-2 ON
+			Device d2_2 = hs2_Devices.get(1);
+			hs2.updateDeviceControllers(hs2_Devices);
+			List<Device> hs3_Devices = createDevicesWithStatus(3, NUM_DEVICES, 0, FLOW_OFF);
+			hs3_Devices.set(1, createDeviceWithStatus(3, 2, 15_000, FLOW_ON)); // Turn tap 3-2 ON
+			Device d3_2 = hs3_Devices.get(1);
+			hs3.updateDeviceControllers(hs3_Devices);
+			scheduler.runOnce();
+			assertEquals(SATURATION, scheduler.getStatus());
+			final DeviceController dc1_2 = hs1.getDeviceController(d1_2.id);
+			final DeviceController dc2_2 = hs2.getDeviceController(d2_2.id);
+			final DeviceController dc3_2 = hs3.getDeviceController(d3_2.id);
+			assertEquals(CONSUMPTION_APPROVED, dc1_2.getStatus());
+			assertEquals(CONSUMPTION_APPROVED, dc2_2.getStatus());
+			assertEquals(CONSUMPTION_APPROVED, dc3_2.getStatus());
+
+			// the users turn up the temperature => overload
+			hs1_Devices.set(1, createDeviceWithStatus(1, 2, 20_000, FLOW_ON));
+			hs1.updateDeviceControllers(hs1_Devices);
+			hs2_Devices.set(1, createDeviceWithStatus(2, 2, 20_000, FLOW_ON));
+			hs2.updateDeviceControllers(hs2_Devices);
+			hs3_Devices.set(1, createDeviceWithStatus(3, 2, 20_000, FLOW_ON));
+			hs3.updateDeviceControllers(hs3_Devices);
+			assertTrue(scheduler.getOverloadPowerLimitWatt() < dc1_2.getDemandPowerWatt() + dc2_2.getDemandPowerWatt() + dc3_2.getDemandPowerWatt());
+			hs1_Devices.set(0, createDeviceWithStatus(1, 1, 10_000, FLOW_ON)); // Turn tap 1-1 ON
+			final Device d1_1 = hs1_Devices.get(0);
+			hs1.updateDeviceControllers(hs1_Devices);
+			scheduler.runOnce();
+			assertEquals(OVERLOAD, scheduler.getStatus());
+			for (DeviceController dc : Arrays.asList(dc1_2, dc2_2, dc3_2)) {
+				assertEquals(CONSUMPTION_APPROVED, dc.getStatus());
+				assertTrue(dc.getApprovedPowerWatt() >= dc.getDemandPowerWatt());
+			}
+			assertEquals(CONSUMPTION_DENIED, hs1.getDeviceController(d1_1.id).getStatus());
+			assertEquals(dc1_2.getDemandPowerWatt() + dc2_2.getDemandPowerWatt() + dc3_2.getDemandPowerWatt(), scheduler.getTotalGrantedPowerWatt());
+
+		} catch (UnsupportedDeviceModelException e) {
+			fail(e.toString());
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * With an {@link ElmScheduler#setIdleLimitReleaseDelayMillis(long) idle-limit release delay}, the idle devices denied during an overload stay limited
+	 * after the overload until the delay has passed or they start consuming.
+	 */
+	@Test
+	public void scheduling_IdleLimitReleaseDelay() {
+		try {
+			scheduler.setIsAliveCheckDisabled(true);
+			scheduler.setIdleLimitReleaseDelayMillis(10_000);
+			scheduler.addHomeServer(hs1);
+			scheduler.addHomeServer(hs2);
+			scheduler.addHomeServer(hs3);
+
+			List<Device> hs1_Devices = createDevicesWithStatus(1, NUM_DEVICES, 0, FLOW_OFF);
+			hs1_Devices.set(1, createDeviceWithStatus(1, 2, 20_000, FLOW_ON)); // Turn tap 1-2 ON
+			hs1.updateDeviceControllers(hs1_Devices);
+			List<Device> hs2_Devices = createDevicesWithStatus(2, NUM_DEVICES, 0, FLOW_OFF);
+			hs2_Devices.set(1, createDeviceWithStatus(2, 2, 20_000, FLOW_ON)); // Turn tap 2-2 ON
+			hs2.updateDeviceControllers(hs2_Devices);
+			List<Device> hs3_Devices = createDevicesWithStatus(3, NUM_DEVICES, 0, FLOW_OFF);
+			hs3_Devices.set(1, createDeviceWithStatus(3, 2, 20_000, FLOW_ON)); // Turn tap 3-2 ON
+			Device d3_2 = hs3_Devices.get(1);
+			hs3.updateDeviceControllers(hs3_Devices);
+			scheduler.runOnce();
+			assertEquals(OVERLOAD, scheduler.getStatus());
+			final DeviceController dc1_1 = hs1.getDeviceController(hs1_Devices.get(0).id);
+			final DeviceController dc2_1 = hs2.getDeviceController(hs2_Devices.get(0).id);
+			final DeviceController dc3_1 = hs3.getDeviceController(hs3_Devices.get(0).id);
+			final DeviceController dc3_2 = hs3.getDeviceController(d3_2.id);
+			assertEquals(DENIED, dc1_1.getStatus());
+			assertEquals(DENIED, dc2_1.getStatus());
+			assertEquals(DENIED, dc3_1.getStatus());
+			assertEquals(CONSUMPTION_DENIED, dc3_2.getStatus());
+
+			// tap 3-2 OFF => saturation; the idle devices stay limited, the ended consumption is released
+			hs3_Devices.set(1, createDeviceWithStatus(3, 2, 0, FLOW_OFF));
+			hs3.updateDeviceControllers(hs3_Devices);
+			scheduler.runOnce();
+			assertEquals(SATURATION, scheduler.getStatus());
+			assertEquals(DENIED, dc1_1.getStatus());
+			assertEquals(DENIED, dc2_1.getStatus());
+			assertEquals(DENIED, dc3_1.getStatus());
+			assertEquals(READY, dc3_2.getStatus());
+
+			// tap 1-1 ON => approved although limited before
+			hs1_Devices.set(0, createDeviceWithStatus(1, 1, 5_000, FLOW_ON));
+			hs1.updateDeviceControllers(hs1_Devices);
+			scheduler.runOnce();
+			assertEquals(SATURATION, scheduler.getStatus());
+			assertEquals(CONSUMPTION_APPROVED, dc1_1.getStatus());
+			assertEquals(DENIED, dc2_1.getStatus());
+			assertEquals(DENIED, dc3_1.getStatus());
+
+			// the delay has passed => the remaining idle devices are released
+			timeService.advanceTime(10_000);
+			scheduler.runOnce();
+			assertEquals(SATURATION, scheduler.getStatus());
+			assertEquals(READY, dc2_1.getStatus());
+			assertEquals(READY, dc3_1.getStatus());
+
+		} catch (UnsupportedDeviceModelException e) {
+			fail(e.toString());
+			e.printStackTrace();
+		}
+	}
+
+	private static void pollHomeServers(HomeServer... servers) {
+		for (HomeServer server : servers) {
+			server.updateLastHomeServerPollTime();
+		}
+	}
 }
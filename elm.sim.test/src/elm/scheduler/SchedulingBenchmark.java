@@ -0,0 +1,464 @@
+package elm.scheduler;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import elm.hs.api.Device;
+import elm.hs.api.DeviceCharacteristics.DeviceModel;
+import elm.hs.api.ElmStatus;
+import elm.hs.api.ElmUserFeedback;
+import elm.hs.api.ElmUserFeedbackService;
+import elm.hs.api.Error;
+import elm.hs.api.HomeServerInternalService;
+import elm.hs.api.HomeServerResponse;
+import elm.hs.api.HomeServerResponseDecoder;
+import elm.hs.api.Info;
+import elm.hs.api.Status;
+import elm.hs.api.client.AbstractHomeServerClient;
+import elm.scheduler.model.DeviceController;
+import elm.scheduler.model.UnsupportedDeviceModelException;
+import elm.scheduler.model.impl.DeviceControllerImpl;
+import elm.scheduler.model.impl.HomeServerImpl;
+import elm.util.ClientException;
+import elm.util.ContentReader;
+
+/**
+ * Micro-benchmarks of the scheduling hot path: {@link ElmScheduler#processDevices()} (normal and overload mode),
+ * {@link HomeServerImpl#updateDeviceControllers(List)}, {@link DeviceControllerImpl#update(Device)} and
+ * {@link ElmUserFeedbackManager#putFeedback(ElmUserFeedback)} / {@link ElmUserFeedbackManager#sendFeedack(ElmUserFeedbackService)}, and the decoding of the
+ * JSON responses of a poll (registered devices plus statuses of every Home Server). Every suite runs for
+ * {@link #DEVICE_COUNTS} and for the {@link Load} mixes {@code ON}, {@code SATURATION} and {@code OVERLOAD}.
+ * <p>
+ * Each run is warmed up and then measured over several iterations; the results are the mean time per operation and the bytes allocated per operation by the
+ * benchmark thread. They are printed as a table and, if a result file is given, written as JSON (or as CSV if the file name ends with {@code .csv}) so that
+ * regressions in cycle latency and allocation rate can be tracked. This is not a unit test; run it as a Java application:
+ * </p>
+ *
+ * <pre>
+ * SchedulingBenchmark [suiteRegex [resultFile]]
+ * </pre>
+ */
+public class SchedulingBenchmark {
+
+	static final int[] DEVICE_COUNTS = { 10, 100, 1_000, 10_000 };
+
+	private static final int DEVICES_PER_HOME_SERVER = 10;
+	private static final int CONSUMER_POWER_WATT = 15_000;
+	private static final long WARMUP_MILLIS = 1_000;
+	private static final long ITERATION_MILLIS = 500;
+	private static final int MEASURED_ITERATIONS = 5;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * The load mix defines the power limits relative to the total demand of the consuming devices, one in three devices.
+	 */
+	enum Load {
+		ON(2.0, 1.5), SATURATION(1.2, 0.8), OVERLOAD(0.5, 0.4);
+
+		final double overloadFactor;
+		final double saturationFactor;
+
+		private Load(double overloadFactor, double saturationFactor) {
+			this.overloadFactor = overloadFactor;
+			this.saturationFactor = saturationFactor;
+		}
+	}
+
+	/** A benchmarked operation on a prepared {@link Site}. */
+	private static abstract class Suite {
+		final String name;
+
+		Suite(String name) {
+			this.name = name;
+		}
+
+		/** Runs the operation once; the returned value defeats dead-code elimination. */
+		abstract long run(Site site, int invocation) throws Exception;
+	}
+
+	/** The measured result of one suite, device count and load mix. */
+	private static final class Result {
+		final String suite;
+		final int devices;
+		final Load load;
+		final ElmStatus status;
+		final double meanNanos;
+		final double errorNanos;
+		final double allocatedBytes;
+		final long operations;
+
+		Result(String suite, int devices, Load load, ElmStatus status, double meanNanos, double errorNanos, double allocatedBytes, long operations) {
+			this.suite = suite;
+			this.devices = devices;
+			this.load = load;
+			this.status = status;
+			this.meanNanos = meanNanos;
+			this.errorNanos = errorNanos;
+			this.allocatedBytes = allocatedBytes;
+			this.operations = operations;
+		}
+	}
+
+	/** Home Servers with devices, two alternating poll results per Home Server, and a scheduler. */
+	private static final class Site {
+		final ElmUserFeedbackManager feedbackManager = new ElmUserFeedbackManager();
+		final NullHomeServerClient client = new NullHomeServerClient();
+		final Logger log = Logger.getLogger(SchedulingBenchmark.class.getName());
+		final List<HomeServerImpl> servers = new ArrayList<HomeServerImpl>();
+		final List<List<Device>> polls = new ArrayList<List<Device>>();
+		final List<List<Device>> alternatePolls = new ArrayList<List<Device>>();
+		final List<DeviceControllerImpl> controllers = new ArrayList<DeviceControllerImpl>();
+		final List<ElmUserFeedback> feedback = new ArrayList<ElmUserFeedback>();
+		/** Per Home Server: the JSON contents of a poll, the registered devices and their statuses, as sent by the Sim Home Server. */
+		final List<byte[][]> pollContents = new ArrayList<byte[][]>();
+		final ElmScheduler scheduler;
+
+		Site(int deviceCount, Load load) throws UnsupportedDeviceModelException {
+			final int serverCount = (deviceCount + DEVICES_PER_HOME_SERVER - 1) / DEVICES_PER_HOME_SERVER;
+			int demandWatt = 0;
+			for (int i = 0; i < serverCount; i++) {
+				final HomeServerImpl server = new HomeServerImpl(URI.create("http://hs" + i), "pw", feedbackManager);
+				server.setName("hs" + i);
+				final int n = Math.min(DEVICES_PER_HOME_SERVER, deviceCount - i * DEVICES_PER_HOME_SERVER);
+				final List<Device> infos = new ArrayList<Device>();
+				final List<Device> poll = new ArrayList<Device>();
+				final List<Device> alternatePoll = new ArrayList<Device>();
+				final List<String> ids = new ArrayList<String>();
+				for (int j = 0; j < n; j++) {
+					final String id = String.format("D012%03d%03d", i % 1000, j);
+					final boolean consuming = (i * DEVICES_PER_HOME_SERVER + j) % 3 == 0;
+					ids.add(id);
+					infos.add(createDevice(id));
+					poll.add(createDevice(id, consuming ? CONSUMER_POWER_WATT : 0));
+					// the same consumers with slightly different readings:
+					alternatePoll.add(createDevice(id, consuming ? CONSUMER_POWER_WATT - 500 : 0));
+					if (consuming) {
+						demandWatt += CONSUMER_POWER_WATT;
+					}
+					feedback.add(new ElmUserFeedback(id, load == Load.OVERLOAD ? ElmStatus.OVERLOAD : load == Load.SATURATION ? ElmStatus.SATURATION
+							: ElmStatus.ON, 10_000));
+				}
+				feedbackManager.addFeedbackServer(client, ids);
+				server.updateDeviceControllers(infos);
+				server.updateDeviceControllers(poll);
+				for (DeviceController device : server.getDeviceControllers()) {
+					controllers.add((DeviceControllerImpl) device);
+				}
+				servers.add(server);
+				polls.add(poll);
+				alternatePolls.add(alternatePoll);
+				pollContents.add(new byte[][] { toJson(infos), toJson(poll) });
+			}
+			scheduler = new ElmScheduler((int) (demandWatt * load.overloadFactor), (int) (demandWatt * load.saturationFactor));
+			scheduler.setIsAliveCheckDisabled(true);
+			for (HomeServerImpl server : servers) {
+				scheduler.addHomeServer(server);
+			}
+			scheduler.runOnce();
+			drainDeviceUpdates();
+		}
+
+		/** Keeps the remote device updates from piling up. */
+		void drainDeviceUpdates() {
+			for (HomeServerImpl server : servers) {
+				server.executeRemoteDeviceUpdates(client, log);
+			}
+		}
+	}
+
+	/** Discards all remote device updates and feedback. */
+	private static final class NullHomeServerClient implements HomeServerInternalService, ElmUserFeedbackService {
+		@Override
+		public Short setScaldProtectionTemperature(String deviceID, int newTemperatureUnits) throws ClientException {
+			return (short) newTemperatureUnits;
+		}
+
+		@Override
+		public void clearScaldProtection(String deviceID, Integer previousTemperatureUnits) throws ClientException {
+			// do nothing
+		}
+
+		@Override
+		public boolean supportsUserFeedback() throws ClientException {
+			return true;
+		}
+
+		@Override
+		public HomeServerResponse getFeedbackDevices() throws ClientException {
+			return new HomeServerResponse();
+		}
+
+		@Override
+		public void updateUserFeedback(List<ElmUserFeedback> feedback) throws ClientException {
+			// do nothing
+		}
+	}
+
+	private static final Suite[] SUITES = { new Suite("ElmScheduler.processDevices") {
+		@Override
+		long run(Site site, int invocation) {
+			site.scheduler.runOnce();
+			return site.scheduler.getTotalGrantedPowerWatt();
+		}
+	}, new Suite("HomeServerImpl.updateDeviceControllers") {
+		@Override
+		long run(Site site, int invocation) throws UnsupportedDeviceModelException {
+			final List<List<Device>> polls = (invocation & 1) == 0 ? site.alternatePolls : site.polls;
+			long result = 0;
+			for (int i = 0; i < site.servers.size(); i++) {
+				final List<String> unsupported = site.servers.get(i).updateDeviceControllers(polls.get(i));
+				result += unsupported == null ? 0 : unsupported.size();
+			}
+			return result;
+		}
+	}, new Suite("DeviceControllerImpl.update") {
+		@Override
+		long run(Site site, int invocation) {
+			final List<List<Device>> polls = (invocation & 1) == 0 ? site.alternatePolls : site.polls;
+			long result = 0;
+			int c = 0;
+			for (List<Device> poll : polls) {
+				for (Device device : poll) {
+					result += site.controllers.get(c++).update(device).ordinal();
+				}
+			}
+			return result;
+		}
+	}, new Suite("Poll decoding: String + reflective Gson") {
+		private final Gson gson = new GsonBuilder().setPrettyPrinting().create(); // the former client decoding
+
+		@Override
+		long run(Site site, int invocation) {
+			long result = 0;
+			for (byte[][] contents : site.pollContents) {
+				for (byte[] content : contents) {
+					result += gson.fromJson(new String(content, UTF_8), HomeServerResponse.class).total;
+				}
+			}
+			return result;
+		}
+	}, new Suite("Poll decoding: streaming TypeAdapters") {
+		private final Gson gson = AbstractHomeServerClient.createGson();
+
+		@Override
+		long run(Site site, int invocation) {
+			long result = 0;
+			for (byte[][] contents : site.pollContents) {
+				for (byte[] content : contents) {
+					result += gson.fromJson(new ContentReader(content, UTF_8), HomeServerResponse.class).total;
+				}
+			}
+			return result;
+		}
+	}, new Suite("Poll decoding: reusing HomeServerResponseDecoder") {
+		// one decoder per Home Server and request, like the HomeServerController:
+		private final List<HomeServerResponseDecoder[]> decoders = new ArrayList<HomeServerResponseDecoder[]>();
+
+		@Override
+		long run(Site site, int invocation) {
+			long result = 0;
+			for (int i = 0; i < site.pollContents.size(); i++) {
+				if (i == decoders.size()) {
+					decoders.add(new HomeServerResponseDecoder[] { new HomeServerResponseDecoder(), new HomeServerResponseDecoder() });
+				}
+				final byte[][] contents = site.pollContents.get(i);
+				for (int j = 0; j < contents.length; j++) {
+					result += decoders.get(i)[j].decode(contents[j]).total;
+				}
+			}
+			return result;
+		}
+	}, new Suite("ElmUserFeedbackManager.putFeedback+sendFeedack") {
+		@Override
+		long run(Site site, int invocation) throws ClientException {
+			for (ElmUserFeedback feedback : site.feedback) {
+				site.feedbackManager.putFeedback(feedback);
+			}
+			site.feedbackManager.sendFeedack(site.client);
+			return site.feedback.size();
+		}
+	} };
+
+	/** Defeats dead-code elimination. */
+	static long blackhole;
+
+	public static void main(String[] args) throws Exception {
+		final Pattern suiteFilter = Pattern.compile(args.length > 0 ? args[0] : ".*");
+		final String resultFile = args.length > 1 ? args[1] : null;
+		Logger.getLogger("").setLevel(Level.WARNING);
+		for (Handler handler : Logger.getLogger("").getHandlers()) {
+			handler.setLevel(Level.WARNING);
+		}
+
+		final List<Result> results = new ArrayList<Result>();
+		System.out.println(String.format("%-50s %7s %-10s %-10s %14s %10s %12s", "suite", "devices", "load", "status", "mean [ns/op]", "error", "alloc [B/op]"));
+		for (Suite suite : SUITES) {
+			if (!suiteFilter.matcher(suite.name).find()) {
+				continue;
+			}
+			for (int devices : DEVICE_COUNTS) {
+				for (Load load : Load.values()) {
+					final Result result = run(suite, devices, load);
+					results.add(result);
+					System.out.println(String.format(Locale.ROOT, "%-50s %7d %-10s %-10s %14.1f %10.1f %12.1f", result.suite, result.devices, result.load,
+							result.status, result.meanNanos, result.errorNanos, result.allocatedBytes));
+				}
+			}
+		}
+		if (resultFile != null) {
+			final Writer out = new FileWriter(resultFile);
+			try {
+				if (resultFile.endsWith(".csv")) {
+					writeCsv(results, out);
+				} else {
+					writeJson(results, out);
+				}
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	private static Result run(Suite suite, int devices, Load load) throws Exception {
+		final Site site = new Site(devices, load);
+		int invocation = 0;
+		// warm up:
+		final long warmupEnd = System.currentTimeMillis() + WARMUP_MILLIS;
+		while (System.currentTimeMillis() < warmupEnd) {
+			blackhole += suite.run(site, invocation++);
+			site.drainDeviceUpdates();
+		}
+		final long probeBytes = getProbeAllocatedBytes();
+		final double[] nanosPerOp = new double[MEASURED_ITERATIONS];
+		long totalOps = 0;
+		long totalBytes = 0;
+		for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+			final long end = System.nanoTime() + ITERATION_MILLIS * 1_000_000;
+			long ops = 0;
+			long nanos = 0;
+			long bytes = 0;
+			do {
+				// batches keep the timer and allocation probes out of the measurement of fast operations:
+				final long bytesBefore = getAllocatedBytes();
+				final long start = System.nanoTime();
+				for (int j = 0; j < 16; j++) {
+					blackhole += suite.run(site, invocation++);
+				}
+				nanos += System.nanoTime() - start;
+				bytes += getAllocatedBytes() - bytesBefore - probeBytes;
+				ops += 16;
+				site.drainDeviceUpdates();
+			} while (System.nanoTime() < end);
+			nanosPerOp[i] = (double) nanos / ops;
+			totalOps += ops;
+			totalBytes += bytes;
+		}
+		double mean = 0;
+		for (double n : nanosPerOp) {
+			mean += n / MEASURED_ITERATIONS;
+		}
+		double variance = 0;
+		for (double n : nanosPerOp) {
+			variance += (n - mean) * (n - mean) / (MEASURED_ITERATIONS - 1);
+		}
+		final double allocatedBytes = totalBytes < 0 ? -1 : (double) totalBytes / totalOps;
+		return new Result(suite.name, devices, load, site.scheduler.getStatus(), mean, Math.sqrt(variance), allocatedBytes, totalOps);
+	}
+
+	/**
+	 * @return the bytes allocated by the current {@link Thread} so far, or a negative value if the JVM cannot tell
+	 */
+	private static long getAllocatedBytes() {
+		final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return Long.MIN_VALUE / 2;
+	}
+
+	/**
+	 * @return the bytes allocated by {@link #getAllocatedBytes()} itself
+	 */
+	private static long getProbeAllocatedBytes() {
+		long min = Long.MAX_VALUE;
+		for (int i = 0; i < 100; i++) {
+			final long before = getAllocatedBytes();
+			min = Math.min(min, getAllocatedBytes() - before);
+		}
+		return min;
+	}
+
+	/**
+	 * Writes the results in a format similar to JMH's JSON output.
+	 */
+	static void writeJson(List<Result> results, Writer out) throws IOException {
+		out.write("[\n");
+		for (int i = 0; i < results.size(); i++) {
+			final Result r = results.get(i);
+			out.write(String.format(Locale.ROOT, "  {\"benchmark\": \"%s\", \"params\": {\"devices\": %d, \"load\": \"%s\"}, \"schedulerStatus\": \"%s\", "
+					+ "\"operations\": %d, \"primaryMetric\": {\"score\": %.3f, \"scoreError\": %.3f, \"scoreUnit\": \"ns/op\"}, "
+					+ "\"secondaryMetrics\": {\"alloc.rate.norm\": {\"score\": %.3f, \"scoreUnit\": \"B/op\"}}}%s\n", r.suite, r.devices, r.load, r.status,
+					r.operations, r.meanNanos, r.errorNanos, r.allocatedBytes, i < results.size() - 1 ? "," : ""));
+		}
+		out.write("]\n");
+	}
+
+	static void writeCsv(List<Result> results, Writer out) throws IOException {
+		out.write("benchmark,devices,load,schedulerStatus,operations,meanNanosPerOp,errorNanosPerOp,allocatedBytesPerOp\n");
+		for (Result r : results) {
+			out.write(String.format(Locale.ROOT, "%s,%d,%s,%s,%d,%.3f,%.3f,%.3f\n", r.suite, r.devices, r.load, r.status, r.operations, r.meanNanos,
+					r.errorNanos, r.allocatedBytes));
+		}
+	}
+
+	private static byte[] toJson(List<Device> devices) {
+		final HomeServerResponse response = new HomeServerResponse();
+		response.version = "1.0";
+		response.success = true;
+		response.total = devices.size();
+		response.devices = devices;
+		return new GsonBuilder().create().toJson(response).getBytes(UTF_8);
+	}
+
+	private static Device createDevice(String id) {
+		final Device d = new Device();
+		d.id = id;
+		d.connected = true;
+		d.info = new Info();
+		d.info.flags = 1; // = heater off
+		d.info.error = Error.OK.getCode();
+		d.info.setpoint = 380;
+		return d;
+	}
+
+	private static Device createDevice(String id, int powerWatt) {
+		final DeviceModel model = DeviceModel.SIM;
+		final Device d = new Device();
+		d.id = id;
+		d.connected = true;
+		d.status = new Status();
+		d.status.flow = (short) (powerWatt > 0 ? 80 : 0);
+		d.status.tIn = 100;
+		d.status.setpoint = powerWatt > 0 ? 380 : model.getTemperatureOff();
+		d.status.tOut = (short) (d.status.setpoint - 2);
+		d.status.powerMax = model.getPowerMaxUnits();
+		d.status.power = (short) (model.getPowerMaxUnits() * powerWatt / model.getPowerMaxWatt());
+		d.status.error = Error.OK.getCode();
+		d.status.flags = (short) (powerWatt > 0 ? 0 : 1); // heater on: flags == 0
+		return d;
+	}
+}
@@ -0,0 +1,97 @@
+package elm.scheduler;
+
+import static elm.scheduler.model.impl.ModelTestUtil.createDeviceWithStatus;
+import static elm.scheduler.model.impl.ModelTestUtil.createDevicesWithStatus;
+import static elm.scheduler.model.impl.ModelTestUtil.createHomeServer;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import elm.hs.api.Device;
+import elm.hs.api.ElmUserFeedbackService;
+import elm.scheduler.model.HomeServer;
+
+/**
+ * Measures the latency of one scheduling cycle of a {@link ShardedElmScheduler}, i.e. all shards running in parallel followed by the sharded scheduler itself, for an
+ * increasing number of shards. This is not a unit test; run it as a Java application:
+ * 
+ * <pre>
+ * ShardedSchedulerBenchmark [homeServers [devicesPerHomeServer]]
+ * </pre>
+ */
+public class ShardedSchedulerBenchmark {
+
+	private static final int WARMUP_CYCLES = 200;
+	private static final int MEASURED_CYCLES = 500;
+
+	public static void main(String[] args) throws Exception {
+		final int homeServerCount = args.length > 0 ? Integer.parseInt(args[0]) : 99;
+		final int devicesPerHomeServer = args.length > 1 ? Integer.parseInt(args[1]) : 99;
+		Logger.getLogger("").setLevel(Level.WARNING);
+		for (java.util.logging.Handler handler : Logger.getLogger("").getHandlers()) {
+			handler.setLevel(Level.WARNING);
+		}
+
+		final int processors = Runtime.getRuntime().availableProcessors();
+		System.out.println("home servers: " + homeServerCount + ", devices: " + homeServerCount * devicesPerHomeServer + ", processors: " + processors);
+		System.out.println("shards\tmedian [us]\tp90 [us]");
+		for (int shardCount = 1; shardCount <= processors; shardCount *= 2) {
+			final long[] latencies = run(shardCount, homeServerCount, devicesPerHomeServer);
+			Arrays.sort(latencies);
+			System.out.println(shardCount + "\t" + latencies[latencies.length / 2] / 1000 + "\t" + latencies[latencies.length * 9 / 10] / 1000);
+		}
+	}
+
+	private static long[] run(int shardCount, int homeServerCount, int devicesPerHomeServer) throws Exception {
+		final ElmUserFeedbackManager feedbackManager = new ElmUserFeedbackManager();
+		final ElmUserFeedbackService feedbackClient = mock(ElmUserFeedbackService.class);
+		final ShardedElmScheduler scheduler = new ShardedElmScheduler(homeServerCount * devicesPerHomeServer * 2_000, homeServerCount * devicesPerHomeServer
+				* 1_500, shardCount);
+		final List<HomeServer> servers = new ArrayList<HomeServer>();
+		for (int i = 1; i <= homeServerCount; i++) {
+			final HomeServer server = createHomeServer(i, devicesPerHomeServer, feedbackManager, feedbackClient);
+			// two out of three devices consume:
+			final List<Device> devices = createDevicesWithStatus(i, devicesPerHomeServer, 15_000, true);
+			for (int j = 0; j < devices.size(); j += 3) {
+				devices.set(j, createDeviceWithStatus(i, j + 1, 0, false));
+			}
+			server.updateDeviceControllers(devices);
+			servers.add(server);
+			scheduler.addHomeServer(server);
+		}
+		final List<Callable<Void>> shardCycles = new ArrayList<Callable<Void>>();
+		for (final ElmScheduler shard : scheduler.getShards()) {
+			shard.setIsAliveCheckDisabled(true);
+			shardCycles.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					shard.runOnce();
+					return null;
+				}
+			});
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(shardCount);
+		try {
+			final long[] latencies = new long[MEASURED_CYCLES];
+			for (int i = -WARMUP_CYCLES; i < MEASURED_CYCLES; i++) {
+				final long start = System.nanoTime();
+				executor.invokeAll(shardCycles);
+				scheduler.runOnce();
+				if (i >= 0) {
+					latencies[i] = System.nanoTime() - start;
+				}
+			}
+			return latencies;
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package elm.scheduler;
+
+import static elm.hs.api.ElmStatus.ON;
+import static elm.hs.api.ElmStatus.OVERLOAD;
+import static elm.hs.api.ElmStatus.SATURATION;
+import static elm.scheduler.model.DeviceController.DeviceStatus.CONSUMPTION_APPROVED;
+import static elm.scheduler.model.DeviceController.DeviceStatus.CONSUMPTION_DENIED;
+import static elm.scheduler.model.impl.ModelTestUtil.createDeviceWithInfo;
+import static elm.scheduler.model.impl.ModelTestUtil.createDeviceWithStatus;
+import static elm.scheduler.model.impl.ModelTestUtil.createHomeServer;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import elm.hs.api.Device;
+import elm.hs.api.ElmStatus;
+import elm.hs.api.ElmUserFeedbackService;
+import elm.scheduler.model.DeviceController;
+import elm.scheduler.model.HomeServer;
+import elm.scheduler.model.UnsupportedDeviceModelException;
+
+public class ShardedSchedulerTest {
+
+	ElmUserFeedbackManager feedbackManager;
+	ElmUserFeedbackService feedbackClient;
+	HomeServer hs1;
+	HomeServer hs2;
+	ShardedElmScheduler scheduler;
+	HomeServer unshardedHs1;
+	HomeServer unshardedHs2;
+	ElmScheduler unsharded;
+
+	@Before
+	public void setup() {
+		feedbackManager = new ElmUserFeedbackManager();
+		feedbackClient = mock(ElmUserFeedbackService.class);
+		// distinct consumption start times => same admission order in both schedulers
+		final ElmTestTimeService timeService = new ElmTestTimeService();
+		hs1 = createHomeServer(1, 2, feedbackManager, feedbackClient, timeService);
+		hs2 = createHomeServer(2, 2, feedbackManager, feedbackClient, timeService);
+		scheduler = new ShardedElmScheduler(50_000, 30_000, 2);
+		for (ElmScheduler shard : scheduler.getShards()) {
+			shard.setIsAliveCheckDisabled(true);
+		}
+
+		final ElmUserFeedbackManager unshardedFeedbackManager = new ElmUserFeedbackManager();
+		unshardedHs1 = createHomeServer(1, 2, unshardedFeedbackManager, feedbackClient, timeService);
+		unshardedHs2 = createHomeServer(2, 2, unshardedFeedbackManager, feedbackClient, timeService);
+		unsharded = new ElmScheduler(50_000, 30_000);
+		unsharded.setIsAliveCheckDisabled(true);
+		unsharded.addHomeServer(unshardedHs1);
+		unsharded.addHomeServer(unshardedHs2);
+	}
+
+	@Test
+	public void partitioning() {
+		scheduler.addHomeServer(hs1);
+		scheduler.addHomeServer(hs2);
+		assertEquals(2, scheduler.getHomeServers().size());
+		assertNotSame(scheduler.getShard(hs1), scheduler.getShard(hs2));
+
+		scheduler.removeHomeServer(hs1);
+		assertEquals(1, scheduler.getHomeServers().size());
+		assertEquals(null, scheduler.getShard(hs1));
+		assertEquals(1, scheduler.getShard(hs2).getHomeServers().size());
+	}
+
+	@Test
+	public void sameDecisionsAsUnsharded() {
+		try {
+			scheduler.addHomeServer(hs1);
+			scheduler.addHomeServer(hs2);
+			assertNotSame(scheduler.getShard(hs1), scheduler.getShard(hs2));
+
+			// two consumptions in one shard: within the global limits
+			update(1, 15_000, 15_000);
+			update(2, 0, 0);
+			assertSameDecisions(ON);
+			assertEquals(CONSUMPTION_APPROVED, hs1.getDeviceController(id(1, 2)).getStatus());
+
+			update(2, 15_000, 0);
+			assertSameDecisions(SATURATION);
+
+			// the fourth consumption exceeds the global overload limit
+			update(2, 15_000, 15_000);
+			assertSameDecisions(OVERLOAD);
+			assertEquals(CONSUMPTION_APPROVED, hs1.getDeviceController(id(1, 2)).getStatus());
+			assertEquals(CONSUMPTION_DENIED, hs2.getDeviceController(id(2, 2)).getStatus());
+
+			// power released in one shard is granted in the other
+			update(1, 0, 15_000);
+			assertSameDecisions(SATURATION);
+			assertEquals(CONSUMPTION_APPROVED, hs2.getDeviceController(id(2, 2)).getStatus());
+
+		} catch (UnsupportedDeviceModelException e) {
+			fail(e.toString());
+		}
+	}
+
+	/** Updates the devices of Home Server {@code homeServerNr} of both the sharded and the unsharded scheduler. */
+	private void update(int homeServerNr, int device1PowerWatt, int device2PowerWatt) throws UnsupportedDeviceModelException {
+		final List<Device> devices = new ArrayList<Device>();
+		devices.add(createDeviceWithStatus(homeServerNr, 1, device1PowerWatt, device1PowerWatt > 0));
+		devices.add(createDeviceWithStatus(homeServerNr, 2, device2PowerWatt, device2PowerWatt > 0));
+		(homeServerNr == 1 ? hs1 : hs2).updateDeviceControllers(devices);
+		(homeServerNr == 1 ? unshardedHs1 : unshardedHs2).updateDeviceControllers(devices);
+	}
+
+	/**
+	 * Runs both schedulers; the shards run twice, as requested by the sharded scheduler, so that they pick up the demand of the other shard.
+	 */
+	private void assertSameDecisions(ElmStatus expectedStatus) {
+		unsharded.runOnce();
+		for (int i = 0; i < 2; i++) {
+			for (ElmScheduler shard : scheduler.getShards()) {
+				shard.runOnce();
+			}
+			scheduler.runOnce();
+		}
+		assertEquals(expectedStatus, unsharded.getStatus());
+		assertEquals(expectedStatus, scheduler.getStatus());
+		assertEquals(unsharded.getTotalGrantedPowerWatt(), scheduler.getTotalGrantedPowerWatt());
+		assertSameDeviceStatus(unshardedHs1, hs1);
+		assertSameDeviceStatus(unshardedHs2, hs2);
+	}
+
+	private static String id(int homeServerNr, int deviceNr) {
+		return createDeviceWithInfo(homeServerNr, deviceNr).id;
+	}
+
+	private static void assertSameDeviceStatus(HomeServer expected, HomeServer actual) {
+		for (DeviceController device : expected.getDeviceControllers()) {
+			assertEquals(device.getId(), device.getStatus(), actual.getDeviceController(device.getId()).getStatus());
+		}
+	}
+}
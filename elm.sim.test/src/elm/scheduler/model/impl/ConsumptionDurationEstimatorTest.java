@@ -0,0 +1,91 @@
+package elm.scheduler.model.impl;
+
+import static elm.scheduler.model.impl.ConsumptionDurationEstimator.DEFAULT_DURATION_MILLIS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.TimeZone;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import elm.scheduler.model.DeviceController;
+
+public class ConsumptionDurationEstimatorTest {
+
+	static final long HOUR = 3600 * 1000L;
+	static final long MORNING = 7 * HOUR;
+	static final long EVENING = 20 * HOUR;
+
+	ConsumptionDurationEstimator estimator;
+
+	@Before
+	public void setup() {
+		estimator = new ConsumptionDurationEstimator(TimeZone.getTimeZone("UTC"));
+	}
+
+	@Test
+	public void defaultUntilEnoughObservations() {
+		assertEquals(DEFAULT_DURATION_MILLIS, estimator.getMeanMillis(DeviceController.NO_CONSUMPTION));
+		assertEquals(DEFAULT_DURATION_MILLIS, estimator.getPercentileMillis(MORNING, 90));
+		for (int i = 1; i < ConsumptionDurationEstimator.MIN_OBSERVATIONS; i++) {
+			estimator.addConsumption(MORNING, 10_000);
+		}
+		assertEquals(DEFAULT_DURATION_MILLIS, estimator.getMeanMillis(MORNING));
+		estimator.addConsumption(MORNING, 10_000);
+		assertEquals(10_000, estimator.getMeanMillis(MORNING));
+	}
+
+	@Test
+	public void timeOfDay() {
+		for (int i = 0; i < 10; i++) {
+			estimator.addConsumption(MORNING + i * 60_000, 300_000); // showers
+			estimator.addConsumption(EVENING + i * 60_000, 20_000); // dishes
+		}
+		assertEquals(300_000, estimator.getMeanMillis(MORNING + 30 * 60_000));
+		assertEquals(20_000, estimator.getMeanMillis(EVENING + 24 * HOUR)); // next day
+		// whole day:
+		final int mean = estimator.getMeanMillis(DeviceController.NO_CONSUMPTION);
+		assertTrue(mean > 20_000 && mean < 300_000);
+		// period without consumptions => whole day
+		assertEquals(mean, estimator.getMeanMillis(2 * HOUR));
+	}
+
+	@Test
+	public void decay() {
+		for (int i = 0; i < 10; i++) {
+			estimator.addConsumption(MORNING, 60_000);
+		}
+		for (int i = 0; i < 10; i++) {
+			estimator.addConsumption(MORNING, 10_000);
+		}
+		// recent consumptions weigh more:
+		final int mean = estimator.getMeanMillis(MORNING);
+		assertTrue(mean < 35_000);
+		assertTrue(mean > 10_000);
+		assertEquals(20, estimator.getObservations());
+	}
+
+	@Test
+	public void percentiles() {
+		for (int i = 1; i <= 100; i++) {
+			estimator.addConsumption(MORNING, i * 1_000);
+		}
+		final int p10 = estimator.getPercentileMillis(MORNING, 10);
+		final int p50 = estimator.getPercentileMillis(MORNING, 50);
+		final int p90 = estimator.getPercentileMillis(MORNING, 90);
+		assertTrue(p10 < p50);
+		assertTrue(p50 < p90);
+		assertTrue(p90 <= 100_000 * 1.2);
+		assertTrue(estimator.getPercentileMillis(MORNING, 100) >= p90);
+	}
+
+	@Test
+	public void buckets() {
+		assertEquals(0, ConsumptionDurationEstimator.getBucket(0));
+		assertEquals(0, ConsumptionDurationEstimator.getBucket(1_000));
+		assertEquals(ConsumptionDurationEstimator.BUCKETS_PER_DOUBLING, ConsumptionDurationEstimator.getBucket(2_000));
+		assertEquals(ConsumptionDurationEstimator.BUCKET_COUNT - 1, ConsumptionDurationEstimator.getBucket(Integer.MAX_VALUE));
+		assertEquals(2_000.0, ConsumptionDurationEstimator.getBucketLowerBoundMillis(ConsumptionDurationEstimator.BUCKETS_PER_DOUBLING), 0.001);
+	}
+}
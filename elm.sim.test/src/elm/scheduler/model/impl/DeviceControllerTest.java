@@ -16,6 +16,8 @@ import static elm.scheduler.model.impl.ModelTestUtil.FLOW_ON;
 import static elm.scheduler.model.impl.ModelTestUtil.createDeviceWithInfo;
 import static elm.scheduler.model.impl.ModelTestUtil.createDeviceWithStatus;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -23,11 +25,13 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import elm.hs.api.Device;
 import elm.hs.api.ElmStatus;
 import elm.hs.api.DeviceCharacteristics.DeviceModel;
+import elm.scheduler.ElmTestTimeService;
 import elm.scheduler.model.DeviceController.UpdateResult;
 import elm.scheduler.model.HomeServer;
 import elm.scheduler.model.RemoteDeviceUpdate;
@@ -307,4 +311,73 @@ public class DeviceControllerTest {
 		// change in temperature is accepted:
 		assertEquals(380, dc1.getUserDemandTemperatureUnits());
 	}
+
+	@Test
+	public void updatePowerConsumption_Reconciled() {
+		final ElmTestTimeService clock = new ElmTestTimeService();
+		clock.setStopped(true);
+		dc1.setMetricsTimeService(clock);
+		final Device d = createDeviceWithStatus(1, 1, 20_000, FLOW_ON);
+		final short referenceTemperature = d.status.setpoint;
+		dc1.update(d);
+		assertFalse(dc1.isScaldProtectionPending());
+		clock.advanceTime(1_000);
+		dc1.updateMaximumPowerConsumption(ElmStatus.OVERLOAD, 8_000);
+		assertEquals(243, dc1.getScaldProtectionTemperatureUnits());
+		verify(hs).putDeviceUpdate(Mockito.<RemoteDeviceUpdate> any());
+		assertTrue(dc1.isScaldProtectionPending());
+
+		// the update has not been executed yet:
+		for (int i = 1; i < DeviceControllerImpl.LIMIT_CONVERGENCE_POLLS; i++) {
+			dc1.update(d);
+		}
+		verify(hs).putDeviceUpdate(Mockito.<RemoteDeviceUpdate> any());
+		assertTrue(dc1.isScaldProtectionPending());
+		// the limit is honoured:
+		clock.advanceTime(2_000);
+		d.setSetpoint((short) 242);
+		dc1.update(d);
+		dc1.update(d);
+		assertFalse(dc1.isScaldProtectionPending());
+		assertEquals(0, dc1.getDriftCount());
+		assertEquals(2_000, dc1.getMeanConvergenceMillis());
+		assertEquals(2_000, dc1.getMaxConvergenceMillis());
+
+		// the device has been rebooted => only the limit is issued again:
+		d.setSetpoint(referenceTemperature);
+		dc1.update(d);
+		final ArgumentCaptor<RemoteDeviceUpdate> update = ArgumentCaptor.forClass(RemoteDeviceUpdate.class);
+		verify(hs, times(2)).putDeviceUpdate(update.capture());
+		verify(hs).fireDeviceUpdatesPending();
+		assertEquals(Short.valueOf((short) 243), update.getValue().getScaldProtectionTemperature());
+		assertEquals(1, dc1.getDriftCount());
+		assertTrue(dc1.isScaldProtectionPending());
+		clock.advanceTime(3_600_000 - 3_000); // one hour since the first poll
+		assertEquals(1.0, dc1.getDriftRatePerHour(), 1e-9);
+
+		// the correction has been lost:
+		for (int i = 1; i < DeviceControllerImpl.LIMIT_CONVERGENCE_POLLS; i++) {
+			dc1.update(d);
+		}
+		verify(hs, times(2)).putDeviceUpdate(Mockito.<RemoteDeviceUpdate> any());
+		dc1.update(d);
+		verify(hs, times(3)).putDeviceUpdate(Mockito.<RemoteDeviceUpdate> any());
+		assertEquals(1, dc1.getDriftCount());
+		// the limit issued again is honoured:
+		clock.advanceTime(4_000);
+		d.setSetpoint((short) 242);
+		dc1.update(d);
+		assertEquals(3_000, dc1.getMeanConvergenceMillis());
+		assertEquals(4_000, dc1.getMaxConvergenceMillis());
+		d.setSetpoint(referenceTemperature);
+
+		// no reconciliation without a limit:
+		dc1.updateMaximumPowerConsumption(ElmStatus.SATURATION, UNLIMITED_POWER);
+		verify(hs, times(4)).putDeviceUpdate(Mockito.<RemoteDeviceUpdate> any());
+		assertFalse(dc1.isScaldProtectionPending());
+		for (int i = 0; i < DeviceControllerImpl.LIMIT_CONVERGENCE_POLLS; i++) {
+			dc1.update(d);
+		}
+		verify(hs, times(4)).putDeviceUpdate(Mockito.<RemoteDeviceUpdate> any());
+	}
 }
@@ -4,6 +4,7 @@ import static elm.scheduler.model.impl.ModelTestUtil.FLOW_OFF;
 import static elm.scheduler.model.impl.ModelTestUtil.FLOW_ON;
 import static elm.scheduler.model.impl.ModelTestUtil.checkDeviceUpdatesSize;
 import static elm.scheduler.model.impl.ModelTestUtil.createDeviceWithStatus;
+import static elm.scheduler.model.impl.ModelTestUtil.createDevicesWithInfo;
 import static elm.scheduler.model.impl.ModelTestUtil.createDevicesWithStatus;
 import static elm.scheduler.model.impl.ModelTestUtil.createHomeServer;
 import static elm.scheduler.model.impl.ModelTestUtil.getDeviceMap;
@@ -13,27 +14,43 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import elm.hs.api.Device;
 import elm.hs.api.ElmStatus;
 import elm.hs.api.ElmUserFeedbackService;
+import elm.hs.api.HomeServerInternalAsyncService;
 import elm.hs.api.HomeServerInternalService;
 import elm.scheduler.ElmUserFeedbackManager;
 import elm.scheduler.model.DeviceController;
 import elm.scheduler.model.HomeServerChangeListener;
+import elm.scheduler.model.RemoteDeviceUpdate;
 import elm.scheduler.model.UnsupportedDeviceModelException;
 import elm.util.ClientException;
+import elm.util.ClientFuture;
 
 public class HomeServerTest {
 
@@ -162,6 +179,7 @@ public class HomeServerTest {
 			di1_2.updateMaximumPowerConsumption(ElmStatus.OVERLOAD, ACTUAL_POWER_WATT / 2);
 			di1_2.updateUserFeedback(ElmStatus.OVERLOAD, EXPECTED_WAITING_TIME);
 			checkDeviceUpdatesSize(hs1, 1);
+			assertTrue(hs1.isScaldProtectionPending()); // => the devices are polled even if unchanged
 			//
 			hs1.fireDeviceUpdatesPending();
 			verify(hsL1).deviceUpdatesPending(hs1); // listener was notified
@@ -177,6 +195,7 @@ public class HomeServerTest {
 			d1_2 = devices.get(1);
 			hs1.updateDeviceControllers(devices);
 			assertNull(hs1.getPendingUpdates());
+			assertFalse(hs1.isScaldProtectionPending());
 			// original user temperature remains unchanged:
 			assertEquals(referenceTemperature, hs1.getDeviceController(d1_2.id).getUserDemandTemperatureUnits());
 
@@ -195,4 +214,167 @@ public class HomeServerTest {
 			e.printStackTrace();
 		}
 	}
+
+	@Test
+	public void deviceUpdatesCoalesced() throws ClientException {
+		hs1.executeRemoteDeviceUpdates(mock(HomeServerInternalService.class), log); // the initial updates
+		// a device flapping between LIMITED and APPROVED: only the newest target state goes on the wire
+		RemoteDeviceUpdate update = new RemoteDeviceUpdate("A");
+		update.clearScaldProtection((short) 380);
+		hs1.putDeviceUpdate(update);
+		update = new RemoteDeviceUpdate("B");
+		update.setScaldProtectionTemperature((short) 300);
+		hs1.putDeviceUpdate(update);
+		update = new RemoteDeviceUpdate("A");
+		update.setScaldProtectionTemperature((short) 320);
+		hs1.putDeviceUpdate(update);
+		update = new RemoteDeviceUpdate("A");
+		update.setScaldProtectionTemperature((short) 340);
+		hs1.putDeviceUpdate(update);
+		checkDeviceUpdatesSize(hs1, 2);
+		assertEquals(2, hs1.getMergedUpdateCount());
+
+		HomeServerInternalService client = mock(HomeServerInternalService.class);
+		when(client.setScaldProtectionTemperature("A", 340)).thenReturn((short) 340);
+		when(client.setScaldProtectionTemperature("B", 300)).thenReturn((short) 300);
+		hs1.executeRemoteDeviceUpdates(client, log);
+		final InOrder inOrder = inOrder(client);
+		inOrder.verify(client).setScaldProtectionTemperature("A", 340); // in the position of the first update of "A"
+		inOrder.verify(client).setScaldProtectionTemperature("B", 300);
+		verifyNoMoreInteractions(client);
+		assertNull(hs1.getPendingUpdates());
+
+		// bounded:
+		hs1.setMaxPendingUpdates(1);
+		update = new RemoteDeviceUpdate("A");
+		update.clearScaldProtection((short) 380);
+		hs1.putDeviceUpdate(update);
+		update = new RemoteDeviceUpdate("B");
+		update.clearScaldProtection((short) 380);
+		hs1.putDeviceUpdate(update);
+		checkDeviceUpdatesSize(hs1, 1);
+		assertEquals(1, hs1.getDroppedUpdateCount());
+		update = new RemoteDeviceUpdate("A");
+		update.setScaldProtectionTemperature((short) 300);
+		hs1.putDeviceUpdate(update); // replaces, is not dropped
+		assertEquals(1, hs1.getDroppedUpdateCount());
+		assertEquals(3, hs1.getMergedUpdateCount());
+	}
+
+	@Test
+	public void deviceUpdatesInParallel() throws Exception {
+		hs1.executeRemoteDeviceUpdates(mock(HomeServerInternalService.class), log); // the initial updates
+		final Map<String, ClientFuture<Void>> inFlight = new ConcurrentHashMap<String, ClientFuture<Void>>();
+		final HomeServerInternalService client = mock(HomeServerInternalService.class, withSettings().extraInterfaces(HomeServerInternalAsyncService.class));
+		doAnswer(new Answer<ClientFuture<Void>>() {
+			@Override
+			public ClientFuture<Void> answer(InvocationOnMock invocation) {
+				final ClientFuture<Void> future = new ClientFuture<Void>();
+				inFlight.put((String) invocation.getArguments()[0], future);
+				return future;
+			}
+		}).when((HomeServerInternalAsyncService) client).clearScaldProtectionAsync(anyString(), anyInt());
+		for (String id : new String[] { "A", "B", "C" }) {
+			final RemoteDeviceUpdate update = new RemoteDeviceUpdate(id);
+			update.clearScaldProtection((short) 380);
+			hs1.putDeviceUpdate(update);
+		}
+		hs1.setMaxParallelUpdates(2);
+		final long executedCount = hs1.getExecutedUpdateCount();
+
+		final Thread executor = new Thread() {
+			@Override
+			public void run() {
+				hs1.executeRemoteDeviceUpdates(client, log);
+			}
+		};
+		executor.start();
+		while (inFlight.size() < 2) {
+			sleep(1);
+		}
+		sleep(20);
+		assertEquals(2, inFlight.size()); // bounded
+		assertTrue(inFlight.containsKey("A") && inFlight.containsKey("B"));
+		inFlight.get("B").complete(null);
+		while (inFlight.size() < 3) {
+			sleep(1);
+		}
+		inFlight.get("A").fail(new ClientException(ClientException.Error.NETWORK_TIMEOUT));
+		assertTrue(executor.isAlive()); // waits for the last update
+		inFlight.get("C").complete(null);
+		executor.join(1000);
+		assertFalse(executor.isAlive());
+		verify(client, never()).clearScaldProtection(anyString(), anyInt());
+		assertEquals(executedCount + 3, hs1.getExecutedUpdateCount());
+		assertTrue(hs1.getMaxUpdateLatencyMillis() >= 20);
+	}
+
+	@Test
+	public void deviceUpdatesSuppressed() throws Exception {
+		hs1.executeRemoteDeviceUpdates(mock(HomeServerInternalService.class), log); // the initial updates, confirmed
+		final HomeServerInternalService client = mock(HomeServerInternalService.class);
+		final List<Device> devices = createDevicesWithInfo(HS_ID, NUM_DEVICES);
+		final String id = devices.get(0).id;
+
+		// a device re-initialized by its controller: scald protection has been cleared already
+		RemoteDeviceUpdate update = new RemoteDeviceUpdate(id);
+		update.clearScaldProtection(ModelTestUtil.INITIAL_INFO_SETPOINT);
+		hs1.putDeviceUpdate(update);
+		hs1.executeRemoteDeviceUpdates(client, log);
+		verifyNoMoreInteractions(client);
+		assertEquals(1, hs1.getSuppressedUpdateCount());
+
+		// only the confirmed scald-protection temperature counts:
+		when(client.setScaldProtectionTemperature(id, 300)).thenReturn((short) 300);
+		for (int i = 0; i < 2; i++) {
+			update = new RemoteDeviceUpdate(id);
+			update.setScaldProtectionTemperature((short) 300);
+			hs1.putDeviceUpdate(update);
+			hs1.executeRemoteDeviceUpdates(client, log);
+		}
+		verify(client).setScaldProtectionTemperature(id, 300);
+		assertEquals(2, hs1.getSuppressedUpdateCount());
+		// the device no longer honours the protection => its controller issues it again:
+		devices.get(0).info.setpoint = 400;
+		hs1.updateDeviceControllers(devices);
+		update = new RemoteDeviceUpdate(id);
+		update.setScaldProtectionTemperature((short) 300);
+		hs1.putDeviceUpdate(update);
+		hs1.executeRemoteDeviceUpdates(client, log);
+		verify(client, times(2)).setScaldProtectionTemperature(id, 300);
+		assertEquals(2, hs1.getSuppressedUpdateCount());
+		for (int i = 0; i < 2; i++) {
+			update = new RemoteDeviceUpdate(id);
+			update.setScaldProtectionTemperature((short) 320); // not confirmed
+			hs1.putDeviceUpdate(update);
+			hs1.executeRemoteDeviceUpdates(client, log);
+		}
+		verify(client, times(2)).setScaldProtectionTemperature(id, 320);
+
+		// a failed update leaves the device state unknown:
+		update = new RemoteDeviceUpdate(id);
+		update.clearScaldProtection((short) 380);
+		hs1.putDeviceUpdate(update);
+		doThrow(new ClientException(ClientException.Error.NETWORK_TIMEOUT)).when(client).clearScaldProtection(id, 380);
+		hs1.executeRemoteDeviceUpdates(client, log);
+		doNothing().when(client).clearScaldProtection(id, 380);
+		for (int i = 0; i < 2; i++) {
+			update = new RemoteDeviceUpdate(id);
+			update.clearScaldProtection((short) 380);
+			hs1.putDeviceUpdate(update);
+			hs1.executeRemoteDeviceUpdates(client, log);
+		}
+		verify(client, times(2)).clearScaldProtection(id, 380);
+		assertEquals(3, hs1.getSuppressedUpdateCount());
+
+		// the user changes the setpoint of the unprotected device:
+		devices.get(0).info.setpoint = 400;
+		hs1.updateDeviceControllers(devices);
+		update = new RemoteDeviceUpdate(id);
+		update.clearScaldProtection((short) 380);
+		hs1.putDeviceUpdate(update);
+		hs1.executeRemoteDeviceUpdates(client, log);
+		verify(client, times(3)).clearScaldProtection(id, 380);
+		assertEquals(3, hs1.getSuppressedUpdateCount());
+	}
 }
@@ -0,0 +1,69 @@
+package elm.scheduler.sim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import elm.hs.api.ElmStatus;
+
+public class SiteSimulationTest {
+
+	static final long HOUR = 3600 * 1000L;
+
+	SiteSimulation createSimulation() {
+		final SiteSimulation sim = new SiteSimulation();
+		sim.setHomeServerCount(10);
+		sim.setDevicesPerHomeServer(10);
+		sim.setPowerLimits(300_000, 250_000);
+		sim.setSeed(42);
+		return sim;
+	}
+
+	@Test
+	public void deterministic() throws Exception {
+		final SiteSimulation sim1 = createSimulation();
+		sim1.run(4 * HOUR);
+		final SiteSimulation sim2 = createSimulation();
+		sim2.run(4 * HOUR);
+
+		assertTrue(sim1.getConsumptionCount() > 0);
+		assertEquals(sim1.getConsumptionCount(), sim2.getConsumptionCount());
+		assertEquals(sim1.getSchedulingCycleCount(), sim2.getSchedulingCycleCount());
+		assertEquals(sim1.getRemoteUpdateCount(), sim2.getRemoteUpdateCount());
+		assertEquals(sim1.getPeakGrantedPowerWatt(), sim2.getPeakGrantedPowerWatt());
+		assertEquals(sim1.getSuppliedEnergyRatio(), sim2.getSuppliedEnergyRatio(), 0.0);
+	}
+
+	@Test
+	public void overload() throws Exception {
+		final SiteSimulation sim = createSimulation();
+		// 100 devices with up to 27 kW each cannot all be served by 30 kW:
+		sim.setPowerLimits(30_000, 25_000);
+		sim.setConsumptionsPerDeviceAndDay(100);
+		sim.run(2 * HOUR);
+
+		assertTrue(sim.getStatusMillis(ElmStatus.OVERLOAD) > 0);
+		assertTrue(sim.getPeakDemandPowerWatt() > sim.getOverloadPowerLimitWatt());
+		assertTrue(sim.getPeakGrantedPowerWatt() <= sim.getOverloadPowerLimitWatt());
+		assertTrue(sim.getRemoteUpdateCount() > 0);
+		assertTrue(sim.getCurtailedMillis() > 0);
+		assertTrue(sim.getSuppliedEnergyRatio() < 1.0);
+	}
+
+	@Test
+	public void idleLimitReleaseDelay() throws Exception {
+		final SiteSimulation delayed = createSimulation();
+		delayed.setPowerLimits(30_000, 25_000);
+		delayed.setConsumptionsPerDeviceAndDay(100);
+		delayed.run(2 * HOUR);
+		final SiteSimulation undelayed = createSimulation();
+		undelayed.setPowerLimits(30_000, 25_000);
+		undelayed.setConsumptionsPerDeviceAndDay(100);
+		undelayed.setIdleLimitReleaseDelayMillis(0);
+		undelayed.run(2 * HOUR);
+
+		// without the delay, the idle devices are limited and released whenever the status enters and leaves OVERLOAD:
+		assertTrue(delayed.getRemoteUpdateCount() < undelayed.getRemoteUpdateCount());
+	}
+}
@@ -0,0 +1,182 @@
+package elm.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+import elm.util.ClientException.Error;
+
+public class ClientFutureTest {
+
+	static class RecordingCallback<T> implements ClientCallback<T> {
+		final List<Object> outcomes = new ArrayList<Object>();
+
+		@Override
+		public void completed(T result) {
+			outcomes.add(result);
+		}
+
+		@Override
+		public void failed(ClientException e) {
+			outcomes.add(e);
+		}
+	}
+
+	@Test
+	public void complete() throws Exception {
+		final ClientFuture<String> future = new ClientFuture<String>();
+		final RecordingCallback<String> before = new RecordingCallback<String>();
+		future.addCallback(before);
+		assertFalse(future.isDone());
+
+		assertTrue(future.complete("x"));
+		assertFalse(future.complete("y"));
+		assertFalse(future.fail(new ClientException(Error.EXECUTION_ERROR)));
+		assertTrue(future.isDone());
+		assertEquals("x", future.getResult());
+		assertEquals("x", future.get());
+
+		final RecordingCallback<String> after = new RecordingCallback<String>();
+		future.addCallback(after);
+		assertEquals(1, before.outcomes.size());
+		assertEquals("x", before.outcomes.get(0));
+		assertEquals("x", after.outcomes.get(0));
+	}
+
+	@Test
+	public void failure() throws Exception {
+		final ClientFuture<String> future = new ClientFuture<String>();
+		final ClientException e = new ClientException(Error.NETWORK_TIMEOUT);
+		final RecordingCallback<String> callback = new RecordingCallback<String>();
+		future.addCallback(callback);
+		assertTrue(future.fail(e));
+		assertSame(e, callback.outcomes.get(0));
+		try {
+			future.getResult();
+			fail();
+		} catch (ClientException ex) {
+			assertSame(e, ex);
+		}
+		try {
+			future.get();
+			fail();
+		} catch (ExecutionException ex) {
+			assertSame(e, ex.getCause());
+		}
+	}
+
+	@Test
+	public void then() throws Exception {
+		final ClientFuture<String> first = new ClientFuture<String>();
+		final ClientFuture<Integer> second = new ClientFuture<Integer>();
+		final ClientFuture<Integer> chained = first.then(new ClientFuture.Continuation<String, Integer>() {
+			@Override
+			public ClientFuture<Integer> apply(String result) {
+				assertEquals("x", result);
+				return second;
+			}
+		});
+		first.complete("x");
+		assertFalse(chained.isDone());
+		second.complete(42);
+		assertEquals(Integer.valueOf(42), chained.getResult());
+
+		assertNull(ClientFuture.completed("y").ignoreResult().getResult());
+	}
+
+	@Test
+	public void thenFails() {
+		final ClientFuture<String> first = new ClientFuture<String>();
+		final ClientFuture<Integer> chained = first.then(new ClientFuture.Continuation<String, Integer>() {
+			@Override
+			public ClientFuture<Integer> apply(String result) {
+				throw new AssertionError("must not be invoked");
+			}
+		});
+		first.fail(new ClientException(Error.APPLICATION_FAILURE_RESPONSE));
+		try {
+			chained.getResult();
+			fail();
+		} catch (ClientException e) {
+			assertEquals(Error.APPLICATION_FAILURE_RESPONSE, e.getError());
+		}
+
+		final ClientFuture<Integer> throwing = ClientFuture.completed("x").then(new ClientFuture.Continuation<String, Integer>() {
+			@Override
+			public ClientFuture<Integer> apply(String result) throws ClientException {
+				throw new ClientException(Error.APPLICATION_DATA_ERROR);
+			}
+		});
+		try {
+			throwing.getResult();
+			fail();
+		} catch (ClientException e) {
+			assertEquals(Error.APPLICATION_DATA_ERROR, e.getError());
+		}
+	}
+
+	@Test
+	public void otherwise() throws ClientException {
+		final ClientFuture<String> first = new ClientFuture<String>();
+		final ClientFuture<String> second = new ClientFuture<String>();
+		final ClientFuture<String> recovered = first.otherwise(new ClientFuture.Continuation<ClientException, String>() {
+			@Override
+			public ClientFuture<String> apply(ClientException e) throws ClientException {
+				if (e.getError() != Error.NETWORK_TIMEOUT) {
+					throw e;
+				}
+				return second;
+			}
+		});
+		first.fail(new ClientException(Error.NETWORK_TIMEOUT));
+		assertFalse(recovered.isDone());
+		second.complete("y");
+		assertEquals("y", recovered.getResult());
+
+		final ClientFuture<String> rethrown = ClientFuture.<String> failed(new ClientException(Error.APPLICATION_FAILURE_RESPONSE)).otherwise(
+				new ClientFuture.Continuation<ClientException, String>() {
+					@Override
+					public ClientFuture<String> apply(ClientException e) throws ClientException {
+						throw e;
+					}
+				});
+		try {
+			rethrown.getResult();
+			fail();
+		} catch (ClientException e) {
+			assertEquals(Error.APPLICATION_FAILURE_RESPONSE, e.getError());
+		}
+
+		// not applied to a result:
+		assertEquals("x", ClientFuture.completed("x").otherwise(new ClientFuture.Continuation<ClientException, String>() {
+			@Override
+			public ClientFuture<String> apply(ClientException e) {
+				throw new AssertionError("must not be invoked");
+			}
+		}).getResult());
+	}
+
+	@Test
+	public void cancel() {
+		final ClientFuture<String> future = new ClientFuture<String>();
+		assertTrue(future.cancel(false));
+		assertTrue(future.isCancelled());
+		assertFalse(future.complete("x"));
+		try {
+			future.getResult();
+			fail();
+		} catch (ClientException e) {
+			assertEquals(Error.INTERRUPTED, e.getError());
+		}
+		assertFalse(ClientFuture.completed("x").cancel(true));
+	}
+}